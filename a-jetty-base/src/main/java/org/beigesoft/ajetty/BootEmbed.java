@@ -31,6 +31,7 @@ package org.beigesoft.ajetty;
 import java.io.File;
 import java.security.KeyStore;
 
+import org.eclipse.jetty.io.MagazineByteBufferPool;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.HttpConfiguration;
@@ -41,6 +42,8 @@ import org.eclipse.jetty.webapp.WebAppContext;
 import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.security.DataBaseLoginService;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.VirtualThreadPool;
 
 import org.beigesoft.afactory.IFactoryAppBeans;
 
@@ -122,6 +125,27 @@ public class BootEmbed {
    **/
   private Integer ajettyIn;
 
+  /**
+   * <p>Whether to handle requests in virtual threads
+   * if JVM supports them (Java 21+), otherwise (e.g. Android)
+   * in ordinal thread pool.</p>
+   **/
+  private boolean useVirtualThreads = false;
+
+  /**
+   * <p>Maximum requests handled concurrently either in virtual threads
+   * or in ordinal thread pool, e.g. for small number of SQLite
+   * connections. It doesn't limit pool's threads.</p>
+   **/
+  private Integer maxConcurrency = 200;
+
+  /**
+   * <p>Threads that run SSL handshake computations, so a burst of
+   * new browser connections doesn't stall requests of established ones,
+   * 0 means running them in request threads.</p>
+   **/
+  private Integer sslTaskThreads = 2;
+
   /**
    * <p>Create and configure server.</p>
    * @throws Exception an Exception
@@ -132,7 +156,9 @@ public class BootEmbed {
       if (!webappdir.exists() || !webappdir.isDirectory()) {
         throw new Exception("Web app directory not found: " + getWebAppPath());
       }
-      this.server = new Server();
+      this.server = new Server(createThreadPool());
+      // connector takes buffer pool from server's beans:
+      this.server.addBean(new MagazineByteBufferPool());
       SslContextFactory sslContextFactory = new SslContextFactory();
       sslContextFactory.setKeyStorePath(this.pkcs12File.getAbsolutePath());
       sslContextFactory.setKeyStorePassword(this.password);
@@ -147,9 +173,13 @@ public class BootEmbed {
       httpsConf.setSecurePort(this.port);
       httpsConf.setOutputBufferSize(32768);
       httpsConf.addCustomizer(new SecureRequestCustomizer());
+      SslConnectionFactory sslConnectionFactory =
+        new SslConnectionFactory(sslContextFactory, "http/1.1");
+      sslConnectionFactory.setDelegatedTaskThreads(this.sslTaskThreads);
+      // TLS records are read and written from/to socket without copying:
+      sslConnectionFactory.setDirectBuffersForEncryption(true);
       ServerConnector connector = new ServerConnector(server,
-        new SslConnectionFactory(sslContextFactory, "http/1.1"),
-          new HttpConnectionFactory(httpsConf));
+        sslConnectionFactory, new HttpConnectionFactory(httpsConf));
       connector.setHost("127.0.0.1");
       connector.setPort(this.port);
       connector.setIdleTimeout(500000);
@@ -210,7 +240,69 @@ public class BootEmbed {
     }
   }
 
+  /**
+   * <p>Create thread pool that runs requests in virtual threads
+   * if it's configured and JVM supports them, otherwise in its
+   * ordinal threads. Requests handled concurrently are limited
+   * by max concurrency, pool's maximum threads is default.</p>
+   * @return thread pool
+   **/
+  public final QueuedThreadPool createThreadPool() {
+    VirtualThreadPool threadPool = new VirtualThreadPool();
+    threadPool.setUseVirtualThreads(this.useVirtualThreads);
+    threadPool.setMaxConcurrency(this.maxConcurrency);
+    return threadPool;
+  }
+
   //Simple getters and setters:
+  /**
+   * <p>Getter for useVirtualThreads.</p>
+   * @return boolean
+   **/
+  public final boolean getUseVirtualThreads() {
+    return this.useVirtualThreads;
+  }
+
+  /**
+   * <p>Setter for useVirtualThreads.</p>
+   * @param pUseVirtualThreads reference
+   **/
+  public final void setUseVirtualThreads(final boolean pUseVirtualThreads) {
+    this.useVirtualThreads = pUseVirtualThreads;
+  }
+
+  /**
+   * <p>Getter for maxConcurrency.</p>
+   * @return Integer
+   **/
+  public final Integer getMaxConcurrency() {
+    return this.maxConcurrency;
+  }
+
+  /**
+   * <p>Setter for maxConcurrency.</p>
+   * @param pMaxConcurrency reference
+   **/
+  public final void setMaxConcurrency(final Integer pMaxConcurrency) {
+    this.maxConcurrency = pMaxConcurrency;
+  }
+
+  /**
+   * <p>Getter for sslTaskThreads.</p>
+   * @return Integer
+   **/
+  public final Integer getSslTaskThreads() {
+    return this.sslTaskThreads;
+  }
+
+  /**
+   * <p>Setter for sslTaskThreads.</p>
+   * @param pSslTaskThreads reference
+   **/
+  public final void setSslTaskThreads(final Integer pSslTaskThreads) {
+    this.sslTaskThreads = pSslTaskThreads;
+  }
+
   /**
    * <p>Getter for port.</p>
    * @return Integer
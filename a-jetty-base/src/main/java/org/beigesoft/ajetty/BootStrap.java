@@ -40,6 +40,9 @@ import org.eclipse.jetty.server.handler.ContextHandlerCollection;
 import org.eclipse.jetty.deploy.DeploymentManager;
 import org.eclipse.jetty.deploy.providers.WebAppProvider;
 import org.eclipse.jetty.deploy.PropertiesConfigurationManager;
+import org.eclipse.jetty.io.MagazineByteBufferPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.VirtualThreadPool;
 
 import org.beigesoft.afactory.IFactoryAppBeans;
 
@@ -95,6 +98,26 @@ public class BootStrap {
    **/
   private ServerConnector connector;
 
+  /**
+   * <p>Whether to handle requests in virtual threads
+   * if JVM supports them (Java 21+), otherwise (e.g. Android)
+   * in ordinal thread pool.</p>
+   **/
+  private boolean useVirtualThreads = false;
+
+  /**
+   * <p>Maximum requests handled concurrently either in virtual threads
+   * or in ordinal thread pool, e.g. for small number of SQLite
+   * connections. It doesn't limit pool's threads.</p>
+   **/
+  private Integer maxConcurrency = 200;
+
+  /**
+   * <p>Maximum web-apps deployed concurrently on start,
+   * 1 to deploy them one by one.</p>
+   **/
+  private Integer deployThreads = Runtime.getRuntime().availableProcessors();
+
   /**
    * <p>Create and configure server.</p>
    * @throws Exception an Exception
@@ -104,7 +127,9 @@ public class BootStrap {
     // Note that if you set this to port 0 then a randomly available port
     // will be assigned that you can either look in the logs for the port,
     // or programmatically obtain it for use in test cases.
-    this.server = new Server();
+    this.server = new Server(createThreadPool());
+    // connector takes buffer pool from server's beans:
+    this.server.addBean(new MagazineByteBufferPool());
     this.connector = new ServerConnector(server);
     this.connector.setPort(this.port);
     this.connector.setHost("127.0.0.1");
@@ -120,6 +145,7 @@ public class BootStrap {
     // Create the deployment manager:
     this.deploymentManager = new DeploymentManager();
     this.deploymentManager.setContexts(contextHandlerCollection);
+    this.deploymentManager.setDeployThreads(this.deployThreads);
     WebAppProvider webAppProvider = new WebAppProvider();
     webAppProvider.setFactoryAppBeans(this.factoryAppBeans);
     webAppProvider.setMonitoredDirName(jettyBase + File.separator + "webapps");
@@ -155,12 +181,19 @@ public class BootStrap {
 
   /**
    * <p>This start preconfigured Jetty on non-Android OS.
-   * It may takes up to tho parameters: port and jetty:base.
+   * It may takes parameters: port, jetty:base, virtual-threads,
+   * max-concurrency and deploy-threads.
    * Example:
    * <pre>
    * java -jar a-jetty-base.jar jetty:base=/home/my/a-jetty
    * or
    * java -jar a-jetty-base.jar jetty:base=/home/my/a-jetty port=8080
+   * or with requests handled in virtual threads (Java 21+)
+   * but no more than 10 at once:
+   * java -jar a-jetty-base.jar jetty:base=/home/my/a-jetty
+   *   virtual-threads=true max-concurrency=10
+   * or with web-apps deployed one by one:
+   * java -jar a-jetty-base.jar jetty:base=/home/my/a-jetty deploy-threads=1
    * </pre>
    * </p>
    * @param pArgs arguments
@@ -174,6 +207,15 @@ public class BootStrap {
           bootStrap.setPort(Integer.parseInt(strPort));
         } else if (arg.contains("jetty:base=")) {
           bootStrap.setJettyBase(arg.replace("jetty:base=", "").trim());
+        } else if (arg.contains("virtual-threads=")) {
+          bootStrap.setUseVirtualThreads(Boolean
+            .parseBoolean(arg.replace("virtual-threads=", "").trim()));
+        } else if (arg.contains("max-concurrency=")) {
+          String strMc = arg.replace("max-concurrency=", "").trim();
+          bootStrap.setMaxConcurrency(Integer.parseInt(strMc));
+        } else if (arg.contains("deploy-threads=")) {
+          String strDt = arg.replace("deploy-threads=", "").trim();
+          bootStrap.setDeployThreads(Integer.parseInt(strDt));
         }
       }
       bootStrap.setFactoryAppBeans(new FctApp());
@@ -188,7 +230,69 @@ public class BootStrap {
     }
   }
 
+  /**
+   * <p>Create thread pool that runs requests in virtual threads
+   * if it's configured and JVM supports them, otherwise in its
+   * ordinal threads. Requests handled concurrently are limited
+   * by max concurrency, pool's maximum threads is default.</p>
+   * @return thread pool
+   **/
+  public final QueuedThreadPool createThreadPool() {
+    VirtualThreadPool threadPool = new VirtualThreadPool();
+    threadPool.setUseVirtualThreads(this.useVirtualThreads);
+    threadPool.setMaxConcurrency(this.maxConcurrency);
+    return threadPool;
+  }
+
   //Simple getters and setters:
+  /**
+   * <p>Getter for useVirtualThreads.</p>
+   * @return boolean
+   **/
+  public final boolean getUseVirtualThreads() {
+    return this.useVirtualThreads;
+  }
+
+  /**
+   * <p>Setter for useVirtualThreads.</p>
+   * @param pUseVirtualThreads reference
+   **/
+  public final void setUseVirtualThreads(final boolean pUseVirtualThreads) {
+    this.useVirtualThreads = pUseVirtualThreads;
+  }
+
+  /**
+   * <p>Getter for maxConcurrency.</p>
+   * @return Integer
+   **/
+  public final Integer getMaxConcurrency() {
+    return this.maxConcurrency;
+  }
+
+  /**
+   * <p>Setter for maxConcurrency.</p>
+   * @param pMaxConcurrency reference
+   **/
+  public final void setMaxConcurrency(final Integer pMaxConcurrency) {
+    this.maxConcurrency = pMaxConcurrency;
+  }
+
+  /**
+   * <p>Getter for deployThreads.</p>
+   * @return Integer
+   **/
+  public final Integer getDeployThreads() {
+    return this.deployThreads;
+  }
+
+  /**
+   * <p>Setter for deployThreads.</p>
+   * @param pDeployThreads reference
+   **/
+  public final void setDeployThreads(final Integer pDeployThreads) {
+    this.deployThreads = pDeployThreads;
+  }
+
   /**
    * <p>Getter for port.</p>
    * @return Integer
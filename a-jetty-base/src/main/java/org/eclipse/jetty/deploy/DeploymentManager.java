@@ -22,11 +22,17 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jetty.deploy.bindings.StandardDeployer;
 import org.eclipse.jetty.deploy.bindings.StandardStarter;
@@ -45,6 +51,7 @@ import org.eclipse.jetty.util.annotation.Name;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 /**
  * The Deployment Manager.
@@ -59,6 +66,15 @@ import org.eclipse.jetty.util.log.Logger;
  * </ol>
  * <p>
  * <img src="doc-files/DeploymentManager.png">
+ * <p>
+ * Parallel Deployment:
+ * <p>
+ * The apps provided while the manager is starting are deployed one at a time, unless
+ * {@link #setDeployThreads(int)} allows more threads: then they are collected and moved to
+ * the default lifecycle goal concurrently, and the manager has started when all of them
+ * have. An app may be made to wait for others with {@link #addDeployDependency(String, String)}.
+ * The time taken to reach each lifecycle node is kept per app in
+ * {@link AppEntry#getStateDurations()}.
  */
 @ManagedObject("Deployment Manager")
 public class DeploymentManager extends ContainerLifeCycle
@@ -92,6 +108,11 @@ public class DeploymentManager extends ContainerLifeCycle
          */
         private Map<Node, Long> stateTimestamps = new HashMap<Node, Long>();
 
+        /**
+         * Tracking the time taken to reach the various AppStates (in milliseconds)
+         */
+        private Map<Node, Long> stateDurations = new LinkedHashMap<Node, Long>();
+
         public App getApp()
         {
             return app;
@@ -107,6 +128,11 @@ public class DeploymentManager extends ContainerLifeCycle
             return stateTimestamps;
         }
 
+        public Map<Node, Long> getStateDurations()
+        {
+            return stateDurations;
+        }
+
         public int getVersion()
         {
             return version;
@@ -117,6 +143,12 @@ public class DeploymentManager extends ContainerLifeCycle
             this.lifecyleNode = node;
             this.stateTimestamps.put(node,Long.valueOf(System.currentTimeMillis()));
         }
+
+        void setLifeCycleNode(Node node, long duration)
+        {
+            setLifeCycleNode(node);
+            this.stateDurations.put(node,Long.valueOf(duration));
+        }
     }
 
     private final List<AppProvider> _providers = new ArrayList<AppProvider>();
@@ -126,6 +158,9 @@ public class DeploymentManager extends ContainerLifeCycle
     private ContextHandlerCollection _contexts;
     private boolean _useStandardBindings = true;
     private String _defaultLifeCycleGoal = AppLifeCycle.STARTED;
+    private int _deployThreads;
+    private final Map<String, Set<String>> _deployDependencies = new HashMap<String, Set<String>>();
+    private List<AppEntry> _pendingApps;
 
     /**
      * Receive an app for processing.
@@ -142,6 +177,16 @@ public class DeploymentManager extends ContainerLifeCycle
 
         if (isRunning() && _defaultLifeCycleGoal != null)
         {
+            // Apps provided while starting are deployed together once all providers have started
+            synchronized (_apps)
+            {
+                if (_pendingApps != null)
+                {
+                    _pendingApps.add(entry);
+                    return;
+                }
+            }
+
             // Immediately attempt to go to default lifecycle state
             this.requestAppGoal(entry,_defaultLifeCycleGoal);
         }
@@ -229,14 +274,154 @@ public class DeploymentManager extends ContainerLifeCycle
             addLifeCycleBinding(new StandardUndeployer());
         }
 
+        if (_deployThreads > 1)
+        {
+            synchronized (_apps)
+            {
+                _pendingApps = new ArrayList<AppEntry>();
+            }
+        }
+
         // Start all of the AppProviders
-        for (AppProvider provider : _providers)
+        try
         {
-            startAppProvider(provider);
+            for (AppProvider provider : _providers)
+            {
+                startAppProvider(provider);
+            }
+        }
+        finally
+        {
+            List<AppEntry> pending;
+            synchronized (_apps)
+            {
+                pending = _pendingApps;
+                _pendingApps = null;
+            }
+            if (pending != null && !pending.isEmpty())
+                deployInParallel(pending);
         }
         super.doStart();
     }
 
+    /**
+     * Move the apps to the default lifecycle goal on up to {@link #getDeployThreads()} threads,
+     * each app after the apps it depends on have reached the goal or failed to.
+     * 
+     * @param entries the apps to deploy
+     * @throws Exception if the threads cannot be started or are interrupted while waiting for the apps
+     */
+    private void deployInParallel(List<AppEntry> entries) throws Exception
+    {
+        long start = System.nanoTime();
+        Map<AppEntry, Set<AppEntry>> dependencies = getDeployDependencies(entries);
+        List<AppEntry> waiting = new ArrayList<AppEntry>(entries);
+        Set<AppEntry> done = new HashSet<AppEntry>();
+        final BlockingQueue<AppEntry> completed = new LinkedBlockingQueue<AppEntry>();
+        final String goal = _defaultLifeCycleGoal;
+
+        QueuedThreadPool executor = new QueuedThreadPool(Math.min(_deployThreads,entries.size()),1);
+        executor.setName("deploy-"+hashCode());
+        executor.setDaemon(true);
+        executor.start();
+        try
+        {
+            int running = 0;
+            while (!waiting.isEmpty() || running > 0)
+            {
+                Iterator<AppEntry> it = waiting.iterator();
+                while (it.hasNext())
+                {
+                    final AppEntry entry = it.next();
+                    Set<AppEntry> depends = dependencies.get(entry);
+                    if (depends != null && !done.containsAll(depends))
+                        continue;
+                    it.remove();
+                    running++;
+                    executor.execute(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            try
+                            {
+                                requestAppGoal(entry,goal);
+                            }
+                            finally
+                            {
+                                completed.add(entry);
+                            }
+                        }
+                    });
+                }
+
+                if (running == 0)
+                {
+                    // Only apps with circular dependencies remain, so ignore their dependencies
+                    LOG.warn("Circular deploy dependencies between {}",waiting);
+                    dependencies.clear();
+                    continue;
+                }
+
+                AppEntry entry = completed.take();
+                running--;
+                done.add(entry);
+                LOG.info("Deployed {} to {} in {}ms {}",entry.app.getOriginId(),entry.lifecyleNode,sum(entry.stateDurations),entry.stateDurations);
+            }
+        }
+        finally
+        {
+            executor.stop();
+        }
+        LOG.info("Deployed {} apps with {} threads in {}ms",entries.size(),Math.min(_deployThreads,entries.size()),TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start));
+    }
+
+    private Map<AppEntry, Set<AppEntry>> getDeployDependencies(List<AppEntry> entries)
+    {
+        Map<AppEntry, Set<AppEntry>> dependencies = new HashMap<AppEntry, Set<AppEntry>>();
+        if (_deployDependencies.isEmpty())
+            return dependencies;
+
+        // The context paths are known once the context handlers are created
+        Map<String, AppEntry> byContextPath = new HashMap<String, AppEntry>();
+        for (AppEntry entry : entries)
+        {
+            try
+            {
+                byContextPath.put(entry.app.getContextHandler().getContextPath(),entry);
+            }
+            catch (Exception e)
+            {
+                // Deploying will fail and report it
+                LOG.ignore(e);
+            }
+        }
+
+        for (Map.Entry<String, AppEntry> app : byContextPath.entrySet())
+        {
+            Set<String> depends = _deployDependencies.get(app.getKey());
+            if (depends == null)
+                continue;
+            Set<AppEntry> entryDepends = new HashSet<AppEntry>();
+            for (String contextPath : depends)
+            {
+                AppEntry depend = byContextPath.get(contextPath);
+                if (depend != null && depend != app.getValue())
+                    entryDepends.add(depend);
+            }
+            dependencies.put(app.getValue(),entryDepends);
+        }
+        return dependencies;
+    }
+
+    private static long sum(Map<Node, Long> durations)
+    {
+        long sum = 0;
+        for (Long duration : durations.values())
+            sum += duration.longValue();
+        return sum;
+    }
+
     @Override
     protected void doStop() throws Exception
     {
@@ -495,8 +680,9 @@ public class DeploymentManager extends ContainerLifeCycle
                 {
                     Node node = it.next();
                     LOG.debug("Executing Node {}",node);
+                    long start = System.nanoTime();
                     _lifecycle.runBindings(node,appentry.app,this);
-                    appentry.setLifeCycleNode(node);
+                    appentry.setLifeCycleNode(node,TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start));
                 }
             }
         }
@@ -552,6 +738,48 @@ public class DeploymentManager extends ContainerLifeCycle
         this._defaultLifeCycleGoal = defaultLifeCycleState;
     }
 
+    @ManagedAttribute("Threads deploying the apps provided at start, 0 or 1 to deploy them one at a time")
+    public int getDeployThreads()
+    {
+        return _deployThreads;
+    }
+
+    /**
+     * @param deployThreads the maximum number of apps moved to the default lifecycle goal at the same time
+     * while the manager is starting, 0 or 1 to move them one at a time
+     */
+    public void setDeployThreads(int deployThreads)
+    {
+        if (isRunning())
+            throw new IllegalStateException();
+        _deployThreads = deployThreads;
+    }
+
+    /**
+     * Make an app wait for another app when the apps are deployed in parallel.
+     * 
+     * @param contextPath the context path of the app that waits
+     * @param dependsOnContextPath the context path of the app that must have reached the default
+     * lifecycle goal, or failed to, before the app with contextPath is deployed
+     */
+    public void addDeployDependency(String contextPath, String dependsOnContextPath)
+    {
+        if (isRunning())
+            throw new IllegalStateException();
+        Set<String> depends = _deployDependencies.get(contextPath);
+        if (depends == null)
+        {
+            depends = new HashSet<String>();
+            _deployDependencies.put(contextPath,depends);
+        }
+        depends.add(dependsOnContextPath);
+    }
+
+    public Map<String, Set<String>> getDeployDependencies()
+    {
+        return Collections.unmodifiableMap(_deployDependencies);
+    }
+
     private void startAppProvider(AppProvider provider)
     {
         try
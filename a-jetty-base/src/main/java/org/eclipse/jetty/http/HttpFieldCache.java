@@ -0,0 +1,262 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.ArrayTernaryTrie;
+import org.eclipse.jetty.util.Trie;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+
+/* ------------------------------------------------------------ */
+/**
+ * A cache of header fields learned from the messages parsed by many {@link HttpParser}s.
+ * <p>
+ * Parsers report the fields that were not found in any cache. A field is learned once
+ * it has been reported {@link #getThreshold()} times, after which parsers can look up
+ * the field from its bytes without allocating a new {@link HttpField} or value String.
+ * Candidates are counted in a bounded table that is cleared when full, so that only
+ * fields that are frequent at runtime are learned. Learned fields are kept until
+ * {@link #clear()} is called.
+ * <p>
+ * Unlike the per connection cache, the learned fields are matched case sensitively
+ * and fields carrying credentials or cookies are never learned. Fields longer than
+ * {@link #getMaxFieldLength()} are not learned, and no more fields are learned once
+ * the trie of the learned fields would exceed its maximum capacity.
+ */
+@ManagedObject("Learned HTTP field cache")
+public class HttpFieldCache
+{
+    /** The maximum capacity of an {@link ArrayTernaryTrie}, whose rows are indexed by char */
+    private static final int MAX_CAPACITY = Character.MAX_VALUE;
+
+    private final ConcurrentMap<String,AtomicInteger> _candidates = new ConcurrentHashMap<>();
+    private final List<HttpField> _learned = new ArrayList<>();
+    private volatile Trie<HttpField> _trie;
+    private volatile int _size;
+    private volatile int _maxFields = 256;
+    private volatile int _maxCandidates = 1024;
+    private volatile int _threshold = 16;
+    private volatile int _maxFieldLength = 256;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Look ahead for a learned field.
+     * @param buffer the buffer holding the field
+     * @param offset the offset of the field from the buffer position
+     * @param length the length of the bytes that may hold the field
+     * @return the learned field whose name and value best match the bytes, or null
+     */
+    public HttpField getBest(ByteBuffer buffer, int offset, int length)
+    {
+        Trie<HttpField> trie=_trie;
+        return trie==null?null:trie.getBest(buffer,offset,length);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Count a field that was parsed without a cache hit, learning it if it is frequent.
+     * @param field the parsed field
+     */
+    public void parsed(HttpField field)
+    {
+        if (field.getValue()==null || !isLearnable(field.getHeader()))
+            return;
+
+        int maxFields=_maxFields;
+        if (maxFields<=0 || _size>=maxFields)
+            return;
+
+        String key=field.toString();
+        if (key.length()>_maxFieldLength)
+            return;
+
+        AtomicInteger count=_candidates.get(key);
+        if (count==null)
+        {
+            // age the candidates by starting again when there are too many
+            if (_candidates.size()>=_maxCandidates)
+                _candidates.clear();
+            count=new AtomicInteger();
+            AtomicInteger existing=_candidates.putIfAbsent(key,count);
+            if (existing!=null)
+                count=existing;
+        }
+
+        if (count.incrementAndGet()==_threshold)
+            learn(key,field);
+    }
+
+    /* ------------------------------------------------------------ */
+    private synchronized void learn(String key, HttpField field)
+    {
+        _candidates.remove(key);
+        if (_learned.size()>=_maxFields)
+            return;
+        Trie<HttpField> trie=_trie;
+        if (trie!=null && trie.get(key)!=null)
+            return;
+
+        // the trie is rebuilt so that it is never modified while parsers read it
+        _learned.add(field);
+        Trie<HttpField> learned=newTrie(_learned);
+        if (learned==null)
+        {
+            _learned.remove(_learned.size()-1);
+            return;
+        }
+        _trie=learned;
+        _size=_learned.size();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return a trie of the fields, or null if they do not fit in a trie
+     */
+    private static Trie<HttpField> newTrie(List<HttpField> fields)
+    {
+        // in the worst case a key takes a row per char and a row for its end,
+        // and the last row of the trie is never used
+        int capacity=1;
+        for (HttpField f : fields)
+            capacity+=f.toString().length()+1;
+        if (capacity>MAX_CAPACITY)
+            return null;
+        ArrayTernaryTrie<HttpField> trie=new ArrayTernaryTrie<>(false,capacity);
+        for (HttpField f : fields)
+        {
+            if (!trie.put(f))
+                return null;
+        }
+        return trie;
+    }
+
+    /* ------------------------------------------------------------ */
+    private static boolean isLearnable(HttpHeader header)
+    {
+        if (header==null)
+            return true;
+        switch (header)
+        {
+            case AUTHORIZATION:
+            case PROXY_AUTHORIZATION:
+            case COOKIE:
+            case SET_COOKIE:
+            case SET_COOKIE2:
+            case CONTENT_LENGTH:
+            case CONTENT_MD5:
+            case CONTENT_RANGE:
+            case DATE:
+            case IF_MATCH:
+            case IF_MODIFIED_SINCE:
+            case IF_NONE_MATCH:
+            case IF_RANGE:
+            case IF_UNMODIFIED_SINCE:
+            case RANGE:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Forget all the learned fields and candidates.
+     */
+    public synchronized void clear()
+    {
+        _candidates.clear();
+        _learned.clear();
+        _trie=null;
+        _size=0;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute(value="The number of learned fields", readonly=true)
+    public int getSize()
+    {
+        return _size;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The maximum number of learned fields, 0 to disable learning")
+    public int getMaxFields()
+    {
+        return _maxFields;
+    }
+
+    /* ------------------------------------------------------------ */
+    public void setMaxFields(int maxFields)
+    {
+        _maxFields=maxFields;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The maximum number of candidate fields counted before the counts are reset")
+    public int getMaxCandidates()
+    {
+        return _maxCandidates;
+    }
+
+    /* ------------------------------------------------------------ */
+    public void setMaxCandidates(int maxCandidates)
+    {
+        _maxCandidates=maxCandidates;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The number of times a field is parsed before it is learned")
+    public int getThreshold()
+    {
+        return _threshold;
+    }
+
+    /* ------------------------------------------------------------ */
+    public void setThreshold(int threshold)
+    {
+        _threshold=threshold;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The maximum length of a learned field, name and value")
+    public int getMaxFieldLength()
+    {
+        return _maxFieldLength;
+    }
+
+    /* ------------------------------------------------------------ */
+    public void setMaxFieldLength(int maxFieldLength)
+    {
+        _maxFieldLength=maxFieldLength;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{learned=%d/%d,candidates=%d}",getClass().getSimpleName(),hashCode(),getSize(),_maxFields,_candidates.size());
+    }
+}
@@ -19,6 +19,7 @@
 package org.eclipse.jetty.http;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -736,6 +737,74 @@ public class HttpFields implements Iterable<HttpField>
         return q;
     }
 
+    /**
+     * Select the preferred content coding of an Accept-Encoding header.
+     * <p>
+     * A coding that is not listed gets the quality of <code>*</code>, if listed. The
+     * <code>x-gzip</code> and <code>x-compress</code> aliases are the same as
+     * <code>gzip</code> and <code>compress</code>. A quality that cannot be parsed is 0.
+     * </p>
+     *
+     * @param acceptEncoding The Accept-Encoding header value, or null
+     * @param codings The supported codings, in order of preference for equal qualities
+     * @return The index in codings of the coding with the highest non zero quality, or -1
+     */
+    public static int selectContentCoding(String acceptEncoding, String... codings)
+    {
+        if (acceptEncoding == null)
+            return -1;
+
+        float any = -1.0f;
+        float[] qualities = new float[codings.length];
+        Arrays.fill(qualities, -1.0f);
+
+        for (String coding : acceptEncoding.split(","))
+        {
+            int semi = coding.indexOf(';');
+            String name = (semi < 0 ? coding : coding.substring(0, semi)).trim();
+            if (name.regionMatches(true, 0, "x-", 0, 2))
+                name = name.substring(2);
+            float quality = 1.0f;
+            if (semi >= 0)
+            {
+                String param = coding.substring(semi + 1).trim();
+                if (param.startsWith("q=") || param.startsWith("Q="))
+                {
+                    try
+                    {
+                        quality = Float.parseFloat(param.substring(2).trim());
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        quality = 0.0f;
+                    }
+                }
+            }
+
+            if ("*".equals(name))
+                any = quality;
+            else
+            {
+                for (int i = 0; i < codings.length; i++)
+                    if (codings[i].equalsIgnoreCase(name))
+                        qualities[i] = quality;
+            }
+        }
+
+        int selected = -1;
+        float selectedQuality = 0.0f;
+        for (int i = 0; i < codings.length; i++)
+        {
+            float quality = qualities[i] < 0 ? any : qualities[i];
+            if (quality > selectedQuality)
+            {
+                selected = i;
+                selectedQuality = quality;
+            }
+        }
+        return selected;
+    }
+
     /**
      * List values in quality order.
      *
@@ -66,7 +66,8 @@ import org.eclipse.jetty.util.log.Logger;
  * (eg. "Connection: close"), or just header names (eg. "Connection:" ).
  * For headers who's value is not known statically (eg. Host, COOKIE) then a
  * per parser dynamic Trie of {@link HttpFields} from previous parsed messages
- * is used to help the parsing of subsequent messages.
+ * is used to help the parsing of subsequent messages, together with an optional
+ * {@link HttpFieldCache} that learns the fields that are frequent across parsers.
  * </p>
  * <p>
  * If the system property "org.eclipse.jetty.http.HttpParser.STRICT" is set to true,
@@ -155,6 +156,7 @@ public class HttpParser
     private boolean _cr;
     private ByteBuffer _contentChunk;
     private Trie<HttpField> _connectionFields;
+    private HttpFieldCache _sharedFields;
 
     private int _length;
     private final StringBuilder _string=new StringBuilder();
@@ -748,7 +750,8 @@ public class HttpParser
                         if (_connectionFields==null && _version.getVersion()>=HttpVersion.HTTP_1_1.getVersion())
                         {
                             int header_cache = _handler.getHeaderCacheSize();
-                            _connectionFields=new ArrayTernaryTrie<>(header_cache);                            
+                            if (header_cache>0)
+                                _connectionFields=new ArrayTernaryTrie<>(false,header_cache);
                         }
 
                         setState(State.HEADER);
@@ -793,7 +796,6 @@ public class HttpParser
 
     private boolean handleKnownHeaders(ByteBuffer buffer)
     {
-        boolean add_to_connection_trie=false;
         switch (_header)
         {
             case CONTENT_LENGTH:
@@ -830,7 +832,6 @@ public class HttpParser
                 break;
 
             case HOST:
-                add_to_connection_trie=_connectionFields!=null && _field==null;
                 _host=true;
                 if (_valueString==null || _valueString.length()==0)
                 {
@@ -860,28 +861,46 @@ public class HttpParser
                 }
                 break;
 
-            case AUTHORIZATION:
-            case ACCEPT:
-            case ACCEPT_CHARSET:
-            case ACCEPT_ENCODING:
-            case ACCEPT_LANGUAGE:
-            case COOKIE:
-            case CACHE_CONTROL:
-            case USER_AGENT:
-                add_to_connection_trie=_connectionFields!=null && _field==null;
-                break;
-                
             default: break;
         }
-    
-        if (add_to_connection_trie && !_connectionFields.isFull() && _header!=null && _valueString!=null)
-        {
-            _field=new HttpField(_header,_valueString);
-            _connectionFields.put(_field);
-        }
         
         return false;
     }
+
+    /* ------------------------------------------------------------------------------- */
+    /*
+     * Cache a parsed field that was not found in any cache, so that it may be found
+     * when a later message on this connection, or on any connection sharing the
+     * learned fields, repeats it.
+     */
+    private void cacheField(HttpField field)
+    {
+        if (field.getHeader()!=null)
+        {
+            switch (field.getHeader())
+            {
+                // values that are likely to change with every message
+                case CONTENT_LENGTH:
+                case CONTENT_MD5:
+                case CONTENT_RANGE:
+                case DATE:
+                case IF_MATCH:
+                case IF_MODIFIED_SINCE:
+                case IF_NONE_MATCH:
+                case IF_RANGE:
+                case IF_UNMODIFIED_SINCE:
+                case RANGE:
+                    return;
+                default:
+                    break;
+            }
+        }
+
+        if (_connectionFields!=null && !_connectionFields.isFull())
+            _connectionFields.put(field);
+        if (_sharedFields!=null)
+            _sharedFields.parsed(field);
+    }
     
     
     /* ------------------------------------------------------------------------------- */
@@ -946,7 +965,13 @@ public class HttpParser
                                     _field=null;
                                     return true;
                                 }
-                                handle=_handler.parsedHeader(_field!=null?_field:new HttpField(_header,_headerString,_valueString))||handle;
+                                if (_field==null)
+                                {
+                                    _field=new HttpField(_header,_headerString,_valueString);
+                                    if (_headerString!=null && _valueString!=null && (_connectionFields!=null || _sharedFields!=null))
+                                        cacheField(_field);
+                                }
+                                handle=_handler.parsedHeader(_field)||handle;
                             }
                             _headerString=_valueString=null;
                             _header=null;
@@ -1020,6 +1045,13 @@ public class HttpParser
                                     HttpField field=_connectionFields==null?null:_connectionFields.getBest(buffer,-1,buffer.remaining());
                                     if (field==null)
                                         field=CACHE.getBest(buffer,-1,buffer.remaining());
+                                    if ((field==null || field.getValue()==null) && _sharedFields!=null)
+                                    {
+                                        // the static cache may only know the name of a learned field
+                                        HttpField learned=_sharedFields.getBest(buffer,-1,buffer.remaining());
+                                        if (learned!=null)
+                                            field=learned;
+                                    }
                                         
                                     if (field!=null)
                                     {
@@ -1567,6 +1599,21 @@ public class HttpParser
         return _connectionFields;
     }
 
+    /* ------------------------------------------------------------------------------- */
+    public HttpFieldCache getSharedFieldCache()
+    {
+        return _sharedFields;
+    }
+
+    /* ------------------------------------------------------------------------------- */
+    /**
+     * @param cache the cache of fields learned across parsers, or null for none
+     */
+    public void setSharedFieldCache(HttpFieldCache cache)
+    {
+        _sharedFields=cache;
+    }
+
     /* ------------------------------------------------------------------------------- */
     private String getProxyField(ByteBuffer buffer)
     {
@@ -28,6 +28,7 @@ import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.TypeUtil;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.util.UrlEncoded;
+import org.eclipse.jetty.util.UrlEncodedIndex;
 import org.eclipse.jetty.util.Utf8StringBuilder;
 
 
@@ -758,6 +759,19 @@ public class HttpURI
             UrlEncoded.decodeTo(new String(_raw,_query+1,_fragment-_query-1,encoding),parameters,encoding,-1);
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * @param encoding the query encoding, or null for the charset of this URI
+     * @return an index of the query parameters, that are only decoded when looked up,
+     * or null if the encoding is not UTF-8
+     */
+    public UrlEncodedIndex indexQuery(String encoding)
+    {
+        if (encoding==null?!StandardCharsets.UTF_8.equals(_charset):!StringUtil.isUTF8(encoding))
+            return null;
+        return new UrlEncodedIndex(_raw,_query+1,Math.max(0,_fragment-_query-1));
+    }
+
     public void clear()
     {
         _scheme=_authority=_host=_port=_path=_param=_query=_fragment=_end=0;
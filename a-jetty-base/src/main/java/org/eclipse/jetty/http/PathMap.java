@@ -539,6 +539,12 @@ public class PathMap<O> extends HashMap<String,O>
             this.value=value;
         }
 
+        public MappedEntry(String key, O value, String mapped)
+        {
+            this(key,value);
+            this.mapped=mapped;
+        }
+
         @Override
         public String getKey()
         {
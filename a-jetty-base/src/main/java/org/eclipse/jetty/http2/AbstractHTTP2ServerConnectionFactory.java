@@ -0,0 +1,103 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.AbstractConnectionFactory;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.util.annotation.Name;
+
+/* ------------------------------------------------------------ */
+/** Common configuration of the HTTP/2 connection factories.
+ * <p>The receive windows default to more than the 64KiB of the specification,
+ * so that uploads are not limited to one window per round trip.
+ */
+public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConnectionFactory implements HttpConfiguration.ConnectionFactory
+{
+    private final HttpConfiguration _config;
+    private int _maxConcurrentStreams=128;
+    private int _initialSessionRecvWindow=1024*1024;
+    private int _initialStreamRecvWindow=512*1024;
+    private int _maxHeaderTableSize=4096;
+
+    protected AbstractHTTP2ServerConnectionFactory(String protocol, @Name("config") HttpConfiguration config)
+    {
+        super(protocol);
+        _config=config;
+        addBean(_config);
+    }
+
+    @Override
+    public HttpConfiguration getHttpConfiguration()
+    {
+        return _config;
+    }
+
+    public int getMaxConcurrentStreams()
+    {
+        return _maxConcurrentStreams;
+    }
+
+    public void setMaxConcurrentStreams(int maxConcurrentStreams)
+    {
+        _maxConcurrentStreams=maxConcurrentStreams;
+    }
+
+    public int getInitialSessionRecvWindow()
+    {
+        return _initialSessionRecvWindow;
+    }
+
+    public void setInitialSessionRecvWindow(int initialSessionRecvWindow)
+    {
+        _initialSessionRecvWindow=initialSessionRecvWindow;
+    }
+
+    public int getInitialStreamRecvWindow()
+    {
+        return _initialStreamRecvWindow;
+    }
+
+    public void setInitialStreamRecvWindow(int initialStreamRecvWindow)
+    {
+        _initialStreamRecvWindow=initialStreamRecvWindow;
+    }
+
+    public int getMaxHeaderTableSize()
+    {
+        return _maxHeaderTableSize;
+    }
+
+    /**
+     * @param maxHeaderTableSize The maximum size of the dynamic table used to compress response headers
+     */
+    public void setMaxHeaderTableSize(int maxHeaderTableSize)
+    {
+        _maxHeaderTableSize=maxHeaderTableSize;
+    }
+
+    protected HTTP2ServerConnection newHTTP2ServerConnection(Connector connector, EndPoint endPoint)
+    {
+        HTTP2ServerConnection connection=new HTTP2ServerConnection(_config,connector,endPoint,
+            _maxConcurrentStreams,_initialSessionRecvWindow,_initialStreamRecvWindow,_maxHeaderTableSize);
+        configure(connection,connector,endPoint);
+        return connection;
+    }
+}
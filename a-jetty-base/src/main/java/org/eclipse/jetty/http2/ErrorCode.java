@@ -0,0 +1,44 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+/* ------------------------------------------------------------ */
+/** HTTP/2 error codes of RFC 7540 section 7.
+ */
+public final class ErrorCode
+{
+    public static final int NO_ERROR=0x0;
+    public static final int PROTOCOL_ERROR=0x1;
+    public static final int INTERNAL_ERROR=0x2;
+    public static final int FLOW_CONTROL_ERROR=0x3;
+    public static final int SETTINGS_TIMEOUT=0x4;
+    public static final int STREAM_CLOSED=0x5;
+    public static final int FRAME_SIZE_ERROR=0x6;
+    public static final int REFUSED_STREAM=0x7;
+    public static final int CANCEL=0x8;
+    public static final int COMPRESSION_ERROR=0x9;
+    public static final int CONNECT_ERROR=0xa;
+    public static final int ENHANCE_YOUR_CALM=0xb;
+    public static final int INADEQUATE_SECURITY=0xc;
+    public static final int HTTP_1_1_REQUIRED=0xd;
+
+    private ErrorCode()
+    {
+    }
+}
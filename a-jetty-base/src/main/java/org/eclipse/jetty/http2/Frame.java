@@ -0,0 +1,63 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+/* ------------------------------------------------------------ */
+/** HTTP/2 frame types, flags and settings of RFC 7540.
+ */
+public final class Frame
+{
+    public static final byte[] PREFACE = {
+        'P','R','I',' ','*',' ','H','T','T','P','/','2','.','0','\r','\n',
+        '\r','\n','S','M','\r','\n','\r','\n'};
+
+    public static final int HEADER_LENGTH=9;
+    public static final int DEFAULT_MAX_LENGTH=16384;
+    public static final int MAX_MAX_LENGTH=0xFFFFFF;
+    public static final int DEFAULT_WINDOW_SIZE=65535;
+    public static final int MAX_WINDOW_SIZE=0x7FFFFFFF;
+
+    public static final int DATA=0x0;
+    public static final int HEADERS=0x1;
+    public static final int PRIORITY=0x2;
+    public static final int RST_STREAM=0x3;
+    public static final int SETTINGS=0x4;
+    public static final int PUSH_PROMISE=0x5;
+    public static final int PING=0x6;
+    public static final int GOAWAY=0x7;
+    public static final int WINDOW_UPDATE=0x8;
+    public static final int CONTINUATION=0x9;
+
+    public static final int FLAG_END_STREAM=0x01;
+    public static final int FLAG_ACK=0x01;
+    public static final int FLAG_END_HEADERS=0x04;
+    public static final int FLAG_PADDED=0x08;
+    public static final int FLAG_PRIORITY=0x20;
+
+    public static final int SETTINGS_HEADER_TABLE_SIZE=0x1;
+    public static final int SETTINGS_ENABLE_PUSH=0x2;
+    public static final int SETTINGS_MAX_CONCURRENT_STREAMS=0x3;
+    public static final int SETTINGS_INITIAL_WINDOW_SIZE=0x4;
+    public static final int SETTINGS_MAX_FRAME_SIZE=0x5;
+    public static final int SETTINGS_MAX_HEADER_LIST_SIZE=0x6;
+
+    private Frame()
+    {
+    }
+}
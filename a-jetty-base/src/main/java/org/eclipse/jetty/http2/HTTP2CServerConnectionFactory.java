@@ -0,0 +1,141 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.B64Code;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/* ------------------------------------------------------------ */
+/** A Connection Factory for HTTP/2 over clear text ("h2c").
+ * <p>When added to a connector after a {@link org.eclipse.jetty.server.HttpConnectionFactory},
+ * a {@link org.eclipse.jetty.server.HttpConnection} switches to HTTP/2 either when it
+ * receives the HTTP/2 connection preface (prior knowledge) or when it receives a HTTP/1.1
+ * request with "Upgrade: h2c" and no content, in which case the request is answered as
+ * stream 1 of the new connection.  The factory may also be the only one of a connector
+ * that only accepts prior knowledge clients.
+ */
+public class HTTP2CServerConnectionFactory extends AbstractHTTP2ServerConnectionFactory implements ConnectionFactory.Upgrading
+{
+    private static final Logger LOG = Log.getLogger(HTTP2CServerConnectionFactory.class);
+    private static final String HTTP2_SETTINGS="HTTP2-Settings";
+
+    public HTTP2CServerConnectionFactory()
+    {
+        this(new HttpConfiguration());
+    }
+
+    public HTTP2CServerConnectionFactory(@Name("config") HttpConfiguration config)
+    {
+        super("h2c",config);
+    }
+
+    @Override
+    public Connection newConnection(Connector connector, EndPoint endPoint)
+    {
+        return newHTTP2ServerConnection(connector,endPoint);
+    }
+
+    @Override
+    public Connection upgradeConnection(Connector connector, EndPoint endPoint, Request request, HttpFields response101)
+    {
+        List<String> values=request.getHttpFields().getValuesList(HTTP2_SETTINGS);
+        if (values.size()!=1)
+            return null;
+        Map<Integer,Integer> settings=decodeSettings(values.get(0));
+        if (settings==null)
+            return null;
+
+        String authority=null;
+        List<HttpField> headers=new ArrayList<>();
+        for (HttpField field : request.getHttpFields())
+        {
+            HttpHeader header=field.getHeader();
+            if (header==HttpHeader.HOST)
+                authority=field.getValue();
+            else if (header!=HttpHeader.CONNECTION && header!=HttpHeader.UPGRADE && header!=HttpHeader.KEEP_ALIVE &&
+                header!=HttpHeader.PROXY_CONNECTION && header!=HttpHeader.TRANSFER_ENCODING && header!=HttpHeader.TE &&
+                !HTTP2_SETTINGS.equalsIgnoreCase(field.getName()))
+                headers.add(new HttpField(header,field.getName().toLowerCase(Locale.ENGLISH),field.getValue()));
+        }
+
+        String path=request.getRequestURI();
+        if (request.getQueryString()!=null)
+            path=path+"?"+request.getQueryString();
+
+        List<HttpField> fields=new ArrayList<>(headers.size()+4);
+        fields.add(new HttpField(":method",request.getMethod()));
+        fields.add(new HttpField(":scheme",request.getScheme()));
+        if (authority!=null)
+            fields.add(new HttpField(":authority",authority));
+        fields.add(new HttpField(":path",path));
+        fields.addAll(headers);
+
+        HTTP2ServerConnection connection=newHTTP2ServerConnection(connector,endPoint);
+        if (!connection.applySettings(settings))
+            return null;
+        connection.setUpgradeRequest(fields);
+        return connection;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param value the base64url encoded payload of a SETTINGS frame
+     * @return the settings, or null if they cannot be decoded
+     */
+    private static Map<Integer,Integer> decodeSettings(String value)
+    {
+        try
+        {
+            byte[] bytes=B64Code.decode(value.replace('-','+').replace('_','/'));
+            if (bytes.length%6!=0)
+                return null;
+            Map<Integer,Integer> settings=new LinkedHashMap<>();
+            ByteBuffer buffer=ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining())
+            {
+                int id=buffer.getShort()&0xFFFF;
+                settings.put(id,buffer.getInt());
+            }
+            return settings;
+        }
+        catch (RuntimeException e)
+        {
+            LOG.debug(e);
+            return null;
+        }
+    }
+}
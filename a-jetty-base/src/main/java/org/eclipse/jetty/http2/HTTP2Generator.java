@@ -0,0 +1,143 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.nio.ByteBuffer;
+
+/* ------------------------------------------------------------ */
+/** Generates HTTP/2 frames.
+ * <p>All methods return buffers in flush mode.  DATA frames are generated
+ * as a separate header so that the content can be written without copying.
+ */
+public class HTTP2Generator
+{
+    /* ------------------------------------------------------------ */
+    public static void header(ByteBuffer buffer, int length, int type, int flags, int streamId)
+    {
+        buffer.put((byte)(length>>>16));
+        buffer.put((byte)(length>>>8));
+        buffer.put((byte)length);
+        buffer.put((byte)type);
+        buffer.put((byte)flags);
+        buffer.putInt(streamId&0x7FFFFFFF);
+    }
+
+    /* ------------------------------------------------------------ */
+    public static ByteBuffer data(int streamId, int length, boolean endStream)
+    {
+        ByteBuffer buffer=ByteBuffer.allocate(Frame.HEADER_LENGTH);
+        header(buffer,length,Frame.DATA,endStream?Frame.FLAG_END_STREAM:0,streamId);
+        return flip(buffer);
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Generate a HEADERS frame, followed by CONTINUATION frames if the
+     * block is larger than the maximum frame size.
+     */
+    public static ByteBuffer headers(int streamId, ByteBuffer block, boolean endStream, int maxFrameSize)
+    {
+        int length=block.remaining();
+        int frames=Math.max(1,(length+maxFrameSize-1)/maxFrameSize);
+        ByteBuffer buffer=ByteBuffer.allocate(length+frames*Frame.HEADER_LENGTH);
+        int type=Frame.HEADERS;
+        int flags=endStream?Frame.FLAG_END_STREAM:0;
+        do
+        {
+            int fragment=Math.min(block.remaining(),maxFrameSize);
+            boolean last=fragment==block.remaining();
+            header(buffer,fragment,type,last?flags|Frame.FLAG_END_HEADERS:flags,streamId);
+            ByteBuffer slice=block.slice();
+            slice.limit(fragment);
+            buffer.put(slice);
+            block.position(block.position()+fragment);
+            type=Frame.CONTINUATION;
+            flags=0;
+        }
+        while (block.hasRemaining());
+        return flip(buffer);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param settings pairs of setting identifier and value
+     */
+    public static ByteBuffer settings(int... settings)
+    {
+        ByteBuffer buffer=ByteBuffer.allocate(Frame.HEADER_LENGTH+settings.length*3);
+        header(buffer,settings.length*3,Frame.SETTINGS,0,0);
+        for (int i=0;i<settings.length;i+=2)
+        {
+            buffer.putShort((short)settings[i]);
+            buffer.putInt(settings[i+1]);
+        }
+        return flip(buffer);
+    }
+
+    /* ------------------------------------------------------------ */
+    public static ByteBuffer settingsAck()
+    {
+        ByteBuffer buffer=ByteBuffer.allocate(Frame.HEADER_LENGTH);
+        header(buffer,0,Frame.SETTINGS,Frame.FLAG_ACK,0);
+        return flip(buffer);
+    }
+
+    /* ------------------------------------------------------------ */
+    public static ByteBuffer ping(boolean ack, ByteBuffer payload)
+    {
+        ByteBuffer buffer=ByteBuffer.allocate(Frame.HEADER_LENGTH+8);
+        header(buffer,8,Frame.PING,ack?Frame.FLAG_ACK:0,0);
+        buffer.put(payload);
+        return flip(buffer);
+    }
+
+    /* ------------------------------------------------------------ */
+    public static ByteBuffer goAway(int lastStreamId, int error)
+    {
+        ByteBuffer buffer=ByteBuffer.allocate(Frame.HEADER_LENGTH+8);
+        header(buffer,8,Frame.GOAWAY,0,0);
+        buffer.putInt(lastStreamId);
+        buffer.putInt(error);
+        return flip(buffer);
+    }
+
+    /* ------------------------------------------------------------ */
+    public static ByteBuffer reset(int streamId, int error)
+    {
+        ByteBuffer buffer=ByteBuffer.allocate(Frame.HEADER_LENGTH+4);
+        header(buffer,4,Frame.RST_STREAM,0,streamId);
+        buffer.putInt(error);
+        return flip(buffer);
+    }
+
+    /* ------------------------------------------------------------ */
+    public static ByteBuffer windowUpdate(int streamId, int delta)
+    {
+        ByteBuffer buffer=ByteBuffer.allocate(Frame.HEADER_LENGTH+4);
+        header(buffer,4,Frame.WINDOW_UPDATE,0,streamId);
+        buffer.putInt(delta);
+        return flip(buffer);
+    }
+
+    /* ------------------------------------------------------------ */
+    private static ByteBuffer flip(ByteBuffer buffer)
+    {
+        buffer.flip();
+        return buffer;
+    }
+}
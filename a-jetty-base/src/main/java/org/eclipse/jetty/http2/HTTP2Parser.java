@@ -0,0 +1,408 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jetty.util.BufferUtil;
+
+/* ------------------------------------------------------------ */
+/** An incremental HTTP/2 frame parser.
+ * <p>The parser consumes all the bytes it is given.  Frames that are completely
+ * contained in the passed buffer are handed to the {@link Listener} as slices of
+ * that buffer, so that no copy is made in the common case; only frames that span
+ * several reads are accumulated in an internal buffer.  In both cases the listener
+ * must copy any bytes it needs to retain after the callback returns.
+ * HEADERS and CONTINUATION fragments are joined into a single header block.
+ * <p>Once a connection error is signalled, all further input is discarded.
+ */
+public class HTTP2Parser
+{
+    public interface Listener
+    {
+        public void onData(int streamId, ByteBuffer data, int flowLength, boolean endStream);
+
+        public void onHeaders(int streamId, ByteBuffer block, boolean endStream);
+
+        public void onReset(int streamId, int error);
+
+        /**
+         * @param ack True if this is an acknowledgement of our settings
+         * @param settings the settings by identifier, or null for an acknowledgement
+         */
+        public void onSettings(boolean ack, Map<Integer,Integer> settings);
+
+        public void onPing(boolean ack, ByteBuffer payload);
+
+        public void onGoAway(int lastStreamId, int error);
+
+        public void onWindowUpdate(int streamId, int delta);
+
+        public void onStreamError(int streamId, int error, String reason);
+
+        public void onConnectionError(int error, String reason);
+    }
+
+    private enum State { PREFACE, HEADER, PAYLOAD, ERROR }
+
+    private final Listener _listener;
+    private final int _maxFrameLength;
+    private final int _maxHeaderBlockLength;
+    private final ByteBuffer _header = ByteBuffer.allocate(Frame.HEADER_LENGTH);
+    private ByteBuffer _payload;
+    private ByteBuffer _block;
+    private State _state;
+    private int _prefaceIndex;
+    private boolean _settingsExpected=true;
+    private int _length;
+    private int _type;
+    private int _flags;
+    private int _streamId;
+    private int _continuationStreamId;
+    private boolean _continuationEndStream;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param listener The listener of parsed frames
+     * @param maxFrameLength The maximum frame payload length accepted
+     * @param maxHeaderBlockLength The maximum length of a header block split over CONTINUATION frames
+     */
+    public HTTP2Parser(Listener listener, int maxFrameLength, int maxHeaderBlockLength)
+    {
+        _listener=listener;
+        _maxFrameLength=maxFrameLength;
+        _maxHeaderBlockLength=maxHeaderBlockLength;
+        _state=State.PREFACE;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Parse all the bytes of a buffer.
+     * @param buffer The buffer in flush mode, fully consumed on return
+     */
+    public void parse(ByteBuffer buffer)
+    {
+        while (buffer.hasRemaining())
+        {
+            switch (_state)
+            {
+                case PREFACE:
+                {
+                    while (buffer.hasRemaining() && _prefaceIndex<Frame.PREFACE.length)
+                    {
+                        if (buffer.get()!=Frame.PREFACE[_prefaceIndex++])
+                        {
+                            connectionError(ErrorCode.PROTOCOL_ERROR,"invalid_preface");
+                            break;
+                        }
+                    }
+                    if (_state==State.PREFACE && _prefaceIndex==Frame.PREFACE.length)
+                        _state=State.HEADER;
+                    break;
+                }
+
+                case HEADER:
+                {
+                    while (buffer.hasRemaining() && _header.hasRemaining())
+                        _header.put(buffer.get());
+                    if (_header.hasRemaining())
+                        return;
+
+                    _header.flip();
+                    _length=((_header.get()&0xFF)<<16)|((_header.get()&0xFF)<<8)|(_header.get()&0xFF);
+                    _type=_header.get()&0xFF;
+                    _flags=_header.get()&0xFF;
+                    _streamId=_header.getInt()&0x7FFFFFFF;
+                    _header.clear();
+
+                    if (checkHeader())
+                    {
+                        _state=State.PAYLOAD;
+                        if (_length==0)
+                            frame(BufferUtil.EMPTY_BUFFER);
+                    }
+                    break;
+                }
+
+                case PAYLOAD:
+                {
+                    if ((_payload==null || _payload.position()==0) && buffer.remaining()>=_length)
+                    {
+                        // The whole payload is available, avoid copying it
+                        ByteBuffer payload=buffer.slice();
+                        payload.limit(_length);
+                        buffer.position(buffer.position()+_length);
+                        frame(payload);
+                    }
+                    else
+                    {
+                        if (_payload==null)
+                            _payload=ByteBuffer.allocate(_maxFrameLength);
+                        int length=Math.min(buffer.remaining(),_length-_payload.position());
+                        ByteBuffer slice=buffer.slice();
+                        slice.limit(length);
+                        _payload.put(slice);
+                        buffer.position(buffer.position()+length);
+                        if (_payload.position()==_length)
+                        {
+                            _payload.flip();
+                            frame(_payload);
+                            _payload.clear();
+                        }
+                    }
+                    break;
+                }
+
+                default:
+                {
+                    buffer.position(buffer.limit());
+                    return;
+                }
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private boolean checkHeader()
+    {
+        if (_length>_maxFrameLength)
+            return connectionError(ErrorCode.FRAME_SIZE_ERROR,"frame_too_large");
+
+        if (_settingsExpected)
+        {
+            if (_type!=Frame.SETTINGS || (_flags&Frame.FLAG_ACK)!=0)
+                return connectionError(ErrorCode.PROTOCOL_ERROR,"missing_settings");
+            _settingsExpected=false;
+        }
+
+        if (_continuationStreamId!=0)
+        {
+            if (_type!=Frame.CONTINUATION || _streamId!=_continuationStreamId)
+                return connectionError(ErrorCode.PROTOCOL_ERROR,"expected_continuation");
+        }
+        else if (_type==Frame.CONTINUATION)
+            return connectionError(ErrorCode.PROTOCOL_ERROR,"unexpected_continuation");
+
+        return true;
+    }
+
+    /* ------------------------------------------------------------ */
+    private void frame(ByteBuffer payload)
+    {
+        _state=State.HEADER;
+        switch (_type)
+        {
+            case Frame.DATA:
+            {
+                if (_streamId==0)
+                {
+                    connectionError(ErrorCode.PROTOCOL_ERROR,"invalid_data_frame");
+                    return;
+                }
+                if (unpad(payload))
+                    _listener.onData(_streamId,payload,_length,(_flags&Frame.FLAG_END_STREAM)!=0);
+                break;
+            }
+
+            case Frame.HEADERS:
+            {
+                if (_streamId==0)
+                {
+                    connectionError(ErrorCode.PROTOCOL_ERROR,"invalid_headers_frame");
+                    return;
+                }
+                if (!unpad(payload))
+                    return;
+                if ((_flags&Frame.FLAG_PRIORITY)!=0)
+                {
+                    // Priorities are not implemented, skip the dependency and weight
+                    if (payload.remaining()<5)
+                    {
+                        connectionError(ErrorCode.FRAME_SIZE_ERROR,"invalid_headers_frame");
+                        return;
+                    }
+                    payload.position(payload.position()+5);
+                }
+
+                boolean endStream=(_flags&Frame.FLAG_END_STREAM)!=0;
+                if ((_flags&Frame.FLAG_END_HEADERS)!=0)
+                    _listener.onHeaders(_streamId,payload,endStream);
+                else if (append(payload))
+                {
+                    _continuationStreamId=_streamId;
+                    _continuationEndStream=endStream;
+                }
+                break;
+            }
+
+            case Frame.CONTINUATION:
+            {
+                if (!append(payload))
+                    return;
+                if ((_flags&Frame.FLAG_END_HEADERS)!=0)
+                {
+                    int streamId=_continuationStreamId;
+                    _continuationStreamId=0;
+                    _block.flip();
+                    _listener.onHeaders(streamId,_block,_continuationEndStream);
+                    _block.clear();
+                }
+                break;
+            }
+
+            case Frame.PRIORITY:
+            {
+                if (_streamId==0)
+                    connectionError(ErrorCode.PROTOCOL_ERROR,"invalid_priority_frame");
+                else if (_length!=5)
+                    _listener.onStreamError(_streamId,ErrorCode.FRAME_SIZE_ERROR,"invalid_priority_frame");
+                break;
+            }
+
+            case Frame.RST_STREAM:
+            {
+                if (_streamId==0)
+                    connectionError(ErrorCode.PROTOCOL_ERROR,"invalid_rst_stream_frame");
+                else if (_length!=4)
+                    connectionError(ErrorCode.FRAME_SIZE_ERROR,"invalid_rst_stream_frame");
+                else
+                    _listener.onReset(_streamId,payload.getInt());
+                break;
+            }
+
+            case Frame.SETTINGS:
+            {
+                boolean ack=(_flags&Frame.FLAG_ACK)!=0;
+                if (_streamId!=0)
+                    connectionError(ErrorCode.PROTOCOL_ERROR,"invalid_settings_frame");
+                else if (ack?_length!=0:_length%6!=0)
+                    connectionError(ErrorCode.FRAME_SIZE_ERROR,"invalid_settings_frame");
+                else if (ack)
+                    _listener.onSettings(true,null);
+                else
+                {
+                    Map<Integer,Integer> settings=new LinkedHashMap<>();
+                    while (payload.hasRemaining())
+                    {
+                        int id=payload.getShort()&0xFFFF;
+                        settings.put(id,payload.getInt());
+                    }
+                    _listener.onSettings(false,settings);
+                }
+                break;
+            }
+
+            case Frame.PUSH_PROMISE:
+            {
+                connectionError(ErrorCode.PROTOCOL_ERROR,"push_promise_from_client");
+                break;
+            }
+
+            case Frame.PING:
+            {
+                if (_streamId!=0)
+                    connectionError(ErrorCode.PROTOCOL_ERROR,"invalid_ping_frame");
+                else if (_length!=8)
+                    connectionError(ErrorCode.FRAME_SIZE_ERROR,"invalid_ping_frame");
+                else
+                    _listener.onPing((_flags&Frame.FLAG_ACK)!=0,payload);
+                break;
+            }
+
+            case Frame.GOAWAY:
+            {
+                if (_streamId!=0)
+                    connectionError(ErrorCode.PROTOCOL_ERROR,"invalid_goaway_frame");
+                else if (_length<8)
+                    connectionError(ErrorCode.FRAME_SIZE_ERROR,"invalid_goaway_frame");
+                else
+                    _listener.onGoAway(payload.getInt()&0x7FFFFFFF,payload.getInt());
+                break;
+            }
+
+            case Frame.WINDOW_UPDATE:
+            {
+                if (_length!=4)
+                {
+                    connectionError(ErrorCode.FRAME_SIZE_ERROR,"invalid_window_update_frame");
+                    return;
+                }
+                int delta=payload.getInt()&0x7FFFFFFF;
+                if (delta>0)
+                    _listener.onWindowUpdate(_streamId,delta);
+                else if (_streamId==0)
+                    connectionError(ErrorCode.PROTOCOL_ERROR,"invalid_window_update_frame");
+                else
+                    _listener.onStreamError(_streamId,ErrorCode.PROTOCOL_ERROR,"invalid_window_update_frame");
+                break;
+            }
+
+            default:
+                // Unknown frame types are ignored
+                break;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private boolean unpad(ByteBuffer payload)
+    {
+        if ((_flags&Frame.FLAG_PADDED)==0)
+            return true;
+        int padding=_length==0?-1:payload.get()&0xFF;
+        if (padding<0 || padding>=_length)
+            return connectionError(ErrorCode.PROTOCOL_ERROR,"invalid_padding");
+        payload.limit(payload.limit()-padding);
+        return true;
+    }
+
+    /* ------------------------------------------------------------ */
+    private boolean append(ByteBuffer fragment)
+    {
+        int length=(_block==null?0:_block.position())+fragment.remaining();
+        if (length>_maxHeaderBlockLength)
+            return connectionError(ErrorCode.ENHANCE_YOUR_CALM,"header_block_too_large");
+        if (_block==null || _block.remaining()<fragment.remaining())
+        {
+            ByteBuffer block=ByteBuffer.allocate(Math.min(_maxHeaderBlockLength,Math.max(length,2*_maxFrameLength)));
+            if (_block!=null)
+            {
+                _block.flip();
+                block.put(_block);
+            }
+            _block=block;
+        }
+        _block.put(fragment);
+        return true;
+    }
+
+    /* ------------------------------------------------------------ */
+    private boolean connectionError(int error, String reason)
+    {
+        _state=State.ERROR;
+        _listener.onConnectionError(error,reason);
+        return false;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s}",getClass().getSimpleName(),hashCode(),_state);
+    }
+}
@@ -0,0 +1,852 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http2.hpack.HpackDecoder;
+import org.eclipse.jetty.http2.hpack.HpackEncoder;
+import org.eclipse.jetty.http2.hpack.HpackException;
+import org.eclipse.jetty.io.AbstractConnection;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.EofException;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IteratingCallback;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/* ------------------------------------------------------------ */
+/** A server side HTTP/2 connection.
+ * <p>Frames are parsed by the selected thread and each request stream is
+ * dispatched to its own {@link org.eclipse.jetty.server.HttpChannel}.
+ * All frames are written by a single {@link IteratingCallback} that gathers
+ * pending frames into one write.  Control frames are written first, then HEADERS
+ * and DATA in the order they were sent, with the DATA of each stream interleaved
+ * one frame at a time and limited by the stream and connection send windows.
+ * Header blocks are encoded when they are queued, under the flusher lock, so that
+ * the HPACK state of the peer always matches the order of the frames on the wire.
+ */
+public class HTTP2ServerConnection extends AbstractConnection implements Connection.UpgradeTo, HTTP2Parser.Listener
+{
+    private static final Logger LOG = Log.getLogger(HTTP2ServerConnection.class);
+    private static final int MAX_GATHER=32;
+    private static final int MAX_FRAMES=4;
+
+    private final Connector _connector;
+    private final HttpConfiguration _config;
+    private final ByteBufferPool _bufferPool;
+    private final HTTP2Parser _parser;
+    private final HpackDecoder _decoder;
+    private final HpackEncoder _encoder;
+    private final Map<Integer,HTTP2Stream> _streams = new ConcurrentHashMap<>();
+    private final Flusher _flusher = new Flusher();
+    private final Object _lock = new Object();
+    private final int _maxConcurrentStreams;
+    private final int _sessionRecvWindowSize;
+    private final int _streamRecvWindowSize;
+    private int _sessionRecvWindow=Frame.DEFAULT_WINDOW_SIZE;
+    private int _sessionRecvConsumed;
+    private int _lastStreamId;
+    private int _initialStreamSendWindow=Frame.DEFAULT_WINDOW_SIZE;
+    private volatile boolean _goAway;
+    private boolean _goAwaySent;
+    private ByteBuffer _prefilled;
+    private List<HttpField> _upgradeRequest;
+
+    // Guarded by the flusher
+    private int _sessionSendWindow=Frame.DEFAULT_WINDOW_SIZE;
+    private int _maxFrameSize=Frame.DEFAULT_MAX_LENGTH;
+
+    public HTTP2ServerConnection(HttpConfiguration config, Connector connector, EndPoint endPoint,
+        int maxConcurrentStreams, int sessionRecvWindow, int streamRecvWindow, int maxHeaderTableSize)
+    {
+        super(endPoint,connector.getExecutor());
+        _config=config;
+        _connector=connector;
+        _bufferPool=connector.getByteBufferPool();
+        _maxConcurrentStreams=maxConcurrentStreams;
+        _sessionRecvWindowSize=Math.max(sessionRecvWindow,Frame.DEFAULT_WINDOW_SIZE);
+        _streamRecvWindowSize=streamRecvWindow;
+        int maxHeaderListSize=config.getRequestHeaderSize();
+        _decoder=new HpackDecoder(4096,maxHeaderListSize);
+        _encoder=new HpackEncoder(maxHeaderTableSize);
+        _parser=new HTTP2Parser(this,Frame.DEFAULT_MAX_LENGTH,Math.max(maxHeaderListSize*2,Frame.DEFAULT_MAX_LENGTH));
+    }
+
+    public Connector getConnector()
+    {
+        return _connector;
+    }
+
+    public HttpConfiguration getHttpConfiguration()
+    {
+        return _config;
+    }
+
+    public int getStreams()
+    {
+        return _streams.size();
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Set the request of a HTTP/1.1 upgrade, to be handled as stream 1.
+     * @param fields The request fields, pseudo headers first
+     */
+    public void setUpgradeRequest(List<HttpField> fields)
+    {
+        _upgradeRequest=fields;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Apply the peer settings carried by a HTTP2-Settings upgrade header.
+     * @return false if the settings are not valid
+     */
+    public boolean applySettings(Map<Integer,Integer> settings)
+    {
+        return updateSettings(settings)==ErrorCode.NO_ERROR;
+    }
+
+    @Override
+    public void onUpgradeTo(ByteBuffer prefilled)
+    {
+        _prefilled=prefilled;
+    }
+
+    @Override
+    public void onOpen()
+    {
+        super.onOpen();
+
+        // The server preface
+        _flusher.control(HTTP2Generator.settings(
+            Frame.SETTINGS_MAX_CONCURRENT_STREAMS,_maxConcurrentStreams,
+            Frame.SETTINGS_INITIAL_WINDOW_SIZE,_streamRecvWindowSize,
+            Frame.SETTINGS_MAX_HEADER_LIST_SIZE,_config.getRequestHeaderSize()),Callback.Adapter.INSTANCE);
+        synchronized (_lock)
+        {
+            if (_sessionRecvWindowSize>_sessionRecvWindow)
+            {
+                _flusher.control(HTTP2Generator.windowUpdate(0,_sessionRecvWindowSize-_sessionRecvWindow),Callback.Adapter.INSTANCE);
+                _sessionRecvWindow=_sessionRecvWindowSize;
+            }
+        }
+
+        if (_upgradeRequest!=null)
+        {
+            List<HttpField> fields=_upgradeRequest;
+            _upgradeRequest=null;
+            _lastStreamId=1;
+            HTTP2Stream stream=newStream(1);
+            if (stream.onRequest(fields,false,true))
+                getExecutor().execute(stream.getHttpChannel());
+        }
+
+        if (BufferUtil.hasContent(_prefilled))
+            onFillable();
+        else
+            fillInterested();
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void onFillable()
+    {
+        ByteBuffer buffer=_prefilled;
+        _prefilled=null;
+        boolean pooled=false;
+        try
+        {
+            while (true)
+            {
+                if (BufferUtil.isEmpty(buffer))
+                {
+                    if (!pooled)
+                    {
+                        // The prefilled buffer is not ours to release
+                        buffer=_bufferPool.acquire(getInputBufferSize(),false);
+                        pooled=true;
+                    }
+
+                    int filled=getEndPoint().fill(buffer);
+                    if (filled==0)
+                        break;
+                    if (filled<0)
+                    {
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("{} input shutdown",this);
+                        close();
+                        return;
+                    }
+                }
+
+                _parser.parse(buffer);
+                if (!getEndPoint().isOpen())
+                    return;
+            }
+        }
+        catch (IOException e)
+        {
+            LOG.debug(e);
+            close();
+        }
+        catch (Throwable e)
+        {
+            LOG.warn(e);
+            close();
+        }
+        finally
+        {
+            if (pooled)
+                _bufferPool.release(buffer);
+            if (getEndPoint().isOpen() && getEndPoint().getConnection()==this)
+                fillInterested();
+        }
+    }
+
+    @Override
+    protected boolean onReadTimeout()
+    {
+        // Only idle connections time out, streams have their own async timeouts
+        if (_streams.isEmpty())
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} idle timeout",this);
+            goAway(ErrorCode.NO_ERROR);
+        }
+        return false;
+    }
+
+    @Override
+    public void onClose()
+    {
+        super.onClose();
+        for (HTTP2Stream stream : _streams.values())
+            stream.onReset();
+        _streams.clear();
+        _flusher.terminate(new EofException("closed"));
+    }
+
+    /* ------------------------------------------------------------ */
+    private HTTP2Stream newStream(int id)
+    {
+        HTTP2Stream stream;
+        synchronized (_flusher)
+        {
+            stream=new HTTP2Stream(this,id,_initialStreamSendWindow,_streamRecvWindowSize);
+        }
+        _streams.put(id,stream);
+        return stream;
+    }
+
+    /* ------------------------------------------------------------ */
+    void remove(HTTP2Stream stream)
+    {
+        if (_streams.remove(stream.getId())!=null)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} removed {}",this,stream);
+            if (_goAway && _streams.isEmpty())
+                goAway(ErrorCode.NO_ERROR);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    void reset(HTTP2Stream stream, int error)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} reset {} {}",this,stream,error);
+        _streams.remove(stream.getId());
+        stream.onReset();
+        _flusher.append(new Entry(null,HTTP2Generator.reset(stream.getId(),error),null,false,Callback.Adapter.INSTANCE));
+        if (_goAway && _streams.isEmpty())
+            goAway(ErrorCode.NO_ERROR);
+    }
+
+    /* ------------------------------------------------------------ */
+    private void goAway(int error)
+    {
+        final int lastStreamId;
+        synchronized (_lock)
+        {
+            if (_goAwaySent)
+                return;
+            _goAwaySent=true;
+            lastStreamId=_lastStreamId;
+        }
+        _goAway=true;
+        _flusher.control(HTTP2Generator.goAway(lastStreamId,error),new Callback()
+        {
+            @Override
+            public void succeeded()
+            {
+                getEndPoint().shutdownOutput();
+                close();
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                close();
+            }
+        });
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Credit consumed request content to the receive windows.
+     * @param stream The stream
+     * @param length The length consumed, credited to the connection window
+     * @param streamDelta The stream window update to send, or 0
+     */
+    void onContentConsumed(HTTP2Stream stream, int length, int streamDelta)
+    {
+        int delta=0;
+        synchronized (_lock)
+        {
+            _sessionRecvConsumed+=length;
+            if (_sessionRecvConsumed>=_sessionRecvWindowSize/2)
+            {
+                delta=_sessionRecvConsumed;
+                _sessionRecvConsumed=0;
+                _sessionRecvWindow+=delta;
+            }
+        }
+        if (delta>0)
+            _flusher.control(HTTP2Generator.windowUpdate(0,delta),Callback.Adapter.INSTANCE);
+        if (streamDelta>0 && !stream.isReset())
+            _flusher.control(HTTP2Generator.windowUpdate(stream.getId(),streamDelta),Callback.Adapter.INSTANCE);
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Queue the response frames of a stream.
+     * @param stream The stream
+     * @param fields The response header fields, or null if only content is sent
+     * @param content The content, or null
+     * @param last True if this ends the stream
+     * @param callback Callback invoked once the frames are written
+     */
+    void send(HTTP2Stream stream, List<HttpField> fields, ByteBuffer content, boolean last, Callback callback)
+    {
+        Entry entry;
+        Throwable failure;
+        synchronized (_flusher)
+        {
+            ByteBuffer headers=null;
+            if (fields!=null)
+            {
+                ByteBuffer block=ByteBuffer.allocate(HpackEncoder.estimate(fields));
+                _encoder.encode(block,fields);
+                block.flip();
+                headers=HTTP2Generator.headers(stream.getId(),block,last && content==null,_maxFrameSize);
+            }
+            entry=new Entry(stream,headers,content,last,callback);
+            failure=_flusher.offer(_flusher._entries,entry);
+        }
+        if (failure==null)
+            _flusher.iterate();
+        else
+            entry.failed(failure);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void onData(int streamId, ByteBuffer data, int flowLength, boolean endStream)
+    {
+        synchronized (_lock)
+        {
+            if (flowLength>_sessionRecvWindow)
+            {
+                onConnectionError(ErrorCode.FLOW_CONTROL_ERROR,"session_window_exceeded");
+                return;
+            }
+            _sessionRecvWindow-=flowLength;
+        }
+
+        HTTP2Stream stream=_streams.get(streamId);
+        if (stream==null || stream.isRemoteClosed())
+        {
+            if (streamId>_lastStreamId)
+            {
+                onConnectionError(ErrorCode.PROTOCOL_ERROR,"data_for_idle_stream");
+                return;
+            }
+            // Closed or reset stream, just give the window back
+            onContentConsumed(null,flowLength,0);
+            if (stream!=null)
+                reset(stream,ErrorCode.STREAM_CLOSED);
+            return;
+        }
+
+        if (!stream.onData(data,flowLength,endStream))
+        {
+            onContentConsumed(stream,flowLength,0);
+            reset(stream,ErrorCode.FLOW_CONTROL_ERROR);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void onHeaders(int streamId, ByteBuffer block, boolean endStream)
+    {
+        List<HttpField> fields=new ArrayList<>();
+        boolean tooLarge;
+        try
+        {
+            tooLarge=_decoder.decode(block,fields);
+        }
+        catch (HpackException e)
+        {
+            LOG.debug(e);
+            onConnectionError(ErrorCode.COMPRESSION_ERROR,e.getMessage());
+            return;
+        }
+
+        if ((streamId&1)==0)
+        {
+            onConnectionError(ErrorCode.PROTOCOL_ERROR,"invalid_stream_id");
+            return;
+        }
+
+        HTTP2Stream stream=_streams.get(streamId);
+        if (stream!=null)
+        {
+            // Trailers, which are not exposed by the servlet API
+            if (stream.isRemoteClosed())
+                onConnectionError(ErrorCode.STREAM_CLOSED,"stream_closed");
+            else if (!endStream)
+                reset(stream,ErrorCode.PROTOCOL_ERROR);
+            else
+                stream.onTrailers();
+            return;
+        }
+
+        synchronized (_lock)
+        {
+            // Frames of streams that have been reset are ignored
+            if (streamId<=_lastStreamId)
+                return;
+            _lastStreamId=streamId;
+        }
+
+        if (_goAway)
+            return;
+
+        stream=newStream(streamId);
+        if (_streams.size()>_maxConcurrentStreams)
+        {
+            reset(stream,ErrorCode.REFUSED_STREAM);
+            return;
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} new {} {}",this,stream,fields);
+        if (stream.onRequest(fields,tooLarge,endStream))
+            getExecutor().execute(stream.getHttpChannel());
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void onReset(int streamId, int error)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} received reset {} {}",this,streamId,error);
+        HTTP2Stream stream=_streams.remove(streamId);
+        if (stream!=null)
+            stream.onReset();
+        else if (streamId>_lastStreamId)
+            onConnectionError(ErrorCode.PROTOCOL_ERROR,"reset_idle_stream");
+        if (_goAway && _streams.isEmpty())
+            goAway(ErrorCode.NO_ERROR);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void onSettings(boolean ack, Map<Integer,Integer> settings)
+    {
+        if (ack)
+            return;
+        int error=updateSettings(settings);
+        if (error==ErrorCode.NO_ERROR)
+        {
+            _flusher.control(HTTP2Generator.settingsAck(),Callback.Adapter.INSTANCE);
+            _flusher.iterate();
+        }
+        else
+            onConnectionError(error,"invalid_settings");
+    }
+
+    private int updateSettings(Map<Integer,Integer> settings)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} settings {}",this,settings);
+        synchronized (_flusher)
+        {
+            for (Map.Entry<Integer,Integer> setting : settings.entrySet())
+            {
+                int value=setting.getValue();
+                switch (setting.getKey())
+                {
+                    case Frame.SETTINGS_HEADER_TABLE_SIZE:
+                        _encoder.setRemoteMaxTableSize(value<0?Integer.MAX_VALUE:value);
+                        break;
+
+                    case Frame.SETTINGS_ENABLE_PUSH:
+                        if (value!=0 && value!=1)
+                            return ErrorCode.PROTOCOL_ERROR;
+                        break;
+
+                    case Frame.SETTINGS_INITIAL_WINDOW_SIZE:
+                    {
+                        if (value<0)
+                            return ErrorCode.FLOW_CONTROL_ERROR;
+                        int delta=value-_initialStreamSendWindow;
+                        _initialStreamSendWindow=value;
+                        for (HTTP2Stream stream : _streams.values())
+                            stream._sendWindow+=delta;
+                        break;
+                    }
+
+                    case Frame.SETTINGS_MAX_FRAME_SIZE:
+                        if (value<Frame.DEFAULT_MAX_LENGTH || value>Frame.MAX_MAX_LENGTH)
+                            return ErrorCode.PROTOCOL_ERROR;
+                        _maxFrameSize=value;
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+        }
+        return ErrorCode.NO_ERROR;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void onPing(boolean ack, ByteBuffer payload)
+    {
+        if (!ack)
+            _flusher.control(HTTP2Generator.ping(true,payload),Callback.Adapter.INSTANCE);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void onGoAway(int lastStreamId, int error)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} received goaway {} {}",this,lastStreamId,error);
+        _goAway=true;
+        if (_streams.isEmpty())
+            goAway(ErrorCode.NO_ERROR);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void onWindowUpdate(int streamId, int delta)
+    {
+        HTTP2Stream stream=streamId==0?null:_streams.get(streamId);
+        if (streamId!=0 && stream==null)
+            return;
+
+        boolean overflow;
+        synchronized (_flusher)
+        {
+            if (stream==null)
+            {
+                overflow=_sessionSendWindow+delta<0;
+                if (!overflow)
+                    _sessionSendWindow+=delta;
+            }
+            else
+            {
+                overflow=stream._sendWindow+delta<0;
+                if (!overflow)
+                    stream._sendWindow+=delta;
+            }
+        }
+
+        if (!overflow)
+            _flusher.iterate();
+        else if (stream==null)
+            onConnectionError(ErrorCode.FLOW_CONTROL_ERROR,"session_window_overflow");
+        else
+            reset(stream,ErrorCode.FLOW_CONTROL_ERROR);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void onStreamError(int streamId, int error, String reason)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} stream error {} {} {}",this,streamId,error,reason);
+        HTTP2Stream stream=_streams.get(streamId);
+        if (stream!=null)
+            reset(stream,error);
+        else
+            _flusher.append(new Entry(null,HTTP2Generator.reset(streamId,error),null,false,Callback.Adapter.INSTANCE));
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void onConnectionError(int error, String reason)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} connection error {} {}",this,error,reason);
+        goAway(error);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s{streams=%d,last=%d}",super.toString(),_streams.size(),_lastStreamId);
+    }
+
+    /* ------------------------------------------------------------ */
+    private static class Entry
+    {
+        private final HTTP2Stream _stream;
+        private ByteBuffer _frame;
+        private final ByteBuffer _content;
+        private final boolean _last;
+        private final Callback _callback;
+
+        private Entry(HTTP2Stream stream, ByteBuffer frame, ByteBuffer content, boolean last, Callback callback)
+        {
+            _stream=stream;
+            _frame=frame;
+            _content=content;
+            _last=last;
+            _callback=callback;
+        }
+
+        private void succeeded()
+        {
+            if (_last && _stream!=null)
+                _stream.onLocalClosed();
+            _callback.succeeded();
+        }
+
+        private void failed(Throwable x)
+        {
+            _callback.failed(x);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private class Flusher extends IteratingCallback
+    {
+        private final ArrayDeque<Entry> _control = new ArrayDeque<>();
+        private final ArrayDeque<Entry> _entries = new ArrayDeque<>();
+        private final List<Entry> _flushed = new ArrayList<>();
+        private final List<Entry> _failed = new ArrayList<>();
+        private final List<ByteBuffer> _buffers = new ArrayList<>();
+        private final Set<HTTP2Stream> _blocked = new HashSet<>();
+        private Throwable _failure;
+
+        private void control(ByteBuffer frame, Callback callback)
+        {
+            queue(_control,new Entry(null,frame,null,false,callback));
+        }
+
+        private void append(Entry entry)
+        {
+            queue(_entries,entry);
+        }
+
+        private void queue(ArrayDeque<Entry> queue, Entry entry)
+        {
+            Throwable failure=offer(queue,entry);
+            if (failure==null)
+                iterate();
+            else
+                entry.failed(failure);
+        }
+
+        private synchronized Throwable offer(ArrayDeque<Entry> queue, Entry entry)
+        {
+            if (_failure==null)
+                queue.add(entry);
+            return _failure;
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            synchronized (this)
+            {
+                while (_buffers.size()<MAX_GATHER && !_control.isEmpty())
+                {
+                    Entry entry=_control.poll();
+                    _buffers.add(entry._frame);
+                    _flushed.add(entry);
+                }
+
+                Iterator<Entry> i=_entries.iterator();
+                while (_buffers.size()<MAX_GATHER && i.hasNext())
+                {
+                    Entry entry=i.next();
+                    HTTP2Stream stream=entry._stream;
+                    if (stream!=null && stream.isReset())
+                    {
+                        // The header block is still written, as encoding it has changed the
+                        // HPACK table, which the peer's decoder must keep in step with
+                        if (entry._frame!=null)
+                        {
+                            _buffers.add(entry._frame);
+                            entry._frame=null;
+                        }
+                        i.remove();
+                        _failed.add(entry);
+                        continue;
+                    }
+
+                    // Keep the frames of a stream in order
+                    if (_blocked.contains(stream))
+                        continue;
+
+                    if (entry._frame!=null)
+                    {
+                        _buffers.add(entry._frame);
+                        entry._frame=null;
+                    }
+
+                    ByteBuffer content=entry._content;
+                    if (content!=null && !data(stream,content,entry._last))
+                    {
+                        // Stalled by flow control, or sent its share of this write
+                        _blocked.add(stream);
+                        continue;
+                    }
+
+                    i.remove();
+                    _flushed.add(entry);
+                }
+                _blocked.clear();
+            }
+
+            failEntries();
+
+            if (_buffers.isEmpty())
+                return Action.IDLE;
+
+            ByteBuffer[] buffers=_buffers.toArray(new ByteBuffer[_buffers.size()]);
+            _buffers.clear();
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} writing {} buffers",HTTP2ServerConnection.this,buffers.length);
+            getEndPoint().write(this,buffers);
+            return Action.SCHEDULED;
+        }
+
+        /**
+         * Generate up to MAX_FRAMES DATA frames of the content.
+         * @return true if all the content has been generated
+         */
+        private boolean data(HTTP2Stream stream, ByteBuffer content, boolean last)
+        {
+            for (int frames=0;frames<MAX_FRAMES && _buffers.size()<MAX_GATHER;frames++)
+            {
+                int length=Math.min(Math.min(content.remaining(),_maxFrameSize),Math.min(stream._sendWindow,_sessionSendWindow));
+                boolean complete=length==content.remaining();
+                if (length==0 && !(complete && last))
+                    return complete;
+
+                _buffers.add(HTTP2Generator.data(stream.getId(),length,complete && last));
+                if (length>0)
+                {
+                    ByteBuffer slice=content.slice();
+                    slice.limit(length);
+                    content.position(content.position()+length);
+                    _buffers.add(slice);
+                    stream._sendWindow-=length;
+                    _sessionSendWindow-=length;
+                }
+                if (complete)
+                    return true;
+            }
+            return false;
+        }
+
+        private void failEntries()
+        {
+            Entry[] failed;
+            synchronized (this)
+            {
+                if (_failed.isEmpty())
+                    return;
+                failed=_failed.toArray(new Entry[_failed.size()]);
+                _failed.clear();
+            }
+            for (Entry entry : failed)
+                entry.failed(new EofException("reset"));
+        }
+
+        @Override
+        public void succeeded()
+        {
+            Entry[] flushed;
+            synchronized (this)
+            {
+                flushed=_flushed.toArray(new Entry[_flushed.size()]);
+                _flushed.clear();
+            }
+            for (Entry entry : flushed)
+                entry.succeeded();
+            super.succeeded();
+        }
+
+        @Override
+        protected void onCompleteFailure(Throwable x)
+        {
+            LOG.debug(x);
+            terminate(x);
+            close();
+        }
+
+        private void terminate(Throwable x)
+        {
+            List<Entry> failed=new ArrayList<>();
+            synchronized (this)
+            {
+                if (_failure==null)
+                    _failure=x;
+                failed.addAll(_flushed);
+                failed.addAll(_control);
+                failed.addAll(_entries);
+                _flushed.clear();
+                _control.clear();
+                _entries.clear();
+            }
+            for (Entry entry : failed)
+                entry.failed(x);
+        }
+    }
+}
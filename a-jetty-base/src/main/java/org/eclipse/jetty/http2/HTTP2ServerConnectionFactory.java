@@ -0,0 +1,50 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.util.annotation.Name;
+
+/* ------------------------------------------------------------ */
+/** A Connection Factory for HTTP/2 over TLS ("h2").
+ * <p>The protocol is selected by ALPN, so this factory is used after an
+ * {@link org.eclipse.jetty.server.ALPNServerConnectionFactory} in a chain like
+ * SSL, ALPN, h2, HTTP/1.1.
+ */
+public class HTTP2ServerConnectionFactory extends AbstractHTTP2ServerConnectionFactory
+{
+    public HTTP2ServerConnectionFactory()
+    {
+        this(new HttpConfiguration());
+    }
+
+    public HTTP2ServerConnectionFactory(@Name("config") HttpConfiguration config)
+    {
+        super("h2",config);
+    }
+
+    @Override
+    public Connection newConnection(Connector connector, EndPoint endPoint)
+    {
+        return newHTTP2ServerConnection(connector,endPoint);
+    }
+}
@@ -0,0 +1,437 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpGenerator.ResponseInfo;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.io.EofException;
+import org.eclipse.jetty.server.ByteBufferQueuedHttpInput;
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.HttpChannelState;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpTransport;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.HostPort;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/* ------------------------------------------------------------ */
+/** A HTTP/2 stream carrying a single request/response exchange.
+ * <p>The stream is the {@link HttpTransport} of its own {@link HttpChannel},
+ * so requests are handled exactly as HTTP/1 requests are.  Request content is
+ * queued as copies of the DATA frames and the receive window is replenished as
+ * the application consumes it, so a slow reader applies back pressure on the
+ * client rather than buffering an unbounded body.
+ */
+public class HTTP2Stream implements HttpTransport
+{
+    private static final Logger LOG = Log.getLogger(HTTP2Stream.class);
+
+    private final HTTP2ServerConnection _connection;
+    private final int _id;
+    private final HttpChannel<ByteBuffer> _channel;
+    private final Input _input = new Input();
+    private final int _recvWindowSize;
+    private int _recvWindow;
+    private int _recvConsumed;
+    private int _recvOutstanding;
+    private boolean _remoteClosed;
+    private boolean _localClosed;
+    private volatile boolean _reset;
+    private volatile boolean _head;
+    int _sendWindow; // guarded by the connection flusher
+
+    public HTTP2Stream(HTTP2ServerConnection connection, int id, int sendWindow, int recvWindow)
+    {
+        _connection=connection;
+        _id=id;
+        _sendWindow=sendWindow;
+        _recvWindowSize=recvWindow;
+        _recvWindow=recvWindow;
+        _channel=new HttpChannel<>(connection.getConnector(),connection.getHttpConfiguration(),connection.getEndPoint(),this,_input);
+    }
+
+    public int getId()
+    {
+        return _id;
+    }
+
+    public HttpChannel<ByteBuffer> getHttpChannel()
+    {
+        return _channel;
+    }
+
+    public boolean isReset()
+    {
+        return _reset;
+    }
+
+    public synchronized boolean isRemoteClosed()
+    {
+        return _remoteClosed;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Set up the request from a decoded header block.
+     * @param fields the decoded fields, pseudo headers first
+     * @param tooLarge true if the header list exceeded the maximum size
+     * @param endStream true if the request has no content
+     * @return true if the channel must be dispatched to handle the request
+     */
+    boolean onRequest(List<HttpField> fields, boolean tooLarge, boolean endStream)
+    {
+        String method=null;
+        String scheme=null;
+        String authority=null;
+        String path=null;
+        StringBuilder cookies=null;
+        List<HttpField> headers=new ArrayList<>(fields.size());
+        boolean malformed=false;
+
+        for (HttpField field : fields)
+        {
+            String name=field.getName();
+            if (name.startsWith(":"))
+            {
+                if (!headers.isEmpty())
+                    malformed=true;
+                else if (":method".equals(name))
+                    method=field.getValue();
+                else if (":scheme".equals(name))
+                    scheme=field.getValue();
+                else if (":authority".equals(name))
+                    authority=field.getValue();
+                else if (":path".equals(name))
+                    path=field.getValue();
+                else
+                    malformed=true;
+                continue;
+            }
+
+            for (int i=name.length();i-->0;)
+            {
+                char c=name.charAt(i);
+                if (c>='A' && c<='Z')
+                    malformed=true;
+            }
+
+            HttpHeader header=field.getHeader();
+            if (header!=null)
+            {
+                switch (header)
+                {
+                    case CONNECTION:
+                    case KEEP_ALIVE:
+                    case PROXY_CONNECTION:
+                    case TRANSFER_ENCODING:
+                    case UPGRADE:
+                        malformed=true;
+                        break;
+                    case TE:
+                        malformed|=!"trailers".equalsIgnoreCase(field.getValue());
+                        break;
+                    case COOKIE:
+                        // Cookies may be split in several fields to improve compression
+                        if (cookies==null)
+                            cookies=new StringBuilder(field.getValue());
+                        else
+                            cookies.append("; ").append(field.getValue());
+                        continue;
+                    default:
+                        break;
+                }
+            }
+            headers.add(field);
+        }
+
+        if (malformed || method==null || scheme==null || path==null || path.isEmpty())
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} malformed request {}",this,fields);
+            _connection.reset(this,ErrorCode.PROTOCOL_ERROR);
+            return false;
+        }
+
+        synchronized (this)
+        {
+            _remoteClosed=endStream;
+        }
+
+        if (!_channel.startRequest(HttpMethod.CACHE.get(method),method,BufferUtil.toBuffer(path),HttpVersion.HTTP_2))
+        {
+            if (authority!=null)
+            {
+                _channel.parsedHeader(new HttpField(HttpHeader.HOST,authority));
+                try
+                {
+                    HostPort host=new HostPort(authority);
+                    _channel.parsedHostHeader(host.getHost(),host.getPort());
+                }
+                catch (IllegalArgumentException e)
+                {
+                    LOG.ignore(e);
+                }
+            }
+            for (HttpField field : headers)
+                _channel.parsedHeader(field);
+            if (cookies!=null)
+                _channel.parsedHeader(new HttpField(HttpHeader.COOKIE,cookies.toString()));
+
+            if (tooLarge)
+                _channel.badMessage(HttpStatus.REQUEST_ENTITY_TOO_LARGE_413,null);
+            else
+                _channel.headerComplete();
+        }
+
+        // A bad message has already been responded to
+        if (_channel.getState().getState()==HttpChannelState.State.COMPLETED)
+        {
+            completed();
+            return false;
+        }
+
+        if (endStream)
+            _channel.messageComplete();
+        return true;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Queue request content.
+     * @return false if the content exceeds the receive window
+     */
+    boolean onData(ByteBuffer data, int flowLength, boolean endStream)
+    {
+        int padding=flowLength-data.remaining();
+        synchronized (this)
+        {
+            if (flowLength>_recvWindow)
+                return false;
+            _recvWindow-=flowLength;
+            _recvOutstanding+=flowLength;
+            if (endStream)
+                _remoteClosed=true;
+        }
+
+        if (data.hasRemaining())
+        {
+            ByteBuffer copy=ByteBuffer.allocate(data.remaining());
+            copy.put(data).flip();
+            _channel.content(copy);
+        }
+
+        // Padding is never seen by the application, so credit it now
+        if (padding>0)
+            onContentConsumed(padding);
+
+        if (endStream)
+        {
+            _channel.messageComplete();
+            if (isLocalClosed())
+                _connection.remove(this);
+        }
+        return true;
+    }
+
+    /* ------------------------------------------------------------ */
+    void onTrailers()
+    {
+        synchronized (this)
+        {
+            _remoteClosed=true;
+        }
+        _channel.messageComplete();
+        if (isLocalClosed())
+            _connection.remove(this);
+    }
+
+    /* ------------------------------------------------------------ */
+    private void onContentConsumed(int length)
+    {
+        int delta=0;
+        synchronized (this)
+        {
+            if (_reset)
+                return;
+            _recvOutstanding-=length;
+            _recvConsumed+=length;
+            if (!_remoteClosed && _recvConsumed>=_recvWindowSize/2)
+            {
+                delta=_recvConsumed;
+                _recvConsumed=0;
+                _recvWindow+=delta;
+            }
+        }
+        _connection.onContentConsumed(this,length,delta);
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Called when the stream has been reset by either peer or the connection closed */
+    void onReset()
+    {
+        int outstanding;
+        synchronized (this)
+        {
+            if (_reset)
+                return;
+            _reset=true;
+            outstanding=_recvOutstanding;
+            _recvOutstanding=0;
+        }
+        // Content that will never be consumed is credited to the connection
+        if (outstanding>0)
+            _connection.onContentConsumed(this,outstanding,0);
+        _input.earlyEOF();
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Called when the frame with END_STREAM has been written */
+    void onLocalClosed()
+    {
+        boolean remove;
+        synchronized (this)
+        {
+            _localClosed=true;
+            remove=_remoteClosed;
+        }
+        if (remove)
+            _connection.remove(this);
+    }
+
+    private synchronized boolean isLocalClosed()
+    {
+        return _localClosed;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void send(ResponseInfo info, ByteBuffer content, boolean lastContent, Callback callback)
+    {
+        if (info==null)
+        {
+            send(content,lastContent,callback);
+            return;
+        }
+
+        List<HttpField> fields=new ArrayList<>();
+        fields.add(new HttpField(":status",Integer.toString(info.getStatus())));
+        HttpFields httpFields=info.getHttpFields();
+        if (httpFields!=null)
+        {
+            for (HttpField field : httpFields)
+            {
+                HttpHeader header=field.getHeader();
+                if (header==HttpHeader.CONNECTION || header==HttpHeader.KEEP_ALIVE || header==HttpHeader.PROXY_CONNECTION ||
+                    header==HttpHeader.TRANSFER_ENCODING || header==HttpHeader.UPGRADE)
+                    continue;
+                fields.add(field);
+            }
+        }
+
+        if (info.isInformational())
+        {
+            _connection.send(this,fields,null,false,callback);
+            return;
+        }
+
+        HttpConfiguration config=_connection.getHttpConfiguration();
+        if (config.getSendServerVersion() && (httpFields==null || !httpFields.containsKey(HttpHeader.SERVER.asString())))
+            fields.add(new HttpField(HttpHeader.SERVER,HttpConfiguration.SERVER_VERSION));
+        if (httpFields==null || !httpFields.containsKey(HttpHeader.CONTENT_LENGTH.asString()))
+        {
+            long length=info.getContentLength();
+            if (length<0 && lastContent && !info.isHead())
+                length=BufferUtil.length(content);
+            if (length>=0 && info.getStatus()!=HttpStatus.NO_CONTENT_204 && info.getStatus()!=HttpStatus.NOT_MODIFIED_304)
+                fields.add(new HttpField(HttpHeader.CONTENT_LENGTH,Long.toString(length)));
+        }
+
+        if (info.isHead())
+        {
+            _head=true;
+            content=null;
+            lastContent=true;
+        }
+        _connection.send(this,fields,BufferUtil.isEmpty(content)?null:content,lastContent,callback);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void send(ByteBuffer content, boolean lastContent, Callback callback)
+    {
+        if (_head || isLocalClosed() || (!lastContent && BufferUtil.isEmpty(content)))
+        {
+            if (_head || BufferUtil.isEmpty(content))
+                callback.succeeded();
+            else
+                callback.failed(new EofException("stream closed"));
+            return;
+        }
+        _connection.send(this,null,content==null?BufferUtil.EMPTY_BUFFER:content,lastContent,callback);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void completed()
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} completed",this);
+
+        if (!isLocalClosed())
+            // The response was not completed (eg. failed write)
+            _connection.reset(this,ErrorCode.INTERNAL_ERROR);
+        else if (!isRemoteClosed())
+            // The response is complete, tell the client not to send more content
+            _connection.reset(this,ErrorCode.NO_ERROR);
+        else
+            _connection.remove(this);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void abort()
+    {
+        _connection.reset(this,ErrorCode.INTERNAL_ERROR);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{id=%d,send=%d,recv=%d,reset=%b}",getClass().getSimpleName(),hashCode(),_id,_sendWindow,_recvWindow,_reset);
+    }
+
+    /* ------------------------------------------------------------ */
+    private class Input extends ByteBufferQueuedHttpInput
+    {
+        @Override
+        protected void onContentConsumed(ByteBuffer item)
+        {
+            HTTP2Stream.this.onContentConsumed(item.limit());
+        }
+    }
+}
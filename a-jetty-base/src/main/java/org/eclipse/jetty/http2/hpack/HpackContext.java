@@ -0,0 +1,324 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/* ------------------------------------------------------------ */
+/** The HPACK header table.
+ * <p>The static table of RFC 7541 Appendix A followed by a dynamic table
+ * held in a ring of entries. Index 1 is the first static entry and index 62
+ * the most recently added dynamic entry. Lookups by name and by name/value
+ * are only maintained when the table is used for encoding.
+ */
+public class HpackContext
+{
+    public static final String[][] STATIC_TABLE =
+    {
+        {null,null},
+        {":authority",null},
+        {":method","GET"},
+        {":method","POST"},
+        {":path","/"},
+        {":path","/index.html"},
+        {":scheme","http"},
+        {":scheme","https"},
+        {":status","200"},
+        {":status","204"},
+        {":status","206"},
+        {":status","304"},
+        {":status","400"},
+        {":status","404"},
+        {":status","500"},
+        {"accept-charset",null},
+        {"accept-encoding","gzip, deflate"},
+        {"accept-language",null},
+        {"accept-ranges",null},
+        {"accept",null},
+        {"access-control-allow-origin",null},
+        {"age",null},
+        {"allow",null},
+        {"authorization",null},
+        {"cache-control",null},
+        {"content-disposition",null},
+        {"content-encoding",null},
+        {"content-language",null},
+        {"content-length",null},
+        {"content-location",null},
+        {"content-range",null},
+        {"content-type",null},
+        {"cookie",null},
+        {"date",null},
+        {"etag",null},
+        {"expect",null},
+        {"expires",null},
+        {"from",null},
+        {"host",null},
+        {"if-match",null},
+        {"if-modified-since",null},
+        {"if-none-match",null},
+        {"if-range",null},
+        {"if-unmodified-since",null},
+        {"last-modified",null},
+        {"link",null},
+        {"location",null},
+        {"max-forwards",null},
+        {"proxy-authenticate",null},
+        {"proxy-authorization",null},
+        {"range",null},
+        {"referer",null},
+        {"refresh",null},
+        {"retry-after",null},
+        {"server",null},
+        {"set-cookie",null},
+        {"strict-transport-security",null},
+        {"transfer-encoding",null},
+        {"user-agent",null},
+        {"vary",null},
+        {"via",null},
+        {"www-authenticate",null}
+    };
+
+    public static final int STATIC_SIZE=STATIC_TABLE.length-1;
+
+    private static final Map<String,Integer> __staticName = new HashMap<>();
+    private static final Map<String,Integer> __staticNameValue = new HashMap<>();
+    static
+    {
+        for (int i=STATIC_SIZE;i>0;i--)
+        {
+            __staticName.put(STATIC_TABLE[i][0],i);
+            if (STATIC_TABLE[i][1]!=null)
+                __staticNameValue.put(STATIC_TABLE[i][0]+'\n'+STATIC_TABLE[i][1],i);
+        }
+    }
+
+    public static class Entry
+    {
+        final String _name;
+        final String _value;
+        final long _sequence;
+
+        Entry(String name, String value, long sequence)
+        {
+            _name=name;
+            _value=value;
+            _sequence=sequence;
+        }
+
+        public String getName()
+        {
+            return _name;
+        }
+
+        public String getValue()
+        {
+            return _value;
+        }
+
+        int size()
+        {
+            return _name.length()+_value.length()+32;
+        }
+
+        @Override
+        public String toString()
+        {
+            return _name+": "+_value;
+        }
+    }
+
+    private final boolean _indexed;
+    private final Map<String,Entry> _byName;
+    private final Map<String,Entry> _byNameValue;
+    private Entry[] _entries = new Entry[16];
+    private int _first;
+    private int _count;
+    private int _size;
+    private int _maxSize;
+    private long _added;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param maxSize The initial maximum size of the dynamic table in octets
+     * @param indexed True if the name and name/value lookups are maintained (for encoding)
+     */
+    public HpackContext(int maxSize, boolean indexed)
+    {
+        _maxSize=maxSize;
+        _indexed=indexed;
+        _byName=indexed?new HashMap<String,Entry>():null;
+        _byNameValue=indexed?new HashMap<String,Entry>():null;
+    }
+
+    public int getMaxSize()
+    {
+        return _maxSize;
+    }
+
+    public void setMaxSize(int maxSize)
+    {
+        _maxSize=maxSize;
+        evict(0);
+    }
+
+    public int getSize()
+    {
+        return _size;
+    }
+
+    public int getDynamicCount()
+    {
+        return _count;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param index the HPACK index, starting at 1
+     * @return the name of the entry, or null if the index is not valid
+     */
+    public String getName(int index)
+    {
+        if (index<=0)
+            return null;
+        if (index<=STATIC_SIZE)
+            return STATIC_TABLE[index][0];
+        Entry entry=get(index);
+        return entry==null?null:entry._name;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param index the HPACK index, starting at 1
+     * @return the value of the entry ("" for static entries without value),
+     * or null if the index is not valid
+     */
+    public String getValue(int index)
+    {
+        if (index<=0)
+            return null;
+        if (index<=STATIC_SIZE)
+        {
+            String value=STATIC_TABLE[index][1];
+            return value==null?"":value;
+        }
+        Entry entry=get(index);
+        return entry==null?null:entry._value;
+    }
+
+    private Entry get(int index)
+    {
+        int i=index-STATIC_SIZE-1;
+        if (i>=_count)
+            return null;
+        // index 0 of the dynamic table is the newest entry
+        return _entries[(_first+_count-1-i)%_entries.length];
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Add an entry, evicting older entries as needed.
+     * An entry larger than the table empties it and is not added.
+     */
+    public void add(String name, String value)
+    {
+        Entry entry=new Entry(name,value,_added++);
+        int size=entry.size();
+        evict(size);
+        if (size>_maxSize)
+            return;
+
+        if (_count==_entries.length)
+        {
+            Entry[] entries=new Entry[_entries.length*2];
+            for (int i=0;i<_count;i++)
+                entries[i]=_entries[(_first+i)%_entries.length];
+            _entries=entries;
+            _first=0;
+        }
+        _entries[(_first+_count)%_entries.length]=entry;
+        _count++;
+        _size+=size;
+
+        if (_indexed)
+        {
+            _byName.put(name,entry);
+            _byNameValue.put(name+'\n'+value,entry);
+        }
+    }
+
+    private void evict(int needed)
+    {
+        while (_count>0 && _size+needed>_maxSize)
+        {
+            Entry entry=_entries[_first];
+            _entries[_first]=null;
+            _first=(_first+1)%_entries.length;
+            _count--;
+            _size-=entry.size();
+
+            if (_indexed)
+            {
+                if (_byName.get(entry._name)==entry)
+                    _byName.remove(entry._name);
+                String key=entry._name+'\n'+entry._value;
+                if (_byNameValue.get(key)==entry)
+                    _byNameValue.remove(key);
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the index of an entry with the name and value, or 0
+     */
+    public int indexOf(String name, String value)
+    {
+        String key=name+'\n'+value;
+        Integer index=__staticNameValue.get(key);
+        if (index!=null)
+            return index;
+        return index(_byNameValue.get(key));
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the index of an entry with the name, or 0
+     */
+    public int indexOfName(String name)
+    {
+        Integer index=__staticName.get(name);
+        if (index!=null)
+            return index;
+        return index(_byName.get(name));
+    }
+
+    private int index(Entry entry)
+    {
+        if (entry==null)
+            return 0;
+        return STATIC_SIZE+(int)(_added-entry._sequence);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{entries=%d,size=%d,max=%d}",getClass().getSimpleName(),hashCode(),_count,_size,_maxSize);
+    }
+}
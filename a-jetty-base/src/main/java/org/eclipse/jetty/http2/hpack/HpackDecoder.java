@@ -0,0 +1,160 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+
+/* ------------------------------------------------------------ */
+/** Decodes HPACK header blocks.
+ * <p>Decoded names are looked up in {@link HttpHeader#CACHE} so that the
+ * resulting {@link HttpField}s can be handled like HTTP/1 parsed fields.
+ * A decoder is not thread safe and must see every header block of its
+ * connection in order.
+ */
+public class HpackDecoder
+{
+    private final HpackContext _context;
+    private final int _maxTableSize;
+    private final int _maxHeaderListSize;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param maxTableSize The maximum dynamic table size advertised to the peer
+     * @param maxHeaderListSize The maximum size of the decoded header list
+     */
+    public HpackDecoder(int maxTableSize, int maxHeaderListSize)
+    {
+        _context=new HpackContext(maxTableSize,false);
+        _maxTableSize=maxTableSize;
+        _maxHeaderListSize=maxHeaderListSize;
+    }
+
+    public HpackContext getHpackContext()
+    {
+        return _context;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Decode a complete header block.
+     * @param block The header block, which is consumed
+     * @param fields The list to add the decoded fields to
+     * @return true if the decoded header list exceeds the maximum size.  The
+     * block is always fully decoded so that the dynamic table stays in sync.
+     * @throws HpackException if the block cannot be decoded
+     */
+    public boolean decode(ByteBuffer block, List<HttpField> fields) throws HpackException
+    {
+        int size=0;
+        boolean first=true;
+        while (block.hasRemaining())
+        {
+            int b=block.get(block.position())&0xFF;
+            String name;
+            String value;
+            if ((b&0x80)!=0)
+            {
+                // Indexed field
+                int index=integer(block,7);
+                name=_context.getName(index);
+                if (name==null)
+                    throw new HpackException("Unknown index "+index);
+                value=_context.getValue(index);
+            }
+            else if ((b&0xE0)==0x20)
+            {
+                // Dynamic table size update, only allowed at the start of a block
+                if (!first)
+                    throw new HpackException("Late table size update");
+                int max=integer(block,5);
+                if (max>_maxTableSize)
+                    throw new HpackException("Table size "+max+">"+_maxTableSize);
+                _context.setMaxSize(max);
+                continue;
+            }
+            else
+            {
+                // Literal field, with incremental indexing (01), without indexing (0000) or never indexed (0001)
+                boolean indexing=(b&0x40)!=0;
+                int index=integer(block,indexing?6:4);
+                if (index==0)
+                    name=string(block);
+                else
+                {
+                    name=_context.getName(index);
+                    if (name==null)
+                        throw new HpackException("Unknown index "+index);
+                }
+                value=string(block);
+                if (indexing)
+                    _context.add(name,value);
+            }
+            first=false;
+
+            size+=name.length()+value.length()+32;
+            if (size<=_maxHeaderListSize)
+                fields.add(new HttpField(HttpHeader.CACHE.get(name),name,value));
+        }
+        return size>_maxHeaderListSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    private static int integer(ByteBuffer buffer, int prefix) throws HpackException
+    {
+        int mask=0xFF>>>(8-prefix);
+        int value=buffer.get()&mask;
+        if (value<mask)
+            return value;
+
+        int shift=0;
+        while (true)
+        {
+            if (!buffer.hasRemaining())
+                throw new HpackException("Truncated integer");
+            int b=buffer.get()&0xFF;
+            if (shift>21)
+                throw new HpackException("Integer overflow");
+            value+=(b&0x7F)<<shift;
+            if ((b&0x80)==0)
+                return value;
+            shift+=7;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private static String string(ByteBuffer buffer) throws HpackException
+    {
+        if (!buffer.hasRemaining())
+            throw new HpackException("Truncated string");
+        boolean huffman=(buffer.get(buffer.position())&0x80)!=0;
+        int length=integer(buffer,7);
+        if (length>buffer.remaining())
+            throw new HpackException("Truncated string");
+        if (huffman)
+            return Huffman.decode(buffer,length);
+
+        char[] chars=new char[length];
+        for (int i=0;i<length;i++)
+            chars[i]=(char)(buffer.get()&0xFF);
+        return new String(chars);
+    }
+}
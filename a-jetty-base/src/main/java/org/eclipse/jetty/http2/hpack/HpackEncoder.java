@@ -0,0 +1,182 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.eclipse.jetty.http.HttpField;
+
+/* ------------------------------------------------------------ */
+/** Encodes HPACK header blocks.
+ * <p>Fields are emitted as indexed references whenever the static or dynamic
+ * table holds the exact field, otherwise as literals that are added to the
+ * dynamic table, except for values that rarely repeat (which would just churn
+ * the table) and sensitive values (which are never indexed, so that
+ * intermediaries do not compress them either). String literals are Huffman
+ * coded when that is shorter.
+ * An encoder is not thread safe and its header blocks must be sent in the
+ * order they are encoded.
+ */
+public class HpackEncoder
+{
+    private static final Set<String> __doNotIndex = new HashSet<>(Arrays.asList(
+        "content-length","content-range","etag","last-modified","location",":path"));
+
+    private static final Set<String> __neverIndex = new HashSet<>(Arrays.asList(
+        "authorization","proxy-authorization","set-cookie","cookie"));
+
+    private final HpackContext _context;
+    private final int _localMaxTableSize;
+    private int _minTableSizeUpdate=-1;
+    private int _tableSizeUpdate=-1;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param localMaxTableSize The maximum dynamic table size this encoder is willing to use
+     */
+    public HpackEncoder(int localMaxTableSize)
+    {
+        _localMaxTableSize=localMaxTableSize;
+        _context=new HpackContext(Math.min(localMaxTableSize,4096),true);
+    }
+
+    public HpackContext getHpackContext()
+    {
+        return _context;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Set the table size allowed by the peer SETTINGS_HEADER_TABLE_SIZE.
+     * The change is signalled at the start of the next header block.
+     */
+    public void setRemoteMaxTableSize(int size)
+    {
+        int max=Math.min(size,_localMaxTableSize);
+        if (max==_context.getMaxSize() && _tableSizeUpdate<0)
+            return;
+        _context.setMaxSize(max);
+        if (_minTableSizeUpdate<0 || max<_minTableSizeUpdate)
+            _minTableSizeUpdate=max;
+        _tableSizeUpdate=max;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return an upper bound of the encoded size of the fields
+     */
+    public static int estimate(List<HttpField> fields)
+    {
+        int size=16;
+        for (HttpField field : fields)
+            size+=field.getName().length()+(field.getValue()==null?0:field.getValue().length())+12;
+        return size;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Encode a complete header block.
+     * @param buffer The buffer to encode to, in fill mode, with at least {@link #estimate(List)} octets remaining
+     * @param fields The fields to encode, with pseudo headers first
+     */
+    public void encode(ByteBuffer buffer, List<HttpField> fields)
+    {
+        if (_tableSizeUpdate>=0)
+        {
+            if (_minTableSizeUpdate<_tableSizeUpdate)
+                integer(buffer,0x20,5,_minTableSizeUpdate);
+            integer(buffer,0x20,5,_tableSizeUpdate);
+            _minTableSizeUpdate=-1;
+            _tableSizeUpdate=-1;
+        }
+
+        for (HttpField field : fields)
+        {
+            String name=field.getName().toLowerCase(Locale.ENGLISH);
+            String value=field.getValue();
+            if (value==null)
+                value="";
+
+            boolean never=__neverIndex.contains(name);
+            int index=never?0:_context.indexOf(name,value);
+            if (index>0)
+            {
+                integer(buffer,0x80,7,index);
+                continue;
+            }
+
+            int nameIndex=_context.indexOfName(name);
+            if (never)
+                integer(buffer,0x10,4,nameIndex);
+            else if (__doNotIndex.contains(name) || name.length()+value.length()+32>_context.getMaxSize()/2)
+                integer(buffer,0x00,4,nameIndex);
+            else
+            {
+                integer(buffer,0x40,6,nameIndex);
+                _context.add(name,value);
+            }
+
+            if (nameIndex==0)
+                string(buffer,name);
+            string(buffer,value);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private static void integer(ByteBuffer buffer, int flags, int prefix, int value)
+    {
+        int max=(1<<prefix)-1;
+        if (value<max)
+        {
+            buffer.put((byte)(flags|value));
+            return;
+        }
+        buffer.put((byte)(flags|max));
+        value-=max;
+        while (value>=0x80)
+        {
+            buffer.put((byte)((value&0x7F)|0x80));
+            value>>>=7;
+        }
+        buffer.put((byte)value);
+    }
+
+    /* ------------------------------------------------------------ */
+    private static void string(ByteBuffer buffer, String s)
+    {
+        int huffman=Huffman.octetsNeeded(s);
+        if (huffman<s.length())
+        {
+            integer(buffer,0x80,7,huffman);
+            Huffman.encode(buffer,s);
+        }
+        else
+        {
+            integer(buffer,0x00,7,s.length());
+            for (int i=0;i<s.length();i++)
+            {
+                char c=s.charAt(i);
+                buffer.put((byte)(c<256?c:'?'));
+            }
+        }
+    }
+}
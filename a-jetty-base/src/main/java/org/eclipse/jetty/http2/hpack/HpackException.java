@@ -0,0 +1,35 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack;
+
+/* ------------------------------------------------------------ */
+/** A malformed or oversized HPACK header block.
+ * <p>Any failure to decode a header block is a connection error of
+ * type COMPRESSION_ERROR, since the dynamic table can no longer be
+ * kept in sync with the peer.
+ */
+public class HpackException extends Exception
+{
+    private static final long serialVersionUID = 1220322402698658088L;
+
+    public HpackException(String message)
+    {
+        super(message);
+    }
+}
@@ -23,10 +23,13 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
+import java.nio.channels.FileChannel;
 import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.channels.WritePendingException;
 
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.Scheduler;
@@ -43,6 +46,10 @@ public class ChannelEndPoint extends AbstractEndPoint
     private final Socket _socket;
     private volatile boolean _ishut;
     private volatile boolean _oshut;
+    // pending file transfer, guarded by the write flusher state
+    private FileChannel _transferFile;
+    private long _transferPosition;
+    private long _transferRemaining;
 
     public ChannelEndPoint(Scheduler scheduler,SocketChannel channel)
     {
@@ -199,7 +206,92 @@ public class ChannelEndPoint extends AbstractEndPoint
             if (!BufferUtil.isEmpty(b))
                 return false;
 
-        return true;
+        return _transferFile==null || transfer();
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Asynchronously writes a region of a file.
+     * <p>
+     * The region is written with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * so the operating system may send it without copying it to user space (sendfile).
+     * Like any write, it is completed by the write flusher when the channel is writable.
+     * </p>
+     * @param callback The callback to notify once the region is written
+     * @param file The file to write from, it is not closed
+     * @param position The position of the region in the file
+     * @param count The length of the region
+     * @throws WritePendingException if another write operation is pending
+     */
+    public void transferFrom(final Callback callback, FileChannel file, long position, long count) throws WritePendingException
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("transfer {}@{}+{} {}",file,position,count,this);
+        _transferFile=file;
+        _transferPosition=position;
+        _transferRemaining=count;
+        try
+        {
+            write(new Callback()
+            {
+                @Override
+                public void succeeded()
+                {
+                    _transferFile=null;
+                    callback.succeeded();
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    _transferFile=null;
+                    callback.failed(x);
+                }
+            },BufferUtil.EMPTY_BUFFER);
+        }
+        catch(WritePendingException e)
+        {
+            _transferFile=null;
+            throw e;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return true if all the pending file region is written
+     */
+    private boolean transfer() throws IOException
+    {
+        try
+        {
+            long transferred=0;
+            while (_transferRemaining>0)
+            {
+                long l=_transferFile.transferTo(_transferPosition,_transferRemaining,_channel);
+                if (l<=0)
+                {
+                    // either the socket buffer is full or the file was truncated
+                    if (_transferPosition>=_transferFile.size())
+                        throw new EofException("truncated "+_transferFile);
+                    break;
+                }
+                _transferPosition+=l;
+                _transferRemaining-=l;
+                transferred+=l;
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("transferred {} remaining {} {}",transferred,_transferRemaining,this);
+            if (transferred>0)
+                notIdle();
+            return _transferRemaining==0;
+        }
+        catch (EofException e)
+        {
+            throw e;
+        }
+        catch (IOException e)
+        {
+            throw new EofException(e);
+        }
     }
 
     public ByteChannel getChannel()
@@ -0,0 +1,528 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+
+/* ------------------------------------------------------------ */
+/** A lock-free {@link ByteBufferPool} segmented by size class.
+ * <p>
+ * Buffer capacities are rounded up to a multiple of the increment, the same way as
+ * {@link ArrayByteBufferPool} does.  Every size class (direct and indirect separately) has:
+ * </p>
+ * <ul>
+ * <li>a small per thread magazine, that is accessed without locks, so a thread that
+ * releases and then acquires the same size (eg selector, HttpConnection and HttpOutput)
+ * only updates the retained bytes counter of the size class;</li>
+ * <li>a shared bounded stack of fixed slots that is accessed with CAS only, so neither
+ * acquire nor release allocate a queue node;</li>
+ * <li>a cap of retained bytes that covers the shared stack and the magazines of all
+ * threads together, buffers released over the cap are evicted (left to the GC).</li>
+ * </ul>
+ * <p>
+ * The buffers held by the magazine of a thread that has ended are reclaimed when a new
+ * thread first uses the pool, or when a release finds the cap reached.
+ * </p>
+ * <p>
+ * Hits, misses and evictions are counted per size class. Hits of a magazine are
+ * published in small batches, so {@link #getHits()} may lag slightly behind.
+ * </p>
+ * <p>
+ * To use it for all connectors of a server, add it as a server bean before
+ * the connectors are created: <code>server.addBean(new MagazineByteBufferPool());</code>
+ * </p>
+ */
+@ManagedObject("Lock-free ByteBufferPool with per-thread magazines")
+public class MagazineByteBufferPool implements ByteBufferPool
+{
+    /** Count of magazine hits that are accumulated before publishing. */
+    private static final int PUBLISH_HITS=64;
+    /** Minimum period between reclaims of ended threads triggered by a full size class. */
+    private static final long RECLAIM_PERIOD=TimeUnit.SECONDS.toNanos(1);
+
+    private final int _min;
+    private final int _inc;
+    private final int _magazineSize;
+    private final SizeClass[] _direct;
+    private final SizeClass[] _indirect;
+    private final Queue<ThreadMagazines> _threads=new ConcurrentLinkedQueue<>();
+    private final AtomicLong _lastReclaim=new AtomicLong(System.nanoTime());
+    private final ThreadLocal<ThreadMagazines> _magazines=new ThreadLocal<ThreadMagazines>()
+    {
+        @Override
+        protected ThreadMagazines initialValue()
+        {
+            reclaim();
+            ThreadMagazines magazines=new ThreadMagazines(Thread.currentThread(),_direct.length*2);
+            _threads.add(magazines);
+            return magazines;
+        }
+    };
+
+    /* ------------------------------------------------------------ */
+    public MagazineByteBufferPool()
+    {
+        this(0,1024,64*1024);
+    }
+
+    /* ------------------------------------------------------------ */
+    public MagazineByteBufferPool(int minSize, int increment, int maxSize)
+    {
+        this(minSize,increment,maxSize,8,32,1024*1024);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param minSize buffers of this size or smaller are not pooled
+     * @param increment the size class step, it must be a divisor of maxSize
+     * @param maxSize buffers bigger than this are not pooled
+     * @param magazineSize the count of buffers kept per thread per size class
+     * @param stackSize the count of buffers kept in the shared stack per size class
+     * @param maxRetainedBytes the maximum bytes retained per size class, by the shared stack
+     * and the magazines of all threads together
+     */
+    public MagazineByteBufferPool(int minSize, int increment, int maxSize, int magazineSize, int stackSize, long maxRetainedBytes)
+    {
+        if (minSize>=increment)
+            throw new IllegalArgumentException("minSize >= increment");
+        if ((maxSize%increment)!=0 || increment>=maxSize)
+            throw new IllegalArgumentException("increment must be a divisor of maxSize");
+        if (magazineSize<0 || stackSize<0 || maxRetainedBytes<0)
+            throw new IllegalArgumentException("negative size");
+        _min=minSize;
+        _inc=increment;
+        _magazineSize=magazineSize;
+
+        _direct=new SizeClass[maxSize/increment];
+        _indirect=new SizeClass[maxSize/increment];
+
+        int size=0;
+        for (int i=0;i<_direct.length;i++)
+        {
+            size+=_inc;
+            _direct[i]=new SizeClass(size,stackSize,maxRetainedBytes);
+            _indirect[i]=new SizeClass(size,stackSize,maxRetainedBytes);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public ByteBuffer acquire(int size, boolean direct)
+    {
+        int index=indexFor(size);
+        if (index<0)
+            return newByteBuffer(size,direct);
+
+        SizeClass sizeClass=direct?_direct[index]:_indirect[index];
+        Magazine magazine=magazineFor(index,direct);
+        ByteBuffer buffer=magazine==null?null:magazine.pop();
+        if (buffer!=null)
+        {
+            sizeClass.unreserve();
+            if (++magazine._hits>=PUBLISH_HITS)
+            {
+                sizeClass._hits.addAndGet(magazine._hits);
+                magazine._hits=0;
+            }
+            return buffer;
+        }
+
+        buffer=sizeClass.pop();
+        if (buffer!=null)
+        {
+            sizeClass.unreserve();
+            sizeClass._hits.incrementAndGet();
+            return buffer;
+        }
+
+        sizeClass._misses.incrementAndGet();
+        return newByteBuffer(sizeClass._size,direct);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer==null)
+            return;
+
+        int capacity=buffer.capacity();
+        int index=indexFor(capacity);
+        // only buffers of exact size class capacity are pooled
+        if (index<0 || capacity!=(index+1)*_inc)
+            return;
+
+        boolean direct=buffer.isDirect();
+        BufferUtil.clear(buffer);
+        SizeClass sizeClass=direct?_direct[index]:_indirect[index];
+        if (!sizeClass.reserve() && !(reclaimIfDue() && sizeClass.reserve()))
+        {
+            sizeClass._evictions.incrementAndGet();
+            return;
+        }
+
+        Magazine magazine=magazineFor(index,direct);
+        if (magazine!=null && magazine.push(buffer))
+            return;
+
+        if (!sizeClass.push(buffer))
+        {
+            sizeClass.unreserve();
+            sizeClass._evictions.incrementAndGet();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    protected ByteBuffer newByteBuffer(int capacity, boolean direct)
+    {
+        return direct?BufferUtil.allocateDirect(capacity):BufferUtil.allocate(capacity);
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Clears the shared stacks and the magazines of the calling thread.
+     * Magazines of other threads are reclaimed when those threads end.
+     */
+    public void clear()
+    {
+        for (int i=0;i<_direct.length;i++)
+        {
+            _direct[i].clear();
+            _indirect[i].clear();
+        }
+        if (_magazineSize>0)
+            _magazines.get().drain();
+        reclaim();
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("Count of acquires served from the pool")
+    public long getHits()
+    {
+        long hits=0;
+        for (int i=0;i<_direct.length;i++)
+            hits+=_direct[i].getHits()+_indirect[i].getHits();
+        return hits;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("Count of acquires that allocated a new buffer")
+    public long getMisses()
+    {
+        long misses=0;
+        for (int i=0;i<_direct.length;i++)
+            misses+=_direct[i].getMisses()+_indirect[i].getMisses();
+        return misses;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("Count of released buffers dropped because the pool was full")
+    public long getEvictions()
+    {
+        long evictions=0;
+        for (int i=0;i<_direct.length;i++)
+            evictions+=_direct[i].getEvictions()+_indirect[i].getEvictions();
+        return evictions;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("Bytes retained by the shared stacks and the thread magazines")
+    public long getRetainedBytes()
+    {
+        long retained=0;
+        for (int i=0;i<_direct.length;i++)
+            retained+=_direct[i].getRetainedBytes()+_indirect[i].getRetainedBytes();
+        return retained;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param direct whether direct or heap size classes are wanted
+     * @return the size classes, ordered by size
+     */
+    public SizeClass[] getSizeClasses(boolean direct)
+    {
+        return direct?_direct:_indirect;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{hits=%d,misses=%d,evictions=%d,retained=%d}",
+                getClass().getSimpleName(),hashCode(),getHits(),getMisses(),getEvictions(),getRetainedBytes());
+    }
+
+    /* ------------------------------------------------------------ */
+    private int indexFor(int size)
+    {
+        if (size<=_min)
+            return -1;
+        int index=(size-1)/_inc;
+        if (index>=_direct.length)
+            return -1;
+        return index;
+    }
+
+    /* ------------------------------------------------------------ */
+    private Magazine magazineFor(int index, boolean direct)
+    {
+        if (_magazineSize==0)
+            return null;
+        Magazine[] magazines=_magazines.get()._magazines;
+        int i=direct?index+_direct.length:index;
+        Magazine magazine=magazines[i];
+        if (magazine==null)
+        {
+            magazine=new Magazine(_magazineSize,direct?_direct[index]:_indirect[index]);
+            magazines[i]=magazine;
+        }
+        return magazine;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Reclaims the magazines of the threads that have ended.
+     * @return true if any magazine was reclaimed
+     */
+    private boolean reclaim()
+    {
+        boolean reclaimed=false;
+        for (ThreadMagazines magazines : _threads)
+        {
+            // isAlive()==false happens-after the last action of the thread
+            if (!magazines._thread.isAlive() && _threads.remove(magazines))
+            {
+                magazines.drain();
+                reclaimed=true;
+            }
+        }
+        return reclaimed;
+    }
+
+    /* ------------------------------------------------------------ */
+    private boolean reclaimIfDue()
+    {
+        long last=_lastReclaim.get();
+        long now=System.nanoTime();
+        if (now-last<RECLAIM_PERIOD || !_lastReclaim.compareAndSet(last,now))
+            return false;
+        return reclaim();
+    }
+
+    /* ------------------------------------------------------------ */
+    /** The magazines of one thread.
+     */
+    private static class ThreadMagazines
+    {
+        private final Thread _thread;
+        private final Magazine[] _magazines;
+
+        private ThreadMagazines(Thread thread, int size)
+        {
+            _thread=thread;
+            _magazines=new Magazine[size];
+        }
+
+        private void drain()
+        {
+            for (Magazine magazine : _magazines)
+            {
+                if (magazine!=null)
+                    magazine.drain();
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Per thread stack of buffers of one size class.
+     * Its buffers are reserved in the retained bytes of the size class.
+     */
+    private static class Magazine
+    {
+        private final ByteBuffer[] _buffers;
+        private final SizeClass _sizeClass;
+        private int _count;
+        private long _hits;
+
+        private Magazine(int size, SizeClass sizeClass)
+        {
+            _buffers=new ByteBuffer[size];
+            _sizeClass=sizeClass;
+        }
+
+        private void drain()
+        {
+            while (_count>0)
+            {
+                _buffers[--_count]=null;
+                _sizeClass.unreserve();
+            }
+            if (_hits>0)
+            {
+                _sizeClass._hits.addAndGet(_hits);
+                _hits=0;
+            }
+        }
+
+        private ByteBuffer pop()
+        {
+            if (_count==0)
+                return null;
+            ByteBuffer buffer=_buffers[--_count];
+            _buffers[_count]=null;
+            return buffer;
+        }
+
+        private boolean push(ByteBuffer buffer)
+        {
+            if (_count==_buffers.length)
+                return false;
+            _buffers[_count++]=buffer;
+            return true;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Shared bounded stack of buffers of one size and its counters.
+     * <p>
+     * The retained bytes are reserved before a buffer is kept, either in a slot or
+     * in a magazine, and unreserved when it is taken. The count of filled slots is
+     * a cheap emptiness check that avoids scanning the slots on a miss.
+     * </p>
+     */
+    public static class SizeClass
+    {
+        private final int _size;
+        private final long _maxRetainedBytes;
+        private final AtomicReferenceArray<ByteBuffer> _slots;
+        private final AtomicLong _retained=new AtomicLong();
+        private final AtomicInteger _stacked=new AtomicInteger();
+        private final AtomicLong _hits=new AtomicLong();
+        private final AtomicLong _misses=new AtomicLong();
+        private final AtomicLong _evictions=new AtomicLong();
+
+        SizeClass(int size, int stackSize, long maxRetainedBytes)
+        {
+            _size=size;
+            _maxRetainedBytes=maxRetainedBytes;
+            _slots=new AtomicReferenceArray<>(stackSize);
+        }
+
+        private boolean reserve()
+        {
+            while (true)
+            {
+                long retained=_retained.get();
+                if (retained+_size>_maxRetainedBytes)
+                    return false;
+                if (_retained.compareAndSet(retained,retained+_size))
+                    return true;
+            }
+        }
+
+        private void unreserve()
+        {
+            _retained.addAndGet(-_size);
+        }
+
+        /** @return a buffer taken from a slot, its bytes are still reserved */
+        private ByteBuffer pop()
+        {
+            if (_stacked.get()<=0)
+                return null;
+            for (int i=0;i<_slots.length();i++)
+            {
+                ByteBuffer buffer=_slots.get(i);
+                if (buffer!=null && _slots.compareAndSet(i,buffer,null))
+                {
+                    _stacked.decrementAndGet();
+                    return buffer;
+                }
+            }
+            return null;
+        }
+
+        /** @param buffer a buffer whose bytes are already reserved */
+        private boolean push(ByteBuffer buffer)
+        {
+            for (int i=0;i<_slots.length();i++)
+            {
+                if (_slots.get(i)==null && _slots.compareAndSet(i,null,buffer))
+                {
+                    _stacked.incrementAndGet();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void clear()
+        {
+            for (int i=0;i<_slots.length();i++)
+            {
+                if (_slots.getAndSet(i,null)!=null)
+                {
+                    _stacked.decrementAndGet();
+                    unreserve();
+                }
+            }
+        }
+
+        public int getSize()
+        {
+            return _size;
+        }
+
+        public long getHits()
+        {
+            return _hits.get();
+        }
+
+        public long getMisses()
+        {
+            return _misses.get();
+        }
+
+        public long getEvictions()
+        {
+            return _evictions.get();
+        }
+
+        public long getRetainedBytes()
+        {
+            return Math.max(0,_retained.get());
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("SizeClass@%x{%d,hits=%d,misses=%d,evictions=%d,retained=%d}",
+                    hashCode(),_size,getHits(),getMisses(),getEvictions(),getRetainedBytes());
+        }
+    }
+}
@@ -48,6 +48,7 @@ import org.eclipse.jetty.util.component.Dumpable;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.NonBlockingThread;
+import org.eclipse.jetty.util.thread.ProduceConsumeExecutor;
 import org.eclipse.jetty.util.thread.Scheduler;
 
 /**
@@ -66,6 +67,7 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
     private final Executor executor;
     private final Scheduler scheduler;
     private final ManagedSelector[] _selectors;
+    private final Queue<ManagedSelector.ResumeAccept> _pausedAccepts = new ConcurrentArrayQueue<>();
     private long _connectTimeout = DEFAULT_CONNECT_TIMEOUT;
     private long _selectorIndex;
     private int _priorityDelta;
@@ -246,6 +248,48 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * <p>Callback method invoked when a channel passed to {@link #accept(SocketChannel)} could not
+     * be registered, so that no endpoint will be opened or closed for it.</p>
+     *
+     * @param channel the channel that has been closed
+     * @param cause the cause of the failure
+     */
+    protected void acceptFailed(SocketChannel channel, Throwable cause)
+    {
+    }
+
+    /**
+     * <p>Checks whether a server channel passed to {@link #acceptor(ServerSocketChannel)}
+     * may accept more connections. If not, then accepting is paused until {@link #resumeAccept()}
+     * is called.</p>
+     *
+     * @return true if more connections may be accepted
+     */
+    protected boolean isAcceptable()
+    {
+        return true;
+    }
+
+    /**
+     * <p>Callback method invoked when accepting has been paused because {@link #isAcceptable()}
+     * returned false.  The implementation must ensure that {@link #resumeAccept()} is called once
+     * connections may be accepted again.</p>
+     */
+    protected void onAcceptPaused()
+    {
+    }
+
+    /**
+     * <p>Resumes accepting on server channels paused because {@link #isAcceptable()} returned false.</p>
+     */
+    public void resumeAccept()
+    {
+        ManagedSelector.ResumeAccept resume;
+        while ((resume = _pausedAccepts.poll()) != null)
+            resume.resume();
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -408,6 +452,7 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
     {
         private final AtomicReference<State> _state= new AtomicReference<>(State.PROCESS);
         private final Queue<Runnable> _changes = new ConcurrentArrayQueue<>();
+        private final Runnable _producer = new NonBlockingThread(this);
         private final int _id;
         private Selector _selector;
         private volatile Thread _thread;
@@ -535,38 +580,48 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
         @Override
         public void run()
         {
-            _thread = Thread.currentThread();
-            String name = _thread.getName();
-            int priority = _thread.getPriority();
+            // The selector may be handed to another thread, so restore this thread rather than _thread
+            Thread thread = Thread.currentThread();
+            _thread = thread;
+            String name = thread.getName();
+            int priority = thread.getPriority();
             try
             {
                 if (_priorityDelta != 0)
-                    _thread.setPriority(Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, priority + _priorityDelta)));
+                    thread.setPriority(Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, priority + _priorityDelta)));
 
-                _thread.setName(String.format("%s-selector-%s@%h/%d", name, SelectorManager.this.getClass().getSimpleName(), SelectorManager.this.hashCode(), _id));
+                thread.setName(String.format("%s-selector-%s@%h/%d", name, SelectorManager.this.getClass().getSimpleName(), SelectorManager.this.hashCode(), _id));
                 if (LOG.isDebugEnabled())
-                    LOG.debug("Starting {} on {}", _thread, this);
+                    LOG.debug("Starting {} on {}", thread, this);
                 while (isRunning())
-                    select();
+                {
+                    if (select())
+                        return;
+                }
                 while(isStopping())
                     runChanges();
             }
             finally
             {
                 if (LOG.isDebugEnabled())
-                    LOG.debug("Stopped {} on {}", _thread, this);
-                _thread.setName(name);
+                    LOG.debug("Stopped {} on {}", thread, this);
+                thread.setName(name);
                 if (_priorityDelta != 0)
-                    _thread.setPriority(priority);
+                    thread.setPriority(priority);
             }
         }
 
         /**
          * <p>Process changes and waits on {@link Selector#select()}.</p>
+         * <p>If the executor is a {@link ProduceConsumeExecutor}, the last task produced by 
+         * processing the selected keys may be consumed by the calling thread, in which case this
+         * selector is handed to a reserved thread to continue selecting.</p>
          *
+         * @return true if this selector has been handed to another thread, so the calling
+         * thread must not select again.
          * @see #submit(Runnable)
          */
-        public void select()
+        public boolean select()
         {
             boolean debug = LOG.isDebugEnabled();
             try
@@ -604,23 +659,41 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
 
                 _state.set(State.PROCESS);
 
+                Executor executor = getExecutor();
+                ProduceConsumeExecutor producer = executor instanceof ProduceConsumeExecutor?(ProduceConsumeExecutor)executor:null;
+                if (producer != null)
+                    producer.produce();
+
                 Set<SelectionKey> selectedKeys = _selector.selectedKeys();
-                for (SelectionKey key : selectedKeys)
+                try
                 {
-                    if (key.isValid())
+                    for (SelectionKey key : selectedKeys)
                     {
-                        processKey(key);
+                        if (key.isValid())
+                        {
+                            processKey(key);
+                        }
+                        else
+                        {
+                            if (debug)
+                                LOG.debug("Selector loop ignoring invalid key for channel {}", key.channel());
+                            Object attachment = key.attachment();
+                            if (attachment instanceof EndPoint)
+                                ((EndPoint)attachment).close();
+                        }
                     }
-                    else
+                    selectedKeys.clear();
+                }
+                finally
+                {
+                    // The keys must be cleared before another thread may select
+                    if (producer != null && producer.produced(selectedKeys.isEmpty()?_producer:null))
                     {
                         if (debug)
-                            LOG.debug("Selector loop ignoring invalid key for channel {}", key.channel());
-                        Object attachment = key.attachment();
-                        if (attachment instanceof EndPoint)
-                            ((EndPoint)attachment).close();
+                            LOG.debug("Selector loop handed to another thread");
+                        return true;
                     }
                 }
-                selectedKeys.clear();
             }
             catch (Throwable x)
             {
@@ -629,6 +702,7 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
                 else
                     LOG.ignore(x);
             }
+            return false;
         }
 
         private void processKey(SelectionKey key)
@@ -704,8 +778,20 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
             SocketChannel channel = null;
             try
             {
-                while ((channel = server.accept()) != null)
+                while (true)
                 {
+                    if (!isAcceptable())
+                    {
+                        key.interestOps(0);
+                        _pausedAccepts.offer(new ResumeAccept(key));
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("{} accept paused {}", this, key);
+                        onAcceptPaused();
+                        break;
+                    }
+                    channel = server.accept();
+                    if (channel == null)
+                        break;
                     accepted(channel);
                 }
             }
@@ -904,6 +990,38 @@ public abstract class SelectorManager extends AbstractLifeCycle implements Dumpa
                 {
                     closeNoExceptions(channel);
                     LOG.debug(x);
+                    acceptFailed(channel, x);
+                }
+            }
+        }
+
+        private class ResumeAccept implements Runnable
+        {
+            private final SelectionKey _key;
+
+            private ResumeAccept(SelectionKey key)
+            {
+                _key = key;
+            }
+
+            private void resume()
+            {
+                submit(this);
+            }
+
+            @Override
+            public void run()
+            {
+                try
+                {
+                    if (_key.isValid())
+                        _key.interestOps(SelectionKey.OP_ACCEPT);
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("{} accept resumed {}", ManagedSelector.this, _key);
+                }
+                catch (CancelledKeyException x)
+                {
+                    LOG.ignore(x);
                 }
             }
         }
@@ -23,12 +23,15 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.util.Arrays;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLEngineResult.HandshakeStatus;
 import javax.net.ssl.SSLEngineResult.Status;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
 
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.AbstractEndPoint;
@@ -74,6 +77,11 @@ import org.eclipse.jetty.util.log.Logger;
  * MOST IMPORTANTLY, the encrypted callbacks from the active methods (#onFillable() and WriteFlusher#completeWrite()) do no filling or flushing
  * themselves.  Instead they simple make the callbacks to the decrypted callbacks, so that the passive encrypted fill/flush will
  * be called again and make another best effort attempt to progress the connection.
+ * <p>
+ * The delegated tasks of the {@link SSLEngine} (the expensive key exchange computations of a handshake) are run by
+ * the filling or flushing thread, unless a delegated task executor is set with {@link #setDelegatedTaskExecutor(Executor)}.
+ * In that case a fill/flush that needs a task to be run dispatches it to that executor and returns without progress, 
+ * and the completion of the task wakes up the decrypted readInterest and/or writeFlusher as the encrypted callbacks do.
  *
  */
 public class SslConnection extends AbstractConnection
@@ -88,8 +96,8 @@ public class SslConnection extends AbstractConnection
     private ByteBuffer _decryptedInput;
     private ByteBuffer _encryptedInput;
     private ByteBuffer _encryptedOutput;
-    private final boolean _encryptedDirectBuffers = false;
-    private final boolean _decryptedDirectBuffers = false;
+    private final boolean _encryptedDirectBuffers;
+    private final boolean _decryptedDirectBuffers;
     private final Runnable _runCompletWrite = new Runnable()
     {
         @Override
@@ -99,14 +107,35 @@ public class SslConnection extends AbstractConnection
         }
     };
     private boolean _renegotiationAllowed;
+    private Executor _delegatedTaskExecutor;
+    private HandshakeListener _handshakeListener;
+    private long _handshakeStarted;
+    private long _handshakeStartedTime;
 
     public SslConnection(ByteBufferPool byteBufferPool, Executor executor, EndPoint endPoint, SSLEngine sslEngine)
+    {
+        this(byteBufferPool, executor, endPoint, sslEngine, false, false);
+    }
+
+    /**
+     * @param byteBufferPool the pool of the encrypted and decrypted buffers
+     * @param executor the executor
+     * @param endPoint the encrypted endpoint
+     * @param sslEngine the SSL engine
+     * @param useDirectBuffersForEncryption whether the buffers of encrypted data (read from and written
+     * to the encrypted endpoint) are direct
+     * @param useDirectBuffersForDecryption whether the buffers of decrypted data are direct
+     */
+    public SslConnection(ByteBufferPool byteBufferPool, Executor executor, EndPoint endPoint, SSLEngine sslEngine,
+                         boolean useDirectBuffersForEncryption, boolean useDirectBuffersForDecryption)
     {
         // This connection does not execute calls to onfillable, so they will be called by the selector thread.
         // onfillable does not block and will only wakeup another thread to do the actual reading and handling.
         super(endPoint, executor, !EXECUTE_ONFILLABLE);
         this._bufferPool = byteBufferPool;
         this._sslEngine = sslEngine;
+        this._encryptedDirectBuffers = useDirectBuffersForEncryption;
+        this._decryptedDirectBuffers = useDirectBuffersForDecryption;
         this._decryptedEndPoint = newDecryptedEndPoint();
     }
 
@@ -135,12 +164,51 @@ public class SslConnection extends AbstractConnection
         this._renegotiationAllowed = renegotiationAllowed;
     }
 
+    public Executor getDelegatedTaskExecutor()
+    {
+        return _delegatedTaskExecutor;
+    }
+
+    /**
+     * @param executor The executor to run the {@link SSLEngine} delegated tasks, or null to run them
+     * in the thread that is filling or flushing.
+     */
+    public void setDelegatedTaskExecutor(Executor executor)
+    {
+        this._delegatedTaskExecutor = executor;
+    }
+
+    public boolean isDirectBuffersForEncryption()
+    {
+        return _encryptedDirectBuffers;
+    }
+
+    public boolean isDirectBuffersForDecryption()
+    {
+        return _decryptedDirectBuffers;
+    }
+
+    public HandshakeListener getHandshakeListener()
+    {
+        return _handshakeListener;
+    }
+
+    /**
+     * @param listener The listener notified of the completion of the initial handshake, or null.
+     */
+    public void setHandshakeListener(HandshakeListener listener)
+    {
+        this._handshakeListener = listener;
+    }
+
     @Override
     public void onOpen()
     {
         try
         {
             // Begin the handshake
+            _handshakeStarted = System.nanoTime();
+            _handshakeStartedTime = System.currentTimeMillis();
             _sslEngine.beginHandshake();
             super.onOpen();
             getDecryptedEndPoint().getConnection().onOpen();
@@ -246,6 +314,45 @@ public class SslConnection extends AbstractConnection
         private boolean _cannotAcceptMoreAppDataToFlush;
         private boolean _handshaken;
         private boolean _underFlown;
+        private boolean _delegating;
+        private boolean _delegated;
+        private boolean _flushRequiresTaskToProgress;
+
+        private final Runnable _runDelegatedTasks = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // This means that a fill or flush needed the delegated tasks to be run before
+                // it could progress.  Once they are run, the appropriate callbacks are woken up
+                // so that the passive fill/flush is called again.
+                try
+                {
+                    Runnable task;
+                    while ((task = _sslEngine.getDelegatedTask()) != null)
+                        task.run();
+                }
+                catch (Throwable x)
+                {
+                    LOG.warn(x);
+                    getEndPoint().close();
+                }
+
+                boolean flush;
+                synchronized (DecryptedEndPoint.this)
+                {
+                    if (DEBUG)
+                        LOG.debug("{} delegated tasks completed", SslConnection.this);
+                    _delegating = false;
+                    _delegated = true;
+                    flush = _flushRequiresTaskToProgress;
+                    _flushRequiresTaskToProgress = false;
+                }
+                getFillInterest().fillable();
+                if (flush)
+                    getExecutor().execute(_runCompletWrite);
+            }
+        };
 
         private final Callback _writeCallback = new Callback()
         {
@@ -364,6 +471,12 @@ public class SslConnection extends AbstractConnection
                     _cannotAcceptMoreAppDataToFlush = true;
                     getEndPoint().write(_writeCallback, _encryptedOutput);
                 }
+                // If we are waiting for the delegated tasks,
+                else if (_delegating)
+                {
+                    // the flush will be tried again once they are completed
+                    _flushRequiresTaskToProgress = true;
+                }
                 // If we are handshaking and need to read,
                 else if (_sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_UNWRAP)
                 {
@@ -416,6 +529,14 @@ public class SslConnection extends AbstractConnection
                 if (BufferUtil.hasContent(_decryptedInput))
                     return true;
 
+                // Are we waiting for the delegated tasks, which will call us back when completed
+                if (_delegating)
+                    return false;
+
+                // Have the delegated tasks completed since the last fill, so the handshake can progress
+                if (_delegated)
+                    return true;
+
                 // If we have no encrypted data to decrypt OR we have some, but it is not enough
                 if (BufferUtil.isEmpty(_encryptedInput) || _underFlown)
                 {
@@ -486,6 +607,11 @@ public class SslConnection extends AbstractConnection
                 if (BufferUtil.hasContent(_decryptedInput))
                     return BufferUtil.append(buffer,_decryptedInput);
 
+                // We cannot progress until the delegated tasks are completed
+                if (_delegating)
+                    return 0;
+                _delegated = false;
+
                 // We will need a network buffer
                 if (_encryptedInput == null)
                     _encryptedInput = _bufferPool.acquire(_sslEngine.getSession().getPacketBufferSize(), _encryptedDirectBuffers);
@@ -538,7 +664,9 @@ public class SslConnection extends AbstractConnection
                         {
                             if (net_filled < 0)
                                 closeInbound();
-                            if (net_filled <= 0)
+                            // Unless the handshake must wrap (eg after delegated tasks run asynchronously),
+                            // there is nothing more to do without more encrypted data
+                            if (net_filled < 0 || net_filled == 0 && handshakeStatus != HandshakeStatus.NEED_WRAP)
                                 return net_filled;
                         }
 
@@ -555,7 +683,8 @@ public class SslConnection extends AbstractConnection
                                     }
                                     case NEED_TASK:
                                     {
-                                        _sslEngine.getDelegatedTask().run();
+                                        if (!runDelegatedTask())
+                                            return 0;
                                         continue;
                                     }
                                     case NEED_WRAP:
@@ -582,7 +711,7 @@ public class SslConnection extends AbstractConnection
                             {
                                 if (unwrapHandshakeStatus == HandshakeStatus.FINISHED && !_handshaken)
                                 {
-                                    _handshaken = true;
+                                    handshaken();
                                     if (DEBUG)
                                         LOG.debug("{} {} handshake completed", SslConnection.this,
                                                 _sslEngine.getUseClientMode() ? "client-side" : "resumed session server-side");
@@ -617,7 +746,8 @@ public class SslConnection extends AbstractConnection
                                     }
                                     case NEED_TASK:
                                     {
-                                        _sslEngine.getDelegatedTask().run();
+                                        if (!runDelegatedTask())
+                                            return 0;
                                         continue;
                                     }
                                     case NEED_WRAP:
@@ -691,6 +821,61 @@ public class SslConnection extends AbstractConnection
             }
         }
 
+        /**
+         * Run a delegated task of the {@link SSLEngine}, or dispatch the delegated tasks to
+         * the delegated task executor if one is set.
+         * @return true if the task has been run and the fill/flush can continue, false if
+         * it must return and wait for the dispatched tasks to complete.
+         */
+        private boolean runDelegatedTask()
+        {
+            if (_delegating)
+                return false;
+
+            Executor executor = _delegatedTaskExecutor;
+            if (executor != null)
+            {
+                _delegating = true;
+                try
+                {
+                    executor.execute(_runDelegatedTasks);
+                    if (DEBUG)
+                        LOG.debug("{} delegated tasks dispatched", SslConnection.this);
+                    return false;
+                }
+                catch (RejectedExecutionException x)
+                {
+                    LOG.debug(x);
+                    _delegating = false;
+                }
+            }
+
+            Runnable task = _sslEngine.getDelegatedTask();
+            if (task != null)
+                task.run();
+            return true;
+        }
+
+        private void handshaken()
+        {
+            _handshaken = true;
+            HandshakeListener listener = _handshakeListener;
+            if (listener != null)
+            {
+                // A resumed session was created by a previous connection
+                SSLSession session = _sslEngine.getSession();
+                boolean resumed = session.getCreationTime() < _handshakeStartedTime;
+                try
+                {
+                    listener.handshakeCompleted(SslConnection.this, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - _handshakeStarted), resumed);
+                }
+                catch (Throwable x)
+                {
+                    LOG.warn(x);
+                }
+            }
+        }
+
         private void closeInbound()
         {
             try
@@ -725,6 +910,10 @@ public class SslConnection extends AbstractConnection
                     return false;
                 }
 
+                // We cannot progress until the delegated tasks are completed
+                if (_delegating)
+                    return false;
+
                 // We will need a network buffer
                 if (_encryptedOutput == null)
                     _encryptedOutput = _bufferPool.acquire(_sslEngine.getSession().getPacketBufferSize(), _encryptedDirectBuffers);
@@ -788,7 +977,7 @@ public class SslConnection extends AbstractConnection
 
                             if (wrapResult.getHandshakeStatus() == HandshakeStatus.FINISHED && !_handshaken)
                             {
-                                _handshaken = true;
+                                handshaken();
                                 if (DEBUG)
                                     LOG.debug("{} {} handshake completed", SslConnection.this, "server-side");
                             }
@@ -824,7 +1013,8 @@ public class SslConnection extends AbstractConnection
 
                                 case NEED_TASK:
                                     // run the task and continue
-                                    _sslEngine.getDelegatedTask().run();
+                                    if (!runDelegatedTask())
+                                        return false;
                                     continue;
 
                                 case NEED_WRAP:
@@ -940,4 +1130,17 @@ public class SslConnection extends AbstractConnection
             return super.toString()+"->"+getEndPoint().toString();
         }
     }
+
+    /**
+     * <p>A listener of the completion of the initial handshake of {@link SslConnection}s.</p>
+     */
+    public interface HandshakeListener
+    {
+        /**
+         * @param connection the connection which completed its initial handshake
+         * @param micros the time in microseconds from opening the connection to completing the handshake
+         * @param resumed true if the handshake resumed a session of a previous connection
+         */
+        void handshakeCompleted(SslConnection connection, long micros, boolean resumed);
+    }
 }
@@ -19,15 +19,15 @@
 package org.eclipse.jetty.security;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Properties;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jetty.server.UserIdentity;
-import org.eclipse.jetty.util.Loader;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
-import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.security.Credential;
 
 import org.beigesoft.ajetty.ISrvGetUserCredentials;
@@ -37,8 +37,13 @@ import org.beigesoft.ajetty.UserCredentials;
 /**
  * 
  * It's based on JDBCLoginService.java
- * It never caches DB data.
  * ISrvGetUserCredentials is JDBC/Android database retriever.
+ * <p>Retrieved credentials are cached for cacheTime milliseconds,
+ * unknown users for negativeCacheTime milliseconds, at most maxCachedUsers
+ * users are cached. Concurrent logins of the same not cached user
+ * wait for a single database lookup. Application must call
+ * invalidate(user) or invalidateAll() when it changes credentials or roles.
+ * Failed lookups are never cached.</p>
  */
 
 public class DataBaseLoginService extends MappedLoginService
@@ -48,6 +53,32 @@ public class DataBaseLoginService extends MappedLoginService
 
   private ISrvGetUserCredentials srvGetUserCredentials;
 
+  /**
+   * <p>Cached lookups (found or not) by user name.</p>
+   **/
+  private final ConcurrentMap<String, CachedUser> cachedUsers =
+    new ConcurrentHashMap<String, CachedUser>();
+
+  /**
+   * <p>Time to live of found user in milliseconds, 0 - no cache.</p>
+   **/
+  private long cacheTime = 60000L;
+
+  /**
+   * <p>Time to live of not found user in milliseconds, 0 - no cache.</p>
+   **/
+  private long negativeCacheTime = 10000L;
+
+  /**
+   * <p>Maximum cached users.</p>
+   **/
+  private int maxCachedUsers = 1000;
+
+  /**
+   * <p>Whether to cache all users on start.</p>
+   **/
+  private boolean preloadUsers;
+
   /* ------------------------------------------------------------ */
   public DataBaseLoginService()
       throws IOException
@@ -73,13 +104,18 @@ public class DataBaseLoginService extends MappedLoginService
   @Override
   protected void loadUsers()
   {
-    if (this.srvGetUserCredentials != null) {
+    if (this.preloadUsers && this.srvGetUserCredentials != null) {
       try
       {
         UserCredentials[] uca = this.srvGetUserCredentials.retrieveUsersCredentials();
         if (uca != null) {
           for (UserCredentials uc : uca) {
-            putUser(uc.getUserName(), uc.getUserPassword(), uc.getUserRoles());
+            if (this.cachedUsers.size() >= this.maxCachedUsers) {
+              break;
+            }
+            CachedUser cached = new CachedUser();
+            cached.complete(newUserIdentity(uc), this.cacheTime);
+            this.cachedUsers.put(uc.getUserName(), cached);
           }
         }
       }
@@ -89,7 +125,46 @@ public class DataBaseLoginService extends MappedLoginService
       }
     }
   }
-  
+
+  /* ------------------------------------------------------------ */
+  @Override
+  protected void doStop() throws Exception
+  {
+    invalidateAll();
+    super.doStop();
+  }
+
+  /* ------------------------------------------------------------ */
+  @Override
+  public UserIdentity login(String username, Object credentials)
+  {
+    if (username == null) {
+      return null;
+    }
+    UserIdentity user = lookupUser(username);
+    if (user != null) {
+      UserPrincipal principal = (UserPrincipal) user.getUserPrincipal();
+      if (principal.authenticate(credentials)) {
+        return user;
+      }
+    }
+    return null;
+  }
+
+  /* ------------------------------------------------------------ */
+  @Override
+  public boolean validate(UserIdentity user)
+  {
+    return lookupUser(user.getUserPrincipal().getName()) != null;
+  }
+
+  /* ------------------------------------------------------------ */
+  @Override
+  public void removeUser(String username)
+  {
+    invalidate(username);
+  }
+
   /* ------------------------------------------------------------ */
   @Override
   protected UserIdentity loadUser(String username)
@@ -97,10 +172,7 @@ public class DataBaseLoginService extends MappedLoginService
     if (this.srvGetUserCredentials != null) {
       try
       {
-        UserCredentials uc = this.srvGetUserCredentials.retrieveUserCredentials(username);
-        if (uc != null) {
-          return putUser(uc.getUserName(), uc.getUserPassword(), uc.getUserRoles());
-        }
+        return retrieveUser(username);
       }
       catch (Exception e)
       {
@@ -116,6 +188,124 @@ public class DataBaseLoginService extends MappedLoginService
       return putUser(username, Credential.getCredential(credentials),roles);
   }
 
+  /**
+   * <p>Evicts cached user, so next login or validation
+   * retrieves him from database.</p>
+   * @param pUserName user name
+   **/
+  public final void invalidate(final String pUserName) {
+    this.cachedUsers.remove(pUserName);
+    this._users.remove(pUserName);
+  }
+
+  /**
+   * <p>Evicts all cached users.</p>
+   **/
+  public final void invalidateAll() {
+    this.cachedUsers.clear();
+    this._users.clear();
+  }
+
+  /**
+   * <p>Get cached or retrieve user identity.
+   * Only one thread retrieves a not cached user,
+   * others wait for its result.</p>
+   * @param pUserName user name
+   * @return user identity or null if not found
+   **/
+  protected final UserIdentity lookupUser(final String pUserName) {
+    // users that are explicitly put into realm:
+    UserIdentity user = this._users.get(pUserName);
+    if (user != null) {
+      return user;
+    }
+    CachedUser cached = this.cachedUsers.get(pUserName);
+    while (cached == null || cached.isExpired(System.nanoTime())) {
+      CachedUser loading = new CachedUser();
+      boolean isLoader;
+      if (cached == null) {
+        isLoader = this.cachedUsers.putIfAbsent(pUserName, loading) == null;
+      } else {
+        isLoader = this.cachedUsers.replace(pUserName, cached, loading);
+      }
+      if (isLoader) {
+        load(pUserName, loading);
+        return loading.getIdentity();
+      }
+      cached = this.cachedUsers.get(pUserName);
+    }
+    return cached.getIdentity();
+  }
+
+  /**
+   * <p>Retrieve user from database and complete its cache entry.</p>
+   * @param pUserName user name
+   * @param pCached entry in loading state
+   **/
+  private void load(final String pUserName, final CachedUser pCached) {
+    long ttl = 0L;
+    UserIdentity user = null;
+    try {
+      if (this.srvGetUserCredentials != null) {
+        user = retrieveUser(pUserName);
+        ttl = user == null ? this.negativeCacheTime : this.cacheTime;
+      }
+    } catch (Exception e) {
+      LOG.warn("UserRealm " + getName() + " could not load user information from database", e);
+    } finally {
+      pCached.complete(user, ttl);
+    }
+    if (ttl <= 0L) {
+      this.cachedUsers.remove(pUserName, pCached);
+    } else if (this.cachedUsers.size() > this.maxCachedUsers) {
+      evict();
+    }
+  }
+
+  /**
+   * <p>Evicts expired users, then any users over maximum.</p>
+   **/
+  private void evict() {
+    long now = System.nanoTime();
+    Iterator<Map.Entry<String, CachedUser>> it =
+      this.cachedUsers.entrySet().iterator();
+    while (it.hasNext()) {
+      if (it.next().getValue().isExpired(now)) {
+        it.remove();
+      }
+    }
+    it = this.cachedUsers.entrySet().iterator();
+    while (this.cachedUsers.size() > this.maxCachedUsers && it.hasNext()) {
+      it.next();
+      it.remove();
+    }
+  }
+
+  /**
+   * <p>Retrieve user from database.</p>
+   * @param pUserName user name
+   * @return user identity or null if not found
+   * @throws Exception - an exception
+   **/
+  private UserIdentity retrieveUser(final String pUserName) throws Exception {
+    UserCredentials uc = this.srvGetUserCredentials
+      .retrieveUserCredentials(pUserName);
+    if (uc != null) {
+      return newUserIdentity(uc);
+    }
+    return null;
+  }
+
+  /**
+   * <p>Create user identity from credentials.</p>
+   * @param pUc user credentials
+   * @return user identity
+   **/
+  private UserIdentity newUserIdentity(final UserCredentials pUc) {
+    return newUserIdentity(pUc.getUserName(),
+      Credential.getCredential(pUc.getUserPassword()), pUc.getUserRoles());
+  }
+
   /**
    * <p>Getter for srvGetUserCredentials.</p>
    * @return ISrvGetUserCredentials
@@ -131,4 +321,129 @@ public class DataBaseLoginService extends MappedLoginService
   public final void setSrvGetUserCredentials(final ISrvGetUserCredentials pSrvGetUserCredentials) {
     this.srvGetUserCredentials = pSrvGetUserCredentials;
   }
+
+  /**
+   * <p>Getter for cacheTime.</p>
+   * @return time to live of found user in milliseconds
+   **/
+  public final long getCacheTime() {
+    return this.cacheTime;
+  }
+
+  /**
+   * <p>Setter for cacheTime.</p>
+   * @param pCacheTime time to live of found user in milliseconds, 0 - no cache
+   **/
+  public final void setCacheTime(final long pCacheTime) {
+    this.cacheTime = pCacheTime;
+  }
+
+  /**
+   * <p>Getter for negativeCacheTime.</p>
+   * @return time to live of not found user in milliseconds
+   **/
+  public final long getNegativeCacheTime() {
+    return this.negativeCacheTime;
+  }
+
+  /**
+   * <p>Setter for negativeCacheTime.</p>
+   * @param pNegativeCacheTime time to live of not found user in milliseconds,
+   * 0 - no cache
+   **/
+  public final void setNegativeCacheTime(final long pNegativeCacheTime) {
+    this.negativeCacheTime = pNegativeCacheTime;
+  }
+
+  /**
+   * <p>Getter for maxCachedUsers.</p>
+   * @return maximum cached users
+   **/
+  public final int getMaxCachedUsers() {
+    return this.maxCachedUsers;
+  }
+
+  /**
+   * <p>Setter for maxCachedUsers.</p>
+   * @param pMaxCachedUsers maximum cached users
+   **/
+  public final void setMaxCachedUsers(final int pMaxCachedUsers) {
+    this.maxCachedUsers = pMaxCachedUsers;
+  }
+
+  /**
+   * <p>Getter for preloadUsers.</p>
+   * @return whether to cache all users on start
+   **/
+  public final boolean getPreloadUsers() {
+    return this.preloadUsers;
+  }
+
+  /**
+   * <p>Setter for preloadUsers.</p>
+   * @param pPreloadUsers whether to cache all users on start
+   **/
+  public final void setPreloadUsers(final boolean pPreloadUsers) {
+    this.preloadUsers = pPreloadUsers;
+  }
+
+  /**
+   * <p>Cache entry, it's in loading state until completed.</p>
+   **/
+  private static final class CachedUser {
+
+    /**
+     * <p>User identity, null if not found.</p>
+     **/
+    private UserIdentity identity;
+
+    /**
+     * <p>Expiration time by System.nanoTime().</p>
+     **/
+    private long expires;
+
+    /**
+     * <p>If completed.</p>
+     **/
+    private boolean isCompleted;
+
+    /**
+     * <p>Complete loading.</p>
+     * @param pIdentity user identity or null
+     * @param pTtl time to live in milliseconds
+     **/
+    private synchronized void complete(final UserIdentity pIdentity,
+      final long pTtl) {
+      this.identity = pIdentity;
+      this.expires = System.nanoTime()
+        + TimeUnit.MILLISECONDS.toNanos(pTtl);
+      this.isCompleted = true;
+      notifyAll();
+    }
+
+    /**
+     * <p>Check if expired, entry in loading state is never expired.</p>
+     * @param pNow System.nanoTime()
+     * @return if expired
+     **/
+    private synchronized boolean isExpired(final long pNow) {
+      return this.isCompleted && pNow - this.expires >= 0L;
+    }
+
+    /**
+     * <p>Wait for loading and get identity.</p>
+     * @return user identity or null if not found or interrupted
+     **/
+    private synchronized UserIdentity getIdentity() {
+      while (!this.isCompleted) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return null;
+        }
+      }
+      return this.identity;
+    }
+  }
 }
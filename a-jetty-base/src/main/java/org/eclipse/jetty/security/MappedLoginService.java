@@ -184,6 +184,20 @@ public abstract class MappedLoginService extends AbstractLifeCycle implements Lo
      * @return UserIdentity
      */
     public synchronized UserIdentity putUser(String userName, Credential credential, String[] roles)
+    {
+        UserIdentity identity=newUserIdentity(userName,credential,roles);
+        _users.put(userName,identity);
+        return identity;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Create a user identity without putting it into the realm.
+     * @param userName The user name
+     * @param credential The users Credentials
+     * @param roles The users roles
+     * @return UserIdentity
+     */
+    protected UserIdentity newUserIdentity(String userName, Credential credential, String[] roles)
     {
         Principal userPrincipal = new KnownUser(userName,credential);
         Subject subject = new Subject();
@@ -195,9 +209,7 @@ public abstract class MappedLoginService extends AbstractLifeCycle implements Lo
                 subject.getPrincipals().add(new RolePrincipal(role));
 
         subject.setReadOnly();
-        UserIdentity identity=_identityService.newUserIdentity(subject,userPrincipal,roles);
-        _users.put(userName,identity);
-        return identity;
+        return _identityService.newUserIdentity(subject,userPrincipal,roles);
     }
 
     /* ------------------------------------------------------------ */
@@ -0,0 +1,110 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A {@link NegotiatingServerConnection} that selects the protocol with the TLS
+ * Application-Layer Protocol Negotiation extension.</p>
+ * <p>ALPN is provided by the {@link SSLEngine} of the platform (Java 9 and later,
+ * Java 8u252 and later, Android 10 and later), which is accessed by reflection so that
+ * this class still loads on older platforms.  There, or when the client does not offer
+ * ALPN, the default protocol is used.</p>
+ */
+public class ALPNServerConnection extends NegotiatingServerConnection
+{
+    private static final Logger LOG = Log.getLogger(ALPNServerConnection.class);
+    private static final Method __setApplicationProtocols;
+    private static final Method __getApplicationProtocol;
+
+    static
+    {
+        Method set = null;
+        Method get = null;
+        try
+        {
+            set = SSLParameters.class.getMethod("setApplicationProtocols", String[].class);
+            get = SSLEngine.class.getMethod("getApplicationProtocol");
+        }
+        catch (NoSuchMethodException x)
+        {
+            LOG.info("ALPN not supported by this platform, using default protocols");
+            set = null;
+        }
+        __setApplicationProtocols = set;
+        __getApplicationProtocol = set == null ? null : get;
+    }
+
+    public static boolean isSupported()
+    {
+        return __setApplicationProtocols != null;
+    }
+
+    public ALPNServerConnection(Connector connector, EndPoint endPoint, SSLEngine engine, List<String> protocols, String defaultProtocol)
+    {
+        super(connector, endPoint, engine, protocols, defaultProtocol);
+        if (isSupported())
+        {
+            try
+            {
+                // The server preference is the order of the protocols
+                SSLParameters parameters = engine.getSSLParameters();
+                __setApplicationProtocols.invoke(parameters, (Object)protocols.toArray(new String[protocols.size()]));
+                engine.setSSLParameters(parameters);
+            }
+            catch (Exception x)
+            {
+                LOG.warn(x);
+            }
+        }
+    }
+
+    @Override
+    protected String selectProtocol()
+    {
+        String protocol = null;
+        if (__getApplicationProtocol != null)
+        {
+            try
+            {
+                protocol = (String)__getApplicationProtocol.invoke(getSSLEngine());
+            }
+            catch (Exception x)
+            {
+                LOG.ignore(x);
+            }
+        }
+
+        // An empty protocol means that the client did not use ALPN
+        if (protocol == null || protocol.isEmpty())
+            protocol = getDefaultProtocol();
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} selected protocol '{}'", this, protocol);
+        return protocol;
+    }
+}
@@ -32,6 +32,8 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jetty.io.ArrayByteBufferPool;
 import org.eclipse.jetty.io.ByteBufferPool;
@@ -43,8 +45,10 @@ import org.eclipse.jetty.util.component.ContainerLifeCycle;
 import org.eclipse.jetty.util.component.Dumpable;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
+import org.eclipse.jetty.util.thread.VirtualThreadPool;
 
 /**
  * <p>An abstract implementation of {@link Connector} that provides a {@link ConnectionFactory} mechanism
@@ -61,7 +65,8 @@ import org.eclipse.jetty.util.thread.Scheduler;
  * {@link ScheduledExecutorScheduler} instance.
  * </li>
  * <li>The {@link ByteBufferPool} service is made available to all connections to be used to acquire and release
- * {@link ByteBuffer} instances from a pool.  The default is to use a new {@link ArrayByteBufferPool} instance.
+ * {@link ByteBuffer} instances from a pool.  The default is to use a {@link ByteBufferPool} set as a server bean
+ * (eg a {@link org.eclipse.jetty.io.MagazineByteBufferPool}) or else a new {@link ArrayByteBufferPool} instance.
  * </li>
  * </ul>
  * These services are managed as aggregate beans by the {@link ContainerLifeCycle} super class and
@@ -128,6 +133,18 @@ import org.eclipse.jetty.util.thread.Scheduler;
  * The default number of acceptor tasks is the minimum of 1 and half the number of available CPUs. Having more acceptors may reduce
  * the latency for servers that see a high rate of new connections (eg HTTP/1.0 without keep-alive).  Typically the default is
  * sufficient for modern persistent protocols (HTTP/1.1, SPDY etc.)
+ *
+ * <h2>Admission Control</h2>
+ * The connector may limit its load, so that an overloaded server degrades with bounded latency rather than
+ * exhausting its threads:
+ * <ul>
+ * <li>If {@link #setMaxConnections(int)} is non zero, then accepting is paused while the number of connections is 
+ * at the limit, so that further connections wait in the accept queue of the operating system.</li>
+ * <li>If {@link #setMaxRequests(int)} is non zero, then requests received while that many requests are being 
+ * handled are rejected with a 503 response.</li>
+ * <li>If {@link #setMaxQueueLatency(long)} is non zero, then requests received while the measured queue 
+ * latency of a {@link QueuedThreadPool} executor exceeds it are rejected with a 503 response.</li>
+ * </ul>
  */
 @ManagedObject("Abstract implementation of the Connector Interface")
 public abstract class AbstractConnector extends ContainerLifeCycle implements Connector, Dumpable
@@ -143,6 +160,14 @@ public abstract class AbstractConnector extends ContainerLifeCycle implements Co
     private final Set<EndPoint> _endpoints = Collections.newSetFromMap(new ConcurrentHashMap<EndPoint, Boolean>());
     private final Set<EndPoint> _immutableEndPoints = Collections.unmodifiableSet(_endpoints);
     private volatile CountDownLatch _stopping;
+    private final AtomicInteger _connections = new AtomicInteger();
+    private final AtomicInteger _requests = new AtomicInteger();
+    private final AtomicLong _rejected = new AtomicLong();
+    private final Object _acceptLock = new Object();
+    private volatile boolean _acceptPaused;
+    private int _maxConnections;
+    private int _maxRequests;
+    private long _maxQueueLatency;
     private long _idleTimeout = 30000;
     private String _defaultProtocol;
     private ConnectionFactory _defaultConnectionFactory;
@@ -237,6 +262,96 @@ public abstract class AbstractConnector extends ContainerLifeCycle implements Co
         _idleTimeout = idleTimeout;
     }
 
+    /**
+     * @return the maximum number of connections or 0 for no limit
+     */
+    @ManagedAttribute("maximum number of connections, at which accepting is paused")
+    public int getMaxConnections()
+    {
+        return _maxConnections;
+    }
+
+    /**
+     * @param maxConnections the maximum number of connections, at which accepting is paused, or 0 for no limit
+     */
+    public void setMaxConnections(int maxConnections)
+    {
+        _maxConnections = maxConnections;
+    }
+
+    /**
+     * @return the maximum number of requests handled at once or 0 for no limit
+     */
+    @ManagedAttribute("maximum number of requests handled at once")
+    public int getMaxRequests()
+    {
+        return _maxRequests;
+    }
+
+    /**
+     * @param maxRequests the maximum number of requests handled at once, above which requests are rejected, or 0 for no limit
+     */
+    public void setMaxRequests(int maxRequests)
+    {
+        _maxRequests = maxRequests;
+    }
+
+    /**
+     * @return the maximum queue latency in ms, above which requests are rejected, or 0 for no limit
+     */
+    @ManagedAttribute("maximum queue latency in ms, above which requests are rejected")
+    public long getMaxQueueLatency()
+    {
+        return _maxQueueLatency;
+    }
+
+    /**
+     * <p>Set the maximum queue latency, above which requests are rejected.</p>
+     * <p>The queue latency is measured by a {@link QueuedThreadPool} executor only if 
+     * its {@link QueuedThreadPool#setMaxQueueLatency(int)} is set.</p>
+     * @param maxQueueLatency the maximum queue latency in ms or 0 for no limit
+     */
+    public void setMaxQueueLatency(long maxQueueLatency)
+    {
+        _maxQueueLatency = maxQueueLatency;
+    }
+
+    /**
+     * @return the number of accepted connections
+     */
+    @ManagedAttribute("number of accepted connections")
+    public int getConnections()
+    {
+        return _connections.get();
+    }
+
+    /**
+     * @return the number of requests being handled
+     */
+    @ManagedAttribute("number of requests being handled")
+    public int getRequests()
+    {
+        return _requests.get();
+    }
+
+    /**
+     * @return the number of requests rejected by admission control
+     */
+    @ManagedAttribute("number of requests rejected")
+    public long getRequestsRejected()
+    {
+        return _rejected.get();
+    }
+
+    /**
+     * @return true if accepting is paused as the maximum number of connections has been reached
+     */
+    @ManagedAttribute("true if accepting is paused")
+    public boolean isAcceptPaused()
+    {
+        return _acceptPaused;
+    }
+
     /**
      * @return Returns the number of acceptor threads.
      */
@@ -323,6 +438,115 @@ public abstract class AbstractConnector extends ContainerLifeCycle implements Co
 
     protected abstract void accept(int acceptorID) throws IOException, InterruptedException;
 
+    /* ------------------------------------------------------------ */
+    /**
+     * @return true if the number of connections is below the maximum
+     */
+    protected boolean isAcceptable()
+    {
+        return _maxConnections<=0 || _connections.get()<_maxConnections;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Wait, in a blocking acceptor, until the number of connections is below the maximum.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    protected void awaitAcceptable() throws InterruptedException
+    {
+        if (isAcceptable())
+            return;
+        synchronized (_acceptLock)
+        {
+            while (isAccepting())
+            {
+                // Pause before checking, so a connection released meanwhile sees the pause and notifies
+                _acceptPaused=true;
+                if (isAcceptable())
+                    break;
+                _acceptLock.wait();
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Note that accepting has been paused, as the maximum number of connections has been reached.
+     * If the number of connections has dropped below the maximum in the meantime, then {@link #onAcceptResumed()}
+     * is called.
+     */
+    protected void pauseAccept()
+    {
+        _acceptPaused=true;
+        if (isAcceptable())
+        {
+            _acceptPaused=false;
+            onAcceptResumed();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Called when paused accepting may resume, as a connection has been released.
+     */
+    protected void onAcceptResumed()
+    {
+        synchronized (_acceptLock)
+        {
+            _acceptLock.notifyAll();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Count an accepted connection.
+     */
+    protected void acquireConnection()
+    {
+        _connections.incrementAndGet();
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Release a connection counted by {@link #acquireConnection()}, resuming accepting if it is paused.
+     */
+    protected void releaseConnection()
+    {
+        _connections.decrementAndGet();
+        if (_acceptPaused && isAcceptable())
+        {
+            _acceptPaused=false;
+            onAcceptResumed();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Admit a request to be handled.
+     * @return true if the request is admitted and must be released with {@link #releaseRequest()},
+     * false if the request should be rejected with a 503.
+     */
+    protected boolean acquireRequest()
+    {
+        if (_maxQueueLatency>0 && _executor instanceof QueuedThreadPool &&
+            ((QueuedThreadPool)_executor).getQueueLatency()>TimeUnit.MILLISECONDS.toMicros(_maxQueueLatency))
+        {
+            _rejected.incrementAndGet();
+            return false;
+        }
+
+        int requests=_requests.incrementAndGet();
+        if (_maxRequests>0 && requests>_maxRequests)
+        {
+            _requests.decrementAndGet();
+            _rejected.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Release a request admitted by {@link #acquireRequest()}.
+     */
+    protected void releaseRequest()
+    {
+        _requests.decrementAndGet();
+    }
+
 
     /* ------------------------------------------------------------ */
     /**
@@ -464,7 +688,7 @@ public abstract class AbstractConnector extends ContainerLifeCycle implements Co
         return getConnectionFactory(_defaultProtocol);
     }
 
-    private class Acceptor implements Runnable
+    private class Acceptor implements VirtualThreadPool.PlatformThreadJob
     {
         private final int _acceptor;
         private String _name;
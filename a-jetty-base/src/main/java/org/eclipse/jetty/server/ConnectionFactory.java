@@ -19,6 +19,7 @@
 package org.eclipse.jetty.server;
 
 
+import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 
@@ -53,5 +54,21 @@ public interface ConnectionFactory
      * @return a new {@link Connection}
      */
     public Connection newConnection(Connector connector, EndPoint endPoint);
-    
+
+    /* ------------------------------------------------------------ */
+    /**
+     * <p>A ConnectionFactory that can be the target of a HTTP/1.1 Upgrade request.</p>
+     */
+    public interface Upgrading extends ConnectionFactory
+    {
+        /**
+         * <p>Creates a {@link Connection} to handle an upgrade request</p>
+         * @param connector The {@link Connector} of the upgraded connection
+         * @param endPoint the {@link EndPoint} of the upgraded connection
+         * @param request The upgrade request, which is recycled once the connection is upgraded
+         * @param response101 Fields to add to the 101 Switching Protocols response
+         * @return a new {@link Connection}, or null if the upgrade is declined
+         */
+        public Connection upgradeConnection(Connector connector, EndPoint endPoint, Request request, HttpFields response101);
+    }
 }
@@ -56,6 +56,8 @@ import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.Scheduler;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.util.thread.VirtualThreadPool;
 
 
 /* ------------------------------------------------------------ */
@@ -92,6 +94,7 @@ public class HttpChannel<T> implements HttpParser.RequestHandler<T>, Runnable, H
     }
 
     private final AtomicBoolean _committed = new AtomicBoolean();
+    private final AtomicBoolean _admitted = new AtomicBoolean();
     private final AtomicInteger _requests = new AtomicInteger();
     private final Connector _connector;
     private final HttpConfiguration _configuration;
@@ -247,6 +250,7 @@ public class HttpChannel<T> implements HttpParser.RequestHandler<T>, Runnable, H
 
     public void reset()
     {
+        releaseRequest();
         _committed.set(false);
         _expect = false;
         _expect100Continue = false;
@@ -262,6 +266,34 @@ public class HttpChannel<T> implements HttpParser.RequestHandler<T>, Runnable, H
         handle();
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * Dispatch the request to the server, within the max concurrency of a
+     * {@link VirtualThreadPool}.  Only the handling of the request is limited, not
+     * the callbacks and completions that a handled request may be waiting for.
+     * @param async true if the request is an async dispatch
+     * @throws Exception if the request could not be handled
+     */
+    private void dispatch(boolean async) throws Exception
+    {
+        ThreadPool pool = getServer().getThreadPool();
+        VirtualThreadPool limiter = pool instanceof VirtualThreadPool?(VirtualThreadPool)pool:null;
+        if (limiter!=null)
+            limiter.acquireConcurrency();
+        try
+        {
+            if (async)
+                getServer().handleAsync(this);
+            else
+                getServer().handle(this);
+        }
+        finally
+        {
+            if (limiter!=null)
+                limiter.releaseConcurrency();
+        }
+    }
+
     /* ------------------------------------------------------------ */
     /**
      * @return True if the channel is ready to continue handling (ie it is not suspended)
@@ -308,14 +340,14 @@ public class HttpChannel<T> implements HttpParser.RequestHandler<T>, Runnable, H
                                 for (HttpConfiguration.Customizer customizer : customizers)
                                     customizer.customize(getConnector(), _configuration, _request);
                             }
-                            getServer().handle(this);
+                            dispatch(false);
                             break;
 
                         case ASYNC_DISPATCH:
                             _request.setHandled(false);
                             _response.getHttpOutput().reopen();
                             _request.setDispatcherType(DispatcherType.ASYNC);
-                            getServer().handleAsync(this);
+                            dispatch(true);
                             break;
 
                         case ASYNC_EXPIRED:
@@ -345,7 +377,7 @@ public class HttpChannel<T> implements HttpParser.RequestHandler<T>, Runnable, H
                                     _state.getAsyncContextEvent().setDispatchPath(error_page);
                             }
 
-                            getServer().handleAsync(this);
+                            dispatch(true);
                             break;
 
                         case READ_CALLBACK:
@@ -433,6 +465,7 @@ public class HttpChannel<T> implements HttpParser.RequestHandler<T>, Runnable, H
                 finally
                 {
                     _request.setHandled(true);
+                    releaseRequest();
                     _transport.completed();
                 }
             }
@@ -668,6 +701,7 @@ public class HttpChannel<T> implements HttpParser.RequestHandler<T>, Runnable, H
                 break;
 
             case HTTP_1_1:
+            case HTTP_2:
                 if (_configuration.getSendDateHeader() && !fields.contains(HttpHeader.DATE))
                     _response.getHttpFields().add(_connector.getServer().getDateField());
 
@@ -683,9 +717,31 @@ public class HttpChannel<T> implements HttpParser.RequestHandler<T>, Runnable, H
                 throw new IllegalStateException();
         }
 
+        if (_connector instanceof AbstractConnector)
+        {
+            if (!((AbstractConnector)_connector).acquireRequest())
+            {
+                // Close rather than wait for the client, so the rejected connection
+                // does not hold its slot of the max connections until the idle timeout
+                badMessage(HttpStatus.SERVICE_UNAVAILABLE_503,null);
+                abort();
+                return true;
+            }
+            _admitted.set(true);
+        }
+
         return true;
     }
 
+    /**
+     * Release the request admitted by the connector in {@link #headerComplete()}, if any.
+     */
+    private void releaseRequest()
+    {
+        if (_admitted.compareAndSet(true,false))
+            ((AbstractConnector)_connector).releaseRequest();
+    }
+
     @Override
     public boolean content(T item)
     {
@@ -826,6 +882,7 @@ public class HttpChannel<T> implements HttpParser.RequestHandler<T>, Runnable, H
      */
     public void abort()
     {
+        releaseRequest();
         _transport.abort();
     }
 
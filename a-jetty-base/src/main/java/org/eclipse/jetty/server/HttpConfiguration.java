@@ -55,6 +55,7 @@ public class HttpConfiguration
     private boolean _sendXPoweredBy = false;
     private boolean _sendDateHeader = true;
     private boolean _delayDispatchUntilContent = false;
+    private boolean _pipelinedResponseAggregation = false;
 
     /* ------------------------------------------------------------ */
     /** 
@@ -102,6 +103,7 @@ public class HttpConfiguration
         _sendDateHeader=config._sendDateHeader;
         _sendServerVersion=config._sendServerVersion;
         _headerCacheSize=config._headerCacheSize;
+        _pipelinedResponseAggregation=config._pipelinedResponseAggregation;
     }
     
     /* ------------------------------------------------------------ */
@@ -236,6 +238,29 @@ public class HttpConfiguration
         return _delayDispatchUntilContent;
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * <p>Set whether the responses to pipelined HTTP/1.1 requests are aggregated.</p>
+     * <p>If true, then when a response completes and the next pipelined request is 
+     * already fully buffered, the response is held in an aggregation buffer (of up to
+     * the output buffer size) rather than flushed, so that the responses to a batch of
+     * pipelined requests are written in order with a single gathering write.
+     * Aggregated responses are not flushed until the batch of buffered requests has been
+     * handled, so this suits clients that pipeline many small requests.</p>
+     * @param aggregate if true, aggregate the responses to pipelined requests
+     */
+    public void setPipelinedResponseAggregation(boolean aggregate)
+    {
+        _pipelinedResponseAggregation = aggregate;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("if true, aggregate the responses to pipelined requests")
+    public boolean isPipelinedResponseAggregation()
+    {
+        return _pipelinedResponseAggregation;
+    }
+
     /* ------------------------------------------------------------ */
     /**
      * <p>Set the {@link Customizer}s that are invoked for every 
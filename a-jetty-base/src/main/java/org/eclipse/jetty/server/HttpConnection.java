@@ -21,8 +21,11 @@ package org.eclipse.jetty.server;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritePendingException;
+import java.util.Enumeration;
 import java.util.concurrent.RejectedExecutionException;
 
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpGenerator;
 import org.eclipse.jetty.http.HttpGenerator.ResponseInfo;
 import org.eclipse.jetty.http.HttpHeader;
@@ -36,10 +39,12 @@ import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.EofException;
+import org.eclipse.jetty.util.BlockingCallback;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
 import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.log.Logger;
 
 /**
@@ -51,6 +56,7 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
     private static final boolean REQUEST_BUFFER_DIRECT=false;
     private static final boolean HEADER_BUFFER_DIRECT=false;
     private static final boolean CHUNK_BUFFER_DIRECT=false;
+    private static final byte[] PREFACE_REQUEST=StringUtil.getBytes("PRI * HTTP/2.0\r\n\r\n");
     private static final Logger LOG = Log.getLogger(HttpConnection.class);
     private static final ThreadLocal<HttpConnection> __currentConnection = new ThreadLocal<>();
 
@@ -63,6 +69,8 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
     private volatile ByteBuffer _requestBuffer = null;
     private volatile ByteBuffer _chunk = null;
     private final SendCallback _sendCallback = new SendCallback();
+    private final Object _aggregateLock = new Object();
+    private ByteBuffer _aggregate = null;
 
 
     /* ------------------------------------------------------------ */
@@ -280,6 +288,8 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         finally
         {
             setCurrentConnection(last);
+            if (getEndPoint().isOpen())
+                flushAggregate();
             if (!suspended && getEndPoint().isOpen() && getEndPoint().getConnection()==this)
             {
                 fillInterested();
@@ -341,6 +351,7 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
             Connection connection = (Connection)_channel.getRequest().getAttribute(UPGRADE_CONNECTION_ATTRIBUTE);
             if (connection != null)
             {
+                flushAggregate();
                 _channel.getState().upgrade();
                 getEndPoint().upgrade(connection);
                 _channel.reset();
@@ -432,6 +443,119 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         }
     }
 
+    /* ------------------------------------------------------------ */
+    /** Is another complete request header already buffered?
+     * @return true if the request buffer holds the end of another request header
+     */
+    private boolean isRequestBuffered()
+    {
+        ByteBuffer buffer=_requestBuffer;
+        if (buffer==null)
+            return false;
+        int end=buffer.limit();
+        for (int i=buffer.position();i<end;i++)
+        {
+            if (buffer.get(i)=='\n')
+            {
+                if (i+1<end && buffer.get(i+1)=='\n')
+                    return true;
+                if (i+2<end && buffer.get(i+1)=='\r' && buffer.get(i+2)=='\n')
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Aggregate a response to a pipelined request, rather than flush it.
+     * <p>The last content of a persistent response generated by the thread handling
+     * a request in {@link #onFillable()} may be aggregated if the next request is already
+     * buffered, as the aggregate will be written together with the response to that
+     * request or flushed before {@link #onFillable()} returns.
+     * @param header the header to aggregate or null
+     * @param chunk the chunk to aggregate or null
+     * @param content the content to aggregate or null
+     * @return true if the buffers were consumed into the aggregate
+     * @see HttpConfiguration#isPipelinedResponseAggregation()
+     */
+    private boolean aggregate(ByteBuffer header, ByteBuffer chunk, ByteBuffer content)
+    {
+        if (!_config.isPipelinedResponseAggregation() || !_generator.isPersistent() ||
+            getCurrentConnection()!=this || _parser.inContentState() || !isRequestBuffered())
+            return false;
+
+        int length=BufferUtil.length(header)+BufferUtil.length(chunk)+BufferUtil.length(content);
+        synchronized (_aggregateLock)
+        {
+            if (_aggregate==null)
+            {
+                if (length>_config.getOutputBufferSize())
+                    return false;
+                _aggregate=_bufferPool.acquire(_config.getOutputBufferSize(),HEADER_BUFFER_DIRECT);
+            }
+            else if (length>BufferUtil.space(_aggregate))
+                return false;
+
+            if (header!=null)
+                BufferUtil.append(_aggregate,header);
+            if (chunk!=null)
+                BufferUtil.append(_aggregate,chunk);
+            if (content!=null)
+                BufferUtil.append(_aggregate,content);
+        }
+        return true;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Take the aggregated responses to pipelined requests, so they can be written
+     * ahead of the next response.
+     * @return the aggregate buffer, to be released once written, or null
+     */
+    private ByteBuffer takeAggregate()
+    {
+        synchronized (_aggregateLock)
+        {
+            ByteBuffer aggregate=_aggregate;
+            _aggregate=null;
+            return aggregate;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Blocking flush of any aggregated responses to pipelined requests.
+     * <p>Called when {@link #onFillable()} stops handling requests or the
+     * connection is upgraded.  The lock is held while writing, so that an
+     * asynchronous response cannot start to write until the flush is complete.
+     */
+    private void flushAggregate()
+    {
+        synchronized (_aggregateLock)
+        {
+            ByteBuffer aggregate=_aggregate;
+            if (aggregate==null)
+                return;
+            _aggregate=null;
+            try
+            {
+                if (aggregate.hasRemaining())
+                {
+                    BlockingCallback callback=new BlockingCallback();
+                    getEndPoint().write(callback,aggregate);
+                    callback.block();
+                }
+            }
+            catch (IOException e)
+            {
+                LOG.debug(e);
+                close();
+            }
+            finally
+            {
+                _bufferPool.release(aggregate);
+            }
+        }
+    }
+
     @Override
     protected void onFillInterestedFailed(Throwable cause)
     {
@@ -450,6 +574,9 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
     public void onClose()
     {
         _sendCallback.close();
+        ByteBuffer aggregate=takeAggregate();
+        if (aggregate!=null)
+            _bufferPool.release(aggregate);
         super.onClose();
     }
 
@@ -553,6 +680,8 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
                 }
                 case HTTP_1_1:
                 {
+                    if (getRequest().getHttpFields().contains(HttpHeader.UPGRADE) && upgrade())
+                        return false;
                     persistent = !getRequest().getHttpFields().contains(HttpHeader.CONNECTION, HttpHeaderValue.CLOSE.asString());
                     if (!persistent)
                         persistent = HttpMethod.CONNECT.is(getRequest().getMethod());
@@ -562,6 +691,9 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
                 }
                 case HTTP_2:
                 {
+                    // Only the connection preface of a client with prior knowledge is accepted
+                    if (HttpMethod.PRI.is(getRequest().getMethod()) && upgradePriorKnowledge())
+                        return false;
                     persistent=false;
                     badMessage(400,null);
                     return true;
@@ -587,6 +719,86 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
             return true;
         }
 
+        /**
+         * Switch to the connection of a {@link ConnectionFactory.Upgrading} named in the Upgrade header,
+         * if one accepts the request.  Requests with content are not upgraded.
+         * @return true if the connection has been upgraded or closed
+         */
+        private boolean upgrade()
+        {
+            if (_parser.getContentLength()>0 || _parser.isChunking())
+                return false;
+
+            Enumeration<String> protocols=getRequest().getHttpFields().getValues(HttpHeader.UPGRADE.asString(),",");
+            while (protocols.hasMoreElements())
+            {
+                String protocol=protocols.nextElement();
+                ConnectionFactory factory=_connector.getConnectionFactory(protocol);
+                if (!(factory instanceof ConnectionFactory.Upgrading))
+                    continue;
+
+                HttpFields response101=new HttpFields();
+                Connection connection=((ConnectionFactory.Upgrading)factory).upgradeConnection(_connector,getEndPoint(),getRequest(),response101);
+                if (connection==null)
+                    continue;
+
+                StringBuilder response=new StringBuilder("HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: ");
+                response.append(protocol).append("\r\n");
+                for (HttpField field : response101)
+                    response.append(field.getName()).append(": ").append(field.getValue()).append("\r\n");
+                response.append("\r\n");
+
+                flushAggregate();
+                try
+                {
+                    BlockingCallback callback=new BlockingCallback();
+                    getEndPoint().write(callback,BufferUtil.toBuffer(response.toString()));
+                    callback.block();
+                }
+                catch (IOException e)
+                {
+                    LOG.debug(e);
+                    close();
+                    return true;
+                }
+
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Upgrade from {} to {}",HttpConnection.this,connection);
+                getEndPoint().upgrade(connection);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Switch to the "h2c" connection, if configured, when the HTTP/2 preface is received.
+         * @return true if the connection has been upgraded
+         */
+        private boolean upgradePriorKnowledge()
+        {
+            ConnectionFactory factory=_connector.getConnectionFactory("h2c");
+            if (factory==null)
+                return false;
+
+            // Give the part of the preface parsed as a request back to the new connection
+            ByteBuffer prefilled=BufferUtil.allocate(PREFACE_REQUEST.length+BufferUtil.length(_requestBuffer));
+            BufferUtil.append(prefilled,PREFACE_REQUEST,0,PREFACE_REQUEST.length);
+            if (_requestBuffer!=null)
+            {
+                // The pooled request buffer has been copied, so give it back
+                BufferUtil.append(prefilled,_requestBuffer);
+                _bufferPool.release(_requestBuffer);
+            }
+            _requestBuffer=prefilled;
+
+            flushAggregate();
+            Connection connection=factory.newConnection(_connector,getEndPoint());
+            if (LOG.isDebugEnabled())
+                LOG.debug("Upgrade from {} to {}",HttpConnection.this,connection);
+            getEndPoint().upgrade(connection);
+            return true;
+        }
+
         @Override
         protected void handleException(Throwable x)
         {
@@ -616,6 +828,7 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
         private boolean _lastContent;
         private Callback _callback;
         private ByteBuffer _header;
+        private ByteBuffer _aggregated;
         private boolean _shutdownOut;
 
         private SendCallback()
@@ -683,8 +896,25 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
                             BufferUtil.clear(_content);
                         }
 
+                        // Aggregate the last content of a response if the next pipelined request is already buffered
+                        if (_lastContent && aggregate(_header,chunk,_content))
+                        {
+                            succeeded();
+                            return Action.SCHEDULED;
+                        }
+
+                        // Write any aggregated responses to pipelined requests ahead of this response
+                        ByteBuffer aggregate=takeAggregate();
+                        if (aggregate!=null)
+                        {
+                            _aggregated=aggregate;
+                            getEndPoint().write(this, aggregate,
+                                _header==null?BufferUtil.EMPTY_BUFFER:_header,
+                                chunk==null?BufferUtil.EMPTY_BUFFER:chunk,
+                                _content==null?BufferUtil.EMPTY_BUFFER:_content);
+                        }
                         // If we have a header
-                        if (BufferUtil.hasContent(_header))
+                        else if (BufferUtil.hasContent(_header))
                         {
                             if (BufferUtil.hasContent(_content))
                             {
@@ -740,6 +970,10 @@ public class HttpConnection extends AbstractConnection implements Runnable, Http
             _header=null;
             if (h!=null)
                 _bufferPool.release(h);
+            ByteBuffer a=_aggregated;
+            _aggregated=null;
+            if (a!=null)
+                _bufferPool.release(a);
         }
 
         @Override
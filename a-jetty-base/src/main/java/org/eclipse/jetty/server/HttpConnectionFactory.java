@@ -20,6 +20,7 @@
 package org.eclipse.jetty.server;
 
 
+import org.eclipse.jetty.http.HttpFieldCache;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
@@ -31,10 +32,13 @@ import org.eclipse.jetty.util.annotation.Name;
  * <p>Accepts connections either directly or via SSL and/or NPN chained connection factories.  The accepted 
  * {@link HttpConnection}s are configured by a {@link HttpConfiguration} instance that is either created by
  * default or passed in to the constructor.
+ * <p>The parsers of the accepted connections share a {@link HttpFieldCache} that learns the
+ * header fields that are frequent across connections.
  */
 public class HttpConnectionFactory extends AbstractConnectionFactory implements HttpConfiguration.ConnectionFactory
 {
     private final HttpConfiguration _config;
+    private final HttpFieldCache _fieldCache = new HttpFieldCache();
 
     public HttpConnectionFactory()
     {
@@ -47,6 +51,7 @@ public class HttpConnectionFactory extends AbstractConnectionFactory implements
         super(HttpVersion.HTTP_1_1.toString());
         _config=config;
         addBean(_config);
+        addBean(_fieldCache);
     }
 
     @Override
@@ -55,10 +60,20 @@ public class HttpConnectionFactory extends AbstractConnectionFactory implements
         return _config;
     }
 
+    /**
+     * @return the cache of header fields learned from the connections of this factory
+     */
+    public HttpFieldCache getFieldCache()
+    {
+        return _fieldCache;
+    }
+
     @Override
     public Connection newConnection(Connector connector, EndPoint endPoint)
     {
-        return configure(new HttpConnection(_config, connector, endPoint), connector, endPoint);
+        HttpConnection connection = new HttpConnection(_config, connector, endPoint);
+        connection.getParser().setSharedFieldCache(_fieldCache);
+        return configure(connection, connector, endPoint);
     }
 
 }
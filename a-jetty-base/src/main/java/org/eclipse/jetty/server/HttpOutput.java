@@ -21,6 +21,7 @@ package org.eclipse.jetty.server;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritePendingException;
 import java.util.concurrent.atomic.AtomicReference;
@@ -31,6 +32,8 @@ import javax.servlet.ServletResponse;
 import javax.servlet.WriteListener;
 
 import org.eclipse.jetty.http.HttpContent;
+import org.eclipse.jetty.io.ChannelEndPoint;
+import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.EofException;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
@@ -53,8 +56,43 @@ import org.eclipse.jetty.util.log.Logger;
  */
 public class HttpOutput extends ServletOutputStream implements Runnable
 {
+    /**
+     * The output interceptor allows a handler to transform the content
+     * (eg compress it) before it is written to the channel.  All content
+     * written, flushed, closed or sent by the HttpOutput passes through it.
+     * <p>
+     * An interceptor is installed with {@link HttpOutput#setInterceptor(Interceptor)}
+     * and must pass the transformed content to the interceptor that was
+     * installed before it.  Interceptors are removed when the response is recycled.
+     * </p>
+     */
+    public interface Interceptor
+    {
+        /**
+         * @param content The content to write
+         * @param complete True if this is the last content of the response
+         * @param callback The callback to notify once the content is written
+         */
+        void write(ByteBuffer content, boolean complete, Callback callback);
+    }
+
     private static Logger LOG = Log.getLogger(HttpOutput.class);
     private final HttpChannel<?> _channel;
+    private final Interceptor _channelInterceptor=new Interceptor()
+    {
+        @Override
+        public void write(ByteBuffer content, boolean complete, Callback callback)
+        {
+            _channel.write(content,complete,callback);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x",_channel.getClass().getSimpleName(),_channel.hashCode());
+        }
+    };
+    private Interceptor _interceptor=_channelInterceptor;
     private final SharedBlockingCallback _writeblock=new SharedBlockingCallback()
     {
         @Override
@@ -101,6 +139,20 @@ public class HttpOutput extends ServletOutputStream implements Runnable
     {
         return _channel;
     }
+
+    public Interceptor getInterceptor()
+    {
+        return _interceptor;
+    }
+
+    /**
+     * @param interceptor The interceptor that content is written to. It must
+     * write to the interceptor returned by {@link #getInterceptor()} before it is set.
+     */
+    public void setInterceptor(Interceptor interceptor)
+    {
+        _interceptor=interceptor;
+    }
     
     public boolean isWritten()
     {
@@ -118,6 +170,12 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         reopen();
     }
 
+    public void recycle()
+    {
+        _interceptor=_channelInterceptor;
+        reset();
+    }
+
     public void reopen()
     {
         _state.set(OutputState.OPEN);
@@ -144,7 +202,7 @@ public class HttpOutput extends ServletOutputStream implements Runnable
     
     protected void write(ByteBuffer content, boolean complete, Callback callback)
     {
-        _channel.write(content,complete,callback);
+        _interceptor.write(content,complete,callback);
     }
     
     @Override
@@ -558,7 +616,24 @@ public class HttpOutput extends ServletOutputStream implements Runnable
     {
         try(Blocker blocker=_writeblock.acquire())
         {
-            new ReadableByteChannelWritingCB(in,blocker).iterate();
+            sendContent(in,blocker);
+            blocker.block();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Blocking send of a file region.
+     * @param file The file to send from. It is not closed.
+     * @param position The position of the region in the file
+     * @param length The length of the region
+     * @throws IOException
+     * @see #sendContent(FileChannel, long, long, Callback)
+     */
+    public void sendContent(FileChannel file, long position, long length) throws IOException
+    {
+        try(Blocker blocker=_writeblock.acquire())
+        {
+            sendContent(file,position,length,blocker);
             blocker.block();
         }
     }
@@ -619,11 +694,87 @@ public class HttpOutput extends ServletOutputStream implements Runnable
      * after reading all content.
      * @param callback The callback to use to notify success or failure
      */
-    public void sendContent(ReadableByteChannel in, Callback callback)
+    public void sendContent(ReadableByteChannel in, final Callback callback)
     {
+        if (in instanceof FileChannel)
+        {
+            final FileChannel file=(FileChannel)in;
+            try
+            {
+                long position=file.position();
+                sendContent(file,position,file.size()-position,new Callback()
+                {
+                    @Override
+                    public void succeeded()
+                    {
+                        close(file);
+                        callback.succeeded();
+                    }
+
+                    @Override
+                    public void failed(Throwable x)
+                    {
+                        close(file);
+                        callback.failed(x);
+                    }
+                });
+            }
+            catch(IOException e)
+            {
+                close(file);
+                callback.failed(e);
+            }
+            return;
+        }
         new ReadableByteChannelWritingCB(in,callback).iterate();
     }
 
+    /* ------------------------------------------------------------ */
+    /** Asynchronous send of a file region.
+     * <p>
+     * If the output is not intercepted, the response is plain HTTP/1 on a
+     * {@link ChannelEndPoint} (ie not SSL) and its Content-Length is the length
+     * of the region, then the region is transferred to the socket with
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+     * without copying it through buffers.  Else it is read through a buffer.
+     * </p>
+     * @param file The file to send from. It is not closed.
+     * @param position The position of the region in the file
+     * @param length The length of the region
+     * @param callback The callback to use to notify success or failure
+     */
+    public void sendContent(FileChannel file, long position, long length, Callback callback)
+    {
+        EndPoint endPoint=_channel.getEndPoint();
+        if (_interceptor==_channelInterceptor &&
+            endPoint instanceof ChannelEndPoint &&
+            _channel.getHttpTransport() instanceof HttpConnection &&
+            !_channel.getRequest().isHead() &&
+            _channel.getResponse().getLongContentLength()==length &&
+            !_channel.isCommitted() &&
+            BufferUtil.isEmpty(_aggregate))
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("sendContent({}@{}+{},{}) transfer",file,position,length,callback);
+            new FileTransferCB((ChannelEndPoint)endPoint,file,position,length,callback).iterate();
+        }
+        else
+            new FileChannelWritingCB(file,position,length,callback).iterate();
+    }
+
+    /* ------------------------------------------------------------ */
+    private static void close(FileChannel file)
+    {
+        try
+        {
+            file.close();
+        }
+        catch (IOException e)
+        {
+            LOG.ignore(e);
+        }
+    }
+
     /* ------------------------------------------------------------ */
     /** Asynchronous send of content.
      * @param httpContent The content to send
@@ -1131,4 +1282,113 @@ public class HttpOutput extends ServletOutputStream implements Runnable
             }
         }
     }
+
+    /* ------------------------------------------------------------ */
+    /** An iterating callback that sends a file region directly to a {@link ChannelEndPoint}.
+     * The response is committed with an empty write, then the region is transferred
+     * and then the response is completed with an empty last write.
+     */
+    private class FileTransferCB extends IteratingNestedCallback
+    {
+        private final ChannelEndPoint _endPoint;
+        private final FileChannel _file;
+        private final long _position;
+        private final long _length;
+        private int _step;
+
+        public FileTransferCB(ChannelEndPoint endPoint, FileChannel file, long position, long length, Callback callback)
+        {
+            super(callback);
+            _endPoint=endPoint;
+            _file=file;
+            _position=position;
+            _length=length;
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            switch(_step++)
+            {
+                case 0:
+                    // commit the headers
+                    write(BufferUtil.EMPTY_BUFFER,false,this);
+                    return Action.SCHEDULED;
+
+                case 1:
+                    _endPoint.transferFrom(this,_file,_position,_length);
+                    return Action.SCHEDULED;
+
+                case 2:
+                    _written+=_length;
+                    write(BufferUtil.EMPTY_BUFFER,true,this);
+                    return Action.SCHEDULED;
+
+                default:
+                    closed();
+                    return Action.SUCCEEDED;
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /** An iterating callback that will take content from a region
+     * of a file and write it to the {@link HttpChannel}.
+     * A {@link ByteBuffer} of size {@link HttpOutput#getBufferSize()} is used that will be direct if
+     * {@link HttpChannel#useDirectBuffers()} is true.
+     */
+    private class FileChannelWritingCB extends IteratingNestedCallback
+    {
+        private final FileChannel _file;
+        private final ByteBuffer _buffer;
+        private long _position;
+        private long _remaining;
+        private boolean _eof;
+
+        public FileChannelWritingCB(FileChannel file, long position, long length, Callback callback)
+        {
+            super(callback);
+            _file=file;
+            _position=position;
+            _remaining=length;
+            _buffer = _channel.getByteBufferPool().acquire(getBufferSize(), _channel.useDirectBuffers());
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            if (_eof)
+            {
+                closed();
+                _channel.getByteBufferPool().release(_buffer);
+                return Action.SUCCEEDED;
+            }
+
+            // Read the region until buffer full or its end
+            _buffer.clear();
+            if (_buffer.capacity()>_remaining)
+                _buffer.limit((int)_remaining);
+            while (_buffer.hasRemaining())
+            {
+                int r=_file.read(_buffer,_position);
+                if (r<0)
+                    throw new EofException("truncated "+_file);
+                _position+=r;
+                _remaining-=r;
+            }
+            _eof=_remaining==0;
+
+            // write what we have
+            _buffer.flip();
+            write(_buffer,_eof,this);
+            return Action.SCHEDULED;
+        }
+
+        @Override
+        public void onCompleteFailure(Throwable x)
+        {
+            super.onCompleteFailure(x);
+            _channel.getByteBufferPool().release(_buffer);
+        }
+    }
 }
@@ -90,6 +90,9 @@ public abstract class NegotiatingServerConnection extends AbstractConnection
 
         if (filled == 0)
         {
+            if (protocol == null && engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING)
+                protocol = selectProtocol();
+
             if (protocol == null)
             {
                 if (engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING)
@@ -138,6 +141,18 @@ public abstract class NegotiatingServerConnection extends AbstractConnection
         }
     }
 
+    /**
+     * <p>Called when the SSL handshake is finished and no protocol has been set during the handshake.</p>
+     * <p>Implementations that can only learn the negotiated protocol from the {@link SSLEngine}
+     * once the handshake is complete return it here.</p>
+     *
+     * @return the protocol to use, or null if it could not be negotiated
+     */
+    protected String selectProtocol()
+    {
+        return null;
+    }
+
     private int fill()
     {
         try
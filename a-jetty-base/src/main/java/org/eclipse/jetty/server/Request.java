@@ -27,11 +27,13 @@ import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnsupportedCharsetException;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -70,11 +72,13 @@ import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpURI;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.ContextHandler.Context;
 import org.eclipse.jetty.server.session.AbstractSession;
 import org.eclipse.jetty.util.Attributes;
 import org.eclipse.jetty.util.AttributesMap;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.HostPort;
 import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.MultiException;
@@ -83,6 +87,7 @@ import org.eclipse.jetty.util.MultiPartInputStreamParser;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.util.UrlEncoded;
+import org.eclipse.jetty.util.UrlEncodedIndex;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -189,6 +194,8 @@ public class Request implements HttpServletRequest
     private MultiMap<String> _queryParameters;
     private MultiMap<String> _contentParameters;
     private MultiMap<String> _parameters;
+    private UrlEncodedIndex _queryIndex;
+    private UrlEncodedIndex _contentIndex;
     private String _pathInfo;
     private int _port;
     private HttpVersion _httpVersion = HttpVersion.HTTP_1_1;
@@ -209,6 +216,7 @@ public class Request implements HttpServletRequest
     private long _timeStamp;
     private HttpURI _uri;
     private MultiPartInputStreamParser _multiPartInputStream; //if the request is a multi-part mime
+    private boolean _partsParsing; //if the multi-part mime is being parsed asynchronously
     private AsyncContextState _async;
 
     /* ------------------------------------------------------------ */
@@ -248,23 +256,29 @@ public class Request implements HttpServletRequest
 
         // Extract query string parameters; these may be replaced by a forward()
         // and may have already been extracted by mergeQueryParameters().
-        if (_queryParameters == null)
-            _queryParameters = extractQueryParameters();
+        if (_queryParameters == null && _queryIndex == null)
+            extractQueryParameters();
 
         // Extract content parameters; these cannot be replaced by a forward()
         // once extracted and may have already been extracted by getParts() or
         // by a processing happening after a form-based authentication.
-        if (_contentParameters == null)
-            _contentParameters = extractContentParameters();
+        if (_contentParameters == null && _contentIndex == null)
+            extractContentParameters();
 
-        _parameters = restoreParameters();
+        // The query and content parameters are merged when first needed
+        _parameters = null;
     }
 
-    private MultiMap<String> extractQueryParameters()
+    private void extractQueryParameters()
     {
         MultiMap<String> result = new MultiMap<>();
         if (_uri != null && _uri.hasQuery())
         {
+            // UTF-8 queries are indexed and only decoded when looked up
+            _queryIndex = _uri.indexQuery(_queryEncoding);
+            if (_queryIndex != null)
+                return;
+
             if (_queryEncoding == null)
             {
                 _uri.decodeQueryTo(result);
@@ -284,10 +298,10 @@ public class Request implements HttpServletRequest
                 }
             }
         }
-        return result;
+        _queryParameters = result;
     }
 
-    private MultiMap<String> extractContentParameters()
+    private void extractContentParameters()
     {
         MultiMap<String> result = new MultiMap<>();
 
@@ -301,7 +315,9 @@ public class Request implements HttpServletRequest
                 if (MimeTypes.Type.FORM_ENCODED.is(contentType) && _inputState == __NONE &&
                         (HttpMethod.POST.is(getMethod()) || HttpMethod.PUT.is(getMethod())))
                 {
-                    extractFormParameters(result);
+                    // UTF-8 forms are indexed and only decoded when looked up
+                    if (!indexFormParameters())
+                        extractFormParameters(result);
                 }
                 else if (contentType.startsWith("multipart/form-data") &&
                         getAttribute(__MULTIPART_CONFIG_ELEMENT) != null &&
@@ -312,53 +328,128 @@ public class Request implements HttpServletRequest
             }
         }
 
-        return result;
+        if (_contentIndex == null)
+            _contentParameters = result;
     }
 
-    public void extractFormParameters(MultiMap<String> params)
+    private int getMaxFormContentSize()
     {
-        try
-        {
-            int maxFormContentSize = -1;
-            int maxFormKeys = -1;
+        int maxFormContentSize = -1;
+        if (_context != null)
+            maxFormContentSize = _context.getContextHandler().getMaxFormContentSize();
 
-            if (_context != null)
+        if (maxFormContentSize < 0)
+        {
+            Object obj = _channel.getServer().getAttribute("org.eclipse.jetty.server.Request.maxFormContentSize");
+            if (obj == null)
+                maxFormContentSize = 200000;
+            else if (obj instanceof Number)
             {
-                maxFormContentSize = _context.getContextHandler().getMaxFormContentSize();
-                maxFormKeys = _context.getContextHandler().getMaxFormKeys();
+                Number size = (Number)obj;
+                maxFormContentSize = size.intValue();
             }
+            else if (obj instanceof String)
+            {
+                maxFormContentSize = Integer.valueOf((String)obj);
+            }
+        }
+        return maxFormContentSize;
+    }
 
-            if (maxFormContentSize < 0)
+    private int getMaxFormKeys()
+    {
+        int maxFormKeys = -1;
+        if (_context != null)
+            maxFormKeys = _context.getContextHandler().getMaxFormKeys();
+
+        if (maxFormKeys < 0)
+        {
+            Object obj = _channel.getServer().getAttribute("org.eclipse.jetty.server.Request.maxFormKeys");
+            if (obj == null)
+                maxFormKeys = 1000;
+            else if (obj instanceof Number)
             {
-                Object obj = _channel.getServer().getAttribute("org.eclipse.jetty.server.Request.maxFormContentSize");
-                if (obj == null)
-                    maxFormContentSize = 200000;
-                else if (obj instanceof Number)
-                {
-                    Number size = (Number)obj;
-                    maxFormContentSize = size.intValue();
-                }
-                else if (obj instanceof String)
-                {
-                    maxFormContentSize = Integer.valueOf((String)obj);
-                }
+                Number keys = (Number)obj;
+                maxFormKeys = keys.intValue();
+            }
+            else if (obj instanceof String)
+            {
+                maxFormKeys = Integer.valueOf((String)obj);
             }
+        }
+        return maxFormKeys;
+    }
 
-            if (maxFormKeys < 0)
+    /**
+     * Read UTF-8 form content into an index, so that the parameters
+     * are only decoded when they are looked up.
+     * @return false if the form is not UTF-8 encoded and was not read
+     */
+    private boolean indexFormParameters()
+    {
+        String charset = getCharacterEncoding();
+        if (charset == null ? !StandardCharsets.UTF_8.equals(UrlEncoded.ENCODING) : !StringUtil.isUTF8(charset))
+            return false;
+
+        int maxFormContentSize = getMaxFormContentSize();
+        int maxFormKeys = getMaxFormKeys();
+        int contentLength = getContentLength();
+        if (contentLength > maxFormContentSize && maxFormContentSize > 0)
+            throw new IllegalStateException("Form too large: " + contentLength + " > " + maxFormContentSize);
+        int maxLength = contentLength < 0 ? maxFormContentSize : -1;
+
+        // without a form size limit the content length is not trusted for the initial buffer
+        int initial = maxFormContentSize > 0 ? contentLength : Math.min(contentLength, 8192);
+        byte[] content = new byte[initial > 0 ? initial : 1024];
+        int length = 0;
+        try
+        {
+            InputStream in = getInputStream();
+            if (_input.isAsync())
+                throw new IllegalStateException("Cannot extract parameters with async IO");
+
+            while (true)
             {
-                Object obj = _channel.getServer().getAttribute("org.eclipse.jetty.server.Request.maxFormKeys");
-                if (obj == null)
-                    maxFormKeys = 1000;
-                else if (obj instanceof Number)
+                if (length == content.length)
                 {
-                    Number keys = (Number)obj;
-                    maxFormKeys = keys.intValue();
+                    int b = in.read();
+                    if (b < 0)
+                        break;
+                    content = Arrays.copyOf(content, length * 2);
+                    content[length++] = (byte)b;
                 }
-                else if (obj instanceof String)
+                else
                 {
-                    maxFormKeys = Integer.valueOf((String)obj);
+                    int read = in.read(content, length, content.length - length);
+                    if (read < 0)
+                        break;
+                    length += read;
                 }
+                if (maxLength >= 0 && length > maxLength)
+                    throw new IllegalStateException("Form too large");
             }
+        }
+        catch (IOException e)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.warn(e);
+            else
+                LOG.warn(e.toString());
+        }
+
+        UrlEncodedIndex index = new UrlEncodedIndex(content, 0, length, true);
+        if (maxFormKeys > 0 && index.size() > maxFormKeys && index.getNameCount() > maxFormKeys)
+            throw new IllegalStateException("Form too many keys");
+        _contentIndex = index;
+        return true;
+    }
+
+    public void extractFormParameters(MultiMap<String> params)
+    {
+        try
+        {
+            int maxFormContentSize = getMaxFormContentSize();
+            int maxFormKeys = getMaxFormKeys();
 
             int contentLength = getContentLength();
             if (contentLength > maxFormContentSize && maxFormContentSize > 0)
@@ -826,7 +917,16 @@ public class Request implements HttpServletRequest
         if (!_paramsExtracted)
             extractParameters();
         if (_parameters == null)
+        {
+            if (isParametersIndexed())
+            {
+                String value = _queryIndex != null ? _queryIndex.getValue(name) : _queryParameters.getValue(name,0);
+                if (value == null)
+                    value = _contentIndex != null ? _contentIndex.getValue(name) : _contentParameters == null ? null : _contentParameters.getValue(name,0);
+                return value;
+            }
             _parameters = restoreParameters();
+        }
         return _parameters.getValue(name,0);
     }
 
@@ -867,37 +967,82 @@ public class Request implements HttpServletRequest
     {
         if (!_paramsExtracted)
             extractParameters();
-        if (_parameters == null)
-            _parameters = restoreParameters();
-        List<String> vals = _parameters.getValues(name);
+        List<String> vals;
+        if (_parameters == null && isParametersIndexed())
+            vals = getIndexedValues(name);
+        else
+        {
+            if (_parameters == null)
+                _parameters = restoreParameters();
+            vals = _parameters.getValues(name);
+        }
         if (vals == null)
             return null;
         return vals.toArray(new String[vals.size()]);
     }
 
+    /**
+     * @return true if the parameters can be looked up in the lazily decoded
+     * query or form content without merging them
+     */
+    private boolean isParametersIndexed()
+    {
+        if (_queryParameters == null && _queryIndex == null)
+            extractQueryParameters();
+        return _queryIndex != null || _contentIndex != null;
+    }
+
+    private List<String> getIndexedValues(String name)
+    {
+        List<String> query = _queryIndex != null ? _queryIndex.getValues(name) : _queryParameters.getValues(name);
+        List<String> content = _contentIndex != null ? _contentIndex.getValues(name) : _contentParameters == null ? null : _contentParameters.getValues(name);
+        if (query == null)
+            return content;
+        if (content == null)
+            return query;
+        List<String> values = new ArrayList<>(query);
+        values.addAll(content);
+        return values;
+    }
+
     private MultiMap<String> restoreParameters()
     {
         MultiMap<String> result = new MultiMap<>();
-        if (_queryParameters == null)
-            _queryParameters = extractQueryParameters();
-        result.addAllValues(_queryParameters);
-        result.addAllValues(_contentParameters);
+        if (_queryParameters == null && _queryIndex == null)
+            extractQueryParameters();
+        result.addAllValues(getQueryParameters());
+        if (_contentIndex != null)
+        {
+            _contentParameters = new MultiMap<>();
+            _contentIndex.decodeTo(_contentParameters);
+            _contentIndex = null;
+        }
+        if (_contentParameters != null)
+            result.addAllValues(_contentParameters);
         return result;
     }
 
     public MultiMap<String> getQueryParameters()
     {
+        if (_queryParameters == null && _queryIndex != null)
+        {
+            _queryParameters = new MultiMap<>();
+            _queryIndex.decodeTo(_queryParameters);
+            _queryIndex = null;
+        }
         return _queryParameters;
     }
 
     public void setQueryParameters(MultiMap<String> queryParameters)
     {
         _queryParameters = queryParameters;
+        _queryIndex = null;
     }
 
     public void setContentParameters(MultiMap<String> contentParameters)
     {
         _contentParameters = contentParameters;
+        _contentIndex = null;
     }
 
     public void resetParameters()
@@ -1625,6 +1770,8 @@ public class Request implements HttpServletRequest
         _queryParameters = null;
         _contentParameters = null;
         _parameters = null;
+        _queryIndex = null;
+        _contentIndex = null;
         _paramsExtracted = false;
         _inputState = __NONE;
 
@@ -1632,6 +1779,7 @@ public class Request implements HttpServletRequest
             _savedNewSessions.clear();
         _savedNewSessions=null;
         _multiPartInputStream = null;
+        _partsParsing = false;
         _remote=null;
         _fields.clear();
         _input.recycle();
@@ -2106,45 +2254,149 @@ public class Request implements HttpServletRequest
 
         if (_multiPartInputStream == null)
         {
-            MultipartConfigElement config = (MultipartConfigElement)getAttribute(__MULTIPART_CONFIG_ELEMENT);
+            _multiPartInputStream = newMultiPartInputStreamParser();
+            Collection<Part> parts = _multiPartInputStream.getParts(); //causes parsing
+            extractPartParameters(parts, params);
+        }
+        else if (_partsParsing)
+            throw new IllegalStateException("Parts are being parsed asynchronously");
 
-            if (config == null)
-                throw new IllegalStateException("No multipart config for servlet");
+        return _multiPartInputStream.getParts();
+    }
 
-            _multiPartInputStream = new MultiPartInputStreamParser(getInputStream(),
-                                                             getContentType(), config,
-                                                             (_context != null?(File)_context.getAttribute("javax.servlet.context.tempdir"):null));
+    /* ------------------------------------------------------------ */
+    /**
+     * Parse the multipart/form-data content of a request in async mode
+     * without blocking a thread while the content arrives.
+     * <p>
+     * A {@link javax.servlet.ReadListener} is set on the input stream. Once the
+     * callback has succeeded, {@link #getParts()}, {@link #getPart(String)} and
+     * the parameters of the form fields are available without blocking.
+     * </p>
+     * @param callback notified when the parts have been parsed, or parsing has failed
+     */
+    public void parsePartsAsync(final Callback callback)
+    {
+        if (getContentType() == null || !getContentType().startsWith("multipart/form-data"))
+        {
+            callback.failed(new ServletException("Content-Type != multipart/form-data"));
+            return;
+        }
 
-            setAttribute(__MULTIPART_INPUT_STREAM, _multiPartInputStream);
-            setAttribute(__MULTIPART_CONTEXT, _context);
-            Collection<Part> parts = _multiPartInputStream.getParts(); //causes parsing
-            ByteArrayOutputStream os = null;
-            for (Part p:parts)
+        if (_multiPartInputStream == null)
+            _multiPartInputStream = (MultiPartInputStreamParser)getAttribute(__MULTIPART_INPUT_STREAM);
+        if (_partsParsing)
+        {
+            callback.failed(new IllegalStateException("Parts are being parsed asynchronously"));
+            return;
+        }
+        if (_multiPartInputStream != null)
+        {
+            callback.succeeded();
+            return;
+        }
+        if (!isAsyncStarted())
+        {
+            callback.failed(new IllegalStateException("!asyncStarted"));
+            return;
+        }
+
+        final MultiPartInputStreamParser parser;
+        try
+        {
+            parser = newMultiPartInputStreamParser();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            callback.failed(e);
+            return;
+        }
+
+        _multiPartInputStream = parser;
+        _partsParsing = true;
+        parser.parseAsync(new Callback()
+        {
+            @Override
+            public void succeeded()
             {
-                MultiPartInputStreamParser.MultiPart mp = (MultiPartInputStreamParser.MultiPart)p;
-                if (mp.getContentDispositionFilename() == null)
+                _partsParsing = false;
+                try
                 {
-                    // Servlet Spec 3.0 pg 23, parts without filename must be put into params.
-                    String charset = null;
-                    if (mp.getContentType() != null)
-                        charset = MimeTypes.getCharsetFromContentType(mp.getContentType());
+                    extractPartParameters(parser.getParsedParts(), null);
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    callback.failed(e);
+                    return;
+                }
+                callback.succeeded();
+            }
 
-                    try (InputStream is = mp.getInputStream())
-                    {
-                        if (os == null)
-                            os = new ByteArrayOutputStream();
-                        IO.copy(is, os);
-                        String content=new String(os.toByteArray(),charset==null?StandardCharsets.UTF_8:Charset.forName(charset));
-                        if (_contentParameters == null)
-                            _contentParameters = params == null ? new MultiMap<String>() : params;
-                        _contentParameters.add(mp.getName(), content);
-                    }
-                    os.reset();
+            @Override
+            public void failed(Throwable x)
+            {
+                _partsParsing = false;
+                callback.failed(x);
+            }
+        });
+    }
+
+    private MultiPartInputStreamParser newMultiPartInputStreamParser() throws IOException
+    {
+        MultipartConfigElement config = (MultipartConfigElement)getAttribute(__MULTIPART_CONFIG_ELEMENT);
+
+        if (config == null)
+            throw new IllegalStateException("No multipart config for servlet");
+
+        final ByteBufferPool pool = _channel.getByteBufferPool();
+        MultiPartInputStreamParser parser = new MultiPartInputStreamParser(getInputStream(),
+                                                         getContentType(), config,
+                                                         (_context != null?(File)_context.getAttribute("javax.servlet.context.tempdir"):null))
+        {
+            @Override
+            protected ByteBuffer acquireBuffer()
+            {
+                return pool.acquire(__DEFAULT_BUFFER_SIZE,false);
+            }
+
+            @Override
+            protected void releaseBuffer(ByteBuffer buffer)
+            {
+                pool.release(buffer);
+            }
+        };
+
+        setAttribute(__MULTIPART_INPUT_STREAM, parser);
+        setAttribute(__MULTIPART_CONTEXT, _context);
+        return parser;
+    }
+
+    private void extractPartParameters(Collection<Part> parts, MultiMap<String> params) throws IOException
+    {
+        ByteArrayOutputStream os = null;
+        for (Part p:parts)
+        {
+            MultiPartInputStreamParser.MultiPart mp = (MultiPartInputStreamParser.MultiPart)p;
+            if (mp.getContentDispositionFilename() == null)
+            {
+                // Servlet Spec 3.0 pg 23, parts without filename must be put into params.
+                String charset = null;
+                if (mp.getContentType() != null)
+                    charset = MimeTypes.getCharsetFromContentType(mp.getContentType());
+
+                try (InputStream is = mp.getInputStream())
+                {
+                    if (os == null)
+                        os = new ByteArrayOutputStream();
+                    IO.copy(is, os);
+                    String content=new String(os.toByteArray(),charset==null?StandardCharsets.UTF_8:Charset.forName(charset));
+                    if (_contentParameters == null)
+                        _contentParameters = params == null ? new MultiMap<String>() : params;
+                    _contentParameters.add(mp.getName(), content);
                 }
+                os.reset();
             }
         }
-
-        return _multiPartInputStream.getParts();
     }
 
     /* ------------------------------------------------------------ */
@@ -2178,7 +2430,7 @@ public class Request implements HttpServletRequest
         // Have to assume ENCODING because we can't know otherwise.
         UrlEncoded.decodeTo(newQuery, newQueryParams, UrlEncoded.ENCODING, -1);
 
-        MultiMap<String> oldQueryParams = _queryParameters;
+        MultiMap<String> oldQueryParams = getQueryParameters();
         if (oldQueryParams == null && _queryString != null)
         {
             oldQueryParams = new MultiMap<>();
@@ -22,19 +22,29 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
-import java.util.Comparator;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.eclipse.jetty.http.DateGenerator;
 import org.eclipse.jetty.http.HttpContent;
+import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
+import org.eclipse.jetty.util.IncludeExclude;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.resource.Resource;
@@ -43,24 +53,65 @@ import org.eclipse.jetty.util.resource.ResourceFactory;
 
 /* ------------------------------------------------------------ */
 /** 
- * 
+ * Cache of static content with segmented LRU eviction.
+ * <p>
+ * A new entry goes to the head of the probationary segment, a hit on it
+ * promotes it to the head of the protected segment, which is limited
+ * to {@link #PROTECTED_PERCENT} of the cache limits, so a scan of many
+ * files touched once can not flush out the frequently used ones.
+ * Overflow of the protected segment is demoted back to the probationary one.
+ * The least recently used entry of the probationary segment is evicted first.
+ * All of touch, promote and evict are O(1).
+ * </p>
+ * <p>
+ * Hits only try the LRU lock, so a request thread never waits for it,
+ * the recency is just not updated in that case.
+ * </p>
+ * <p>
+ * If {@link #setCompressedVariants(boolean)} is set, the cached content of a
+ * compressible mime type may have gzip and deflate variants.  A variant is
+ * compressed only once, by the compress executor (or by the first thread that
+ * asks for it if there is none), it is kept next to the identity content and it
+ * is counted to the cache size.  Until it is ready, the identity content is served.
+ * See {@link #getCompressedContent(HttpContent, String)}.
+ * </p>
  */
 public class ResourceCache
 {
     private static final Logger LOG = Log.getLogger(ResourceCache.class);
 
+    /** Part of maximum size and files that can be held by the protected segment. */
+    public static final int PROTECTED_PERCENT=80;
+
+    /** Content-Encoding of compressed variants, in the order of preference. */
+    private static final String[] ENCODINGS={"gzip","deflate"};
+    /** Variant slot markers for compression in progress and for not worth compressing. */
+    private static final Object PENDING=new Object();
+    private static final Object NONE=new Object();
+
     private final ConcurrentMap<String,Content> _cache;
     private final AtomicInteger _cachedSize;
     private final AtomicInteger _cachedFiles;
+    private final AtomicLong _residentBytes=new AtomicLong();
+    private final AtomicLong _hits=new AtomicLong();
+    private final AtomicLong _misses=new AtomicLong();
+    private final AtomicLong _evictions=new AtomicLong();
+    private final ReentrantLock _lruLock=new ReentrantLock();
+    private final Segment _probation=new Segment();
+    private final Segment _protected=new Segment();
     private final ResourceFactory _factory;
     private final ResourceCache _parent;
     private final MimeTypes _mimeTypes;
     private final boolean _etagSupported;
     private final boolean  _useFileMappedBuffer;
+    private final IncludeExclude<String> _compressMimeTypes=new IncludeExclude<>();
     
     private int _maxCachedFileSize =128*1024*1024;
     private int _maxCachedFiles=2048;
     private int _maxCacheSize =256*1024*1024;
+    private boolean _compressedVariants=false;
+    private int _minCompressSize=256;
+    private Executor _compressExecutor;
     
     /* ------------------------------------------------------------ */
     /** Constructor.
@@ -76,6 +127,13 @@ public class ResourceCache
         _parent=parent;
         _useFileMappedBuffer=useFileMappedBuffer;
         _etagSupported=etags;
+
+        for (String type : MimeTypes.getKnownMimeTypes())
+        {
+            if (type.startsWith("text/") || type.endsWith("/javascript") || type.endsWith("/json") ||
+                type.endsWith("xml") || type.endsWith("+json"))
+                _compressMimeTypes.include(type);
+        }
     }
 
     /* ------------------------------------------------------------ */
@@ -89,6 +147,54 @@ public class ResourceCache
     {
         return _cachedFiles.get();
     }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the bytes of the content buffers that are actually loaded
+     * into memory (heap and direct, but not file mapped)
+     */
+    public long getResidentBytes()
+    {
+        return _residentBytes.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the count of lookups served from this cache
+     */
+    public long getHits()
+    {
+        return _hits.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the count of lookups that were not in this cache
+     */
+    public long getMisses()
+    {
+        return _misses.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the hits to all lookups ratio, 0 if there was no lookup
+     */
+    public double getHitRatio()
+    {
+        long hits=_hits.get();
+        long total=hits+_misses.get();
+        return total==0?0.0:((double)hits)/total;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the count of entries evicted to fit the cache limits
+     */
+    public long getEvictions()
+    {
+        return _evictions.get();
+    }
     
     /* ------------------------------------------------------------ */
     public int getMaxCachedFileSize()
@@ -141,6 +247,131 @@ public class ResourceCache
         return _useFileMappedBuffer;
     }
 
+    /* ------------------------------------------------------------ */
+    public boolean isCompressedVariants()
+    {
+        return _compressedVariants;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param compressedVariants True if gzip and deflate variants of compressible content are cached
+     */
+    public void setCompressedVariants(boolean compressedVariants)
+    {
+        _compressedVariants = compressedVariants;
+    }
+
+    /* ------------------------------------------------------------ */
+    public int getMinCompressSize()
+    {
+        return _minCompressSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param minCompressSize Content smaller than this is not compressed
+     */
+    public void setMinCompressSize(int minCompressSize)
+    {
+        _minCompressSize = minCompressSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    public Executor getCompressExecutor()
+    {
+        return _compressExecutor;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param executor The executor that compresses variants in the background, 
+     * or null to compress them by the first request that asks for them.
+     */
+    public void setCompressExecutor(Executor executor)
+    {
+        _compressExecutor = executor;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return The mime types that are compressed, initially the text, javascript, 
+     * json and xml types known by {@link MimeTypes}. 
+     */
+    public IncludeExclude<String> getCompressMimeTypes()
+    {
+        return _compressMimeTypes;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param content The content
+     * @return True if compressed variants of the content may be cached
+     */
+    public boolean isCompressible(HttpContent content)
+    {
+        if (!_compressedVariants || !(content instanceof Content))
+            return false;
+        String type=content.getContentType();
+        if (type==null || content.getContentLength()<_minCompressSize)
+            return false;
+        return _compressMimeTypes.matches(MimeTypes.getContentTypeWithoutCharset(type));
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Get the compressed variant of cached content.
+     * <p>
+     * The first call for an encoding schedules the compression, the variant is
+     * returned by calls after it is done.  It is not kept if it is not smaller
+     * than the identity content by at least an eighth.
+     * </p>
+     * @param content The identity content returned by {@link #lookup(String)}
+     * @param acceptEncoding The Accept-Encoding request header
+     * @return The variant with the preferred acceptable encoding, or null if the
+     * identity content has to be served.
+     */
+    public HttpContent getCompressedContent(HttpContent content, String acceptEncoding)
+    {
+        if (acceptEncoding==null || !isCompressible(content))
+            return null;
+        int index=HttpFields.selectContentCoding(acceptEncoding,ENCODINGS);
+        if (index<0)
+            return null;
+        return ((Content)content).getVariant(index);
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Compress a buffer.
+     * @param buffer The identity content
+     * @param encoding The content encoding, gzip or deflate
+     * @return The compressed bytes
+     * @throws IOException If the compression failed
+     */
+    protected ByteBuffer compress(ByteBuffer buffer, String encoding) throws IOException
+    {
+        ByteArrayOutputStream2 bout=new ByteArrayOutputStream2(Math.max(64,buffer.remaining()/3));
+        if ("gzip".equals(encoding))
+        {
+            try (GZIPOutputStream out = new GZIPOutputStream(bout,8192))
+            {
+                BufferUtil.writeTo(buffer,out);
+            }
+        }
+        else
+        {
+            Deflater deflater=new Deflater();
+            try (DeflaterOutputStream out = new DeflaterOutputStream(bout,deflater,8192))
+            {
+                BufferUtil.writeTo(buffer,out);
+            }
+            finally
+            {
+                deflater.end();
+            }
+        }
+        return ByteBuffer.wrap(bout.getBuf(),0,bout.getCount());
+    }
+
     /* ------------------------------------------------------------ */
     public void flushCache()
     {
@@ -175,7 +406,12 @@ public class ResourceCache
         // Is the content in this cache?
         Content content =_cache.get(pathInContext);
         if (content!=null && (content).isValid())
+        {
+            _hits.incrementAndGet();
+            touch(content);
             return content;
+        }
+        _misses.incrementAndGet();
        
         // try loading the content from our factory.
         Resource resource=_factory.getResource(pathInContext);
@@ -232,6 +468,8 @@ public class ResourceCache
                 content.invalidate();
                 content=added;
             }
+            else
+                link(content);
 
             return content;
         }
@@ -246,38 +484,90 @@ public class ResourceCache
         // While we need to shrink
         while (_cache.size()>0 && (_cachedFiles.get()>_maxCachedFiles || _cachedSize.get()>_maxCacheSize))
         {
-            // Scan the entire cache and generate an ordered list by last accessed time.
-            SortedSet<Content> sorted= new TreeSet<Content>(
-                    new Comparator<Content>()
-                    {
-                        public int compare(Content c1, Content c2)
-                        {
-                            if (c1._lastAccessed<c2._lastAccessed)
-                                return -1;
-                            
-                            if (c1._lastAccessed>c2._lastAccessed)
-                                return 1;
-
-                            if (c1._length<c2._length)
-                                return -1;
-                            
-                            return c1._key.compareTo(c2._key);
-                        }
-                    });
-            for (Content content : _cache.values())
-                sorted.add(content);
-            
-            // Invalidate least recently used first
-            for (Content content : sorted)
+            // Take the least recently used, probationary first
+            Content victim;
+            _lruLock.lock();
+            try
+            {
+                victim=_probation._tail!=null?_probation._tail:_protected._tail;
+                if (victim!=null)
+                    unlink(victim);
+            }
+            finally
+            {
+                _lruLock.unlock();
+            }
+
+            if (victim==null)
+                break;
+            if (victim==_cache.remove(victim.getKey()))
             {
-                if (_cachedFiles.get()<=_maxCachedFiles && _cachedSize.get()<=_maxCacheSize)
-                    break;
-                if (content==_cache.remove(content.getKey()))
-                    content.invalidate();
+                victim.invalidate();
+                _evictions.incrementAndGet();
             }
         }
     }
-    
+
+    /* ------------------------------------------------------------ */
+    /** Adds new cached content to the head of the probationary segment.
+     */
+    private void link(Content content)
+    {
+        _lruLock.lock();
+        try
+        {
+            if (content._segment==null && !content._invalid)
+                _probation.addFirst(content);
+        }
+        finally
+        {
+            _lruLock.unlock();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Removes content from its segment, it must be called under LRU lock.
+     */
+    private void unlink(Content content)
+    {
+        if (content._segment!=null)
+            content._segment.remove(content);
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Records a hit, it never waits for the LRU lock.
+     */
+    private void touch(Content content)
+    {
+        // already the most recently used
+        if (content==_protected._head)
+            return;
+        if (!_lruLock.tryLock())
+            return;
+        try
+        {
+            Segment segment=content._segment;
+            if (segment==null)
+                return;
+            segment.remove(content);
+            _protected.addFirst(content);
+
+            // demote overflow of protected to probationary
+            long maxBytes=((long)_maxCacheSize)*PROTECTED_PERCENT/100;
+            long maxFiles=((long)_maxCachedFiles)*PROTECTED_PERCENT/100;
+            while (_protected._tail!=content && (_protected._bytes>maxBytes || _protected._count>maxFiles))
+            {
+                Content demoted=_protected._tail;
+                _protected.remove(demoted);
+                _probation.addFirst(demoted);
+            }
+        }
+        finally
+        {
+            _lruLock.unlock();
+        }
+    }
+
     /* ------------------------------------------------------------ */
     protected ByteBuffer getIndirectBuffer(Resource resource)
     {
@@ -333,6 +623,14 @@ public class ResourceCache
         volatile long _lastAccessed;
         AtomicReference<ByteBuffer> _indirectBuffer=new AtomicReference<ByteBuffer>();
         AtomicReference<ByteBuffer> _directBuffer=new AtomicReference<ByteBuffer>();
+        // compressed variants by index of ENCODINGS: null, PENDING, NONE or CompressedContent
+        final AtomicReferenceArray<Object> _variants=new AtomicReferenceArray<Object>(ENCODINGS.length);
+
+        // LRU links, guarded by _lruLock
+        Segment _segment;
+        Content _prev;
+        Content _next;
+        volatile boolean _invalid;
 
         /* ------------------------------------------------------------ */
         Content(String pathInContext,Resource resource)
@@ -404,12 +702,117 @@ public class ResourceCache
         /* ------------------------------------------------------------ */
         protected void invalidate()
         {
+            _lruLock.lock();
+            try
+            {
+                _invalid=true;
+                unlink(this);
+            }
+            finally
+            {
+                _lruLock.unlock();
+            }
+
             // Invalidate it
             _cachedSize.addAndGet(-_length);
             _cachedFiles.decrementAndGet();
+            ByteBuffer indirect=_indirectBuffer.getAndSet(null);
+            if (indirect!=null)
+                _residentBytes.addAndGet(-indirect.capacity());
+            ByteBuffer direct=_directBuffer.getAndSet(null);
+            if (direct!=null && !(direct instanceof MappedByteBuffer))
+                _residentBytes.addAndGet(-direct.capacity());
+            for (int i=0;i<_variants.length();i++)
+            {
+                Object variant=_variants.getAndSet(i,NONE);
+                if (variant instanceof CompressedContent)
+                    ((CompressedContent)variant).uncount();
+            }
             _resource.close(); 
         }
 
+        /* ------------------------------------------------------------ */
+        /**
+         * @param index The index of the encoding
+         * @return The compressed variant if it is ready, else null
+         */
+        CompressedContent getVariant(final int index)
+        {
+            Object variant=_variants.get(index);
+            if (variant instanceof CompressedContent)
+                return (CompressedContent)variant;
+            if (variant!=null || _invalid || !_variants.compareAndSet(index,null,PENDING))
+                return null;
+
+            Executor executor=_compressExecutor;
+            if (executor!=null)
+            {
+                try
+                {
+                    executor.execute(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            compressVariant(index);
+                        }
+                    });
+                    return null;
+                }
+                catch(RejectedExecutionException e)
+                {
+                    // try again on a later request
+                    LOG.ignore(e);
+                    _variants.compareAndSet(index,PENDING,null);
+                    return null;
+                }
+            }
+
+            compressVariant(index);
+            variant=_variants.get(index);
+            return (variant instanceof CompressedContent)?(CompressedContent)variant:null;
+        }
+
+        /* ------------------------------------------------------------ */
+        private void compressVariant(int index)
+        {
+            Object result=NONE;
+            try
+            {
+                ByteBuffer identity=getIndirectBuffer();
+                if (identity!=null)
+                {
+                    ByteBuffer compressed=compress(identity,ENCODINGS[index]);
+                    // keep it only if it saves at least an eighth
+                    if (compressed.remaining()<=_length-(_length>>3))
+                        result=new CompressedContent(this,ENCODINGS[index],compressed);
+                }
+            }
+            catch(Throwable e)
+            {
+                LOG.warn("Could not compress "+this,e);
+            }
+
+            if (result instanceof CompressedContent)
+            {
+                // counted before it is visible, so invalidate can always uncount it
+                CompressedContent variant=(CompressedContent)result;
+                variant.count();
+                if (!_variants.compareAndSet(index,PENDING,variant))
+                    variant.uncount();
+                else if (_invalid && _variants.compareAndSet(index,variant,NONE))
+                    variant.uncount();
+                else
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("compressed {} {}->{}",this,_length,variant.getContentLength());
+                    shrinkCache();
+                }
+            }
+            else
+                _variants.compareAndSet(index,PENDING,NONE);
+        }
+
         /* ------------------------------------------------------------ */
         @Override
         public String getLastModified()
@@ -442,10 +845,22 @@ public class ResourceCache
                 
                 if (buffer2==null)
                     LOG.warn("Could not load "+this);
-                else if (_indirectBuffer.compareAndSet(null,buffer2))
-                    buffer=buffer2;
                 else
-                    buffer=_indirectBuffer.get();
+                {
+                    // counted before it is visible, so invalidate can always uncount it
+                    _residentBytes.addAndGet(buffer2.capacity());
+                    if (_indirectBuffer.compareAndSet(null,buffer2))
+                    {
+                        buffer=buffer2;
+                        if (_invalid && _indirectBuffer.compareAndSet(buffer2,null))
+                            _residentBytes.addAndGet(-buffer2.capacity());
+                    }
+                    else
+                    {
+                        _residentBytes.addAndGet(-buffer2.capacity());
+                        buffer=_indirectBuffer.get();
+                    }
+                }
             }
             if (buffer==null)
                 return null;
@@ -464,10 +879,23 @@ public class ResourceCache
 
                 if (buffer2==null)
                     LOG.warn("Could not load "+this);
-                else if (_directBuffer.compareAndSet(null,buffer2))
-                    buffer=buffer2;
                 else
-                    buffer=_directBuffer.get();
+                {
+                    // counted before it is visible, so invalidate can always uncount it
+                    int resident=(buffer2 instanceof MappedByteBuffer)?0:buffer2.capacity();
+                    _residentBytes.addAndGet(resident);
+                    if (_directBuffer.compareAndSet(null,buffer2))
+                    {
+                        buffer=buffer2;
+                        if (_invalid && _directBuffer.compareAndSet(buffer2,null))
+                            _residentBytes.addAndGet(-resident);
+                    }
+                    else
+                    {
+                        _residentBytes.addAndGet(-resident);
+                        buffer=_directBuffer.get();
+                    }
+                }
             }
             if (buffer==null)
                 return null;
@@ -507,4 +935,185 @@ public class ResourceCache
             return String.format("CachedContent@%x{r=%s,e=%b,lm=%s,ct=%s}",hashCode(),_resource,_resource.exists(),BufferUtil.toString(_lastModifiedBytes),_contentType);
         }   
     }
+
+    /* ------------------------------------------------------------ */
+    /* ------------------------------------------------------------ */
+    /** Compressed variant of cached content.
+     * <p>
+     * All but the bytes, the length and the ETag are those of the identity content.
+     * The ETag has the encoding appended, so a cache never mixes the variants.
+     * </p>
+     */
+    public class CompressedContent implements HttpContent
+    {
+        private final Content _content;
+        private final String _encoding;
+        private final ByteBuffer _buffer;
+        private final String _etag;
+
+        /* ------------------------------------------------------------ */
+        CompressedContent(Content content, String encoding, ByteBuffer buffer)
+        {
+            _content=content;
+            _encoding=encoding;
+            _buffer=buffer;
+            String etag=content.getETag();
+            if (etag!=null && etag.endsWith("\""))
+                _etag=etag.substring(0,etag.length()-1)+"--"+encoding+"\"";
+            else
+                _etag=etag;
+        }
+
+        /* ------------------------------------------------------------ */
+        private void count()
+        {
+            _cachedSize.addAndGet(_buffer.remaining());
+            _residentBytes.addAndGet(_buffer.remaining());
+        }
+
+        /* ------------------------------------------------------------ */
+        private void uncount()
+        {
+            _cachedSize.addAndGet(-_buffer.remaining());
+            _residentBytes.addAndGet(-_buffer.remaining());
+        }
+
+        /* ------------------------------------------------------------ */
+        /**
+         * @return The Content-Encoding of this variant
+         */
+        public String getContentEncoding()
+        {
+            return _encoding;
+        }
+
+        /* ------------------------------------------------------------ */
+        /**
+         * @return The identity content
+         */
+        public HttpContent getContent()
+        {
+            return _content;
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public String getContentType()
+        {
+            return _content.getContentType();
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public String getLastModified()
+        {
+            return _content.getLastModified();
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public ByteBuffer getIndirectBuffer()
+        {
+            return _buffer.slice();
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public ByteBuffer getDirectBuffer()
+        {
+            return null;
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public String getETag()
+        {
+            return _etag;
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public Resource getResource()
+        {
+            return _content.getResource();
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public long getContentLength()
+        {
+            return _buffer.remaining();
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            return new ByteArrayInputStream(_buffer.array(),_buffer.arrayOffset()+_buffer.position(),_buffer.remaining());
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public ReadableByteChannel getReadableByteChannel() throws IOException
+        {
+            return Channels.newChannel(getInputStream());
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public void release()
+        {
+            // released with the identity content
+        }
+
+        /* ------------------------------------------------------------ */
+        @Override
+        public String toString()
+        {
+            return String.format("CompressedContent@%x{%s,l=%d,%s}",hashCode(),_encoding,_buffer.remaining(),_content);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /* ------------------------------------------------------------ */
+    /** Doubly linked LRU list of contents, guarded by the LRU lock.
+     */
+    private static class Segment
+    {
+        Content _head;
+        Content _tail;
+        long _bytes;
+        int _count;
+
+        void addFirst(Content content)
+        {
+            content._segment=this;
+            content._prev=null;
+            content._next=_head;
+            if (_head!=null)
+                _head._prev=content;
+            _head=content;
+            if (_tail==null)
+                _tail=content;
+            _bytes+=content._length;
+            _count++;
+        }
+
+        void remove(Content content)
+        {
+            if (content._prev!=null)
+                content._prev._next=content._next;
+            else
+                _head=content._next;
+            if (content._next!=null)
+                content._next._prev=content._prev;
+            else
+                _tail=content._prev;
+            content._segment=null;
+            content._prev=null;
+            content._next=null;
+            _bytes-=content._length;
+            _count--;
+        }
+    }
 }
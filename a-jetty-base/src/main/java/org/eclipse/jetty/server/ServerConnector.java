@@ -369,8 +369,9 @@ public class ServerConnector extends AbstractNetworkConnector
     }
 
     @Override
-    public void accept(int acceptorID) throws IOException
+    public void accept(int acceptorID) throws IOException, InterruptedException
     {
+        awaitAcceptable();
         ServerSocketChannel serverChannel = _acceptChannel;
         if (serverChannel != null && serverChannel.isOpen())
         {
@@ -381,10 +382,28 @@ public class ServerConnector extends AbstractNetworkConnector
     
     private void accepted(SocketChannel channel) throws IOException
     {
-        channel.configureBlocking(false);
-        Socket socket = channel.socket();
-        configure(socket);
-        _manager.accept(channel);
+        acquireConnection();
+        boolean accepted = false;
+        try
+        {
+            channel.configureBlocking(false);
+            Socket socket = channel.socket();
+            configure(socket);
+            _manager.accept(channel);
+            accepted = true;
+        }
+        finally
+        {
+            if (!accepted)
+                releaseConnection();
+        }
+    }
+
+    @Override
+    protected void onAcceptResumed()
+    {
+        super.onAcceptResumed();
+        _manager.resumeAccept();
     }
 
     protected void configure(Socket socket)
@@ -517,8 +536,25 @@ public class ServerConnector extends AbstractNetworkConnector
         {
             onEndPointClosed(endpoint);
             super.endPointClosed(endpoint);
+            releaseConnection();
+        }
+
+        @Override
+        protected void acceptFailed(SocketChannel channel, Throwable cause)
+        {
+            releaseConnection();
+        }
+
+        @Override
+        protected boolean isAcceptable()
+        {
+            return ServerConnector.this.isAcceptable();
+        }
+
+        @Override
+        protected void onAcceptPaused()
+        {
+            pauseAccept();
         }
-        
-        
     }
 }
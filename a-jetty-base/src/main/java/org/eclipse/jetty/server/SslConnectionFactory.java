@@ -20,6 +20,8 @@
 package org.eclipse.jetty.server;
 
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSession;
 
@@ -27,13 +29,46 @@ import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.annotation.Name;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
+/**
+ * <p>A ConnectionFactory for SSL/TLS connections.</p>
+ * <p>If {@link #setDelegatedTaskThreads(int)} is set, then the delegated tasks of the SSL handshakes
+ * (the expensive key exchange computations) are run by a dedicated pool of that many threads,
+ * so that a burst of new connections does not stall the threads handling the established ones.</p>
+ * <p>The buffers of encrypted and decrypted data are acquired from the {@link Connector#getByteBufferPool()}, 
+ * and are direct if {@link #setDirectBuffersForEncryption(boolean)} and/or {@link #setDirectBuffersForDecryption(boolean)}
+ * are set, which avoids a copy of each TLS record between the heap and the socket.</p>
+ * <p>The handshake statistics count the handshakes that resumed a cached session (with a session id or ticket), 
+ * so that the effect of the {@link SslContextFactory} session cache settings can be checked.</p>
+ */
+@ManagedObject("SSL Connection Factory")
 public class SslConnectionFactory extends AbstractConnectionFactory
 {
     private final SslContextFactory _sslContextFactory;
     private final String _nextProtocol;
+    private final SampleStatistic _handshakeStats = new SampleStatistic();
+    private final AtomicLong _handshakesResumed = new AtomicLong();
+    private final SslConnection.HandshakeListener _handshakeListener = new SslConnection.HandshakeListener()
+    {
+        @Override
+        public void handshakeCompleted(SslConnection connection, long micros, boolean resumed)
+        {
+            _handshakeStats.set(micros);
+            if (resumed)
+                _handshakesResumed.incrementAndGet();
+        }
+    };
+    private boolean _directBuffersForEncryption;
+    private boolean _directBuffersForDecryption;
+    private int _delegatedTaskThreads;
+    private QueuedThreadPool _delegatedTaskExecutor;
 
     public SslConnectionFactory()
     {
@@ -58,9 +93,113 @@ public class SslConnectionFactory extends AbstractConnectionFactory
         return _sslContextFactory;
     }
 
+    @ManagedAttribute("whether the buffers of encrypted data are direct")
+    public boolean isDirectBuffersForEncryption()
+    {
+        return _directBuffersForEncryption;
+    }
+
+    /**
+     * @param useDirectBuffers whether the buffers of encrypted data, read from and written to the network, are direct
+     */
+    public void setDirectBuffersForEncryption(boolean useDirectBuffers)
+    {
+        _directBuffersForEncryption = useDirectBuffers;
+    }
+
+    @ManagedAttribute("whether the buffers of decrypted data are direct")
+    public boolean isDirectBuffersForDecryption()
+    {
+        return _directBuffersForDecryption;
+    }
+
+    /**
+     * @param useDirectBuffers whether the buffers of decrypted data are direct
+     */
+    public void setDirectBuffersForDecryption(boolean useDirectBuffers)
+    {
+        _directBuffersForDecryption = useDirectBuffers;
+    }
+
+    /**
+     * @return the number of threads running the delegated tasks of SSL handshakes, or 0 if they are
+     * run by the threads filling and flushing the connections
+     */
+    @ManagedAttribute("number of threads running the delegated tasks of SSL handshakes")
+    public int getDelegatedTaskThreads()
+    {
+        return _delegatedTaskThreads;
+    }
+
+    /**
+     * @param threads the number of threads running the delegated tasks of SSL handshakes, or 0 to run them
+     * in the threads filling and flushing the connections
+     */
+    public void setDelegatedTaskThreads(int threads)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        _delegatedTaskThreads = threads;
+    }
+
+    @ManagedAttribute("number of completed SSL handshakes")
+    public long getHandshakes()
+    {
+        return _handshakeStats.getCount();
+    }
+
+    @ManagedAttribute("number of completed SSL handshakes that resumed a cached session")
+    public long getHandshakesResumed()
+    {
+        return _handshakesResumed.get();
+    }
+
+    /**
+     * @return the ratio of the handshakes that resumed a cached session to all the handshakes
+     */
+    @ManagedAttribute("ratio of the SSL handshakes that resumed a cached session")
+    public double getHandshakeResumptionRatio()
+    {
+        long handshakes = _handshakeStats.getCount();
+        return handshakes == 0 ? 0.0 : (double)_handshakesResumed.get() / handshakes;
+    }
+
+    @ManagedAttribute("mean time in microseconds from accepting a connection to completing its SSL handshake")
+    public double getHandshakeTimeMean()
+    {
+        return _handshakeStats.getMean();
+    }
+
+    @ManagedAttribute("maximum time in microseconds from accepting a connection to completing its SSL handshake")
+    public long getHandshakeTimeMax()
+    {
+        return _handshakeStats.getMax();
+    }
+
+    @ManagedAttribute("standard deviation of the time in microseconds to complete an SSL handshake")
+    public double getHandshakeTimeStdDev()
+    {
+        return _handshakeStats.getStdDev();
+    }
+
+    @ManagedOperation("resets the SSL handshake statistics")
+    public void handshakeStatsReset()
+    {
+        _handshakeStats.reset();
+        _handshakesResumed.set(0);
+    }
+
     @Override
     protected void doStart() throws Exception
     {
+        if (_delegatedTaskThreads > 0)
+        {
+            _delegatedTaskExecutor = new QueuedThreadPool(_delegatedTaskThreads, 1);
+            _delegatedTaskExecutor.setName(String.format("ssl-tasks-%x",hashCode()));
+            _delegatedTaskExecutor.setDaemon(true);
+            addBean(_delegatedTaskExecutor,true);
+        }
+
         super.doStart();
 
         SSLEngine engine = _sslContextFactory.newSSLEngine();
@@ -71,6 +210,18 @@ public class SslConnectionFactory extends AbstractConnectionFactory
             setInputBufferSize(session.getPacketBufferSize());
     }
 
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+
+        if (_delegatedTaskExecutor != null)
+        {
+            removeBean(_delegatedTaskExecutor);
+            _delegatedTaskExecutor = null;
+        }
+    }
+
     @Override
     public Connection newConnection(Connector connector, EndPoint endPoint)
     {
@@ -79,6 +230,8 @@ public class SslConnectionFactory extends AbstractConnectionFactory
 
         SslConnection sslConnection = newSslConnection(connector, endPoint, engine);
         sslConnection.setRenegotiationAllowed(_sslContextFactory.isRenegotiationAllowed());
+        sslConnection.setDelegatedTaskExecutor(_delegatedTaskExecutor);
+        sslConnection.setHandshakeListener(_handshakeListener);
         configure(sslConnection, connector, endPoint);
 
         ConnectionFactory next = connector.getConnectionFactory(_nextProtocol);
@@ -91,7 +244,8 @@ public class SslConnectionFactory extends AbstractConnectionFactory
 
     protected SslConnection newSslConnection(Connector connector, EndPoint endPoint, SSLEngine engine)
     {
-        return new SslConnection(connector.getByteBufferPool(), connector.getExecutor(), endPoint, engine);
+        return new SslConnection(connector.getByteBufferPool(), connector.getExecutor(), endPoint, engine,
+            isDirectBuffersForEncryption(), isDirectBuffersForDecryption());
     }
 
     @Override
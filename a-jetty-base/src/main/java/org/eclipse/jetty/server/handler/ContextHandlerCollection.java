@@ -75,9 +75,11 @@ public class ContextHandlerCollection extends HandlerCollection
     /* ------------------------------------------------------------ */
     /**
      * Remap the context paths.
+     * Synchronized with {@link #addHandler(Handler)} and {@link #removeHandler(Handler)}, as contexts deployed
+     * in parallel may remap their paths concurrently.
      */
     @ManagedOperation("update the mapping of context path to context")
-    public void mapContexts()
+    public synchronized void mapContexts()
     {
         _contextBranches.clear();
         
@@ -0,0 +1,358 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.IncludeExclude;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/* ------------------------------------------------------------ */
+/** A Handler that gzip compresses the content of dynamic responses.
+ * <p>
+ * The content is compressed while it is written, by a {@link GzipHttpOutputInterceptor}
+ * installed on the {@link HttpOutput} of a request that accepts gzip, so blocking,
+ * async and {@link HttpOutput#sendContent(org.eclipse.jetty.http.HttpContent)} writes are
+ * all compressed without aggregating the whole response.
+ * Whether a response is compressed is decided when its first content is written:
+ * </p>
+ * <ul>
+ * <li>the status must be 200 to 299, but not 204 or 205;</li>
+ * <li>it must not already have a Content-Encoding (eg precompressed static content);</li>
+ * <li>its mime type must match the included/excluded mime types, by default all
+ * types except the images, audio, video and archives known by {@link MimeTypes};</li>
+ * <li>its Content-Length, if known, must be at least the {@link #getMinGzipSize()}.</li>
+ * </ul>
+ * <p>
+ * A compressed response has no Content-Length and its ETag has "--gzip" appended.
+ * Output buffers are taken from the connector's ByteBufferPool and {@link Deflater}s
+ * are pooled by this handler.
+ * </p>
+ * <pre>
+ *   &lt;New id='gzipHandler' class='org.eclipse.jetty.server.handler.GzipHandler'>
+ *     &lt;Set name='Handler'>&lt;Ref id='handler'/>&lt;/Set>
+ *     &lt;Set name='MinGzipSize'>512&lt;/Set>
+ *   &lt;/New>
+ * </pre>
+ */
+@ManagedObject("Gzip compression of responses")
+public class GzipHandler extends HandlerWrapper
+{
+    private static final Logger LOG = Log.getLogger(GzipHandler.class);
+
+    public static final String GZIP = "gzip";
+    public static final String ETAG_GZIP="--gzip";
+    public static final int DEFAULT_MIN_GZIP_SIZE=256;
+
+    private final IncludeExclude<String> _methods=new IncludeExclude<>();
+    private final IncludeExclude<String> _mimeTypes=new IncludeExclude<>();
+    private final Queue<Deflater> _deflaters=new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _pooledDeflaters=new AtomicInteger();
+    private int _minGzipSize=DEFAULT_MIN_GZIP_SIZE;
+    private int _compressionLevel=Deflater.DEFAULT_COMPRESSION;
+    private int _deflaterPoolCapacity=64;
+    private boolean _syncFlush=false;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Instantiates a new gzip handler.
+     * The excluded Mime Types are initialized to common known
+     * images, audio, video and other already compressed types.
+     * The included methods is initialized to GET.
+     */
+    public GzipHandler()
+    {
+        _methods.include(HttpMethod.GET.asString());
+        for (String type:MimeTypes.getKnownMimeTypes())
+        {
+            if ("image/svg+xml".equals(type))
+                continue;
+            if (type.startsWith("image/")||
+                type.startsWith("audio/")||
+                type.startsWith("video/"))
+                _mimeTypes.exclude(type);
+        }
+        _mimeTypes.exclude("application/compress");
+        _mimeTypes.exclude("application/zip");
+        _mimeTypes.exclude("application/gzip");
+        _mimeTypes.exclude("application/x-gzip");
+        _mimeTypes.exclude("application/bzip2");
+        _mimeTypes.exclude("application/x-bzip2");
+        _mimeTypes.exclude("application/x-rar-compressed");
+        _mimeTypes.exclude("application/java-archive");
+        _mimeTypes.exclude("application/octet-stream");
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param types The mime types to exclude (without charset or other parameters)
+     */
+    public void addExcludedMimeTypes(String... types)
+    {
+        _mimeTypes.exclude(types);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param types The mime types to include (without charset or other parameters).
+     * If any are included, only those are compressed.
+     */
+    public void addIncludedMimeTypes(String... types)
+    {
+        _mimeTypes.include(types);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param methods The methods to include, initially GET only
+     */
+    public void addIncludedMethods(String... methods)
+    {
+        _methods.include(methods);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param methods The methods to exclude
+     */
+    public void addExcludedMethods(String... methods)
+    {
+        _methods.exclude(methods);
+    }
+
+    /* ------------------------------------------------------------ */
+    public String[] getExcludedMimeTypes()
+    {
+        return _mimeTypes.getExcluded().toArray(new String[0]);
+    }
+
+    /* ------------------------------------------------------------ */
+    public String[] getIncludedMimeTypes()
+    {
+        return _mimeTypes.getIncluded().toArray(new String[0]);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param types The mime types to exclude, replacing the default ones
+     */
+    public void setExcludedMimeTypes(String... types)
+    {
+        _mimeTypes.getExcluded().clear();
+        _mimeTypes.exclude(types);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param types The mime types to include, replacing any included ones
+     */
+    public void setIncludedMimeTypes(String... types)
+    {
+        _mimeTypes.getIncluded().clear();
+        _mimeTypes.include(types);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param mimeType The mime type without charset
+     * @return True if content of this type may be compressed
+     */
+    public boolean isMimeTypeGzipable(String mimeType)
+    {
+        return _mimeTypes.matches(mimeType);
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("minimum response size to compress")
+    public int getMinGzipSize()
+    {
+        return _minGzipSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param minGzipSize Responses with a known Content-Length smaller than this are not compressed
+     */
+    public void setMinGzipSize(int minGzipSize)
+    {
+        _minGzipSize = minGzipSize;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("deflater compression level")
+    public int getCompressionLevel()
+    {
+        return _compressionLevel;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param compressionLevel The {@link Deflater} level, 1 (fastest) to 9 (best)
+     */
+    public void setCompressionLevel(int compressionLevel)
+    {
+        _compressionLevel = compressionLevel;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("maximum count of pooled deflaters")
+    public int getDeflaterPoolCapacity()
+    {
+        return _deflaterPoolCapacity;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param capacity The maximum count of idle {@link Deflater}s kept for reuse
+     */
+    public void setDeflaterPoolCapacity(int capacity)
+    {
+        _deflaterPoolCapacity = capacity;
+    }
+
+    /* ------------------------------------------------------------ */
+    public boolean isSyncFlush()
+    {
+        return _syncFlush;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param syncFlush True if every write of the HttpOutput also flushes the
+     * deflater, so the client can always decompress all that was written so far.
+     * This costs some compression.  If false, only a flush when there is no
+     * content aggregated in the HttpOutput flushes the deflater.
+     */
+    public void setSyncFlush(boolean syncFlush)
+    {
+        _syncFlush = syncFlush;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("count of pooled deflaters")
+    public int getPooledDeflaters()
+    {
+        return _pooledDeflaters.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return A raw (nowrap) deflater, from the pool if possible
+     */
+    public Deflater getDeflater()
+    {
+        Deflater deflater=_deflaters.poll();
+        if (deflater==null)
+            return new Deflater(_compressionLevel,true);
+        _pooledDeflaters.decrementAndGet();
+        return deflater;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param deflater A deflater obtained from {@link #getDeflater()}
+     */
+    public void recycle(Deflater deflater)
+    {
+        if (_pooledDeflaters.incrementAndGet()>_deflaterPoolCapacity || !isRunning())
+        {
+            _pooledDeflaters.decrementAndGet();
+            deflater.end();
+            return;
+        }
+        deflater.reset();
+        _deflaters.offer(deflater);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        Deflater deflater;
+        while ((deflater=_deflaters.poll())!=null)
+        {
+            _pooledDeflaters.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        if (!_methods.matches(baseRequest.getMethod()))
+        {
+            _handler.handle(target,baseRequest,request,response);
+            return;
+        }
+
+        // Exclude by mime type of the path, the type of the response is checked on commit
+        String mimeType=baseRequest.getServletContext()==null?null:baseRequest.getServletContext().getMimeType(target);
+        if (mimeType!=null && !isMimeTypeGzipable(MimeTypes.getContentTypeWithoutCharset(mimeType)))
+        {
+            _handler.handle(target,baseRequest,request,response);
+            return;
+        }
+
+        // Already compressing, eg forwarded
+        HttpOutput out=baseRequest.getResponse().getHttpOutput();
+        if (out.getInterceptor() instanceof GzipHttpOutputInterceptor)
+        {
+            _handler.handle(target,baseRequest,request,response);
+            return;
+        }
+
+        // The response may vary by accept-encoding
+        response.addHeader(HttpHeader.VARY.asString(),HttpHeader.ACCEPT_ENCODING.asString());
+
+        if (HttpFields.selectContentCoding(request.getHeader(HttpHeader.ACCEPT_ENCODING.asString()),GZIP)<0)
+        {
+            _handler.handle(target,baseRequest,request,response);
+            return;
+        }
+
+        // A conditional request for the gzip etag is for the same entity
+        String etag=request.getHeader(HttpHeader.IF_NONE_MATCH.asString());
+        if (etag!=null && etag.contains(ETAG_GZIP))
+            request.setAttribute("o.e.j.s.GzipFilter.ETag",etag.replace(ETAG_GZIP,""));
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} compressing {}",this,baseRequest);
+        out.setInterceptor(new GzipHttpOutputInterceptor(this,baseRequest.getHttpChannel(),out.getInterceptor(),_syncFlush));
+        _handler.handle(target,baseRequest,request,response);
+    }
+}
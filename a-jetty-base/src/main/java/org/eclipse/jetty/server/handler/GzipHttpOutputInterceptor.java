@@ -0,0 +1,361 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritePendingException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IteratingNestedCallback;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/* ------------------------------------------------------------ */
+/** Output interceptor that gzip compresses the content of a response.
+ * <p>
+ * The decision to compress is taken by the first write, see {@link GzipHandler}.
+ * The content is deflated into a heap buffer from the connector's pool, which is
+ * written to the next interceptor whenever it is full, the last content is written
+ * or the response is flushed with no content pending in the HttpOutput (or with
+ * any write if sync flush is set).  Writes are asynchronous, a write callback is
+ * only notified once all of its content is consumed by the deflater.
+ * </p>
+ */
+public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
+{
+    private static final Logger LOG = Log.getLogger(GzipHttpOutputInterceptor.class);
+    private static final byte[] GZIP_HEADER = new byte[] { (byte)0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private enum GZState { MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, FINISHED }
+
+    private final AtomicReference<GZState> _state = new AtomicReference<>(GZState.MIGHT_COMPRESS);
+    private final CRC32 _crc = new CRC32();
+    private final GzipHandler _handler;
+    private final HttpChannel<?> _channel;
+    private final HttpOutput.Interceptor _interceptor;
+    private final boolean _syncFlush;
+
+    private Deflater _deflater;
+    private ByteBuffer _buffer;
+    private ByteBuffer _copy;
+
+    /* ------------------------------------------------------------ */
+    public GzipHttpOutputInterceptor(GzipHandler handler, HttpChannel<?> channel, HttpOutput.Interceptor next, boolean syncFlush)
+    {
+        _handler=handler;
+        _channel=channel;
+        _interceptor=next;
+        _syncFlush=syncFlush;
+    }
+
+    /* ------------------------------------------------------------ */
+    public HttpOutput.Interceptor getNextInterceptor()
+    {
+        return _interceptor;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void write(ByteBuffer content, boolean complete, Callback callback)
+    {
+        switch (_state.get())
+        {
+            case MIGHT_COMPRESS:
+                commit(content,complete,callback);
+                break;
+
+            case NOT_COMPRESSING:
+            case FINISHED:
+                // eg the close after the last content was sent
+                _interceptor.write(content,complete,callback);
+                break;
+
+            case COMMITTING:
+                callback.failed(new WritePendingException());
+                break;
+
+            case COMPRESSING:
+                gzip(content,complete,callback);
+                break;
+
+            default:
+                callback.failed(new IllegalStateException("state="+_state.get()));
+                break;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private void gzip(ByteBuffer content, boolean complete, final Callback callback)
+    {
+        new GzipBufferCB(content,complete,callback).iterate();
+    }
+
+    /* ------------------------------------------------------------ */
+    protected void commit(ByteBuffer content, boolean complete, Callback callback)
+    {
+        Response response = _channel.getResponse();
+        int sc = response.getStatus();
+        if (sc>0 && (sc<200 || sc==204 || sc==205 || sc>=300))
+        {
+            noCompression("status "+sc);
+            _interceptor.write(content,complete,callback);
+            return;
+        }
+
+        HttpFields fields = response.getHttpFields();
+        if (fields.containsKey(HttpHeader.CONTENT_ENCODING.asString()))
+        {
+            noCompression("already encoded");
+            _interceptor.write(content,complete,callback);
+            return;
+        }
+
+        String ct = response.getContentType();
+        if (ct!=null)
+        {
+            ct=MimeTypes.getContentTypeWithoutCharset(ct);
+            if (!_handler.isMimeTypeGzipable(ct))
+            {
+                noCompression("mimeType "+ct);
+                _interceptor.write(content,complete,callback);
+                return;
+            }
+        }
+
+        // The length is known if it was set or if this is all the content
+        long content_length = response.getContentLength();
+        if (content_length<0 && complete)
+            content_length=content.remaining();
+        if (content_length>=0 && content_length<_handler.getMinGzipSize())
+        {
+            noCompression("small "+content_length);
+            _interceptor.write(content,complete,callback);
+            return;
+        }
+
+        if (_state.compareAndSet(GZState.MIGHT_COMPRESS,GZState.COMMITTING))
+        {
+            // The compressed length is not known
+            response.setContentLength(-1);
+            fields.put(HttpHeader.CONTENT_ENCODING,GzipHandler.GZIP);
+            String etag = fields.get(HttpHeader.ETAG);
+            if (etag!=null)
+            {
+                int end = etag.length()-1;
+                etag=(etag.charAt(end)=='"')?etag.substring(0,end)+GzipHandler.ETAG_GZIP+'"':etag+GzipHandler.ETAG_GZIP;
+                fields.put(HttpHeader.ETAG,etag);
+            }
+
+            _crc.reset();
+            _deflater=_handler.getDeflater();
+            _buffer=getByteBufferPool().acquire(_channel.getHttpConfiguration().getOutputBufferSize(),false);
+            BufferUtil.clear(_buffer);
+            BufferUtil.flipToFill(_buffer);
+            _buffer.put(GZIP_HEADER);
+            BufferUtil.flipToFlush(_buffer,0);
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} compressing {}",this,_deflater);
+            _state.set(GZState.COMPRESSING);
+            gzip(content,complete,callback);
+        }
+        else
+            callback.failed(new WritePendingException());
+    }
+
+    /* ------------------------------------------------------------ */
+    private void noCompression(String reason)
+    {
+        if (_state.compareAndSet(GZState.MIGHT_COMPRESS,GZState.NOT_COMPRESSING) && LOG.isDebugEnabled())
+            LOG.debug("{} not compressing {}",this,reason);
+    }
+
+    /* ------------------------------------------------------------ */
+    private ByteBufferPool getByteBufferPool()
+    {
+        return _channel.getByteBufferPool();
+    }
+
+    /* ------------------------------------------------------------ */
+    private void release()
+    {
+        if (_deflater!=null)
+        {
+            _handler.recycle(_deflater);
+            _deflater=null;
+        }
+        if (_buffer!=null)
+        {
+            getByteBufferPool().release(_buffer);
+            _buffer=null;
+        }
+        if (_copy!=null)
+        {
+            getByteBufferPool().release(_copy);
+            _copy=null;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s}",getClass().getSimpleName(),hashCode(),_state.get());
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Deflates the content of one write, writing the buffer each time it is full.
+     */
+    private class GzipBufferCB extends IteratingNestedCallback
+    {
+        private final ByteBuffer _content;
+        private final boolean _last;
+        private boolean _flush;
+
+        public GzipBufferCB(ByteBuffer content, boolean complete, Callback callback)
+        {
+            super(callback);
+            _content=content;
+            _last=complete;
+            // an empty write is a flush
+            _flush=!complete && (_syncFlush || !content.hasRemaining());
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            if (_deflater==null)
+            {
+                // the last buffer has been written
+                if (_state.compareAndSet(GZState.COMPRESSING,GZState.FINISHED))
+                    release();
+                return Action.SUCCEEDED;
+            }
+
+            // keep the bytes not yet written
+            if (BufferUtil.isEmpty(_buffer))
+                BufferUtil.clear(_buffer);
+            else
+                BufferUtil.compact(_buffer);
+
+            while (true)
+            {
+                int flush=Deflater.NO_FLUSH;
+                if (_deflater.needsInput() && !_deflater.finished())
+                {
+                    if (BufferUtil.hasContent(_content))
+                        input();
+                    else if (_last)
+                        _deflater.finish();
+                    else if (_flush)
+                        flush=Deflater.SYNC_FLUSH;
+                    else
+                        return Action.SUCCEEDED;
+                }
+
+                // deflate into the space of the buffer, reserving room for the trailer
+                int limit=_buffer.limit();
+                int space=_buffer.capacity()-limit-GZIP_TRAILER_SIZE;
+                int produced=space<=0?0:_deflater.deflate(_buffer.array(),_buffer.arrayOffset()+limit,space,flush);
+                _buffer.limit(limit+produced);
+
+                if (_deflater.finished())
+                {
+                    trailer();
+                    _handler.recycle(_deflater);
+                    _deflater=null;
+                    _interceptor.write(_buffer,true,this);
+                    return Action.SCHEDULED;
+                }
+
+                if (produced>=space)
+                {
+                    _interceptor.write(_buffer,false,this);
+                    return Action.SCHEDULED;
+                }
+
+                if (flush==Deflater.SYNC_FLUSH)
+                {
+                    _flush=false;
+                    _interceptor.write(_buffer,false,this);
+                    return Action.SCHEDULED;
+                }
+            }
+        }
+
+        private void input()
+        {
+            if (_content.hasArray())
+            {
+                byte[] array=_content.array();
+                int off=_content.arrayOffset()+_content.position();
+                int len=_content.remaining();
+                _crc.update(array,off,len);
+                _deflater.setInput(array,off,len);
+                _content.position(_content.position()+len);
+            }
+            else
+            {
+                // deflater needs an array, so copy a chunk of direct content
+                if (_copy==null)
+                    _copy=getByteBufferPool().acquire(_buffer.capacity(),false);
+                int len=Math.min(_copy.capacity(),_content.remaining());
+                _content.get(_copy.array(),_copy.arrayOffset(),len);
+                _crc.update(_copy.array(),_copy.arrayOffset(),len);
+                _deflater.setInput(_copy.array(),_copy.arrayOffset(),len);
+            }
+        }
+
+        private void trailer()
+        {
+            int i=_buffer.limit();
+            _buffer.limit(i+GZIP_TRAILER_SIZE);
+            int v=(int)_crc.getValue();
+            _buffer.put(i++,(byte)(v & 0xFF));
+            _buffer.put(i++,(byte)((v>>>8) & 0xFF));
+            _buffer.put(i++,(byte)((v>>>16) & 0xFF));
+            _buffer.put(i++,(byte)((v>>>24) & 0xFF));
+            v=(int)_deflater.getBytesRead();
+            _buffer.put(i++,(byte)(v & 0xFF));
+            _buffer.put(i++,(byte)((v>>>8) & 0xFF));
+            _buffer.put(i++,(byte)((v>>>16) & 0xFF));
+            _buffer.put(i++,(byte)((v>>>24) & 0xFF));
+        }
+
+        @Override
+        protected void onCompleteFailure(Throwable x)
+        {
+            if (_state.compareAndSet(GZState.COMPRESSING,GZState.FINISHED))
+                release();
+            super.onCompleteFailure(x);
+        }
+    }
+}
@@ -149,15 +149,16 @@ public class HandlerCollection extends AbstractHandlerContainer
     /* ------------------------------------------------------------ */
     /* Add a handler.
      * This implementation adds the passed handler to the end of the existing collection of handlers.
+     * Synchronized with removeHandler, so handlers added concurrently (eg by parallel deployment) are not lost.
      * @see org.eclipse.jetty.server.server.HandlerContainer#addHandler(org.eclipse.jetty.server.server.Handler)
      */
-    public void addHandler(Handler handler)
+    public synchronized void addHandler(Handler handler)
     {
         setHandlers(ArrayUtil.addToArray(getHandlers(), handler, Handler.class));
     }
 
     /* ------------------------------------------------------------ */
-    public void removeHandler(Handler handler)
+    public synchronized void removeHandler(Handler handler)
     {
         Handler[] handlers = getHandlers();
 
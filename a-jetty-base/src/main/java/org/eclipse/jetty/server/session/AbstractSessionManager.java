@@ -20,6 +20,9 @@ package org.eclipse.jetty.server.session;
 
 import static java.lang.Math.round;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectStreamConstants;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -123,6 +126,7 @@ public abstract class AbstractSessionManager extends ContainerLifeCycle implemen
     protected boolean _nodeIdInSessionId;
     protected boolean _checkingRemoteSessionIdEncoding;
     protected String _sessionComment;
+    protected SessionAttributeCodec _sessionAttributeCodec=new BinarySessionAttributeCodec();
 
     public Set<SessionTrackingMode> _sessionTrackingModes;
 
@@ -601,6 +605,41 @@ public abstract class AbstractSessionManager extends ContainerLifeCycle implemen
         _httpOnly=httpOnly;
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the codec of the attributes of persisted sessions
+     */
+    public SessionAttributeCodec getSessionAttributeCodec()
+    {
+        return _sessionAttributeCodec;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param codec the codec of the attributes of persisted sessions
+     */
+    public void setSessionAttributeCodec(SessionAttributeCodec codec)
+    {
+        if (isRunning())
+            throw new IllegalStateException("Running");
+        _sessionAttributeCodec=codec;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param in a stream that supports mark
+     * @return true if the stream starts with java serialization, as did
+     * attributes persisted before {@link SessionAttributeCodec} was used
+     * @throws IOException
+     */
+    protected static boolean isJavaSerialized(InputStream in) throws IOException
+    {
+        in.mark(2);
+        int magic=(in.read()<<8)|in.read();
+        in.reset();
+        return magic==(ObjectStreamConstants.STREAM_MAGIC&0xFFFF);
+    }
+
     /* ------------------------------------------------------------ */
     /**
      * @param metaManager The metaManager used for cross context session management.
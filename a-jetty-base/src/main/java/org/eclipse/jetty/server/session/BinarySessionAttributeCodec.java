@@ -0,0 +1,436 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
+import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
+
+/* ------------------------------------------------------------ */
+/**
+ * BinarySessionAttributeCodec
+ *
+ * The default {@link SessionAttributeCodec}. Strings, boxed primitives, byte arrays,
+ * dates and small {@link ArrayList}, {@link HashSet} and {@link HashMap} of them are
+ * written in a compact tagged binary format. Any other value is written with java
+ * serialization and read with the context class loader.
+ * <p>
+ * Only exact classes are tagged, so that subclasses are restored as they were.
+ * Collections deeper than {@link #MAX_DEPTH} or bigger than {@link #MAX_COLLECTION}
+ * are serialized.
+ * </p>
+ * <p>
+ * Tagged values are restored as separate copies, so if a collection, byte array,
+ * date or serialized value is referenced more than once (eg by two attributes, or
+ * twice in a list, or by itself), or a serialized value is stored with other such
+ * values that it may reference, then the attributes are instead serialized as a
+ * whole, so that shared objects are restored once, as with plain java serialization.
+ * </p>
+ */
+public class BinarySessionAttributeCodec implements SessionAttributeCodec
+{
+    public static final int MAX_DEPTH=4;
+    public static final int MAX_COLLECTION=1024;
+
+    private static final int MAGIC=0x4A53;
+    private static final int VERSION=1;
+    private static final int VERSION_SERIALIZED=2;
+
+    private static final int NULL=0;
+    private static final int STRING=1;
+    private static final int INTEGER=2;
+    private static final int LONG=3;
+    private static final int TRUE=4;
+    private static final int FALSE=5;
+    private static final int DOUBLE=6;
+    private static final int FLOAT=7;
+    private static final int SHORT=8;
+    private static final int BYTE=9;
+    private static final int CHARACTER=10;
+    private static final int BYTES=11;
+    private static final int DATE=12;
+    private static final int LIST=13;
+    private static final int SET=14;
+    private static final int MAP=15;
+    private static final int SERIALIZED=16;
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void encode(Map<String,Object> attributes, OutputStream out) throws IOException
+    {
+        DataOutputStream data=new DataOutputStream(out);
+        data.writeShort(MAGIC);
+        if (isShared(attributes.values()))
+        {
+            data.writeByte(VERSION_SERIALIZED);
+            writeSerialized(data,attributes instanceof HashMap?attributes:new HashMap<>(attributes));
+            data.flush();
+            return;
+        }
+        data.writeByte(VERSION);
+        writeSize(data,attributes.size());
+        for (Map.Entry<String,Object> entry : attributes.entrySet())
+        {
+            writeString(data,entry.getKey());
+            writeValue(data,entry.getValue(),0);
+        }
+        data.flush();
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String,Object> decode(InputStream in) throws IOException, ClassNotFoundException
+    {
+        DataInputStream data=in instanceof DataInputStream?(DataInputStream)in:new DataInputStream(in);
+        if (data.readUnsignedShort()!=MAGIC)
+            throw new StreamCorruptedException("Not binary session attributes");
+        int version=data.readUnsignedByte();
+        if (version==VERSION_SERIALIZED)
+            return (Map<String,Object>)readSerialized(data);
+        if (version!=VERSION)
+            throw new StreamCorruptedException("Unknown binary session attributes version "+version);
+        int size=readSize(data);
+        Map<String,Object> attributes=new HashMap<>(size*4/3+1);
+        for (int i=0;i<size;i++)
+        {
+            String name=readString(data);
+            attributes.put(name,readValue(data));
+        }
+        return attributes;
+    }
+
+    /* ------------------------------------------------------------ */
+    protected void writeValue(DataOutputStream out, Object value, int depth) throws IOException
+    {
+        if (value==null)
+        {
+            out.writeByte(NULL);
+            return;
+        }
+
+        Class<?> type=value.getClass();
+        if (type==String.class)
+        {
+            out.writeByte(STRING);
+            writeString(out,(String)value);
+        }
+        else if (type==Integer.class)
+        {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer)value);
+        }
+        else if (type==Long.class)
+        {
+            out.writeByte(LONG);
+            out.writeLong((Long)value);
+        }
+        else if (type==Boolean.class)
+            out.writeByte((Boolean)value?TRUE:FALSE);
+        else if (type==Double.class)
+        {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double)value);
+        }
+        else if (type==Float.class)
+        {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float)value);
+        }
+        else if (type==Short.class)
+        {
+            out.writeByte(SHORT);
+            out.writeShort((Short)value);
+        }
+        else if (type==Byte.class)
+        {
+            out.writeByte(BYTE);
+            out.writeByte((Byte)value);
+        }
+        else if (type==Character.class)
+        {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character)value);
+        }
+        else if (type==byte[].class)
+        {
+            byte[] bytes=(byte[])value;
+            out.writeByte(BYTES);
+            writeSize(out,bytes.length);
+            out.write(bytes);
+        }
+        else if (type==Date.class)
+        {
+            out.writeByte(DATE);
+            out.writeLong(((Date)value).getTime());
+        }
+        else if ((type==ArrayList.class || type==HashSet.class) && isSmall(((Collection<?>)value).size(),depth))
+        {
+            Collection<?> collection=(Collection<?>)value;
+            out.writeByte(type==ArrayList.class?LIST:SET);
+            writeSize(out,collection.size());
+            for (Object item : collection)
+                writeValue(out,item,depth+1);
+        }
+        else if (type==HashMap.class && isSmall(((Map<?,?>)value).size(),depth))
+        {
+            Map<?,?> map=(Map<?,?>)value;
+            out.writeByte(MAP);
+            writeSize(out,map.size());
+            for (Map.Entry<?,?> entry : map.entrySet())
+            {
+                writeValue(out,entry.getKey(),depth+1);
+                writeValue(out,entry.getValue(),depth+1);
+            }
+        }
+        else
+        {
+            out.writeByte(SERIALIZED);
+            writeSerialized(out,value);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    protected Object readValue(DataInputStream in) throws IOException, ClassNotFoundException
+    {
+        int tag=in.readUnsignedByte();
+        switch(tag)
+        {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case CHARACTER:
+                return in.readChar();
+            case BYTES:
+            {
+                byte[] bytes=new byte[readSize(in)];
+                in.readFully(bytes);
+                return bytes;
+            }
+            case DATE:
+                return new Date(in.readLong());
+            case LIST:
+            {
+                int size=readSize(in);
+                List<Object> list=new ArrayList<>(size);
+                for (int i=0;i<size;i++)
+                    list.add(readValue(in));
+                return list;
+            }
+            case SET:
+            {
+                int size=readSize(in);
+                Set<Object> set=new HashSet<>(size*4/3+1);
+                for (int i=0;i<size;i++)
+                    set.add(readValue(in));
+                return set;
+            }
+            case MAP:
+            {
+                int size=readSize(in);
+                Map<Object,Object> map=new HashMap<>(size*4/3+1);
+                for (int i=0;i<size;i++)
+                {
+                    Object key=readValue(in);
+                    map.put(key,readValue(in));
+                }
+                return map;
+            }
+            case SERIALIZED:
+                return readSerialized(in);
+            default:
+                throw new StreamCorruptedException("Unknown session attribute tag "+tag);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private static boolean isSmall(int size, int depth)
+    {
+        return size<=MAX_COLLECTION && depth<MAX_DEPTH;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Check whether restoring tagged values could lose objects shared between them.
+     * @param values the attribute values
+     * @return true if a mutable value is referenced more than once, or a serialized
+     * value is stored with other mutable values that it may reference
+     */
+    private static boolean isShared(Collection<Object> values)
+    {
+        Map<Object,Object> mutable=new IdentityHashMap<>();
+        int serialized=0;
+        for (Object value : values)
+        {
+            int count=visit(value,0,mutable);
+            if (count<0)
+                return true;
+            serialized+=count;
+        }
+        return serialized>0 && mutable.size()>1;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Visit a value as {@link #writeValue(DataOutputStream, Object, int)} would write it.
+     * @return the number of values to be serialized, or -1 if a mutable value is seen twice
+     */
+    private static int visit(Object value, int depth, Map<Object,Object> mutable)
+    {
+        if (value==null)
+            return 0;
+        Class<?> type=value.getClass();
+        if (type==String.class || type==Integer.class || type==Long.class || type==Boolean.class ||
+            type==Double.class || type==Float.class || type==Short.class || type==Byte.class || type==Character.class)
+            return 0;
+
+        if (mutable.put(value,value)!=null)
+            return -1;
+
+        if (type==byte[].class || type==Date.class)
+            return 0;
+
+        List<Object> items=new ArrayList<>();
+        if ((type==ArrayList.class || type==HashSet.class) && isSmall(((Collection<?>)value).size(),depth))
+            items.addAll((Collection<?>)value);
+        else if (type==HashMap.class && isSmall(((Map<?,?>)value).size(),depth))
+        {
+            for (Map.Entry<?,?> entry : ((Map<?,?>)value).entrySet())
+            {
+                items.add(entry.getKey());
+                items.add(entry.getValue());
+            }
+        }
+        else
+            return 1;
+
+        int serialized=0;
+        for (Object item : items)
+        {
+            int count=visit(item,depth+1,mutable);
+            if (count<0)
+                return -1;
+            serialized+=count;
+        }
+        return serialized;
+    }
+
+    /* ------------------------------------------------------------ */
+    private static void writeSerialized(DataOutputStream out, Object value) throws IOException
+    {
+        ByteArrayOutputStream2 bytes=new ByteArrayOutputStream2();
+        try (ObjectOutputStream oos=new ObjectOutputStream(bytes))
+        {
+            oos.writeObject(value);
+        }
+        writeSize(out,bytes.getCount());
+        out.write(bytes.getBuf(),0,bytes.getCount());
+    }
+
+    /* ------------------------------------------------------------ */
+    private static Object readSerialized(DataInputStream in) throws IOException, ClassNotFoundException
+    {
+        byte[] bytes=new byte[readSize(in)];
+        in.readFully(bytes);
+        try (ClassLoadingObjectInputStream ois=new ClassLoadingObjectInputStream(new ByteArrayInputStream(bytes)))
+        {
+            return ois.readObject();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes=value.getBytes(StandardCharsets.UTF_8);
+        writeSize(out,bytes.length);
+        out.write(bytes);
+    }
+
+    /* ------------------------------------------------------------ */
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes=new byte[readSize(in)];
+        in.readFully(bytes);
+        return new String(bytes,StandardCharsets.UTF_8);
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Write an unsigned variable length int, 7 bits per byte.
+     */
+    private static void writeSize(DataOutputStream out, int size) throws IOException
+    {
+        while ((size&~0x7F)!=0)
+        {
+            out.writeByte((size&0x7F)|0x80);
+            size>>>=7;
+        }
+        out.writeByte(size);
+    }
+
+    /* ------------------------------------------------------------ */
+    private static int readSize(DataInputStream in) throws IOException
+    {
+        int size=0;
+        for (int shift=0;shift<32;shift+=7)
+        {
+            int b=in.readUnsignedByte();
+            size|=(b&0x7F)<<shift;
+            if ((b&0x80)==0)
+            {
+                if (size<0)
+                    break;
+                return size;
+            }
+        }
+        throw new StreamCorruptedException("Bad session attribute size");
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.eclipse.jetty.server.session;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -637,7 +638,7 @@ public class HashSessionManager extends AbstractSessionManager
     /* ------------------------------------------------------------ */
     public HashedSession restoreSession (InputStream is, HashedSession session) throws Exception
     {
-        DataInputStream di = new DataInputStream(is);
+        DataInputStream di = new DataInputStream(is.markSupported()?is:new BufferedInputStream(is));
 
         String clusterId = di.readUTF();
         di.readUTF(); // nodeId
@@ -675,7 +676,12 @@ public class HashSessionManager extends AbstractSessionManager
     private void restoreSessionAttributes (InputStream is, int size, HashedSession session)
     throws Exception
     {
-        if (size>0)
+        if (!isJavaSerialized(is))
+        {
+            for (Map.Entry<String,Object> entry : getSessionAttributeCodec().decode(is).entrySet())
+                session.setAttribute(entry.getKey(),entry.getValue());
+        }
+        else if (size>0)
         {
             // input stream should not be closed here
             ClassLoadingObjectInputStream ois =  new ClassLoadingObjectInputStream(is);
@@ -18,15 +18,14 @@
 
 package org.eclipse.jetty.server.session;
 
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
-import java.util.Enumeration;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -155,7 +154,7 @@ public class HashedSession extends MemSession
 
             try(FileOutputStream fos = new FileOutputStream(file,false))
             {
-                save(fos);
+                save(new BufferedOutputStream(fos));
             }
             catch (Exception e)
             {
@@ -186,16 +185,10 @@ public class HashedSession extends MemSession
         //out.writeBoolean( _newSession);
         out.writeInt(getRequests());
         out.writeInt(getAttributes());
-        ObjectOutputStream oos = new ObjectOutputStream(out);
-        Enumeration<String> e=getAttributeNames();
-        while(e.hasMoreElements())
-        {
-            String key=e.nextElement();
-            oos.writeUTF(key);
-            oos.writeObject(doGet(key));
-        }
+        _hashSessionManager.getSessionAttributeCodec().encode(getAttributeMap(),out);
         
         out.writeInt(getMaxInactiveInterval());
+        out.flush();
     }
 
     /* ------------------------------------------------------------ */
@@ -19,10 +19,10 @@
 
 package org.eclipse.jetty.server.session;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.io.ObjectOutputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -30,10 +30,13 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.servlet.http.HttpServletRequest;
@@ -42,6 +45,8 @@ import org.eclipse.jetty.server.session.JDBCSessionIdManager.SessionTableSchema;
 import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
 
 /**
  * JDBCSessionManager
@@ -66,6 +71,13 @@ import org.eclipse.jetty.util.log.Logger;
  * the accessTime and lastAccessTime every time the session is accessed. Rather,
  * we write it out every so often. The frequency is controlled by the saveIntervalSec
  * field.
+ *
+ * In write behind mode, changed sessions and access times are not written on the
+ * request thread. They are coalesced per session, queued and written in JDBC
+ * batches of one transaction every writeBehindIntervalMs by a scheduled task.
+ * If maxWriteBehind sessions are already queued, the session is written through.
+ * The queue is flushed when the manager is stopped. As the database lags behind the
+ * memory, write behind suits a single node or sticky load balancing.
  */
 public class JDBCSessionManager extends AbstractSessionManager
 {
@@ -75,8 +87,19 @@ public class JDBCSessionManager extends AbstractSessionManager
     protected JDBCSessionIdManager _jdbcSessionIdMgr = null;
     protected long _saveIntervalSec = 60; //only persist changes to session access times every 60 secs
     protected SessionTableSchema _sessionTableSchema;
+    protected boolean _writeBehind = false;
+    protected long _writeBehindIntervalMs = 1000;
+    protected int _maxWriteBehind = 1024;
+    protected Scheduler _scheduler;
+    protected boolean _ownScheduler;
+    protected Scheduler.Task _writeBehindTask;
+    private final ConcurrentLinkedQueue<Session> _writeQueue = new ConcurrentLinkedQueue<Session>();
+    private final AtomicInteger _writeQueueSize = new AtomicInteger();
+
+    private static final int WRITE_NONE = 0;
+    private static final int WRITE_ACCESS_TIME = 1;
+    private static final int WRITE_ALL = 2;
 
-   
 
 
     /**
@@ -135,6 +158,12 @@ public class JDBCSessionManager extends AbstractSessionManager
          */
         protected String _canonicalContext;
         
+        
+        /**
+         * Write behind that is queued for the session, WRITE_NONE, WRITE_ACCESS_TIME or WRITE_ALL
+         */
+        protected int _pendingWrite = WRITE_NONE;
+        
    
         /**
          * Session from a request.
@@ -238,6 +267,11 @@ public class JDBCSessionManager extends AbstractSessionManager
         {
             return _lastNode;
         }
+        
+        public synchronized boolean hasPendingWrite ()
+        {
+            return _pendingWrite != WRITE_NONE;
+        }
 
         @Override
         public void setAttribute (String name, Object value)
@@ -303,7 +337,10 @@ public class JDBCSessionManager extends AbstractSessionManager
                 //force the session to be written out right now
                 try
                 {
-                    updateSessionAccessTime(this);
+                    if (isWriteBehind())
+                        writeBehind(this, false);
+                    else
+                        updateSessionAccessTime(this);
                 }
                 catch (Exception e)
                 {
@@ -331,11 +368,17 @@ public class JDBCSessionManager extends AbstractSessionManager
                         {
                             //The session attributes have changed, write to the db, ensuring
                             //http passivation/activation listeners called
-                            save(true);
+                            if (isWriteBehind())
+                                writeBehind(this, true);
+                            else
+                                save(true);
                         }
-                        else if ((getAccessed() - _lastSaved) >= (getSaveInterval() * 1000L))
+                        else if ((getAccessed() - _lastSaved) >= (getSaveInterval() * 1000L) && !hasPendingWrite())
                         {
-                            updateSessionAccessTime(this);
+                            if (isWriteBehind())
+                                writeBehind(this, false);
+                            else
+                                updateSessionAccessTime(this);
                         }
                     }
                 }
@@ -433,6 +476,66 @@ public class JDBCSessionManager extends AbstractSessionManager
     }
 
 
+    /**
+     * Set whether changed sessions and access times are queued and
+     * written in batches by a background task, rather than written
+     * on the request thread. Must be set before the manager is started.
+     *
+     * @param writeBehind
+     */
+    public void setWriteBehind (boolean writeBehind)
+    {
+        _writeBehind=writeBehind;
+    }
+
+    public boolean isWriteBehind ()
+    {
+        return _writeBehind;
+    }
+
+
+    /**
+     * Set the interval in milliseconds between writes of the queued sessions.
+     *
+     * @param ms
+     */
+    public void setWriteBehindInterval (long ms)
+    {
+        _writeBehindIntervalMs=ms;
+    }
+
+    public long getWriteBehindInterval ()
+    {
+        return _writeBehindIntervalMs;
+    }
+
+
+    /**
+     * Set the maximum number of sessions queued for write behind.
+     * Sessions changed while the queue is full are written on the request thread.
+     *
+     * @param max
+     */
+    public void setMaxWriteBehind (int max)
+    {
+        _maxWriteBehind=max;
+    }
+
+    public int getMaxWriteBehind ()
+    {
+        return _maxWriteBehind;
+    }
+
+
+    /**
+     * @return the number of sessions queued for write behind
+     */
+    public int getWriteBehindQueueSize ()
+    {
+        return _writeQueueSize.get();
+    }
+
+
 
     /**
      * A method that can be implemented in subclasses to support
@@ -512,7 +615,7 @@ public class JDBCSessionManager extends AbstractSessionManager
                         LOG.debug("getSession("+idInCluster+"): no session in session map. Reloading session data from db.");
                     session = loadSession(idInCluster, canonicalize(_context.getContextPath()), getVirtualHost(_context));
                 }
-                else if ((now - memSession._lastSaved) >= (_saveIntervalSec * 1000L))
+                else if ((now - memSession._lastSaved) >= (_saveIntervalSec * 1000L) && !memSession.hasPendingWrite())
                 {
                     if (LOG.isDebugEnabled())
                         LOG.debug("getSession("+idInCluster+"): stale session. Reloading session data from db.");
@@ -618,6 +721,19 @@ public class JDBCSessionManager extends AbstractSessionManager
         _sessions = new ConcurrentHashMap<String, Session>();
 
         super.doStart();
+
+        if (_writeBehind)
+        {
+            //try and use a common scheduler, fallback to own
+            _scheduler = getSessionHandler().getServer().getBean(Scheduler.class);
+            if (_scheduler == null)
+            {
+                _scheduler = new ScheduledExecutorScheduler();
+                _ownScheduler = true;
+                _scheduler.start();
+            }
+            _writeBehindTask = _scheduler.schedule(new WriteBehind(), _writeBehindIntervalMs, TimeUnit.MILLISECONDS);
+        }
     }
 
 
@@ -629,6 +745,15 @@ public class JDBCSessionManager extends AbstractSessionManager
     @Override
     public void doStop() throws Exception
     {
+        if (_writeBehindTask != null)
+            _writeBehindTask.cancel();
+        _writeBehindTask = null;
+        flushWriteBehind();
+        if (_ownScheduler && _scheduler != null)
+            _scheduler.stop();
+        _scheduler = null;
+        _ownScheduler = false;
+
         super.doStop();
         _sessions.clear();
         _sessions = null;
@@ -731,7 +856,10 @@ public class JDBCSessionManager extends AbstractSessionManager
         try
         {
             if (session != null)
+            {
+                cancelWriteBehind(session);
                 deleteSession(session);
+            }
         }
         catch (Exception e)
         {
@@ -929,11 +1057,19 @@ public class JDBCSessionManager extends AbstractSessionManager
                         session.setCanonicalContext(result.getString(_sessionTableSchema.getContextPathColumn()));
                         session.setVirtualHost(result.getString(_sessionTableSchema.getVirtualHostColumn()));
                                            
-                        try (InputStream is = ((JDBCSessionIdManager)getSessionIdManager())._dbAdaptor.getBlobInputStream(result, _sessionTableSchema.getMapColumn());
-                                ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(is))
+                        try (InputStream is = new BufferedInputStream(((JDBCSessionIdManager)getSessionIdManager())._dbAdaptor.getBlobInputStream(result, _sessionTableSchema.getMapColumn())))
                         {
-                            Object o = ois.readObject();
-                            session.addAttributes((Map<String,Object>)o);
+                            if (isJavaSerialized(is))
+                            {
+                                //persisted before the attribute codec was used
+                                try (ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(is))
+                                {
+                                    Object o = ois.readObject();
+                                    session.addAttributes((Map<String,Object>)o);
+                                }
+                            }
+                            else
+                                session.addAttributes(getSessionAttributeCodec().decode(is));
                         }
 
                         if (LOG.isDebugEnabled())
@@ -1001,9 +1137,7 @@ public class JDBCSessionManager extends AbstractSessionManager
             statement.setLong(12, session.getMaxInactiveInterval());
 
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(baos);
-            oos.writeObject(session.getAttributeMap());
-            oos.flush();
+            getSessionAttributeCodec().encode(session.getAttributeMap(), baos);
             byte[] bytes = baos.toByteArray();
 
             ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
@@ -1036,23 +1170,7 @@ public class JDBCSessionManager extends AbstractSessionManager
         {
             long now = System.currentTimeMillis();
             connection.setAutoCommit(true);
-            statement.setString(1, data.getClusterId());
-            statement.setString(2, getSessionIdManager().getWorkerName());//my node id
-            statement.setLong(3, data.getAccessed());//accessTime
-            statement.setLong(4, data.getLastAccessedTime()); //lastAccessTime
-            statement.setLong(5, now); //last saved time
-            statement.setLong(6, data.getExpiryTime());
-            statement.setLong(7, data.getMaxInactiveInterval());
-
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(baos);
-            oos.writeObject(data.getAttributeMap());
-            oos.flush();
-            byte[] bytes = baos.toByteArray();
-            ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-
-            statement.setBinaryStream(8, bais, bytes.length);//attribute map as blob
-            statement.setString(9, data.getRowId()); //rowId
+            setUpdateSession(statement, data, now);
             statement.executeUpdate();
 
             data.setLastSaved(now);
@@ -1062,6 +1180,35 @@ public class JDBCSessionManager extends AbstractSessionManager
     }
 
 
+    /**
+     * Set the parameters of the update session statement.
+     *
+     * @param statement the update session statement
+     * @param data the session
+     * @param now the last saved time
+     * @throws Exception
+     */
+    private void setUpdateSession (PreparedStatement statement, Session data, long now)
+    throws Exception
+    {
+        statement.setString(1, data.getClusterId());
+        statement.setString(2, getSessionIdManager().getWorkerName());//my node id
+        statement.setLong(3, data.getAccessed());//accessTime
+        statement.setLong(4, data.getLastAccessedTime()); //lastAccessTime
+        statement.setLong(5, now); //last saved time
+        statement.setLong(6, data.getExpiryTime());
+        statement.setLong(7, data.getMaxInactiveInterval());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        getSessionAttributeCodec().encode(data.getAttributeMap(), baos);
+        byte[] bytes = baos.toByteArray();
+        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+
+        statement.setBinaryStream(8, bais, bytes.length);//attribute map as blob
+        statement.setString(9, data.getRowId()); //rowId
+    }
+
+
     /**
      * Update the node on which the session was last seen to be my node.
      *
@@ -1098,13 +1245,7 @@ public class JDBCSessionManager extends AbstractSessionManager
         {
             long now = System.currentTimeMillis();
             connection.setAutoCommit(true);
-            statement.setString(1, getSessionIdManager().getWorkerName());
-            statement.setLong(2, data.getAccessed());
-            statement.setLong(3, data.getLastAccessedTime());
-            statement.setLong(4, now);
-            statement.setLong(5, data.getExpiryTime());
-            statement.setLong(6, data.getMaxInactiveInterval());
-            statement.setString(7, data.getRowId());
+            setUpdateSessionAccessTime(statement, data, now);
           
             statement.executeUpdate();
             data.setLastSaved(now);
@@ -1114,6 +1255,215 @@ public class JDBCSessionManager extends AbstractSessionManager
     }
 
 
+    /**
+     * Set the parameters of the update session access time statement.
+     *
+     * @param statement the update session access time statement
+     * @param data the session
+     * @param now the last saved time
+     * @throws Exception
+     */
+    private void setUpdateSessionAccessTime (PreparedStatement statement, Session data, long now)
+    throws Exception
+    {
+        statement.setString(1, getSessionIdManager().getWorkerName());
+        statement.setLong(2, data.getAccessed());
+        statement.setLong(3, data.getLastAccessedTime());
+        statement.setLong(4, now);
+        statement.setLong(5, data.getExpiryTime());
+        statement.setLong(6, data.getMaxInactiveInterval());
+        statement.setString(7, data.getRowId());
+    }
+
+
+    /**
+     * Queue a session for write behind, coalescing it with an already queued write.
+     * Called with the session locked. If the queue is full or the manager
+     * is stopping, the session is written now.
+     *
+     * @param session the session
+     * @param all true if the attributes have changed, false if only the access time
+     * @throws Exception
+     */
+    protected void writeBehind (Session session, boolean all)
+    throws Exception
+    {
+        int pending = session._pendingWrite;
+        session._pendingWrite = Math.max(pending, all ? WRITE_ALL : WRITE_ACCESS_TIME);
+        if (pending != WRITE_NONE)
+            return;
+
+        if (isRunning())
+        {
+            if (_writeQueueSize.incrementAndGet() <= _maxWriteBehind)
+            {
+                _writeQueue.offer(session);
+                return;
+            }
+            _writeQueueSize.decrementAndGet();
+        }
+
+        //stopping or queue full, write through
+        session._pendingWrite = WRITE_NONE;
+        if (all)
+        {
+            session.willPassivate();
+            updateSession(session);
+            session.didActivate();
+        }
+        else
+            updateSessionAccessTime(session);
+    }
+
+
+    /**
+     * Remove a session from the write behind queue.
+     *
+     * @param session the session
+     */
+    protected void cancelWriteBehind (Session session)
+    {
+        synchronized (session)
+        {
+            session._pendingWrite = WRITE_NONE;
+        }
+        if (_writeQueue.remove(session))
+            _writeQueueSize.decrementAndGet();
+    }
+
+
+    /**
+     * Write all queued sessions in JDBC batches of a single transaction.
+     * If the transaction fails, the sessions are queued again to be
+     * written by the next flush.
+     */
+    protected void flushWriteBehind ()
+    {
+        synchronized (_writeQueue)
+        {
+            List<Session> sessions = new ArrayList<Session>();
+            Session session;
+            while ((session = _writeQueue.poll()) != null)
+            {
+                _writeQueueSize.decrementAndGet();
+                sessions.add(session);
+            }
+            if (sessions.isEmpty())
+                return;
+
+            int[] pendings = new int[sessions.size()];
+            for (int i = 0; i < pendings.length; i++)
+            {
+                Session data = sessions.get(i);
+                synchronized (data)
+                {
+                    pendings[i] = data._pendingWrite;
+                    data._pendingWrite = WRITE_NONE;
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            try (Connection connection = getConnection();
+                    PreparedStatement update = connection.prepareStatement(_jdbcSessionIdMgr._updateSession);
+                    PreparedStatement updateAccessTime = connection.prepareStatement(_jdbcSessionIdMgr._updateSessionAccessTime))
+            {
+                connection.setAutoCommit(false);
+                try
+                {
+                    int updates = 0;
+                    int accessTimeUpdates = 0;
+                    for (int i = 0; i < pendings.length; i++)
+                    {
+                        Session data = sessions.get(i);
+                        synchronized (data)
+                        {
+                            int pending = pendings[i];
+                            if (pending == WRITE_ALL)
+                            {
+                                data.willPassivate();
+                                try
+                                {
+                                    setUpdateSession(update, data, now);
+                                }
+                                finally
+                                {
+                                    data.didActivate();
+                                }
+                                update.addBatch();
+                                updates++;
+                            }
+                            else if (pending == WRITE_ACCESS_TIME)
+                            {
+                                setUpdateSessionAccessTime(updateAccessTime, data, now);
+                                updateAccessTime.addBatch();
+                                accessTimeUpdates++;
+                            }
+                        }
+                    }
+                    if (updates > 0)
+                        update.executeBatch();
+                    if (accessTimeUpdates > 0)
+                        updateAccessTime.executeBatch();
+                    connection.commit();
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Wrote behind {} sessions and {} access times", updates, accessTimeUpdates);
+                }
+                catch (Exception e)
+                {
+                    connection.rollback();
+                    throw e;
+                }
+                finally
+                {
+                    connection.setAutoCommit(true);
+                }
+            }
+            catch (Exception e)
+            {
+                int requeued = requeueWriteBehind(sessions, pendings);
+                LOG.warn("Problem writing behind "+sessions.size()+" sessions, "+requeued+" queued again", e);
+                return;
+            }
+
+            for (Session data : sessions)
+                data.setLastSaved(now);
+        }
+    }
+
+
+    /**
+     * Queue again the sessions of a failed write behind, merging the
+     * failed write with any write queued for the session since.
+     * Sessions that were removed meanwhile are dropped.
+     *
+     * @param sessions the sessions of the failed write
+     * @param pendings the writes that failed, by index of sessions
+     * @return the number of sessions queued again
+     */
+    private int requeueWriteBehind (List<Session> sessions, int[] pendings)
+    {
+        ConcurrentHashMap<String, Session> live = _sessions;
+        int requeued = 0;
+        for (int i = 0; i < pendings.length; i++)
+        {
+            Session data = sessions.get(i);
+            if (pendings[i] == WRITE_NONE || live == null || live.get(data.getClusterId()) != data)
+                continue;
+            synchronized (data)
+            {
+                int pending = data._pendingWrite;
+                data._pendingWrite = Math.max(pending, pendings[i]);
+                if (pending != WRITE_NONE)
+                    continue; //already queued again
+            }
+            _writeQueueSize.incrementAndGet();
+            _writeQueue.offer(data);
+            requeued++;
+        }
+        return requeued;
+    }
+
+
 
 
     /**
@@ -1139,6 +1489,29 @@ public class JDBCSessionManager extends AbstractSessionManager
 
 
 
+    /**
+     * WriteBehind
+     *
+     * Writes the queued sessions and reschedules itself.
+     */
+    protected class WriteBehind implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            try
+            {
+                flushWriteBehind();
+            }
+            finally
+            {
+                if (_scheduler != null && _scheduler.isRunning() && isRunning())
+                    _writeBehindTask = _scheduler.schedule(this, _writeBehindIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+
     /**
      * Get a connection from the driver.
      * @return
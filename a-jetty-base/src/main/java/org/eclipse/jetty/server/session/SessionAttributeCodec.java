@@ -0,0 +1,60 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/* ------------------------------------------------------------ */
+/**
+ * SessionAttributeCodec
+ *
+ * Encodes the attributes of a session when it is persisted (idle saved by
+ * {@link HashSessionManager}, stored by {@link JDBCSessionManager}) and decodes
+ * them when it is restored.
+ * <p>
+ * The encoded attributes may be followed by other data in the same stream,
+ * so {@link #decode(InputStream)} must read exactly the bytes written by
+ * {@link #encode(Map, OutputStream)}. Encoded data must not start with the java
+ * serialization stream magic, that identifies attributes persisted before
+ * a codec was used.
+ * </p>
+ * @see AbstractSessionManager#setSessionAttributeCodec(SessionAttributeCodec)
+ */
+public interface SessionAttributeCodec
+{
+    /* ------------------------------------------------------------ */
+    /**
+     * @param attributes the session attributes
+     * @param out the stream to write to, it is not closed
+     * @throws IOException if an attribute cannot be encoded
+     */
+    void encode(Map<String,Object> attributes, OutputStream out) throws IOException;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param in the stream to read from, it is not closed
+     * @return the session attributes
+     * @throws IOException if the attributes cannot be decoded
+     * @throws ClassNotFoundException if the class of an attribute is not found
+     */
+    Map<String,Object> decode(InputStream in) throws IOException, ClassNotFoundException;
+}
@@ -18,13 +18,16 @@
 
 package org.eclipse.jetty.servlet;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
@@ -99,6 +102,15 @@ import org.eclipse.jetty.util.resource.ResourceFactory;
  *                    gzip content encoded if a matching resource is
  *                    found ending with ".gz"
  *
+ *  compressedVariants
+ *                    If set to true, cached content of compressible mime types
+ *                    is compressed once in the background and served gzip or
+ *                    deflate encoded as negotiated by Accept-Encoding.
+ *                    A resource cache is created even without the maxCache
+ *                    parameters. Default is false.
+ *
+ *  minCompressSize   Cached content smaller than this is not compressed (256)
+ *
  *  resourceBase      Set to replace the context resource base
  *
  *  resourceCache     If set, this is a context attribute name, which the servlet
@@ -249,6 +261,7 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
         int max_cache_size=getInitInt("maxCacheSize", -2);
         int max_cached_file_size=getInitInt("maxCachedFileSize", -2);
         int max_cached_files=getInitInt("maxCachedFiles", -2);
+        boolean compressed_variants=getInitBoolean("compressedVariants",false);
         if (resourceCache!=null)
         {
             if (max_cache_size!=-1 || max_cached_file_size!= -2 || max_cached_files!=-2)
@@ -265,7 +278,7 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
         
         try
         {
-            if (_cache==null && (max_cached_files!=-2 || max_cache_size!=-2 || max_cached_file_size!=-2))
+            if (_cache==null && (max_cached_files!=-2 || max_cache_size!=-2 || max_cached_file_size!=-2 || compressed_variants))
             {
                 _cache= new ResourceCache(null,this,_mimeTypes,_useFileMappedBuffer,_etags);
 
@@ -275,6 +288,13 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
                     _cache.setMaxCachedFileSize(max_cached_file_size);
                 if (max_cached_files>=-1)
                     _cache.setMaxCachedFiles(max_cached_files);
+                if (compressed_variants)
+                {
+                    _cache.setCompressedVariants(true);
+                    _cache.setMinCompressSize(getInitInt("minCompressSize",_cache.getMinCompressSize()));
+                    if (_contextHandler.getServer()!=null)
+                        _cache.setCompressExecutor(_contextHandler.getServer().getThreadPool());
+                }
             }
         }
         catch (Exception e)
@@ -459,6 +479,7 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
             // is gzip enabled?
             String pathInContextGz=null;
             boolean gzip=false;
+            boolean vary=false;
             if (!included.booleanValue() && _gzip && reqRanges==null && !endsWithSlash )
             {
                 // Look for a gzip resource
@@ -476,6 +497,7 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
                 {
                     // Tell caches that response may vary by accept-encoding
                     response.addHeader(HttpHeader.VARY.asString(),HttpHeader.ACCEPT_ENCODING.asString());
+                    vary=true;
                     
                     // Does the client accept gzip?
                     String accept=request.getHeader(HttpHeader.ACCEPT_ENCODING.asString());
@@ -522,6 +544,21 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
                     if (content==null)
                         content=new HttpContent.ResourceAsHttpContent(resource,_mimeTypes.getMimeByExtension(resource.toString()),response.getBufferSize(),_etags);
 
+                    // is there a compressed variant in the cache?
+                    String encoding=null;
+                    if (!gzip && _cache!=null && !included.booleanValue() && reqRanges==null && 
+                        !isGzippedContent(pathInContext) && _cache.isCompressible(content))
+                    {
+                        if (!vary)
+                            response.addHeader(HttpHeader.VARY.asString(),HttpHeader.ACCEPT_ENCODING.asString());
+                        HttpContent variant=_cache.getCompressedContent(content,request.getHeader(HttpHeader.ACCEPT_ENCODING.asString()));
+                        if (variant!=null)
+                        {
+                            content=variant;
+                            encoding=((ResourceCache.CompressedContent)variant).getContentEncoding();
+                        }
+                    }
+
                     if (included.booleanValue() || passConditionalHeaders(request,response, resource,content))
                     {
                         if (gzip || isGzippedContent(pathInContext))
@@ -531,6 +568,8 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
                             if (mt!=null)
                                 response.setContentType(mt);
                         }
+                        else if (encoding!=null)
+                            response.setHeader(HttpHeader.CONTENT_ENCODING.asString(),encoding);
                         close_content=sendData(request,response,included.booleanValue(),resource,content,reqRanges);
                     }
                 }
@@ -989,7 +1028,8 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
                     response.addDateHeader(HttpHeader.DATE.asString(),System.currentTimeMillis());
                 response.setHeader(HttpHeader.CONTENT_RANGE.asString(),
                         singleSatisfiableRange.toHeaderRangeString(content_length));
-                resource.writeTo(out,singleSatisfiableRange.getFirst(content_length),singleLength);
+                if (!sendFileRange(out,written,resource,singleSatisfiableRange.getFirst(content_length),singleLength))
+                    resource.writeTo(out,singleSatisfiableRange.getFirst(content_length),singleLength);
                 return true;
             }
 
@@ -1073,6 +1113,24 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
         return true;
     }
 
+    /* ------------------------------------------------------------ */
+    /** Send a range of a file resource with {@link HttpOutput#sendContent(FileChannel, long, long)},
+     * that transfers it without copying if the connection allows it.
+     * @return false if the resource is not a file or the output is not a HttpOutput
+     * that was not written
+     */
+    private boolean sendFileRange(OutputStream out, boolean written, Resource resource, long first, long length) throws IOException
+    {
+        File file=written||!(out instanceof HttpOutput)?null:resource.getFile();
+        if (file==null)
+            return false;
+        try (RandomAccessFile raf = new RandomAccessFile(file,"r"))
+        {
+            ((HttpOutput)out).sendContent(raf.getChannel(),first,length);
+        }
+        return true;
+    }
+
     /* ------------------------------------------------------------ */
     protected void writeHeaders(HttpServletResponse response,HttpContent content,long count)
     {
@@ -1150,6 +1208,16 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
             response.setHeader(HttpHeader.CACHE_CONTROL.asString(),_cacheControl.getValue());
     }
 
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the resource cache or null if caching is not configured.
+     * Its hit ratio, evictions and resident bytes help to size the cache.
+     */
+    public ResourceCache getResourceCache()
+    {
+        return _cache;
+    }
+
     /* ------------------------------------------------------------ */
     /*
      * @see javax.servlet.Servlet#destroy()
@@ -1158,7 +1226,12 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory
     public void destroy()
     {
         if (_cache!=null)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} hits={} misses={} ratio={} evictions={} resident={}",_cache,_cache.getHits(),_cache.getMisses(),
+                        _cache.getHitRatio(),_cache.getEvictions(),_cache.getResidentBytes());
             _cache.flushCache();
+        }
         super.destroy();
     }
 
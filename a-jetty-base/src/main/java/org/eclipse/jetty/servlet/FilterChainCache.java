@@ -0,0 +1,218 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.servlet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.servlet.FilterChain;
+
+/* ------------------------------------------------------------ */
+/** Bounded LRU cache of filter chains for one dispatch type.
+ * <p>
+ * Lookups go to a {@link ConcurrentMap} and a hit only tries the LRU lock
+ * to move the entry to the head of the recency list, so a request thread
+ * never waits for it. An insert links the entry at the head and evicts
+ * from the tail while the cache is over its maximum size, which is O(1)
+ * per evicted entry. The only allocation is the entry of an insert.
+ * </p>
+ */
+final class FilterChainCache
+{
+    /* ------------------------------------------------------------ */
+    private static final class Node
+    {
+        final Object _key;
+        final FilterChain _chain;
+        Node _prev;
+        Node _next;
+
+        Node(Object key, FilterChain chain)
+        {
+            _key=key;
+            _chain=chain;
+        }
+    }
+
+    private final ConcurrentMap<Object,Node> _map=new ConcurrentHashMap<>();
+    private final ReentrantLock _lock=new ReentrantLock();
+    private final Node _head=new Node(null,null);
+    private final AtomicLong _hits=new AtomicLong();
+    private final AtomicLong _misses=new AtomicLong();
+    private final AtomicLong _evictions=new AtomicLong();
+    private int _size;
+
+    /* ------------------------------------------------------------ */
+    FilterChainCache()
+    {
+        _head._prev=_head;
+        _head._next=_head;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param key the chain key
+     * @return the cached chain or null
+     */
+    FilterChain get(Object key)
+    {
+        Node node=_map.get(key);
+        if (node==null)
+        {
+            _misses.incrementAndGet();
+            return null;
+        }
+        _hits.incrementAndGet();
+
+        if (_lock.tryLock())
+        {
+            try
+            {
+                // Not linked if cleared or evicted meanwhile
+                if (node._next!=null && node._prev!=_head)
+                {
+                    unlink(node);
+                    linkFirst(node);
+                }
+            }
+            finally
+            {
+                _lock.unlock();
+            }
+        }
+        return node._chain;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param key the chain key
+     * @param chain the chain
+     * @param maxSize the maximum entries, or 0 for no limit
+     * @return the cached chain, which is the already cached one if another thread won the race
+     */
+    FilterChain put(Object key, FilterChain chain, int maxSize)
+    {
+        Node node=new Node(key,chain);
+        Node cached=_map.putIfAbsent(key,node);
+        if (cached!=null)
+            return cached._chain;
+
+        _lock.lock();
+        try
+        {
+            // Do not link if cleared since the put
+            if (_map.get(key)==node)
+            {
+                linkFirst(node);
+                _size++;
+            }
+
+            while (maxSize>0 && _size>maxSize)
+            {
+                Node eldest=_head._prev;
+                unlink(eldest);
+                _size--;
+                _map.remove(eldest._key,eldest);
+                _evictions.incrementAndGet();
+            }
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+        return chain;
+    }
+
+    /* ------------------------------------------------------------ */
+    void clear()
+    {
+        _lock.lock();
+        try
+        {
+            _map.clear();
+            Node node=_head._next;
+            while (node!=_head)
+            {
+                Node next=node._next;
+                node._prev=null;
+                node._next=null;
+                node=next;
+            }
+            _head._prev=_head;
+            _head._next=_head;
+            _size=0;
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    int size()
+    {
+        return _map.size();
+    }
+
+    /* ------------------------------------------------------------ */
+    long getHits()
+    {
+        return _hits.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    long getMisses()
+    {
+        return _misses.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    long getEvictions()
+    {
+        return _evictions.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    private void linkFirst(Node node)
+    {
+        node._prev=_head;
+        node._next=_head._next;
+        _head._next._prev=node;
+        _head._next=node;
+    }
+
+    /* ------------------------------------------------------------ */
+    private void unlink(Node node)
+    {
+        node._prev._next=node._next;
+        node._next._prev=node._prev;
+        node._prev=null;
+        node._next=null;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{size=%d,hits=%d,misses=%d,evictions=%d}",getClass().getSimpleName(),hashCode(),size(),getHits(),getMisses(),getEvictions());
+    }
+}
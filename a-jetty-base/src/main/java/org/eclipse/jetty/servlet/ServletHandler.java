@@ -28,11 +28,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
@@ -69,7 +65,6 @@ import org.eclipse.jetty.servlet.BaseHolder.Source;
 import org.eclipse.jetty.util.ArrayUtil;
 import org.eclipse.jetty.util.LazyList;
 import org.eclipse.jetty.util.MultiException;
-import org.eclipse.jetty.util.MultiMap;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
@@ -98,6 +93,16 @@ public class ServletHandler extends ScopedHandler
 {
     private static final Logger LOG = Log.getLogger(ServletHandler.class);
 
+    /* Cached for the dispatches without filters, so that they are not matched again */
+    private static final FilterChain NO_CHAIN = new FilterChain()
+    {
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response)
+        {
+            throw new IllegalStateException();
+        }
+    };
+
     /* ------------------------------------------------------------ */
     public static final String __DEFAULT_SERVLET="default";
 
@@ -117,21 +122,13 @@ public class ServletHandler extends ScopedHandler
     private ServletHolder[] _servlets=new ServletHolder[0];
     private ServletMapping[] _servletMappings;
     private final Map<String,FilterHolder> _filterNameMap= new HashMap<>();
-    private List<FilterMapping> _filterPathMappings;
-    private MultiMap<FilterMapping> _filterNameMappings;
 
     private final Map<String,ServletHolder> _servletNameMap=new HashMap<>();
-    private PathMap<ServletHolder> _servletPathMap;
+    private ServletRoutingTable _routes;
     
     private ListenerHolder[] _listeners=new ListenerHolder[0];
 
-    @SuppressWarnings("unchecked")
-    protected final ConcurrentMap<String, FilterChain> _chainCache[] = new ConcurrentMap[FilterMapping.ALL];
-
-    @SuppressWarnings("unchecked")
-    protected final Queue<String>[] _chainLRU = new Queue[FilterMapping.ALL];
-
-
+    private final FilterChainCache[] _chainCache = new FilterChainCache[FilterMapping.ALL];
 
     /* ------------------------------------------------------------ */
     /** Constructor.
@@ -170,17 +167,11 @@ public class ServletHandler extends ScopedHandler
 
         if(_filterChainsCached)
         {
-            _chainCache[FilterMapping.REQUEST]=new ConcurrentHashMap<String,FilterChain>();
-            _chainCache[FilterMapping.FORWARD]=new ConcurrentHashMap<String,FilterChain>();
-            _chainCache[FilterMapping.INCLUDE]=new ConcurrentHashMap<String,FilterChain>();
-            _chainCache[FilterMapping.ERROR]=new ConcurrentHashMap<String,FilterChain>();
-            _chainCache[FilterMapping.ASYNC]=new ConcurrentHashMap<String,FilterChain>();
-
-            _chainLRU[FilterMapping.REQUEST]=new ConcurrentLinkedQueue<String>();
-            _chainLRU[FilterMapping.FORWARD]=new ConcurrentLinkedQueue<String>();
-            _chainLRU[FilterMapping.INCLUDE]=new ConcurrentLinkedQueue<String>();
-            _chainLRU[FilterMapping.ERROR]=new ConcurrentLinkedQueue<String>();
-            _chainLRU[FilterMapping.ASYNC]=new ConcurrentLinkedQueue<String>();
+            _chainCache[FilterMapping.REQUEST]=new FilterChainCache();
+            _chainCache[FilterMapping.FORWARD]=new FilterChainCache();
+            _chainCache[FilterMapping.INCLUDE]=new FilterChainCache();
+            _chainCache[FilterMapping.ERROR]=new FilterChainCache();
+            _chainCache[FilterMapping.ASYNC]=new FilterChainCache();
         }
 
         if (_contextHandler==null)
@@ -338,9 +329,7 @@ public class ServletHandler extends ScopedHandler
         _listeners = listeners;
 
         //will be regenerated on next start
-        _filterPathMappings=null;
-        _filterNameMappings=null;
-        _servletPathMap=null;
+        _routes=null;
     }
 
     /* ------------------------------------------------------------ */
@@ -385,9 +374,10 @@ public class ServletHandler extends ScopedHandler
      */
     public PathMap.MappedEntry<ServletHolder> getHolderEntry(String pathInContext)
     {
-        if (_servletPathMap==null)
+        ServletRoutingTable routes=_routes;
+        if (routes==null)
             return null;
-        return _servletPathMap.getMatch(pathInContext);
+        return routes.getMatch(pathInContext);
     }
 
     /* ------------------------------------------------------------ */
@@ -692,108 +682,92 @@ public class ServletHandler extends ScopedHandler
     /* ------------------------------------------------------------ */
     protected FilterChain getFilterChain(Request baseRequest, String pathInContext, ServletHolder servletHolder)
     {
-        String key=pathInContext==null?servletHolder.getName():pathInContext;
+        ServletRoutingTable routes=_routes;
+        if (routes==null)
+            return null;
         int dispatch = FilterMapping.dispatch(baseRequest.getDispatcherType());
 
-        if (_filterChainsCached && _chainCache!=null)
+        FilterChainCache cache=_filterChainsCached?_chainCache[dispatch]:null;
+        Object key=null;
+        if (cache!=null)
         {
-            FilterChain chain = (FilterChain)_chainCache[dispatch].get(key);
+            key=routes.getChainKey(pathInContext,servletHolder);
+            FilterChain chain = cache.get(key);
             if (chain!=null)
-                return chain;
+                return chain==NO_CHAIN?null:chain;
         }
 
-        // Build list of filters (list of FilterHolder objects)
-        List<FilterHolder> filters = new ArrayList<>();
+        // Get the precompiled list of filters
+        FilterHolder[] filters=routes.getFilters(pathInContext,servletHolder,dispatch);
 
-        // Path filters
-        if (pathInContext!=null && _filterPathMappings!=null)
+        if (cache!=null)
         {
-            for (FilterMapping filterPathMapping : _filterPathMappings)
-            {
-                if (filterPathMapping.appliesTo(pathInContext, dispatch))
-                    filters.add(filterPathMapping.getFilterHolder());
-            }
+            FilterChain chain=filters.length==0?NO_CHAIN:new CachedChain(new ArrayList<>(Arrays.asList(filters)), servletHolder);
+            chain=cache.put(key,chain,_maxFilterChainsCacheSize);
+            return chain==NO_CHAIN?null:chain;
         }
 
-        // Servlet name filters
-        if (servletHolder != null && _filterNameMappings!=null && _filterNameMappings.size() > 0)
-        {
-            // Servlet name filters
-            if (_filterNameMappings.size() > 0)
-            {
-                Object o= _filterNameMappings.get(servletHolder.getName());
-
-                for (int i=0; i<LazyList.size(o);i++)
-                {
-                    FilterMapping mapping = (FilterMapping)LazyList.get(o,i);
-                    if (mapping.appliesTo(dispatch))
-                        filters.add(mapping.getFilterHolder());
-                }
-
-                o= _filterNameMappings.get("*");
-                for (int i=0; i<LazyList.size(o);i++)
-                {
-                    FilterMapping mapping = (FilterMapping)LazyList.get(o,i);
-                    if (mapping.appliesTo(dispatch))
-                        filters.add(mapping.getFilterHolder());
-                }
-            }
-        }
-
-        if (filters.isEmpty())
+        if (filters.length==0)
             return null;
+        return new Chain(baseRequest,new ArrayList<>(Arrays.asList(filters)), servletHolder);
+    }
 
-
-        FilterChain chain = null;
-        if (_filterChainsCached)
+    /* ------------------------------------------------------------ */
+    protected void invalidateChainsCache()
+    {
+        for (FilterChainCache cache : _chainCache)
         {
-            if (filters.size() > 0)
-                chain= new CachedChain(filters, servletHolder);
-
-            final Map<String,FilterChain> cache=_chainCache[dispatch];
-            final Queue<String> lru=_chainLRU[dispatch];
-
-                // Do we have too many cached chains?
-                while (_maxFilterChainsCacheSize>0 && cache.size()>=_maxFilterChainsCacheSize)
-                {
-                    // The LRU list is not atomic with the cache map, so be prepared to invalidate if
-                    // a key is not found to delete.
-                    // Delete by LRU (where U==created)
-                    String k=lru.poll();
-                    if (k==null)
-                    {
-                        cache.clear();
-                        break;
-                    }
-                    cache.remove(k);
-                }
+            if (cache!=null)
+                cache.clear();
+        }
+    }
 
-                cache.put(key,chain);
-                lru.add(key);
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the count of filter chains found in the caches
+     */
+    @ManagedAttribute(value="filter chain cache hits", readonly=true)
+    public long getFilterChainsCacheHits()
+    {
+        long hits=0;
+        for (FilterChainCache cache : _chainCache)
+        {
+            if (cache!=null)
+                hits+=cache.getHits();
         }
-        else if (filters.size() > 0)
-            chain = new Chain(baseRequest,filters, servletHolder);
+        return hits;
+    }
 
-        return chain;
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the count of filter chains that had to be built for the caches
+     */
+    @ManagedAttribute(value="filter chain cache misses", readonly=true)
+    public long getFilterChainsCacheMisses()
+    {
+        long misses=0;
+        for (FilterChainCache cache : _chainCache)
+        {
+            if (cache!=null)
+                misses+=cache.getMisses();
+        }
+        return misses;
     }
 
     /* ------------------------------------------------------------ */
-    protected void invalidateChainsCache()
+    /**
+     * @return the count of filter chains evicted from the caches by {@link #getMaxFilterChainsCacheSize()}
+     */
+    @ManagedAttribute(value="filter chain cache evictions", readonly=true)
+    public long getFilterChainsCacheEvictions()
     {
-        if (_chainLRU[FilterMapping.REQUEST]!=null)
+        long evictions=0;
+        for (FilterChainCache cache : _chainCache)
         {
-            _chainLRU[FilterMapping.REQUEST].clear();
-            _chainLRU[FilterMapping.FORWARD].clear();
-            _chainLRU[FilterMapping.INCLUDE].clear();
-            _chainLRU[FilterMapping.ERROR].clear();
-            _chainLRU[FilterMapping.ASYNC].clear();
-
-            _chainCache[FilterMapping.REQUEST].clear();
-            _chainCache[FilterMapping.FORWARD].clear();
-            _chainCache[FilterMapping.INCLUDE].clear();
-            _chainCache[FilterMapping.ERROR].clear();
-            _chainCache[FilterMapping.ASYNC].clear();
+            if (cache!=null)
+                evictions+=cache.getEvictions();
         }
+        return evictions;
     }
 
     /* ------------------------------------------------------------ */
@@ -1395,44 +1369,21 @@ public class ServletHandler extends ScopedHandler
     protected synchronized void updateMappings()
     {
         // update filter mappings
-        if (_filterMappings==null)
+        if (_filterMappings!=null)
         {
-            _filterPathMappings=null;
-            _filterNameMappings=null;
-        }
-        else
-        {
-            _filterPathMappings=new ArrayList<>();
-            _filterNameMappings=new MultiMap<FilterMapping>();
             for (FilterMapping filtermapping : _filterMappings)
             {
                 FilterHolder filter_holder = _filterNameMap.get(filtermapping.getFilterName());
                 if (filter_holder == null)
                     throw new IllegalStateException("No filter named " + filtermapping.getFilterName());
                 filtermapping.setFilterHolder(filter_holder);
-                if (filtermapping.getPathSpecs() != null)
-                    _filterPathMappings.add(filtermapping);
-
-                if (filtermapping.getServletNames() != null)
-                {
-                    String[] names = filtermapping.getServletNames();
-                    for (String name : names)
-                    {
-                        if (name != null)
-                            _filterNameMappings.add(name, filtermapping);
-                    }
-                }
             }
         }
 
         // Map servlet paths to holders
-        if (_servletMappings==null || _servletNameMap==null)
+        Map<String,ServletHolder> servletPaths = new HashMap<>();
+        if (_servletMappings!=null && _servletNameMap!=null)
         {
-            _servletPathMap=null;
-        }
-        else
-        {
-            PathMap<ServletHolder> pm = new PathMap<>();
             Map<String,ServletMapping> servletPathMappings = new HashMap<String,ServletMapping>();
             
             //create a map of paths to set of ServletMappings that define that mapping
@@ -1495,28 +1446,20 @@ public class ServletHandler extends ScopedHandler
                 if (LOG.isDebugEnabled()) LOG.debug("Chose path={} mapped to servlet={} from default={}", pathSpec, finalMapping.getServletName(), finalMapping.isDefault());
                
                 servletPathMappings.put(pathSpec, finalMapping);
-                pm.put(pathSpec,_servletNameMap.get(finalMapping.getServletName()));
+                servletPaths.put(pathSpec,_servletNameMap.get(finalMapping.getServletName()));
             }
-     
-            _servletPathMap=pm;
         }
 
+        // Precompile the servlet and filter routes
+        _routes=new ServletRoutingTable(servletPaths,_servletNameMap,_filterMappings);
+
         // flush filter chain cache
-        if (_chainCache!=null)
-        {
-            for (int i=_chainCache.length;i-->0;)
-            {
-                if (_chainCache[i]!=null)
-                    _chainCache[i].clear();
-            }
-        }
+        invalidateChainsCache();
 
         if (LOG.isDebugEnabled())
         {
             LOG.debug("filterNameMap="+_filterNameMap);
-            LOG.debug("pathFilters="+_filterPathMappings);
-            LOG.debug("servletFilterMap="+_filterNameMappings);
-            LOG.debug("servletPathMap="+_servletPathMap);
+            LOG.debug("routes="+_routes);
             LOG.debug("servletNameMap="+_servletNameMap);
         }
 
@@ -1770,7 +1713,7 @@ public class ServletHandler extends ScopedHandler
     /* ------------------------------------------------------------ */
     /** Set the maximum filter chain cache size.
      * Filter chains are cached if {@link #isFilterChainsCached()} is true. If the max cache size
-     * is greater than zero, then the cache is flushed whenever it grows to be this size.
+     * is greater than zero, then the least recently used chains are evicted beyond this size.
      *
      * @param maxFilterChainsCacheSize  the maximum number of entries in a filter chain cache.
      */
@@ -0,0 +1,544 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.servlet;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jetty.http.PathMap;
+import org.eclipse.jetty.util.ArrayTernaryTrie;
+import org.eclipse.jetty.util.Trie;
+import org.eclipse.jetty.util.URIUtil;
+
+/* ------------------------------------------------------------ */
+/** Immutable servlet and filter routing table.
+ * <p>
+ * Built by {@link ServletHandler#updateMappings()} from the servlet path
+ * specifications and the {@link FilterMapping}s, so that request time
+ * lookups do not walk the mapping lists:
+ * <ul>
+ * <li>servlet exact specs are held in a hash, prefix specs in a trie keyed
+ * by the spec without the trailing <code>/*</code> and suffix specs in a
+ * trie keyed by the extension, following the precedence of {@link PathMap};</li>
+ * <li>filter path specs are indexed the same way, and the matched filters
+ * are returned in the order of the filter mappings;</li>
+ * <li>servlet name filters are precomputed per servlet and dispatch type,
+ * and the complete filter list is precomputed for every servlet mapping
+ * whose filters do not depend on the path within it, which is always the
+ * case for exact mappings.</li>
+ * </ul>
+ * Servlet lookups are allocation free.
+ */
+final class ServletRoutingTable
+{
+    private static final FilterHolder[] NO_FILTERS = new FilterHolder[0];
+    private static final int DISPATCHES = Integer.bitCount(FilterMapping.ALL);
+    private static final int NONE = 0;
+    private static final int SOME = 1;
+    private static final int ALL = 2;
+
+    /* ------------------------------------------------------------ */
+    static final class Route
+    {
+        final PathMap.MappedEntry<ServletHolder> _entry;
+        FilterHolder[][] _filters;
+
+        Route(String pathSpec, ServletHolder holder, String mapped)
+        {
+            _entry=new PathMap.MappedEntry<>(pathSpec,holder,mapped);
+        }
+
+        @Override
+        public String toString()
+        {
+            return _entry.toString();
+        }
+    }
+
+    private final Map<String,Route> _exact=new HashMap<>();
+    private final Trie<Route> _prefix;
+    private final Trie<Route> _suffix;
+    private final Route _root;
+    private final Route _prefixDefault;
+    private final Route _default;
+
+    private final FilterMapping[] _pathFilters;
+    private final int[] _anyPathFilters;
+    private final int[] _otherPathFilters;
+    private final Map<String,int[]> _exactPathFilters=new HashMap<>();
+    private final Trie<int[]> _prefixPathFilters;
+    private final Trie<int[]> _suffixPathFilters;
+
+    private final Map<String,FilterHolder[][]> _nameFilters=new HashMap<>();
+    private final FilterHolder[][] _anyNameFilters;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param servletPaths the servlet path specs mapped to their holders
+     * @param servletNames the servlet names mapped to their holders
+     * @param filterMappings the filter mappings, with their holders set, in order
+     */
+    ServletRoutingTable(Map<String,ServletHolder> servletPaths, Map<String,ServletHolder> servletNames, FilterMapping[] filterMappings)
+    {
+        // servlet routes
+        Map<String,Route> prefix=new HashMap<>();
+        Map<String,Route> suffix=new HashMap<>();
+        Route root=null;
+        Route prefixDefault=null;
+        Route dftl=null;
+        for (Map.Entry<String,ServletHolder> entry : servletPaths.entrySet())
+        {
+            String spec=entry.getKey();
+            ServletHolder holder=entry.getValue();
+            if (spec.length()==0)
+                root=new Route(spec,holder,spec);
+            else if (!spec.startsWith("/") && !spec.startsWith("*."))
+                throw new IllegalArgumentException("PathSpec "+spec+". must start with '/' or '*.'");
+            else if (spec.equals("/*"))
+                prefixDefault=new Route(spec,holder,null);
+            else if (spec.endsWith("/*"))
+            {
+                String mapped=spec.substring(0,spec.length()-2);
+                prefix.put(mapped,new Route(spec,holder,mapped));
+            }
+            else if (spec.startsWith("*."))
+                suffix.put(spec.substring(2),new Route(spec,holder,null));
+            else if (spec.equals(URIUtil.SLASH))
+                dftl=new Route(spec,holder,null);
+            else
+                _exact.put(spec,new Route(spec,holder,spec));
+        }
+        _prefix=newTrie(prefix);
+        _suffix=newTrie(suffix);
+        _root=root;
+        _prefixDefault=prefixDefault;
+        _default=dftl;
+
+        // filter path index
+        List<FilterMapping> pathFilters=new ArrayList<>();
+        List<Integer> any=new ArrayList<>();
+        List<Integer> other=new ArrayList<>();
+        Map<String,List<Integer>> exact=new HashMap<>();
+        Map<String,List<Integer>> prefixFilters=new HashMap<>();
+        Map<String,List<Integer>> suffixFilters=new HashMap<>();
+        Map<String,List<FilterMapping>> named=new HashMap<>();
+        List<FilterMapping> anyNamed=new ArrayList<>();
+        if (filterMappings!=null)
+        {
+            for (FilterMapping mapping : filterMappings)
+            {
+                String[] specs=mapping.getPathSpecs();
+                if (specs!=null)
+                {
+                    Integer ordinal=pathFilters.size();
+                    pathFilters.add(mapping);
+                    for (String spec : specs)
+                    {
+                        if (spec==null)
+                            continue;
+                        if (spec.length()==0)
+                            add(exact,URIUtil.SLASH,ordinal);
+                        else if (spec.charAt(0)=='/')
+                        {
+                            if (spec.equals("/*"))
+                                any.add(ordinal);
+                            else if (spec.endsWith("/*"))
+                                add(prefixFilters,spec.substring(0,spec.length()-2),ordinal);
+                            else
+                                add(exact,spec,ordinal);
+                        }
+                        else if (spec.startsWith("*.") && spec.length()>2)
+                            add(suffixFilters,spec.substring(2),ordinal);
+                        else if (spec.charAt(0)=='*')
+                            other.add(ordinal);
+                    }
+                }
+
+                String[] names=mapping.getServletNames();
+                if (names!=null)
+                {
+                    for (String name : names)
+                    {
+                        if ("*".equals(name))
+                            anyNamed.add(mapping);
+                        else if (name!=null)
+                        {
+                            List<FilterMapping> list=named.get(name);
+                            if (list==null)
+                                named.put(name,list=new ArrayList<FilterMapping>());
+                            list.add(mapping);
+                        }
+                    }
+                }
+            }
+        }
+
+        _pathFilters=pathFilters.toArray(new FilterMapping[pathFilters.size()]);
+        _anyPathFilters=toArray(any);
+        _otherPathFilters=toArray(other);
+        for (Map.Entry<String,List<Integer>> entry : exact.entrySet())
+            _exactPathFilters.put(entry.getKey(),toArray(entry.getValue()));
+        _prefixPathFilters=newOrdinalTrie(prefixFilters);
+        _suffixPathFilters=newOrdinalTrie(suffixFilters);
+
+        // servlet name filters, a servlet's own mappings before those for "*"
+        _anyNameFilters=byDispatch(anyNamed);
+        for (String name : servletNames.keySet())
+        {
+            List<FilterMapping> mappings=named.get(name);
+            if (mappings==null)
+                _nameFilters.put(name,_anyNameFilters);
+            else
+            {
+                mappings.addAll(anyNamed);
+                _nameFilters.put(name,byDispatch(mappings));
+            }
+        }
+
+        // complete filter lists for the routes that do not depend on the path
+        if (_root!=null)
+            precompute(_root,URIUtil.SLASH);
+        for (Route route : _exact.values())
+            precompute(route,route._entry.getKey());
+        for (Route route : prefix.values())
+            precompute(route);
+        for (Route route : suffix.values())
+            precompute(route);
+        if (_prefixDefault!=null)
+            precompute(_prefixDefault);
+        if (_default!=null)
+            precompute(_default);
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Get the servlet mapped by the best path specification.
+     * @param path the path within the context
+     * @return the mapped entry or null
+     */
+    PathMap.MappedEntry<ServletHolder> getMatch(String path)
+    {
+        Route route=getRoute(path);
+        return route==null?null:route._entry;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Get the key to cache the filter chain of a dispatch by.
+     * @param path the path within the context, or null for a dispatch by servlet name
+     * @param holder the servlet being dispatched to
+     * @return the servlet name for a dispatch by name, the servlet mapping if
+     * its filters do not depend on the path within it, otherwise the path
+     */
+    Object getChainKey(String path, ServletHolder holder)
+    {
+        if (path==null)
+            return holder.getName();
+        Route route=getRoute(path);
+        if (route!=null && route._filters!=null && route._entry.getValue()==holder)
+            return route;
+        return path;
+    }
+
+    /* ------------------------------------------------------------ */
+    private Route getRoute(String path)
+    {
+        if (path==null)
+            return null;
+
+        Route route=getExact(path);
+        if (route!=null)
+            return route;
+
+        // prefix search, longest first
+        int l=path.length();
+        int i=l;
+        while (i>=0)
+        {
+            route=_prefix.getBest(path,0,i);
+            if (route==null)
+                break;
+            int m=route._entry.getMapped().length();
+            if (m>=l || path.charAt(m)=='/')
+                return route;
+            i=m-1;
+        }
+
+        if (_prefixDefault!=null)
+            return _prefixDefault;
+
+        // extension search
+        i=0;
+        while ((i=path.indexOf('.',i+1))>0)
+        {
+            route=_suffix.get(path,i+1,l-i-1);
+            if (route!=null)
+                return route;
+        }
+
+        return _default;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Get the filters that apply to a dispatch, in filter mapping order.
+     * @param path the path within the context, or null for a dispatch by servlet name
+     * @param holder the servlet being dispatched to
+     * @param dispatch the {@link FilterMapping} dispatch type
+     * @return the path filters followed by the servlet name filters
+     */
+    FilterHolder[] getFilters(String path, ServletHolder holder, int dispatch)
+    {
+        int d=Integer.numberOfTrailingZeros(dispatch);
+        if (path==null)
+            return getNameFilters(holder)[d];
+
+        Route route=getRoute(path);
+        if (route!=null && route._filters!=null && route._entry.getValue()==holder)
+            return route._filters[d];
+
+        return match(path,holder,dispatch);
+    }
+
+    /* ------------------------------------------------------------ */
+    private Route getExact(String path)
+    {
+        if (_root!=null && path.length()==1 && path.charAt(0)=='/')
+            return _root;
+        return _exact.get(path);
+    }
+
+    /* ------------------------------------------------------------ */
+    private FilterHolder[][] getNameFilters(ServletHolder holder)
+    {
+        FilterHolder[][] filters=holder==null?null:_nameFilters.get(holder.getName());
+        return filters==null?_anyNameFilters:filters;
+    }
+
+    /* ------------------------------------------------------------ */
+    private void precompute(Route route, String path)
+    {
+        route._filters=new FilterHolder[DISPATCHES][];
+        for (int d=0;d<DISPATCHES;d++)
+            route._filters[d]=match(path,route._entry.getValue(),1<<d);
+    }
+
+    /* ------------------------------------------------------------ */
+    private void precompute(Route route)
+    {
+        String routeSpec=route._entry.getKey();
+        List<FilterMapping> applied=new ArrayList<>();
+        for (FilterMapping mapping : _pathFilters)
+        {
+            int coverage=NONE;
+            for (String spec : mapping.getPathSpecs())
+                coverage=Math.max(coverage,coverage(spec,routeSpec));
+            if (coverage==SOME)
+                return;
+            if (coverage==ALL)
+                applied.add(mapping);
+        }
+
+        FilterHolder[][] byPath=byDispatch(applied);
+        FilterHolder[][] byName=getNameFilters(route._entry.getValue());
+        route._filters=new FilterHolder[DISPATCHES][];
+        for (int d=0;d<DISPATCHES;d++)
+        {
+            if (byPath[d].length==0)
+                route._filters[d]=byName[d];
+            else
+            {
+                FilterHolder[] filters=new FilterHolder[byPath[d].length+byName[d].length];
+                System.arraycopy(byPath[d],0,filters,0,byPath[d].length);
+                System.arraycopy(byName[d],0,filters,byPath[d].length,byName[d].length);
+                route._filters[d]=filters;
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /** How many of the paths routed by a servlet spec a filter spec matches.
+     * @param filterSpec the filter path spec
+     * @param routeSpec the prefix, suffix or default servlet path spec
+     * @return {@link #NONE}, {@link #SOME} or {@link #ALL}
+     */
+    private static int coverage(String filterSpec, String routeSpec)
+    {
+        if (filterSpec==null)
+            return NONE;
+        if (filterSpec.equals("/*"))
+            return ALL;
+
+        boolean exact;
+        if (filterSpec.length()==0)
+        {
+            exact=true;
+            filterSpec=URIUtil.SLASH;
+        }
+        else if (filterSpec.charAt(0)=='/')
+            exact=!filterSpec.endsWith("/*");
+        else if (filterSpec.charAt(0)=='*')
+        {
+            // paths ending with the filter suffix
+            if (!routeSpec.startsWith("*."))
+                return SOME;
+            String routeSuffix=routeSpec.substring(1);
+            String filterSuffix=filterSpec.substring(1);
+            if (routeSuffix.endsWith(filterSuffix))
+                return ALL;
+            return filterSuffix.endsWith(routeSuffix)?SOME:NONE;
+        }
+        else
+            return NONE;
+
+        if (routeSpec.startsWith("*."))
+            return exact && !filterSpec.endsWith(routeSpec.substring(1))?NONE:SOME;
+        if (routeSpec.equals("/*") || !routeSpec.endsWith("/*"))
+            return SOME;
+
+        // the paths of a prefix route are the prefix or start with the prefix and a '/'
+        String routePrefix=routeSpec.substring(0,routeSpec.length()-2);
+        if (exact)
+            return filterSpec.equals(routePrefix) || filterSpec.startsWith(routePrefix+"/")?SOME:NONE;
+        String filterPrefix=filterSpec.substring(0,filterSpec.length()-2);
+        if (routePrefix.equals(filterPrefix) || routePrefix.startsWith(filterPrefix+"/"))
+            return ALL;
+        return filterPrefix.startsWith(routePrefix+"/")?SOME:NONE;
+    }
+
+    /* ------------------------------------------------------------ */
+    private FilterHolder[] match(String path, ServletHolder holder, int dispatch)
+    {
+        FilterHolder[] byName=getNameFilters(holder)[Integer.numberOfTrailingZeros(dispatch)];
+        if (_pathFilters.length==0)
+            return byName;
+
+        int l=path.length();
+        BitSet matched=new BitSet(_pathFilters.length);
+        if (l==0 || path.charAt(0)=='/')
+            mark(matched,_anyPathFilters);
+        mark(matched,_exactPathFilters.get(path));
+        for (int i=1;i<=l;i++)
+        {
+            if (i==l || path.charAt(i)=='/')
+                mark(matched,_prefixPathFilters.get(path,0,i));
+        }
+        for (int i=path.indexOf('.');i>=0 && i<l-1;i=path.indexOf('.',i+1))
+            mark(matched,_suffixPathFilters.get(path,i+1,l-i-1));
+        for (int ordinal : _otherPathFilters)
+        {
+            for (String spec : _pathFilters[ordinal].getPathSpecs())
+            {
+                if (spec!=null && PathMap.match(spec,path,true))
+                    matched.set(ordinal);
+            }
+        }
+
+        List<FilterHolder> filters=new ArrayList<>();
+        for (int i=matched.nextSetBit(0);i>=0;i=matched.nextSetBit(i+1))
+        {
+            if (_pathFilters[i].appliesTo(dispatch))
+                filters.add(_pathFilters[i].getFilterHolder());
+        }
+        if (filters.isEmpty())
+            return byName;
+        for (FilterHolder filter : byName)
+            filters.add(filter);
+        return filters.toArray(new FilterHolder[filters.size()]);
+    }
+
+    /* ------------------------------------------------------------ */
+    private static void mark(BitSet matched, int[] ordinals)
+    {
+        if (ordinals!=null)
+        {
+            for (int ordinal : ordinals)
+                matched.set(ordinal);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private static FilterHolder[][] byDispatch(List<FilterMapping> mappings)
+    {
+        FilterHolder[][] filters=new FilterHolder[DISPATCHES][];
+        for (int d=0;d<DISPATCHES;d++)
+        {
+            List<FilterHolder> list=new ArrayList<>();
+            for (FilterMapping mapping : mappings)
+            {
+                if (mapping.appliesTo(1<<d))
+                    list.add(mapping.getFilterHolder());
+            }
+            filters[d]=list.isEmpty()?NO_FILTERS:list.toArray(new FilterHolder[list.size()]);
+        }
+        return filters;
+    }
+
+    /* ------------------------------------------------------------ */
+    private static void add(Map<String,List<Integer>> map, String key, Integer ordinal)
+    {
+        List<Integer> list=map.get(key);
+        if (list==null)
+            map.put(key,list=new ArrayList<Integer>());
+        list.add(ordinal);
+    }
+
+    /* ------------------------------------------------------------ */
+    private static int[] toArray(List<Integer> list)
+    {
+        int[] array=new int[list.size()];
+        for (int i=0;i<array.length;i++)
+            array[i]=list.get(i);
+        return array;
+    }
+
+    /* ------------------------------------------------------------ */
+    private static Trie<int[]> newOrdinalTrie(Map<String,List<Integer>> map)
+    {
+        Map<String,int[]> ordinals=new HashMap<>();
+        for (Map.Entry<String,List<Integer>> entry : map.entrySet())
+            ordinals.put(entry.getKey(),toArray(entry.getValue()));
+        return newTrie(ordinals);
+    }
+
+    /* ------------------------------------------------------------ */
+    private static <V> Trie<V> newTrie(Map<String,V> map)
+    {
+        int capacity=1;
+        for (String key : map.keySet())
+            capacity+=key.length();
+        ArrayTernaryTrie<V> trie=new ArrayTernaryTrie<>(false,Math.max(capacity,16));
+        for (Map.Entry<String,V> entry : map.entrySet())
+        {
+            while (!trie.put(entry.getKey(),entry.getValue()))
+                trie=new ArrayTernaryTrie<>(trie,1.5);
+        }
+        return trie;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{root=%s,exact=%s,prefix=%s,suffix=%s,default=%s,pathFilters=%d,namedFilters=%d}",
+                getClass().getSimpleName(),hashCode(),_root,_exact.values(),_prefix.keySet(),_suffix.keySet(),
+                _prefixDefault!=null?_prefixDefault:_default,_pathFilters.length,_nameFilters.size());
+    }
+}
@@ -21,15 +21,14 @@ package org.eclipse.jetty.util;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -37,7 +36,9 @@ import java.util.List;
 import java.util.Locale;
 
 import javax.servlet.MultipartConfigElement;
+import javax.servlet.ReadListener;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
 import javax.servlet.http.Part;
 
 import org.eclipse.jetty.util.log.Log;
@@ -49,11 +50,17 @@ import org.eclipse.jetty.util.log.Logger;
  * MultiPartInputStream
  *
  * Handle a MultiPart Mime input stream, breaking it up on the boundary into files and strings.
+ * <p>
+ * The stream is read in buffers that are parsed incrementally by a {@link MultiPartParser}, either
+ * by blocking in {@link #getParts()} or, for a request in async mode, by {@link #parseAsync(Callback)}.
+ * Parts are held in memory until they exceed the file size threshold of the
+ * {@link MultipartConfigElement}, then the buffers are written directly to a temporary file.
  */
 public class MultiPartInputStreamParser
 {
     private static final Logger LOG = Log.getLogger(MultiPartInputStreamParser.class);
     public static final MultipartConfigElement  __DEFAULT_MULTIPART_CONFIG = new MultipartConfigElement(System.getProperty("java.io.tmpdir"));
+    public static final int __DEFAULT_BUFFER_SIZE = 16*1024;
     protected InputStream _in;
     protected MultipartConfigElement _config;
     protected String _contentType;
@@ -61,6 +68,9 @@ public class MultiPartInputStreamParser
     protected File _tmpDir;
     protected File _contextTmpDir;
     protected boolean _deleteOnExit;
+    private MultiPartParser _parser;
+    private PartHandler _handler;
+    private long _total;
 
 
 
@@ -71,6 +81,7 @@ public class MultiPartInputStreamParser
         protected File _file;
         protected OutputStream _out;
         protected ByteArrayOutputStream2 _bout;
+        protected FileChannel _channel;
         protected String _contentType;
         protected MultiMap<String> _headers;
         protected long _size = 0;
@@ -107,26 +118,42 @@ public class MultiPartInputStreamParser
         protected void write (int b)
         throws IOException
         {
-            if (MultiPartInputStreamParser.this._config.getMaxFileSize() > 0 && _size + 1 > MultiPartInputStreamParser.this._config.getMaxFileSize())
-                throw new IllegalStateException ("Multipart Mime part "+_name+" exceeds max filesize");
-
-            if (MultiPartInputStreamParser.this._config.getFileSizeThreshold() > 0 && _size + 1 > MultiPartInputStreamParser.this._config.getFileSizeThreshold() && _file==null)
-                createFile();
-
-            _out.write(b);
-            _size ++;
+            write(new byte[]{(byte)b},0,1);
         }
 
         protected void write (byte[] bytes, int offset, int length)
         throws IOException
         {
+            write(ByteBuffer.wrap(bytes,offset,length));
+        }
+
+        protected void write (ByteBuffer buffer)
+        throws IOException
+        {
+            int length = buffer.remaining();
             if (MultiPartInputStreamParser.this._config.getMaxFileSize() > 0 && _size + length > MultiPartInputStreamParser.this._config.getMaxFileSize())
                 throw new IllegalStateException ("Multipart Mime part "+_name+" exceeds max filesize");
 
             if (MultiPartInputStreamParser.this._config.getFileSizeThreshold() > 0 && _size + length > MultiPartInputStreamParser.this._config.getFileSizeThreshold() && _file==null)
                 createFile();
-           
-            _out.write(bytes, offset, length);
+
+            if (_channel != null)
+            {
+                //write the parsed buffer straight to the file
+                while (buffer.hasRemaining())
+                    _channel.write(buffer);
+            }
+            else if (buffer.hasArray())
+            {
+                _out.write(buffer.array(), buffer.arrayOffset()+buffer.position(), length);
+                buffer.position(buffer.limit());
+            }
+            else
+            {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                _out.write(bytes);
+            }
             _size += length;
         }
 
@@ -138,17 +165,18 @@ public class MultiPartInputStreamParser
             if (_deleteOnExit)
                 _file.deleteOnExit();
             FileOutputStream fos = new FileOutputStream(_file);
-            BufferedOutputStream bos = new BufferedOutputStream(fos);
+            _channel = fos.getChannel();
 
             if (_size > 0 && _out != null)
             {
                 //already written some bytes, so need to copy them into the file
-                _out.flush();
-                _bout.writeTo(bos);
+                ByteBuffer written = ByteBuffer.wrap(_bout.getBuf(), 0, _bout.size());
+                while (written.hasRemaining())
+                    _channel.write(written);
                 _out.close();
                 _bout = null;
             }
-            _out = bos;
+            _out = fos;
         }
 
 
@@ -332,7 +360,7 @@ public class MultiPartInputStreamParser
      */
     public MultiPartInputStreamParser (InputStream in, String contentType, MultipartConfigElement config, File contextTmpDir)
     {
-        _in = new ReadLineInputStream(in);
+        _in = in;
        _contentType = contentType;
        _config = config;
        _contextTmpDir = contextTmpDir;
@@ -437,13 +465,147 @@ public class MultiPartInputStreamParser
         if (_parts != null)
             return;
 
-        //initialize
-        long total = 0; //keep running total of size of bytes read from input and throw an exception if exceeds MultipartConfigElement._maxRequestSize
+        if (!start())
+            return;
+
+        ByteBuffer buffer = acquireBuffer();
+        try
+        {
+            while (true)
+            {
+                int l = _in.read(buffer.array(), buffer.arrayOffset(), buffer.capacity());
+                if (l < 0)
+                    break;
+                buffer.position(0);
+                buffer.limit(l);
+                if (parse(buffer))
+                    break;
+            }
+            complete();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            _handler.abort();
+            throw e;
+        }
+        finally
+        {
+            releaseBuffer(buffer);
+        }
+    }
+
+
+    /**
+     * Parse the multipart stream as its content arrives, without blocking.
+     * <p>
+     * The input stream must be the {@link ServletInputStream} of a request in async mode,
+     * on which a {@link ReadListener} is set. Once the callback has succeeded, {@link #getParts()}
+     * returns the parts without blocking.
+     * 
+     * @param callback notified when the stream has been parsed, or has failed
+     */
+    public void parseAsync(final Callback callback)
+    {
+        if (!(_in instanceof ServletInputStream))
+            throw new IllegalStateException("Not a ServletInputStream");
+        if (_parts != null)
+            throw new IllegalStateException("Already parsed");
+
+        final ServletInputStream in = (ServletInputStream)_in;
+        try
+        {
+            if (!start())
+            {
+                callback.succeeded();
+                return;
+            }
+        }
+        catch (Throwable x)
+        {
+            callback.failed(x);
+            return;
+        }
+
+        final ByteBuffer buffer = acquireBuffer();
+        in.setReadListener(new ReadListener()
+        {
+            private boolean _done;
+
+            @Override
+            public void onDataAvailable() throws IOException
+            {
+                //read to the end of the stream, as the epilogue is ignored once parsed
+                while (!_done && in.isReady())
+                {
+                    int l = in.read(buffer.array(), buffer.arrayOffset(), buffer.capacity());
+                    if (l < 0)
+                        break;
+                    buffer.position(0);
+                    buffer.limit(l);
+                    parse(buffer);
+                }
+            }
+
+            @Override
+            public void onAllDataRead() throws IOException
+            {
+                if (_done)
+                    return;
+                _done = true;
+                releaseBuffer(buffer);
+                try
+                {
+                    complete();
+                }
+                catch (Throwable x)
+                {
+                    _handler.abort();
+                    callback.failed(x);
+                    return;
+                }
+                callback.succeeded();
+            }
+
+            @Override
+            public void onError(Throwable x)
+            {
+                if (_done)
+                    return;
+                _done = true;
+                releaseBuffer(buffer);
+                _handler.abort();
+                callback.failed(x);
+            }
+        });
+    }
+
+
+    /**
+     * @return a buffer with a backing array to read the multipart stream into
+     */
+    protected ByteBuffer acquireBuffer()
+    {
+        return ByteBuffer.allocate(__DEFAULT_BUFFER_SIZE);
+    }
+
+
+    /**
+     * @param buffer a buffer from {@link #acquireBuffer()} that is no longer used
+     */
+    protected void releaseBuffer(ByteBuffer buffer)
+    {
+    }
+
+
+    /* ------------------------------------------------------------ */
+    private boolean start ()
+    throws IOException
+    {
         _parts = new MultiMap<Part>();
 
         //if its not a multipart request, don't parse it
         if (_contentType == null || !_contentType.startsWith("multipart/form-data"))
-            return;
+            return false;
 
         //sort out the location to which to write the files
 
@@ -471,265 +633,38 @@ public class MultiPartInputStreamParser
             bend = (bend < 0? _contentType.length(): bend);
             contentTypeBoundary = QuotedStringTokenizer.unquote(value(_contentType.substring(bstart,bend)).trim());
         }
-        
-        String boundary="--"+contentTypeBoundary;
-        byte[] byteBoundary=(boundary+"--").getBytes(StandardCharsets.ISO_8859_1);
-
-        // Get first boundary
-        String line = null;
-        try
-        {
-            line=((ReadLineInputStream)_in).readLine();  
-        }
-        catch (IOException e)
-        {
-            LOG.warn("Badly formatted multipart request");
-            throw e;
-        }
-        
-        if (line == null)
-            throw new IOException("Missing content for multipart request");
-        
-        boolean badFormatLogged = false;
-        line=line.trim();
-        while (line != null && !line.equals(boundary))
-        {
-            if (!badFormatLogged)
-            {
-                LOG.warn("Badly formatted multipart request");
-                badFormatLogged = true;
-            }
-            line=((ReadLineInputStream)_in).readLine();
-            line=(line==null?line:line.trim());
-        }
-
-        if (line == null)
-            throw new IOException("Missing initial multi part boundary");
-
-        // Read each part
-        boolean lastPart=false;
 
-        outer:while(!lastPart)
-        {
-            String contentDisposition=null;
-            String contentType=null;
-            String contentTransferEncoding=null;
-            
-            MultiMap<String> headers = new MultiMap<String>();
-            while(true)
-            {
-                line=((ReadLineInputStream)_in).readLine();
-                
-                //No more input
-                if(line==null)
-                    break outer;
-                
-                //end of headers:
-                if("".equals(line))
-                    break;
-           
-                total += line.length();
-                if (_config.getMaxRequestSize() > 0 && total > _config.getMaxRequestSize())
-                    throw new IllegalStateException ("Request exceeds maxRequestSize ("+_config.getMaxRequestSize()+")");
-
-                //get content-disposition and content-type
-                int c=line.indexOf(':',0);
-                if(c>0)
-                {
-                    String key=line.substring(0,c).trim().toLowerCase(Locale.ENGLISH);
-                    String value=line.substring(c+1,line.length()).trim();
-                    headers.put(key, value);
-                    if (key.equalsIgnoreCase("content-disposition"))
-                        contentDisposition=value;
-                    if (key.equalsIgnoreCase("content-type"))
-                        contentType = value;
-                    if(key.equals("content-transfer-encoding"))
-                        contentTransferEncoding=value;
-                }
-            }
-
-            // Extract content-disposition
-            boolean form_data=false;
-            if(contentDisposition==null)
-            {
-                throw new IOException("Missing content-disposition");
-            }
+        _handler = new PartHandler();
+        _parser = new MultiPartParser(_handler, contentTypeBoundary);
+        return true;
+    }
 
-            QuotedStringTokenizer tok=new QuotedStringTokenizer(contentDisposition,";", false, true);
-            String name=null;
-            String filename=null;
-            while(tok.hasMoreTokens())
-            {
-                String t=tok.nextToken().trim();
-                String tl=t.toLowerCase(Locale.ENGLISH);
-                if(t.startsWith("form-data"))
-                    form_data=true;
-                else if(tl.startsWith("name="))
-                    name=value(t);
-                else if(tl.startsWith("filename="))
-                    filename=filenameValue(t);
-            }
 
-            // Check disposition
-            if(!form_data)
-            {
-                continue;
-            }
-            //It is valid for reset and submit buttons to have an empty name.
-            //If no name is supplied, the browser skips sending the info for that field.
-            //However, if you supply the empty string as the name, the browser sends the
-            //field, with name as the empty string. So, only continue this loop if we
-            //have not yet seen a name field.
-            if(name==null)
-            {
-                continue;
-            }
-
-            //Have a new Part
-            MultiPart part = new MultiPart(name, filename);
-            part.setHeaders(headers);
-            part.setContentType(contentType);
-            _parts.add(name, part);
-            part.open();
-            
-            InputStream partInput = null;
-            if ("base64".equalsIgnoreCase(contentTransferEncoding))
-            {
-                partInput = new Base64InputStream((ReadLineInputStream)_in);
-            }
-            else if ("quoted-printable".equalsIgnoreCase(contentTransferEncoding))
-            {
-                partInput = new FilterInputStream(_in)
-                {
-                    @Override
-                    public int read() throws IOException
-                    {
-                        int c = in.read();
-                        if (c >= 0 && c == '=')
-                        {
-                            int hi = in.read();
-                            int lo = in.read();
-                            if (hi < 0 || lo < 0)
-                            {
-                                throw new IOException("Unexpected end to quoted-printable byte");
-                            }
-                            char[] chars = new char[] { (char)hi, (char)lo };
-                            c = Integer.parseInt(new String(chars),16);
-                        }
-                        return c;
-                    }
-                };
-            }
-            else
-                partInput = _in;
-
-            
-            try
-            {
-                int state=-2;
-                int c;
-                boolean cr=false;
-                boolean lf=false;
+    /* ------------------------------------------------------------ */
+    private boolean parse (ByteBuffer buffer)
+    throws IOException
+    {
+        //keep running total of size of bytes read from input and throw an exception if exceeds MultipartConfigElement._maxRequestSize
+        _total += buffer.remaining();
+        if (_config.getMaxRequestSize() > 0 && _total > _config.getMaxRequestSize())
+            throw new IllegalStateException ("Request exceeds maxRequestSize ("+_config.getMaxRequestSize()+")");
+        return _parser.parse(buffer);
+    }
 
-                // loop for all lines
-                while(true)
-                {
-                    int b=0;
-                    while((c=(state!=-2)?state:partInput.read())!=-1)
-                    {
-                        total ++;
-                        if (_config.getMaxRequestSize() > 0 && total > _config.getMaxRequestSize())
-                            throw new IllegalStateException("Request exceeds maxRequestSize ("+_config.getMaxRequestSize()+")");
-
-                        state=-2;
-                        
-                        // look for CR and/or LF
-                        if(c==13||c==10)
-                        {
-                            if(c==13)
-                            {
-                                partInput.mark(1);
-                                int tmp=partInput.read();
-                                if (tmp!=10)
-                                    partInput.reset();
-                                else
-                                    state=tmp;
-                            }
-                            break;
-                        }
-                        
-                        // Look for boundary
-                        if(b>=0&&b<byteBoundary.length&&c==byteBoundary[b])
-                        {
-                            b++;
-                        }
-                        else
-                        {
-                            // Got a character not part of the boundary, so we don't have the boundary marker.
-                            // Write out as many chars as we matched, then the char we're looking at.
-                            if(cr)
-                                part.write(13);
-
-                            if(lf)
-                                part.write(10);
-
-                            cr=lf=false;
-                            if(b>0)
-                                part.write(byteBoundary,0,b);
-
-                            b=-1;
-                            part.write(c);
-                        }
-                    }
-                    
-                    // Check for incomplete boundary match, writing out the chars we matched along the way
-                    if((b>0&&b<byteBoundary.length-2)||(b==byteBoundary.length-1))
-                    {
-                        if(cr)
-                            part.write(13);
-
-                        if(lf)
-                            part.write(10);
-
-                        cr=lf=false;
-                        part.write(byteBoundary,0,b);
-                        b=-1;
-                    }
-                    
-                    // Boundary match. If we've run out of input or we matched the entire final boundary marker, then this is the last part.
-                    if(b>0||c==-1)
-                    {
-                       
-                        if(b==byteBoundary.length)
-                            lastPart=true;
-                        if(state==10)
-                            state=-2;
-                        break;
-                    }
-                    
-                    // handle CR LF
-                    if(cr)
-                        part.write(13);
-
-                    if(lf)
-                        part.write(10);
-
-                    cr=(c==13);
-                    lf=(c==10||state==10);
-                    if(state==10)
-                        state=-2;
-                }
-            }
-            finally
-            {
 
-                part.close();
-            }
-        }
-        if (!lastPart)
-            throw new IOException("Incomplete parts");
+    /* ------------------------------------------------------------ */
+    private void complete ()
+    throws IOException
+    {
+        if (_parser.isComplete())
+            return;
+        if (_total == 0)
+            throw new IOException("Missing content for multipart request");
+        if (_parser.getState() == MultiPartParser.State.PREAMBLE)
+            throw new IOException("Missing initial multi part boundary");
+        throw new IOException("Incomplete parts");
     }
-    
+
     public void setDeleteOnExit(boolean deleteOnExit)
     {
         _deleteOnExit = deleteOnExit;
@@ -780,48 +715,229 @@ public class MultiPartInputStreamParser
 
     
 
-    private static class Base64InputStream extends InputStream
+    /* ------------------------------------------------------------ */
+    /**
+     * Creates the parts reported by the {@link MultiPartParser}, decoding any
+     * base64 or quoted-printable transfer encoding of their content.
+     */
+    private class PartHandler implements MultiPartParser.Handler
     {
-        ReadLineInputStream _in;
-        String _line;
-        byte[] _buffer;
-        int _pos;
+        private final byte[] _decoded = new byte[4096];
+        private MultiMap<String> _headers;
+        private String _contentDisposition;
+        private String _contentType;
+        private String _contentTransferEncoding;
+        private MultiPart _part;
+        private boolean _base64;
+        private boolean _quotedPrintable;
+        private int _bits;
+        private int _nibbles;
+        private int _escape = -1;
+        private int _length;
 
-    
-        public Base64InputStream(ReadLineInputStream rlis)
+        @Override
+        public void startPart()
         {
-            _in = rlis;
+            _headers = new MultiMap<String>();
+            _contentDisposition = null;
+            _contentType = null;
+            _contentTransferEncoding = null;
+            _part = null;
         }
 
         @Override
-        public int read() throws IOException
+        public void parsedField(String name, String value)
         {
-            if (_buffer==null || _pos>= _buffer.length)
+            //get content-disposition and content-type
+            String key = name.toLowerCase(Locale.ENGLISH);
+            _headers.put(key, value);
+            if (key.equals("content-disposition"))
+                _contentDisposition = value;
+            if (key.equals("content-type"))
+                _contentType = value;
+            if (key.equals("content-transfer-encoding"))
+                _contentTransferEncoding = value;
+        }
+
+        @Override
+        public void headerComplete() throws IOException
+        {
+            // Extract content-disposition
+            boolean form_data = false;
+            if (_contentDisposition == null)
             {
-                //Any CR and LF will be consumed by the readLine() call.
-                //We need to put them back into the bytes returned from this
-                //method because the parsing of the multipart content uses them
-                //as markers to determine when we've reached the end of a part.
-                _line = _in.readLine(); 
-                if (_line==null)
-                    return -1;  //nothing left
-                if (_line.startsWith("--"))
-                    _buffer=(_line+"\r\n").getBytes(); //boundary marking end of part
-                else if (_line.length()==0)
-                    _buffer="\r\n".getBytes(); //blank line
-                else
+                throw new IOException("Missing content-disposition");
+            }
+
+            QuotedStringTokenizer tok = new QuotedStringTokenizer(_contentDisposition,";", false, true);
+            String name = null;
+            String filename = null;
+            while (tok.hasMoreTokens())
+            {
+                String t = tok.nextToken().trim();
+                String tl = t.toLowerCase(Locale.ENGLISH);
+                if (t.startsWith("form-data"))
+                    form_data = true;
+                else if (tl.startsWith("name="))
+                    name = value(t);
+                else if (tl.startsWith("filename="))
+                    filename = filenameValue(t);
+            }
+
+            // Check disposition, the content of the part is skipped if it is not form data.
+            //It is valid for reset and submit buttons to have an empty name.
+            //If no name is supplied, the browser skips sending the info for that field.
+            //However, if you supply the empty string as the name, the browser sends the
+            //field, with name as the empty string. So, only skip the part if we
+            //have not yet seen a name field.
+            if (!form_data || name == null)
+                return;
+
+            //Have a new Part
+            _part = new MultiPart(name, filename);
+            _part.setHeaders(_headers);
+            _part.setContentType(_contentType);
+            _parts.add(name, _part);
+            _part.open();
+
+            _base64 = "base64".equalsIgnoreCase(_contentTransferEncoding);
+            _quotedPrintable = "quoted-printable".equalsIgnoreCase(_contentTransferEncoding);
+            _nibbles = 0;
+            _escape = -1;
+        }
+
+        @Override
+        public void content(ByteBuffer buffer, boolean last) throws IOException
+        {
+            if (_part == null)
+                return;
+
+            if (_base64)
+                decodeBase64(buffer);
+            else if (_quotedPrintable)
+                decodeQuotedPrintable(buffer);
+            else
+                _part.write(buffer);
+
+            if (last)
+            {
+                if (_escape >= 0)
+                    throw new IOException("Unexpected end to quoted-printable byte");
+                flush();
+                _part.close();
+                _part = null;
+            }
+        }
+
+        @Override
+        public void messageComplete()
+        {
+        }
+
+        /* ------------------------------------------------------------ */
+        void abort()
+        {
+            if (_part != null)
+            {
+                try
                 {
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream((4*_line.length()/3)+2);
-                    B64Code.decode(_line, baos);
-                    baos.write(13);
-                    baos.write(10);
-                    _buffer = baos.toByteArray();
+                    _part.close();
                 }
+                catch (IOException e)
+                {
+                    LOG.ignore(e);
+                }
+                _part = null;
+            }
+        }
 
-                _pos=0;
+        /* ------------------------------------------------------------ */
+        private void decodeBase64(ByteBuffer buffer) throws IOException
+        {
+            while (buffer.hasRemaining())
+            {
+                int c = buffer.get() & 0xff;
+                int nibble;
+                if (c >= 'A' && c <= 'Z')
+                    nibble = c - 'A';
+                else if (c >= 'a' && c <= 'z')
+                    nibble = c - 'a' + 26;
+                else if (c >= '0' && c <= '9')
+                    nibble = c - '0' + 52;
+                else if (c == '+')
+                    nibble = 62;
+                else if (c == '/')
+                    nibble = 63;
+                else if (c == '=')
+                {
+                    //padding ends the quad
+                    _nibbles = 0;
+                    continue;
+                }
+                else if (Character.isWhitespace(c))
+                    continue;
+                else
+                    throw new IllegalArgumentException("Not B64 encoded");
+
+                //each nibble after the first of a quad completes a byte
+                _bits = _bits << 6 | nibble;
+                if (_nibbles++ > 0)
+                    decoded(_bits >>> (8 - 2 * _nibbles));
+                if (_nibbles == 4)
+                    _nibbles = 0;
             }
-            
-            return _buffer[_pos++];
+        }
+
+        /* ------------------------------------------------------------ */
+        private void decodeQuotedPrintable(ByteBuffer buffer) throws IOException
+        {
+            while (buffer.hasRemaining())
+            {
+                byte b = buffer.get();
+                if (_escape == -1)
+                {
+                    if (b == '=')
+                        _escape = 0;
+                    else
+                        decoded(b);
+                }
+                else if (_escape == 0 && (b == '\r' || b == '\n'))
+                {
+                    //soft line break
+                    _escape = b == '\r' ? -2 : -1;
+                }
+                else if (_escape == -2)
+                {
+                    _escape = -1;
+                    if (b != '\n')
+                        buffer.position(buffer.position() - 1);
+                }
+                else if (_escape == 0)
+                {
+                    _escape = 0x100 | TypeUtil.convertHexDigit(b);
+                }
+                else
+                {
+                    decoded((_escape & 0xf) << 4 | TypeUtil.convertHexDigit(b));
+                    _escape = -1;
+                }
+            }
+        }
+
+        /* ------------------------------------------------------------ */
+        private void decoded(int b) throws IOException
+        {
+            if (_length == _decoded.length)
+                flush();
+            _decoded[_length++] = (byte)b;
+        }
+
+        /* ------------------------------------------------------------ */
+        private void flush() throws IOException
+        {
+            if (_length > 0)
+                _part.write(ByteBuffer.wrap(_decoded, 0, _length));
+            _length = 0;
         }
     }
 }
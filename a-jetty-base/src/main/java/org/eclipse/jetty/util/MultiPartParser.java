@@ -0,0 +1,383 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * Incremental parser for multipart MIME content.
+ * <p>
+ * Content is passed to {@link #parse(ByteBuffer)} in buffers as it arrives and the
+ * parts are reported to a {@link Handler}, so no more than a header line is ever buffered by
+ * the parser itself. Part bodies are passed to the handler as slices of the parsed buffers.
+ * The delimiter of the bodies is found with a {@link SearchPattern}. Lines may be ended with
+ * CRLF or LF.
+ */
+public class MultiPartParser
+{
+    private static final Logger LOG = Log.getLogger(MultiPartParser.class);
+    private static final int MAX_LINE = 8192;
+    private static final byte[] CR = {'\r'};
+
+    public enum State
+    {
+        PREAMBLE,
+        DELIMITER,
+        DELIMITER_PADDING,
+        DELIMITER_CLOSE,
+        HEADERS,
+        BODY,
+        EPILOGUE
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Receives the parts of the parsed content.
+     */
+    public interface Handler
+    {
+        public void startPart();
+
+        /**
+         * @param name the trimmed name of a part header
+         * @param value the trimmed value of a part header
+         */
+        public void parsedField(String name, String value);
+
+        public void headerComplete() throws IOException;
+
+        /**
+         * @param buffer content of the part, only valid for the duration of the call
+         * @param last true if this is the end of the part
+         */
+        public void content(ByteBuffer buffer, boolean last) throws IOException;
+
+        public void messageComplete();
+    }
+
+    private final Handler _handler;
+    private final byte[] _delimiter;
+    private final SearchPattern _search;
+    private final ByteArrayOutputStream2 _line=new ByteArrayOutputStream2(256);
+    private State _state=State.PREAMBLE;
+    private State _contentState=State.PREAMBLE;
+    private int _partial;
+    private boolean _lineStart;
+    private boolean _cr;
+    private boolean _delimiterCr;
+    private int _delimiterStart;
+    private boolean _preamble;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param handler the handler of the parts
+     * @param boundary the boundary from the content type, without the leading dashes
+     */
+    public MultiPartParser(Handler handler, String boundary)
+    {
+        _handler=handler;
+        _delimiter=("\n--"+boundary).getBytes(StandardCharsets.ISO_8859_1);
+        _search=new SearchPattern(_delimiter);
+        lineStart();
+    }
+
+    /* ------------------------------------------------------------ */
+    public State getState()
+    {
+        return _state;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return true if the close delimiter has been parsed
+     */
+    public boolean isComplete()
+    {
+        return _state==State.EPILOGUE;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Parse content, consuming all of it.
+     * @param buffer the content to parse
+     * @return true if the close delimiter has been parsed
+     * @throws IOException if the content is badly formatted or the handler fails
+     */
+    public boolean parse(ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            switch (_state)
+            {
+                case PREAMBLE:
+                case BODY:
+                    parseContent(buffer);
+                    break;
+
+                case DELIMITER:
+                    parseDelimiter(buffer);
+                    break;
+
+                case DELIMITER_PADDING:
+                    parseDelimiterPadding(buffer);
+                    break;
+
+                case DELIMITER_CLOSE:
+                    if (buffer.get()!='-')
+                        throw new IOException("Bad multipart delimiter");
+                    _state=State.EPILOGUE;
+                    _handler.messageComplete();
+                    break;
+
+                case HEADERS:
+                    parseHeaders(buffer);
+                    break;
+
+                case EPILOGUE:
+                    buffer.position(buffer.limit());
+                    break;
+
+                default:
+                    throw new IllegalStateException(_state.toString());
+            }
+        }
+        return _state==State.EPILOGUE;
+    }
+
+    /* ------------------------------------------------------------ */
+    private void lineStart()
+    {
+        // a delimiter may start the content without the line ending that otherwise precedes it
+        _partial=1;
+        _lineStart=true;
+    }
+
+    /* ------------------------------------------------------------ */
+    private void parseContent(ByteBuffer buffer) throws IOException
+    {
+        // continue a delimiter that started at the end of the previous buffer
+        if (_partial>0)
+        {
+            int matched=_search.startsWith(buffer,_partial);
+            if (matched==_delimiter.length)
+            {
+                buffer.position(buffer.position()+_delimiter.length-_partial);
+                delimiter(_cr,_lineStart?1:0);
+                return;
+            }
+            if (matched>0)
+            {
+                buffer.position(buffer.limit());
+                _partial=matched;
+                return;
+            }
+            int from=_lineStart?1:0;
+            content(ByteBuffer.wrap(_delimiter,from,_partial-from));
+            _partial=0;
+            _lineStart=false;
+        }
+
+        int match=_search.match(buffer);
+        if (match>=0)
+        {
+            // the line ending before the delimiter belongs to the delimiter
+            int end=match;
+            boolean cr=end>buffer.position() && buffer.get(end-1)=='\r';
+            if (cr)
+                end--;
+            ByteBuffer content=buffer.slice();
+            content.limit(end-buffer.position());
+            content(content);
+            if (cr)
+                flushCr();
+            buffer.position(match+_delimiter.length);
+            delimiter(cr || _cr,0);
+            return;
+        }
+
+        // hold back a partial delimiter and a CR that may precede one
+        _partial=_search.endsWith(buffer);
+        int end=buffer.limit()-_partial;
+        boolean cr=end>buffer.position() && buffer.get(end-1)=='\r';
+        if (cr)
+            end--;
+        ByteBuffer content=buffer.slice();
+        content.limit(end-buffer.position());
+        content(content);
+        if (cr)
+        {
+            flushCr();
+            _cr=true;
+        }
+        buffer.position(buffer.limit());
+    }
+
+    /* ------------------------------------------------------------ */
+    private void content(ByteBuffer content) throws IOException
+    {
+        if (content.hasRemaining())
+        {
+            flushCr();
+            if (_state==State.PREAMBLE)
+                _preamble=true;
+            else
+                _handler.content(content,false);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private void flushCr() throws IOException
+    {
+        if (_cr)
+        {
+            _cr=false;
+            if (_state==State.PREAMBLE)
+                _preamble=true;
+            else
+                _handler.content(ByteBuffer.wrap(CR),false);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private void delimiter(boolean cr, int start)
+    {
+        // the delimiter is only known to be one once the byte after it has been seen
+        _cr=false;
+        _partial=0;
+        _lineStart=false;
+        _delimiterCr=cr;
+        _delimiterStart=start;
+        _contentState=_state;
+        _state=State.DELIMITER;
+    }
+
+    /* ------------------------------------------------------------ */
+    private void parseDelimiter(ByteBuffer buffer) throws IOException
+    {
+        byte b=buffer.get();
+        switch (b)
+        {
+            case '-':
+            case ' ':
+            case '\t':
+            case '\r':
+            case '\n':
+                break;
+
+            default:
+                // not a delimiter, so it is content
+                buffer.position(buffer.position()-1);
+                _state=_contentState;
+                if (_delimiterCr)
+                    content(ByteBuffer.wrap(CR));
+                content(ByteBuffer.wrap(_delimiter,_delimiterStart,_delimiter.length-_delimiterStart));
+                return;
+        }
+
+        if (_contentState==State.BODY)
+            _handler.content(BufferUtil.EMPTY_BUFFER,true);
+        else if (_preamble)
+            LOG.warn("Badly formatted multipart request");
+
+        if (b=='-')
+            _state=State.DELIMITER_CLOSE;
+        else if (b=='\n')
+            startPart();
+        else
+            _state=State.DELIMITER_PADDING;
+    }
+
+    /* ------------------------------------------------------------ */
+    private void parseDelimiterPadding(ByteBuffer buffer) throws IOException
+    {
+        // only transport padding may follow the boundary on its line
+        while (buffer.hasRemaining())
+        {
+            byte b=buffer.get();
+            switch (b)
+            {
+                case ' ':
+                case '\t':
+                case '\r':
+                    break;
+
+                case '\n':
+                    startPart();
+                    return;
+
+                default:
+                    throw new IOException("Bad multipart delimiter");
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private void startPart()
+    {
+        _state=State.HEADERS;
+        _line.reset();
+        _handler.startPart();
+    }
+
+    /* ------------------------------------------------------------ */
+    private void parseHeaders(ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            byte b=buffer.get();
+            if (b!='\n')
+            {
+                if (_line.size()==MAX_LINE)
+                    throw new IOException("Buffer size exceeded: no line terminator");
+                _line.write(b);
+                continue;
+            }
+
+            int length=_line.size();
+            if (length>0 && _line.getBuf()[length-1]=='\r')
+                length--;
+            if (length==0)
+            {
+                _handler.headerComplete();
+                _state=State.BODY;
+                lineStart();
+                return;
+            }
+
+            String line=new String(_line.getBuf(),0,length,StandardCharsets.UTF_8);
+            _line.reset();
+            int colon=line.indexOf(':');
+            if (colon>0)
+                _handler.parsedField(line.substring(0,colon).trim(),line.substring(colon+1).trim());
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,partial=%d}",getClass().getSimpleName(),hashCode(),_state,_partial);
+    }
+}
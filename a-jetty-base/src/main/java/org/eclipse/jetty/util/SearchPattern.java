@@ -0,0 +1,151 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Searches byte content for a fixed pattern using the Boyer-Moore-Horspool algorithm.
+ * <p>
+ * The skip table lets the search step over most of the content without looking at every byte,
+ * and {@link #endsWith(ByteBuffer)}/{@link #startsWith(ByteBuffer, int)} let a match span
+ * several buffers of content.
+ */
+public class SearchPattern
+{
+    private final byte[] _pattern;
+    private final int[] _skip=new int[256];
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param pattern the bytes to search for
+     */
+    public SearchPattern(byte[] pattern)
+    {
+        if (pattern.length==0)
+            throw new IllegalArgumentException("Empty pattern");
+        _pattern=pattern.clone();
+        for (int i=0;i<_skip.length;i++)
+            _skip[i]=pattern.length;
+        for (int i=0;i<pattern.length-1;i++)
+            _skip[0xff&pattern[i]]=pattern.length-1-i;
+    }
+
+    /* ------------------------------------------------------------ */
+    public int getLength()
+    {
+        return _pattern.length;
+    }
+
+    /* ------------------------------------------------------------ */
+    public byte[] getPattern()
+    {
+        return _pattern.clone();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param data the content to search between its position and limit, which are not changed
+     * @return the absolute index of the first match, or -1 if the pattern is not found
+     */
+    public int match(ByteBuffer data)
+    {
+        if (data.hasArray())
+        {
+            int offset=data.arrayOffset();
+            int match=match(data.array(),offset+data.position(),data.remaining());
+            return match<0?-1:match-offset;
+        }
+
+        int last=_pattern.length-1;
+        int end=data.limit();
+        for (int i=data.position()+last;i<end;i+=_skip[0xff&data.get(i)])
+        {
+            int j=last;
+            while (data.get(i-last+j)==_pattern[j])
+            {
+                if (j--==0)
+                    return i-last;
+            }
+        }
+        return -1;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param data the content to search
+     * @param offset the offset of the content
+     * @param length the length of the content
+     * @return the index of the first match, or -1 if the pattern is not found
+     */
+    public int match(byte[] data, int offset, int length)
+    {
+        int last=_pattern.length-1;
+        int end=offset+length;
+        for (int i=offset+last;i<end;i+=_skip[0xff&data[i]])
+        {
+            int j=last;
+            while (data[i-last+j]==_pattern[j])
+            {
+                if (j--==0)
+                    return i-last;
+            }
+        }
+        return -1;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param data the content, whose position and limit are not changed
+     * @return the length of the longest prefix of the pattern that the content ends with, shorter than the pattern
+     */
+    public int endsWith(ByteBuffer data)
+    {
+        int position=data.position();
+        int limit=data.limit();
+        for (int length=Math.min(_pattern.length-1,limit-position);length>0;length--)
+        {
+            int j=0;
+            while (j<length && data.get(limit-length+j)==_pattern[j])
+                j++;
+            if (j==length)
+                return length;
+        }
+        return 0;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param data the content following a partial match, whose position and limit are not changed
+     * @param matched the length of the prefix of the pattern already matched
+     * @return the length of the pattern matched once the content is included, or 0 if the content does not continue the match
+     */
+    public int startsWith(ByteBuffer data, int matched)
+    {
+        int position=data.position();
+        int length=Math.min(_pattern.length-matched,data.remaining());
+        for (int i=0;i<length;i++)
+        {
+            if (data.get(position+i)!=_pattern[matched+i])
+                return 0;
+        }
+        return matched+length;
+    }
+}
@@ -0,0 +1,495 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util;
+
+import static org.eclipse.jetty.util.TypeUtil.convertHexDigit;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jetty.util.Utf8Appendable.NotUtf8Exception;
+
+/* ------------------------------------------------------------ */
+/** Lazily decoded UTF-8 url encoded parameters.
+ * <p>
+ * The raw bytes of a query string or form content are scanned once into
+ * an index of the offsets of each name and value, without copying them.
+ * A name or value is only decoded when it is looked up, and then kept.
+ * Up to {@link #SMALL} parameters are looked up by a scan that compares
+ * plain names against the raw bytes. More parameters are also scanned for
+ * the first {@link #SCANNED_LOOKUPS} lookups, as a filter often reads just
+ * one or two of them, and then through a hash table of the names.
+ * </p>
+ * <p>
+ * Decoding is the same as {@link UrlEncoded#decodeUtf8To(byte[], int, int, MultiMap)}.
+ * An index of form content decodes a truncated escape the same as
+ * {@link UrlEncoded#decodeUtf8To(InputStream, MultiMap, int, int)} does,
+ * as forms were read from the request input.
+ * The raw bytes must not change while the index is in use.
+ * This class is not synchronized.
+ * </p>
+ */
+public class UrlEncodedIndex
+{
+    /** The most parameters looked up without a hash table */
+    public static final int SMALL = 16;
+    /** The lookups of more than {@link #SMALL} parameters before they are hashed */
+    public static final int SCANNED_LOOKUPS = 4;
+
+    private static final int NAME_START = 0;
+    private static final int NAME_END = 1;
+    private static final int VALUE_START = 2;
+    private static final int VALUE_END = 3;
+    private static final int FIELDS = 4;
+
+    private final byte[] _raw;
+    private int[] _pairs = new int[FIELDS*8];
+    private int _size;
+    private String[] _names = new String[8];
+    private String[] _values = new String[8];
+    private int _lookups;
+    private int[] _hashes;
+    private int[] _table;
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param raw the url encoded bytes
+     * @param offset the offset of the parameters in the bytes
+     * @param length the length of the parameters
+     */
+    public UrlEncodedIndex(byte[] raw, int offset, int length)
+    {
+        this(raw,offset,length,false);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param raw the url encoded bytes
+     * @param offset the offset of the parameters in the bytes
+     * @param length the length of the parameters
+     * @param form true if the bytes are form content rather than a query string
+     */
+    public UrlEncodedIndex(byte[] raw, int offset, int length, boolean form)
+    {
+        _raw=raw;
+
+        int end=offset+length;
+        int start=offset;
+        int eq=-1;
+        int i=offset;
+        while (i<end)
+        {
+            switch (raw[i])
+            {
+                case '&':
+                    add(start,eq,i,false);
+                    start=++i;
+                    eq=-1;
+                    break;
+
+                case '=':
+                    if (eq<0)
+                        eq=i;
+                    i++;
+                    break;
+
+                case '%':
+                    // an escape may span separators, as it does when decoding eagerly
+                    if (i+2<end && ('u'!=raw[i+1] || i+5<end))
+                    {
+                        i+='u'==raw[i+1]?6:3;
+                        break;
+                    }
+                    // a truncated escape may or may not end the parameters depending on the decoded bytes before it
+                    decodeAll(offset,length,form);
+                    return;
+
+                default:
+                    i++;
+                    break;
+            }
+        }
+        add(start,eq,end,true);
+    }
+
+    /* ------------------------------------------------------------ */
+    private void decodeAll(int offset, int length, boolean form)
+    {
+        MultiMap<String> map=new MultiMap<>();
+        if (form)
+        {
+            try
+            {
+                UrlEncoded.decodeUtf8To(new ByteArrayInputStream(_raw,offset,length),map,-1,-1);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+        else
+            UrlEncoded.decodeUtf8To(_raw,offset,length,map);
+        _size=0;
+        for (Map.Entry<String,List<String>> entry : map.entrySet())
+        {
+            for (String value : entry.getValue())
+            {
+                add(entry.getKey(),value,0,-1,0);
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private void add(int start, int eq, int end, boolean last)
+    {
+        // a name without a value is ignored if empty, or if the last one only has an incomplete UTF-8 sequence
+        String name=null;
+        if (eq<0)
+        {
+            if (start==end)
+                return;
+            if (last && !isPlain(start,end))
+            {
+                name=decode(start,end,true);
+                if (name==null)
+                    return;
+            }
+        }
+        add(name,null,start,eq,end);
+    }
+
+    /* ------------------------------------------------------------ */
+    private void add(String name, String value, int start, int eq, int end)
+    {
+        if (_names.length==_size)
+        {
+            _pairs=Arrays.copyOf(_pairs,_size*2*FIELDS);
+            _names=Arrays.copyOf(_names,_size*2);
+            _values=Arrays.copyOf(_values,_size*2);
+        }
+        _names[_size]=name;
+        _values[_size]=value;
+        int p=_size++*FIELDS;
+        _pairs[p+NAME_START]=start;
+        _pairs[p+NAME_END]=eq<0?end:eq;
+        _pairs[p+VALUE_START]=eq<0?end:eq+1;
+        _pairs[p+VALUE_END]=end;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the number of parameters, counting each value of a name
+     */
+    public int size()
+    {
+        return _size;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the number of distinct parameter names, which decodes all the names
+     */
+    public int getNameCount()
+    {
+        Set<String> names=new HashSet<>();
+        for (int i=0;i<_size;i++)
+            names.add(getName(i));
+        return names.size();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param name the parameter name
+     * @return the first value of the parameter or null
+     */
+    public String getValue(String name)
+    {
+        int i=next(name,-1);
+        return i<0?null:getValue(i);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param name the parameter name
+     * @return the values of the parameter or null
+     */
+    public List<String> getValues(String name)
+    {
+        List<String> values=null;
+        for (int i=next(name,-1);i>=0;i=next(name,i))
+        {
+            if (values==null)
+                values=new ArrayList<>(2);
+            values.add(getValue(i));
+        }
+        return values;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Decode all the parameters.
+     * @param map the map to add the parameters to
+     */
+    public void decodeTo(MultiMap<String> map)
+    {
+        for (int i=0;i<_size;i++)
+            map.add(getName(i),getValue(i));
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param i the index of a parameter
+     * @return the decoded name of the parameter
+     */
+    public String getName(int i)
+    {
+        String name=_names[i];
+        if (name==null)
+        {
+            int p=i*FIELDS;
+            name=_names[i]=decode(_pairs[p+NAME_START],_pairs[p+NAME_END],false);
+        }
+        return name;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param i the index of a parameter
+     * @return the decoded value of the parameter, empty if it has none
+     */
+    public String getValue(int i)
+    {
+        String value=_values[i];
+        if (value==null)
+        {
+            int p=i*FIELDS;
+            value=_values[i]=decode(_pairs[p+VALUE_START],_pairs[p+VALUE_END],false);
+        }
+        return value;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the index of the next parameter after the last called name, or -1
+     */
+    private int next(String name, int last)
+    {
+        if (last<0 && _table==null && _size>SMALL && ++_lookups>SCANNED_LOOKUPS)
+            index();
+
+        if (_table==null)
+        {
+            for (int i=last+1;i<_size;i++)
+            {
+                if (matches(i,name))
+                    return i;
+            }
+            return -1;
+        }
+
+        // entries of a name are probed in the order they were added
+        int mask=_table.length-1;
+        int hash=name.hashCode();
+        boolean passed=last<0;
+        for (int slot=hash&mask;;slot=(slot+1)&mask)
+        {
+            int i=_table[slot]-1;
+            if (i<0)
+                return -1;
+            if (_hashes[i]==hash && matches(i,name))
+            {
+                if (passed)
+                    return i;
+                if (i==last)
+                    passed=true;
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private void index()
+    {
+        int[] table=new int[Integer.highestOneBit(_size)<<2];
+        int mask=table.length-1;
+        _hashes=new int[_size];
+        for (int i=0;i<_size;i++)
+        {
+            int hash=_hashes[i]=hash(i);
+            int slot=hash&mask;
+            while (table[slot]!=0)
+                slot=(slot+1)&mask;
+            table[slot]=i+1;
+        }
+        _table=table;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the {@link String#hashCode()} of the decoded name, computed from the raw bytes if they need no decoding
+     */
+    private int hash(int i)
+    {
+        if (_names[i]!=null)
+            return _names[i].hashCode();
+        int p=i*FIELDS;
+        int hash=0;
+        for (int j=_pairs[p+NAME_START],end=_pairs[p+NAME_END];j<end;j++)
+        {
+            byte b=_raw[j];
+            if (b=='%' || b=='+' || b<0)
+                return getName(i).hashCode();
+            hash=31*hash+b;
+        }
+        return hash;
+    }
+
+    /* ------------------------------------------------------------ */
+    private boolean matches(int i, String name)
+    {
+        if (_names[i]!=null)
+            return _names[i].equals(name);
+
+        int p=i*FIELDS;
+        int start=_pairs[p+NAME_START];
+        int end=_pairs[p+NAME_END];
+        boolean sameLength=end-start==name.length();
+        for (int j=start;j<end;j++)
+        {
+            byte b=_raw[j];
+            if (b=='%' || b=='+' || b<0)
+                return getName(i).equals(name);
+            // the chars before the first escape decode to the raw bytes
+            if (sameLength && b!=name.charAt(j-start))
+                return false;
+        }
+        return sameLength;
+    }
+
+    /* ------------------------------------------------------------ */
+    private boolean isPlain(int start, int end)
+    {
+        for (int i=start;i<end;i++)
+        {
+            byte b=_raw[i];
+            if (b=='%' || b=='+' || b<0)
+                return false;
+        }
+        return true;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param nullIfEmpty true to return null rather than a replacement for only an incomplete UTF-8 sequence
+     */
+    private String decode(int start, int end, boolean nullIfEmpty)
+    {
+        int i=start;
+        while (i<end)
+        {
+            byte b=_raw[i];
+            if (b=='%' || b=='+' || b<0)
+                break;
+            i++;
+        }
+        if (i==end)
+            return StringUtil.toString(_raw,start,end-start,StringUtil.__ISO_8859_1);
+
+        Utf8StringBuilder buffer=new Utf8StringBuilder(end-start);
+        buffer.append(_raw,start,i-start);
+        for (;i<end;i++)
+        {
+            byte b=_raw[i];
+            try
+            {
+                switch (b)
+                {
+                    case '+':
+                        buffer.append((byte)' ');
+                        break;
+
+                    case '%':
+                        if (i+2<end)
+                        {
+                            if ('u'==_raw[i+1])
+                            {
+                                i++;
+                                if (i+4<end)
+                                {
+                                    byte top=_raw[++i];
+                                    byte hi=_raw[++i];
+                                    byte lo=_raw[++i];
+                                    byte bot=_raw[++i];
+                                    buffer.getStringBuilder().append(Character.toChars((convertHexDigit(top)<<12) +(convertHexDigit(hi)<<8) + (convertHexDigit(lo)<<4) +convertHexDigit(bot)));
+                                }
+                                else
+                                {
+                                    buffer.getStringBuilder().append(Utf8Appendable.REPLACEMENT);
+                                    i=end;
+                                }
+                            }
+                            else
+                            {
+                                byte hi=_raw[++i];
+                                byte lo=_raw[++i];
+                                buffer.append((byte)((convertHexDigit(hi)<<4) + convertHexDigit(lo)));
+                            }
+                        }
+                        else
+                        {
+                            buffer.getStringBuilder().append(Utf8Appendable.REPLACEMENT);
+                            i=end;
+                        }
+                        break;
+
+                    default:
+                        buffer.append(b);
+                        break;
+                }
+            }
+            catch(NotUtf8Exception e)
+            {
+                UrlEncoded.LOG.warn(e.toString());
+                UrlEncoded.LOG.debug(e);
+            }
+            catch(NumberFormatException e)
+            {
+                buffer.append(Utf8Appendable.REPLACEMENT_UTF8,0,3);
+                UrlEncoded.LOG.warn(e.toString());
+                UrlEncoded.LOG.debug(e);
+            }
+        }
+        if (nullIfEmpty && buffer.length()==0)
+            return null;
+        return buffer.toReplacedString();
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{size=%d,indexed=%b}",getClass().getSimpleName(),hashCode(),_size,_table!=null);
+    }
+}
@@ -55,6 +55,7 @@ import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
 import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
@@ -190,10 +191,10 @@ public class SslContextFactory extends AbstractLifeCycle
     private KeyStore _trustStore;
     /** Set to true to enable SSL Session caching */
     private boolean _sessionCachingEnabled = true;
-    /** SSL session cache size */
-    private int _sslSessionCacheSize;
-    /** SSL session timeout */
-    private int _sslSessionTimeout;
+    /** SSL session cache size, -1 for the provider default */
+    private int _sslSessionCacheSize = -1;
+    /** SSL session timeout in seconds, -1 for the provider default */
+    private int _sslSessionTimeout = -1;
 
     /** SSL context */
     private SSLContext _context;
@@ -306,6 +307,17 @@ public class SslContextFactory extends AbstractLifeCycle
                 _context = context;
             }
 
+            SSLSessionContext serverContext = _context.getServerSessionContext();
+            if (serverContext != null)
+            {
+                if (getSslSessionCacheSize() > -1)
+                    serverContext.setSessionCacheSize(getSslSessionCacheSize());
+                if (getSslSessionTimeout() > -1)
+                    serverContext.setSessionTimeout(getSslSessionTimeout());
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Session cache size {}, timeout {}s",serverContext.getSessionCacheSize(),serverContext.getSessionTimeout());
+            }
+
             SSLEngine engine = newSSLEngine();
             if (LOG.isDebugEnabled())
             {
@@ -1245,8 +1257,8 @@ public class SslContextFactory extends AbstractLifeCycle
         return _sslSessionCacheSize;
     }
 
-    /** SEt SSL session cache size.
-     * @param sslSessionCacheSize SSL session cache size to set
+    /** Set SSL session cache size.
+     * @param sslSessionCacheSize SSL session cache size to set, 0 for no limit or -1 for the provider default
      */
     public void setSslSessionCacheSize(int sslSessionCacheSize)
     {
@@ -1262,7 +1274,7 @@ public class SslContextFactory extends AbstractLifeCycle
     }
 
     /** Set SSL session timeout.
-     * @param sslSessionTimeout SSL session timeout to set
+     * @param sslSessionTimeout SSL session timeout in seconds to set, 0 for no limit or -1 for the provider default
      */
     public void setSslSessionTimeout(int sslSessionTimeout)
     {
@@ -0,0 +1,50 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.thread;
+
+import java.util.concurrent.Executor;
+
+/* ------------------------------------------------------------ */
+/** An Executor that allows a producing thread to consume a task it has produced.
+ * <p>A producer, such as a selector, calls {@link #produce()} before producing tasks
+ * and {@link #produced(Runnable)} afterwards.  In between, the last task executed by the
+ * producing thread is held in a queue local to that thread rather than dispatched. 
+ * If that task is still held when production ends and another thread is reserved to 
+ * take over production, then the producer is handed to that thread and the producing 
+ * thread returns to consume the held task itself, so that it is run with a hot cache
+ * and without the context switch of a dispatch.
+ */
+public interface ProduceConsumeExecutor extends Executor
+{
+    /* ------------------------------------------------------------ */
+    /** Start producing tasks in the calling thread.
+     */
+    public void produce();
+
+    /* ------------------------------------------------------------ */
+    /** Stop producing tasks in the calling thread.
+     * @param producer The producer to hand to a reserved thread, if the calling thread is to
+     * consume its last task, or null if production cannot be handed off, in which case the
+     * last task (if any) is dispatched.
+     * @return True if the producer has been handed off, in which case the caller must return
+     * from producing so that the calling thread can consume its last task. False if the
+     * last task (if any) has been dispatched and the caller should continue to produce.
+     */
+    public boolean produced(Runnable producer);
+}
@@ -25,9 +25,11 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.util.BlockingArrayQueue;
 import org.eclipse.jetty.util.ConcurrentHashSet;
@@ -44,20 +46,27 @@ import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.ThreadPool.SizedThreadPool;
 
 @ManagedObject("A thread pool with no max bound by default")
-public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPool, Dumpable
+public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPool, ProduceConsumeExecutor, Dumpable
 {
     private static final Logger LOG = Log.getLogger(QueuedThreadPool.class);
 
     private final AtomicInteger _threadsStarted = new AtomicInteger();
     private final AtomicInteger _threadsIdle = new AtomicInteger();
     private final AtomicLong _lastShrink = new AtomicLong();
+    private final AtomicInteger _threadsReserved = new AtomicInteger();
     private final ConcurrentHashSet<Thread> _threads=new ConcurrentHashSet<Thread>();
+    private final ConcurrentHashSet<Runner> _runners=new ConcurrentHashSet<Runner>();
+    private final ThreadLocal<Runner> _runner=new ThreadLocal<>();
     private final Object _joinLock = new Object();
     private final BlockingQueue<Runnable> _jobs;
+    private final SynchronousQueue<Runnable> _reserved = new SynchronousQueue<>();
+    private volatile long _queueLatency;
     private String _name = "qtp" + hashCode();
     private int _idleTimeout;
     private int _maxThreads;
     private int _minThreads;
+    private int _reservedThreads;
+    private int _maxQueueLatency;
     private int _priority = Thread.NORM_PRIORITY;
     private boolean _daemon = false;
     private boolean _detailedDump = false;
@@ -128,6 +137,8 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
         };
         for (int i = _threadsStarted.get(); i-- > 0; )
             jobs.offer(noop);
+        for (int i = _threadsReserved.get(); i-- > 0; )
+            _reserved.offer(noop);
 
         // try to jobs complete naturally for half our stop time
         long stopby = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) / 2;
@@ -242,6 +253,38 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
             startThreads(_minThreads - threads);
     }
 
+    /**
+     * Set the number of threads reserved to take over from a producing thread.
+     * <p>If greater than zero, then a producer (eg a selector) that uses this pool as a 
+     * {@link ProduceConsumeExecutor} may hand itself to a reserved idle thread, so that
+     * the producing thread can run the last task it produced without dispatching it.
+     * Reserved threads wait only for producers and are not counted as idle threads.
+     * If zero (the default), all tasks are dispatched via the job queue.
+     *
+     * @param reservedThreads the number of reserved threads
+     * @see #getReservedThreads
+     */
+    public void setReservedThreads(int reservedThreads)
+    {
+        _reservedThreads = reservedThreads;
+    }
+
+    /**
+     * Set the maximum latency for queued jobs.
+     * <p>If greater than zero, then the time jobs wait in the queue is measured and 
+     * an additional thread (up to the maximum) is started whenever a job has waited for
+     * longer than this latency and no thread is idle. Threads are still stopped once they
+     * are idle for longer than the idle timeout. If zero (the default), queue latency is
+     * not measured and threads are started only when no thread is idle.
+     *
+     * @param maxQueueLatency the maximum queue latency in ms.
+     * @see #getMaxQueueLatency
+     */
+    public void setMaxQueueLatency(int maxQueueLatency)
+    {
+        _maxQueueLatency = maxQueueLatency;
+    }
+
     /**
      * @param name Name of this thread pool to use when naming threads.
      */
@@ -303,6 +346,49 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
         return _minThreads;
     }
 
+    /**
+     * Get the number of threads reserved to take over from a producing thread.
+     *
+     * @return the number of reserved threads
+     * @see #setReservedThreads
+     */
+    @ManagedAttribute("number of threads reserved to take over from a producing thread")
+    public int getReservedThreads()
+    {
+        return _reservedThreads;
+    }
+
+    /**
+     * @return the number of threads currently reserved and waiting for a producer
+     */
+    @ManagedAttribute("number of threads currently reserved")
+    public int getThreadsReserved()
+    {
+        return _threadsReserved.get();
+    }
+
+    /**
+     * Get the maximum latency for queued jobs.
+     *
+     * @return the maximum queue latency in ms.
+     * @see #setMaxQueueLatency
+     */
+    @ManagedAttribute("maximum time a job may wait in the queue in ms before a thread is started")
+    public int getMaxQueueLatency()
+    {
+        return _maxQueueLatency;
+    }
+
+    /**
+     * @return the moving average of the time jobs waited in the queue in microseconds, if measured.
+     * @see #setMaxQueueLatency
+     */
+    @ManagedAttribute("average time jobs waited in the queue in us")
+    public long getQueueLatency()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(_queueLatency);
+    }
+
     /**
      * @return The name of the this thread pool
      */
@@ -356,6 +442,33 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
     @Override
     public void execute(Runnable job)
     {
+        Runner runner=_runner.get();
+        if (runner!=null && runner._producing)
+        {
+            // Hold the last job of a producing thread
+            if (_reservedThreads>0)
+            {
+                Runnable last=runner._local.getAndSet(job);
+                if (last==null)
+                    return;
+                job=last;
+            }
+            else
+            {
+                // The reserved threads were disabled while producing, so release a held job
+                Runnable last=runner._local.getAndSet(null);
+                if (last!=null)
+                    dispatch(last);
+            }
+        }
+        dispatch(job);
+    }
+
+    private void dispatch(Runnable job)
+    {
+        if (_maxQueueLatency>0)
+            job=new QueuedJob(job);
+
         if (!isRunning() || !_jobs.offer(job))
         {
             LOG.warn("{} rejected {}", this, job);
@@ -369,6 +482,40 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
         }
     }
 
+    @Override
+    public void produce()
+    {
+        if (_reservedThreads>0)
+        {
+            Runner runner=_runner.get();
+            if (runner!=null)
+                runner._producing=true;
+        }
+    }
+
+    @Override
+    public boolean produced(Runnable producer)
+    {
+        // The reserved threads may have changed since produce(), so always look for a held job
+        Runner runner=_runner.get();
+        if (runner==null || !runner._producing)
+            return false;
+        runner._producing=false;
+
+        if (runner._local.get()==null)
+            return false;
+
+        // Can a reserved thread take over production?
+        if (producer!=null && _reservedThreads>0 && isRunning() && _reserved.offer(producer))
+            return true;
+
+        // No, so dispatch the last job
+        Runnable last=runner._local.getAndSet(null);
+        if (last!=null)
+            dispatch(last);
+        return false;
+    }
+
     /**
      * Blocks until the thread pool is {@link LifeCycle#stop stopped}.
      */
@@ -438,7 +585,7 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
             boolean started = false;
             try
             {
-                Thread thread = newThread(_runnable);
+                Thread thread = newThread(new Runner());
                 thread.setDaemon(isDaemon());
                 thread.setPriority(getThreadsPriority());
                 thread.setName(_name + "-" + thread.getId());
@@ -528,19 +675,116 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
 
     private Runnable idleJobPoll() throws InterruptedException
     {
+        if (_idleTimeout <= 0)
+            return _jobs.take();
         return _jobs.poll(_idleTimeout, TimeUnit.MILLISECONDS);
     }
 
-    private Runnable _runnable = new Runnable()
+    /**
+     * Wait as a reserved thread for a producer to take over from a producing thread.
+     * @return the producer or null if the thread was not reserved or timed out
+     */
+    private Runnable reservedJobPoll() throws InterruptedException
     {
+        int reserved=_threadsReserved.get();
+        if (reserved>=_reservedThreads || !_threadsReserved.compareAndSet(reserved,reserved+1))
+            return null;
+
+        // Reserved threads are not idle threads, so start another if this was the last
+        if (_threadsIdle.decrementAndGet() == 0)
+            startThreads(1);
+        try
+        {
+            if (_idleTimeout <= 0)
+                return _reserved.take();
+            return _reserved.poll(_idleTimeout, TimeUnit.MILLISECONDS);
+        }
+        finally
+        {
+            _threadsIdle.incrementAndGet();
+            _threadsReserved.decrementAndGet();
+        }
+    }
+
+    /**
+     * Take the next job for a thread that is not idle: its local job, a queued job or a job stolen from another thread.
+     */
+    private Runnable nextJob(Runner runner)
+    {
+        Runnable job = runner._local.getAndSet(null);
+        if (job == null)
+            job = dequeued(_jobs.poll());
+        if (job == null && _reservedThreads>0)
+        {
+            for (Runner other : _runners)
+            {
+                if (other!=runner && !other._producing)
+                {
+                    job = other._local.getAndSet(null);
+                    if (job != null)
+                        break;
+                }
+            }
+        }
+        return job;
+    }
+
+    /**
+     * Unwrap a dequeued job, measuring its queue latency and starting a thread if it is too long.
+     */
+    private Runnable dequeued(Runnable job)
+    {
+        if (job instanceof QueuedJob)
+        {
+            QueuedJob queued = (QueuedJob)job;
+            long latency = System.nanoTime() - queued._queued;
+            long average = _queueLatency;
+            _queueLatency = average + ((latency - average) >> 3);
+            if (_threadsIdle.get() == 0 && latency > TimeUnit.MILLISECONDS.toNanos(_maxQueueLatency))
+                startThreads(1);
+            return queued._job;
+        }
+        return job;
+    }
+
+    private static class QueuedJob implements Runnable
+    {
+        private final Runnable _job;
+        private final long _queued = System.nanoTime();
+
+        private QueuedJob(Runnable job)
+        {
+            _job = job;
+        }
+
+        @Override
+        public void run()
+        {
+            _job.run();
+        }
+
+        @Override
+        public String toString()
+        {
+            return _job.toString();
+        }
+    }
+
+    private class Runner implements Runnable
+    {
+        private final AtomicReference<Runnable> _local = new AtomicReference<>();
+        private volatile boolean _producing;
+
         @Override
         public void run()
         {
             boolean shrink = false;
             boolean ignore = false;
+            _runner.set(this);
+            _runners.add(this);
             try
             {
-                Runnable job = _jobs.poll();
+                Runnable job = dequeued(_jobs.poll());
 
                 if (job != null && _threadsIdle.get() == 0)
                 {
@@ -558,7 +802,7 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
                             ignore=true;
                             break loop;
                         }
-                        job = _jobs.poll();
+                        job = nextJob(this);
                     }
 
                     // Idle loop
@@ -568,8 +812,11 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
 
                         while (isRunning() && job == null)
                         {
+                            if (_reservedThreads > 0 && _jobs.isEmpty() && (job = reservedJobPoll()) != null)
+                                break;
+
                             if (_idleTimeout <= 0)
-                                job = _jobs.take();
+                                job = dequeued(idleJobPoll());
                             else
                             {
                                 // maybe we should shrink?
@@ -587,7 +834,7 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
                                         }
                                     }
                                 }
-                                job = idleJobPoll();
+                                job = dequeued(idleJobPoll());
                             }
                         }
                     }
@@ -619,10 +866,15 @@ public class QueuedThreadPool extends AbstractLifeCycle implements SizedThreadPo
                     if (_threadsStarted.decrementAndGet()<getMaxThreads())
                         startThreads(1);
                 }
+                _runners.remove(this);
+                _runner.remove();
+                Runnable local = _local.getAndSet(null);
+                if (local != null && isRunning())
+                    execute(local);
                 _threads.remove(Thread.currentThread());
             }
         }
-    };
+    }
 
     /**
      * <p>Runs the given job in the {@link Thread#currentThread() current thread}.</p>
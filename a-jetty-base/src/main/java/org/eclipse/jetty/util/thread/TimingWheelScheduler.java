@@ -0,0 +1,413 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.thread;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/* ------------------------------------------------------------ */
+/** A {@link Scheduler} based on a hashed timing wheel.
+ * <p>
+ * Time is divided in ticks and a task is put in the bucket of the tick it expires in,
+ * with a count of rounds of the wheel to wait if its delay is longer than the wheel.
+ * Schedule and cancel are O(1) and lock free: scheduled tasks are queued and moved into
+ * the wheel by the timer thread once per tick, cancelled tasks are only marked and are
+ * unlinked by the timer thread.  Tasks are run by the timer thread, at most one tick late.
+ * </p>
+ * <p>
+ * This suits the many timeouts that are scheduled and cancelled long before they expire,
+ * like idle timeouts of connections.  To use it for a server, add it as a bean before
+ * the connectors are started: <code>server.addBean(new TimingWheelScheduler());</code>
+ * </p>
+ */
+@ManagedObject("Hashed timing wheel scheduler")
+public class TimingWheelScheduler extends AbstractLifeCycle implements Scheduler, Dumpable, Runnable
+{
+    private static final Logger LOG = Log.getLogger(TimingWheelScheduler.class);
+
+    private static final int PENDING=0;
+    private static final int CANCELLED=1;
+    private static final int EXPIRED=2;
+
+    private static final Task NOT_SCHEDULED=new Task()
+    {
+        @Override
+        public boolean cancel()
+        {
+            return false;
+        }
+    };
+
+    private final String _name;
+    private final boolean _daemon;
+    private final ClassLoader _classloader;
+    private final long _tickNanos;
+    private final Bucket[] _wheel;
+    private final int _mask;
+    private final ConcurrentLinkedQueue<WheelTask> _scheduled=new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<WheelTask> _cancelled=new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _size=new AtomicInteger();
+    private volatile long _startNanos;
+    private volatile Thread _thread;
+    private long _tick;
+
+    /* ------------------------------------------------------------ */
+    public TimingWheelScheduler()
+    {
+        this(null,false);
+    }
+
+    /* ------------------------------------------------------------ */
+    public TimingWheelScheduler(String name, boolean daemon)
+    {
+        this(name,daemon,20,TimeUnit.MILLISECONDS,2048);
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param name the name of the timer thread
+     * @param daemon whether the timer thread is a daemon
+     * @param tick the duration of a tick
+     * @param unit the unit of the tick
+     * @param wheelSize the count of ticks of the wheel, rounded up to a power of 2
+     */
+    public TimingWheelScheduler(String name, boolean daemon, long tick, TimeUnit unit, int wheelSize)
+    {
+        if (tick<=0)
+            throw new IllegalArgumentException("tick <= 0");
+        if (wheelSize<=0 || wheelSize>(1<<30))
+            throw new IllegalArgumentException("bad wheelSize "+wheelSize);
+        _name=name==null?"Scheduler-"+hashCode():name;
+        _daemon=daemon;
+        _classloader=Thread.currentThread().getContextClassLoader();
+        _tickNanos=unit.toNanos(tick);
+        int size=Integer.highestOneBit(wheelSize);
+        if (size<wheelSize)
+            size<<=1;
+        _wheel=new Bucket[size];
+        for (int i=0;i<size;i++)
+            _wheel[i]=new Bucket();
+        _mask=size-1;
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    protected void doStart() throws Exception
+    {
+        _tick=0;
+        _startNanos=System.nanoTime();
+        Thread thread=new Thread(this,_name);
+        thread.setDaemon(_daemon);
+        thread.setContextClassLoader(_classloader);
+        _thread=thread;
+        super.doStart();
+        thread.start();
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    protected void doStop() throws Exception
+    {
+        Thread thread=_thread;
+        _thread=null;
+        if (thread!=null)
+        {
+            thread.interrupt();
+            if (thread!=Thread.currentThread())
+                thread.join();
+        }
+        // Tasks that are not expired are discarded
+        _scheduled.clear();
+        _cancelled.clear();
+        for (Bucket bucket : _wheel)
+            bucket.clear();
+        _size.set(0);
+        super.doStop();
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public Task schedule(Runnable task, long delay, TimeUnit units)
+    {
+        if (!isRunning())
+            return NOT_SCHEDULED;
+        long deadline=System.nanoTime()-_startNanos+units.toNanos(Math.max(0,delay));
+        WheelTask wheelTask=new WheelTask(task,deadline);
+        _size.incrementAndGet();
+        _scheduled.offer(wheelTask);
+        return wheelTask;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The duration of a tick in ms")
+    public long getTick()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(_tickNanos);
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The count of ticks of the wheel")
+    public int getWheelSize()
+    {
+        return _wheel.length;
+    }
+
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("The count of scheduled tasks that are neither expired nor cancelled")
+    public int getScheduledTasks()
+    {
+        return _size.get();
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void run()
+    {
+        while (isRunning())
+        {
+            long now=waitForTick(_tick);
+            if (now<0)
+                break;
+            unlinkCancelled();
+            transferScheduled();
+            _wheel[(int)(_tick&_mask)].expire(now);
+            _tick++;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param tick the current tick
+     * @return the time since start at the end of the tick, or -1 if stopped
+     */
+    private long waitForTick(long tick)
+    {
+        long end=(tick+1)*_tickNanos;
+        while (true)
+        {
+            long now=System.nanoTime()-_startNanos;
+            long sleepMs=TimeUnit.NANOSECONDS.toMillis(end-now+999999);
+            if (sleepMs<=0)
+                return now;
+            try
+            {
+                Thread.sleep(sleepMs);
+            }
+            catch (InterruptedException e)
+            {
+                if (!isRunning())
+                    return -1;
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private void unlinkCancelled()
+    {
+        WheelTask task;
+        while ((task=_cancelled.poll())!=null)
+        {
+            if (task._bucket!=null)
+                task._bucket.remove(task);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private void transferScheduled()
+    {
+        WheelTask task;
+        while ((task=_scheduled.poll())!=null)
+        {
+            if (task._state==CANCELLED)
+                continue;
+            long ticks=task._deadline/_tickNanos;
+            task._rounds=(ticks-_tick)>>>Integer.numberOfTrailingZeros(_wheel.length);
+            if (ticks<_tick)
+            {
+                // expired while queued, expire in the current tick
+                ticks=_tick;
+                task._rounds=0;
+            }
+            _wheel[(int)(ticks&_mask)].add(task);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String dump()
+    {
+        return ContainerLifeCycle.dump(this);
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        ContainerLifeCycle.dumpObject(out,this);
+        Thread thread=_thread;
+        if (thread!=null)
+        {
+            List<StackTraceElement> frames=Arrays.asList(thread.getStackTrace());
+            ContainerLifeCycle.dump(out,indent,frames);
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,tick=%dms,wheel=%d,tasks=%d}",
+                getClass().getSimpleName(),hashCode(),getState(),getTick(),getWheelSize(),getScheduledTasks());
+    }
+
+    /* ------------------------------------------------------------ */
+    /** A doubly linked list of tasks, only accessed by the timer thread.
+     */
+    private class Bucket
+    {
+        private WheelTask _head;
+        private WheelTask _tail;
+
+        private void add(WheelTask task)
+        {
+            task._bucket=this;
+            if (_head==null)
+                _head=_tail=task;
+            else
+            {
+                _tail._next=task;
+                task._prev=_tail;
+                _tail=task;
+            }
+        }
+
+        private void remove(WheelTask task)
+        {
+            WheelTask next=task._next;
+            if (task._prev!=null)
+                task._prev._next=next;
+            if (next!=null)
+                next._prev=task._prev;
+            if (task==_head)
+                _head=next;
+            if (task==_tail)
+                _tail=task._prev;
+            task._prev=null;
+            task._next=null;
+            task._bucket=null;
+        }
+
+        private void expire(long now)
+        {
+            WheelTask task=_head;
+            while (task!=null)
+            {
+                WheelTask next=task._next;
+                if (task._state==CANCELLED)
+                    remove(task);
+                else if (task._rounds<=0 && task._deadline<=now)
+                {
+                    remove(task);
+                    task.expire();
+                }
+                else
+                    task._rounds--;
+                task=next;
+            }
+        }
+
+        private void clear()
+        {
+            WheelTask task=_head;
+            while (task!=null)
+            {
+                WheelTask next=task._next;
+                task._prev=null;
+                task._next=null;
+                task._bucket=null;
+                task=next;
+            }
+            _head=_tail=null;
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    private class WheelTask implements Task
+    {
+        private final Runnable _task;
+        private final long _deadline;
+        volatile int _state=PENDING;
+        private long _rounds;
+        private Bucket _bucket;
+        private WheelTask _prev;
+        private WheelTask _next;
+
+        private WheelTask(Runnable task, long deadline)
+        {
+            _task=task;
+            _deadline=deadline;
+        }
+
+        @Override
+        public boolean cancel()
+        {
+            if (!STATE.compareAndSet(this,PENDING,CANCELLED))
+                return false;
+            _size.decrementAndGet();
+            _cancelled.offer(this);
+            return true;
+        }
+
+        private void expire()
+        {
+            if (!STATE.compareAndSet(this,PENDING,EXPIRED))
+                return;
+            _size.decrementAndGet();
+            try
+            {
+                _task.run();
+            }
+            catch (Throwable x)
+            {
+                LOG.warn("Exception thrown by task "+_task,x);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{%s,%d}",getClass().getSimpleName(),hashCode(),_task,_state);
+        }
+    }
+
+    private static final AtomicIntegerFieldUpdater<WheelTask> STATE=AtomicIntegerFieldUpdater.newUpdater(WheelTask.class,"_state");
+}
@@ -0,0 +1,332 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.thread;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/* ------------------------------------------------------------ */
+/** A thread pool that runs jobs in virtual threads, if supported by the runtime.
+ * <p>If the runtime supports virtual threads, then each job, such as the handling
+ * of a request, is run in a new virtual thread, so that blocking code does not
+ * hold a pooled thread.  Jobs that run for the life of a component, which are
+ * {@link NonBlockingThread}s (selectors) and {@link PlatformThreadJob}s (acceptors),
+ * are run by the {@link QueuedThreadPool} this class extends.
+ * <p>If the runtime does not support virtual threads (eg Java 7 or Android), then
+ * all jobs are run by the {@link QueuedThreadPool}.
+ * <p>The number of requests that may be handled concurrently is limited by the max
+ * concurrency, so that resources used by blocking code (eg database connections)
+ * are not exhausted.  Excess requests wait, in order, for a handled request to
+ * complete.  The limit is applied by the {@link #acquireConcurrency()} and
+ * {@link #releaseConcurrency()} calls around the handling of a request, not to other
+ * jobs (eg I/O completions) that a handled request may be waiting for, and it is
+ * independent of the max threads of the {@link QueuedThreadPool}.
+ */
+@ManagedObject("A thread pool that runs jobs in virtual threads")
+public class VirtualThreadPool extends QueuedThreadPool
+{
+    private static final Logger LOG = Log.getLogger(VirtualThreadPool.class);
+
+    /* ------------------------------------------------------------ */
+    /** Marker for jobs that must be run in a platform thread, as they run
+     * for the life of a component.
+     */
+    public interface PlatformThreadJob extends Runnable
+    {
+    }
+
+    private final AtomicInteger _virtualThreads = new AtomicInteger();
+    private int _maxConcurrency;
+    private boolean _useVirtualThreads = true;
+    private ThreadFactory _factory;
+    private volatile Semaphore _limiter;
+
+    public VirtualThreadPool()
+    {
+        this(200);
+    }
+
+    public VirtualThreadPool(@Name("maxConcurrency") int maxConcurrency)
+    {
+        setMaxConcurrency(maxConcurrency);
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        _factory = _useVirtualThreads?newThreadFactory():null;
+        if (_useVirtualThreads && _factory == null)
+            LOG.info("Virtual threads not supported, using {}", QueuedThreadPool.class.getSimpleName());
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+
+        // Give the virtual threads the stop timeout to complete their jobs
+        long stopby = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getStopTimeout());
+        while (_virtualThreads.get() > 0 && System.nanoTime() < stopby)
+            Thread.sleep(10);
+        if (_virtualThreads.get() > 0)
+            LOG.warn("{} Couldn't stop {} virtual threads", this, _virtualThreads.get());
+        _factory = null;
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @return the factory of the threads to run jobs in, or null to run jobs in the {@link QueuedThreadPool}
+     */
+    protected ThreadFactory newThreadFactory()
+    {
+        return newVirtualThreadFactory(getName() + "-virtual-");
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Create a factory of virtual threads.
+     * <p>Reflection is used, so that this class may be compiled and run on runtimes without virtual threads.
+     * @param prefix the prefix of the thread names
+     * @return a factory of virtual threads or null if not supported by the runtime
+     */
+    public static ThreadFactory newVirtualThreadFactory(String prefix)
+    {
+        try
+        {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name",String.class,long.class).invoke(builder,prefix,0L);
+            return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+        }
+        catch (Throwable x)
+        {
+            LOG.ignore(x);
+            return null;
+        }
+    }
+
+    /**
+     * @param useVirtualThreads if true (the default), run jobs in virtual threads if supported
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads)
+    {
+        if (isRunning())
+            throw new IllegalStateException("started");
+        _useVirtualThreads = useVirtualThreads;
+    }
+
+    /**
+     * @return true if configured to run jobs in virtual threads if supported
+     */
+    @ManagedAttribute("if true, run jobs in virtual threads if supported")
+    public boolean isUseVirtualThreads()
+    {
+        return _useVirtualThreads;
+    }
+
+    /**
+     * @return true if jobs are being run in virtual threads
+     */
+    @ManagedAttribute("true if jobs are run in virtual threads")
+    public boolean isVirtual()
+    {
+        return _factory != null;
+    }
+
+    /**
+     * Set the maximum number of requests handled concurrently.
+     *
+     * @param maxConcurrency the max concurrency or 0 for no limit
+     */
+    public void setMaxConcurrency(int maxConcurrency)
+    {
+        if (isRunning())
+            throw new IllegalStateException("started");
+        _maxConcurrency = maxConcurrency;
+        _limiter = maxConcurrency>0?new Semaphore(maxConcurrency,true):null;
+    }
+
+    /**
+     * @return the maximum number of requests handled concurrently
+     */
+    @ManagedAttribute("maximum number of requests handled concurrently")
+    public int getMaxConcurrency()
+    {
+        return _maxConcurrency;
+    }
+
+    /**
+     * @return the number of virtual threads, either running or waiting to run a job
+     */
+    @ManagedAttribute("number of virtual threads")
+    public int getVirtualThreads()
+    {
+        return _virtualThreads.get();
+    }
+
+    /**
+     * @return the number of threads waiting for the concurrency limit
+     */
+    @ManagedAttribute("number of threads waiting to handle a request")
+    public int getVirtualThreadsWaiting()
+    {
+        Semaphore limiter = _limiter;
+        return limiter == null?0:limiter.getQueueLength();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Wait, in order, until a request may be handled within the max concurrency.
+     * <p>Must only be called around the handling of a request and followed by
+     * {@link #releaseConcurrency()}, never around jobs that a handled request may
+     * wait for, else the pool may deadlock.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquireConcurrency() throws InterruptedException
+    {
+        Semaphore limiter = _limiter;
+        if (limiter != null)
+            limiter.acquire();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * Release the concurrency acquired by {@link #acquireConcurrency()}.
+     */
+    public void releaseConcurrency()
+    {
+        Semaphore limiter = _limiter;
+        if (limiter != null)
+            limiter.release();
+    }
+
+    /* ------------------------------------------------------------ */
+    /**
+     * @param job the job to execute
+     * @return true if the job is to be run in a virtual thread
+     */
+    protected boolean isVirtualJob(Runnable job)
+    {
+        return !(job instanceof NonBlockingThread) && !(job instanceof PlatformThreadJob);
+    }
+
+    @Override
+    public void execute(Runnable job)
+    {
+        ThreadFactory factory = _factory;
+        if (factory == null || !isVirtualJob(job))
+        {
+            super.execute(job);
+            return;
+        }
+
+        if (!isRunning())
+        {
+            LOG.warn("{} rejected {}", this, job);
+            throw new RejectedExecutionException(job.toString());
+        }
+
+        _virtualThreads.incrementAndGet();
+        try
+        {
+            factory.newThread(new VirtualJob(job)).start();
+        }
+        catch (Throwable x)
+        {
+            _virtualThreads.decrementAndGet();
+            throw new RejectedExecutionException(job.toString(), x);
+        }
+    }
+
+    @Override
+    public void produce()
+    {
+        // The last job of a producer is not consumed by a platform thread if jobs run in virtual threads
+        if (_factory == null)
+            super.produce();
+    }
+
+    @Override
+    @ManagedAttribute("total number of threads currently in the pool")
+    public int getThreads()
+    {
+        return super.getThreads() + _virtualThreads.get();
+    }
+
+    @Override
+    @ManagedAttribute("True if the pools is at maxThreads and there are not idle threads than queued jobs")
+    public boolean isLowOnThreads()
+    {
+        Semaphore limiter = _limiter;
+        if (_factory != null)
+            return limiter != null && limiter.availablePermits() == 0 && limiter.hasQueuedThreads();
+        return super.isLowOnThreads();
+    }
+
+    @Override
+    public String toString()
+    {
+        if (_factory == null)
+            return super.toString();
+        return String.format("%s{%s,v=%d/%d,w=%d}", getName(), getState(), _virtualThreads.get(), _maxConcurrency, getVirtualThreadsWaiting());
+    }
+
+    private class VirtualJob implements Runnable
+    {
+        private final Runnable _job;
+
+        private VirtualJob(Runnable job)
+        {
+            _job = job;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                runJob(_job);
+            }
+            catch (Throwable e)
+            {
+                LOG.warn(e);
+            }
+            finally
+            {
+                _virtualThreads.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return _job.toString();
+        }
+    }
+}
@@ -18,15 +18,43 @@
 
 package org.eclipse.jetty.webapp;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.xml.XmlParser;
 
+/**
+ * Descriptor
+ *
+ * An xml descriptor, parsed into a tree of {@link XmlParser.Node}s.
+ * <p>
+ * If a snapshot file is set, the parsed tree is saved to it in a compact
+ * binary form together with the checksum of the xml, and later parses of
+ * unchanged xml load the tree from the snapshot instead of parsing it.
+ */
 public abstract class Descriptor
 {
+    private static final Logger LOG = Log.getLogger(Descriptor.class);
+    private static final int SNAPSHOT_MAGIC = 0x4A445331; //JDS1
+
     protected Resource _xml;
     protected XmlParser.Node _root;
     protected XmlParser _parser;
     protected boolean _validating;
+    protected String _dtd;
+    protected File _snapshot;
     
     public Descriptor (Resource xml)
     {
@@ -41,22 +69,145 @@ public abstract class Descriptor
        _validating = validating;
     }
     
+    /**
+     * @param snapshot the file to keep the parsed descriptor in, or null to always parse it
+     */
+    public void setSnapshot (File snapshot)
+    {
+        _snapshot = snapshot;
+    }
+
+    public File getSnapshot ()
+    {
+        return _snapshot;
+    }
+
     public void parse ()
     throws Exception
     {
-        if (_parser == null)
-           ensureParser();
-        
-        if (_root == null)
+        if (_root != null)
+            return;
+
+        if (_snapshot == null)
         {
+            if (_parser == null)
+                ensureParser();
             try
             {
-                _root = _parser.parse(_xml.getInputStream());
+                parse(_xml.getInputStream());
             }
             finally
             {
                 _xml.close();
             }
+            return;
+        }
+
+        byte[] xml;
+        try
+        {
+            xml = IO.readBytes(_xml.getInputStream());
+        }
+        finally
+        {
+            _xml.close();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(xml);
+        long checksum = crc.getValue();
+
+        if (loadSnapshot(checksum))
+            return;
+
+        if (_parser == null)
+            ensureParser();
+        parse(new ByteArrayInputStream(xml));
+        saveSnapshot(checksum);
+    }
+
+    private void parse (InputStream in)
+    throws Exception
+    {
+        //the parser may be shared, so take the DTD of this parse before another can start
+        synchronized (_parser)
+        {
+            _root = _parser.parse(in);
+            _dtd = _parser.getDTD();
+        }
+    }
+
+    /**
+     * @param checksum the checksum of the xml
+     * @return true if the parsed descriptor was loaded from an up to date snapshot
+     */
+    protected boolean loadSnapshot (long checksum)
+    {
+        if (!_snapshot.exists())
+            return false;
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(_snapshot)));
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readLong() != checksum || in.readBoolean() != _validating)
+            {
+                if (LOG.isDebugEnabled()) LOG.debug("Snapshot {} of {} is out of date", _snapshot, _xml);
+                return false;
+            }
+            String dtd = in.readBoolean() ? in.readUTF() : null;
+            XmlParser.Node root = XmlParser.Node.readFrom(in);
+            _dtd = dtd;
+            _root = root;
+            if (LOG.isDebugEnabled()) LOG.debug("Loaded {} from snapshot {}", _xml, _snapshot);
+            return true;
+        }
+        catch (Exception e)
+        {
+            LOG.warn("Ignoring unreadable snapshot "+_snapshot, e);
+            return false;
+        }
+        finally
+        {
+            IO.close(in);
+        }
+    }
+
+    /**
+     * @param checksum the checksum of the xml
+     */
+    protected void saveSnapshot (long checksum)
+    {
+        //write aside and rename, so a snapshot is never seen half written
+        File tmp = new File(_snapshot.getPath()+".tmp");
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(checksum);
+            out.writeBoolean(_validating);
+            out.writeBoolean(_dtd != null);
+            if (_dtd != null)
+                out.writeUTF(_dtd);
+            _root.writeTo(out);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(_snapshot))
+            {
+                _snapshot.delete();
+                if (!tmp.renameTo(_snapshot))
+                    throw new IllegalStateException("Cannot rename "+tmp);
+            }
+            if (LOG.isDebugEnabled()) LOG.debug("Saved {} to snapshot {}", _xml, _snapshot);
+        }
+        catch (Exception e)
+        {
+            LOG.warn("Cannot save snapshot "+_snapshot, e);
+            tmp.delete();
+        }
+        finally
+        {
+            IO.close(out);
         }
     }
     
@@ -69,6 +220,14 @@ public abstract class Descriptor
     {
         return _root;
     }
+
+    /**
+     * @return the DTD of the parsed descriptor or null if it has none
+     */
+    public String getDTD ()
+    {
+        return _dtd;
+    }
     
     public String toString()
     {
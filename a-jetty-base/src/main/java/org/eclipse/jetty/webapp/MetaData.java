@@ -18,6 +18,7 @@
 
 package org.eclipse.jetty.webapp;
 
+import java.io.File;
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -63,6 +64,7 @@ public class MetaData
     protected final List<Resource> _orderedWebInfResources = new ArrayList<Resource>();
     protected Ordering _ordering;//can be set to RelativeOrdering by web-default.xml, web.xml, web-override.xml
     protected boolean allowDuplicateFragmentNames = false;
+    protected File _snapshotDirectory;
 
 
 
@@ -162,12 +164,40 @@ public class MetaData
         _orderedContainerResources.clear();
         _ordering = null;
         allowDuplicateFragmentNames = false;
+        _snapshotDirectory = null;
+    }
+
+    /**
+     * @param dir the directory to keep snapshots of the parsed descriptors in, or null to always parse them
+     * @see Descriptor#setSnapshot(File)
+     */
+    public void setSnapshotDirectory (File dir)
+    {
+        _snapshotDirectory = dir;
+    }
+
+    public File getSnapshotDirectory ()
+    {
+        return _snapshotDirectory;
+    }
+
+    /**
+     * @param xml the descriptor
+     * @return the snapshot file of the descriptor or null if snapshots are not kept
+     */
+    protected File getSnapshot (Resource xml)
+    {
+        if (_snapshotDirectory == null)
+            return null;
+        String uri = xml.toString();
+        return new File(_snapshotDirectory, uri.substring(uri.lastIndexOf('/')+1)+"-"+Integer.toHexString(uri.hashCode())+".snapshot");
     }
 
     public void setDefaults (Resource webDefaults)
     throws Exception
     {
         _webDefaultsRoot =  new DefaultsDescriptor(webDefaults);
+        _webDefaultsRoot.setSnapshot(getSnapshot(webDefaults));
         _webDefaultsRoot.parse();
         if (_webDefaultsRoot.isOrdered())
         {
@@ -193,6 +223,7 @@ public class MetaData
     throws Exception
     {
         _webXmlRoot = new WebDescriptor(webXml);
+        _webXmlRoot.setSnapshot(getSnapshot(webXml));
         _webXmlRoot.parse();
         _metaDataComplete=_webXmlRoot.getMetaDataComplete() == MetaDataComplete.True;
 
@@ -221,6 +252,7 @@ public class MetaData
     {
         OverrideDescriptor webOverrideRoot = new OverrideDescriptor(override);
         webOverrideRoot.setValidating(false);
+        webOverrideRoot.setSnapshot(getSnapshot(override));
         webOverrideRoot.parse();
 
         switch(webOverrideRoot.getMetaDataComplete())
@@ -276,6 +308,7 @@ public class MetaData
         _webFragmentResourceMap.put(jarResource, descriptor);
         _webFragmentRoots.add(descriptor);
 
+        descriptor.setSnapshot(getSnapshot(xmlResource));
         descriptor.parse();
 
         if (descriptor.getName() != null)
@@ -19,15 +19,29 @@
 package org.eclipse.jetty.webapp;
 
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.MultiException;
+import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.resource.EmptyResource;
@@ -48,6 +62,12 @@ import org.eclipse.jetty.util.resource.Resource;
  * <li>those from the container classpath whose pattern matched the WebInfConfiguration.CONTAINER_JAR_PATTERN</li>
  * <li>those from WEB-INF/lib</li>
  * </ol>
+ * 
+ * Jars that are not already cached are scanned in parallel on the server thread pool
+ * (see {@link #SCAN_THREADS}). The results for packed jars are recorded in a scan index
+ * file keyed by jar path, size and last modified time (see {@link #USE_SCAN_INDEX}), so
+ * that unchanged jars are not opened again when the context is next started. The index
+ * is kept in the context temp directory if that is persisted, otherwise next to it.
  */
 public class MetaInfConfiguration extends AbstractConfiguration
 {
@@ -61,6 +81,10 @@ public class MetaInfConfiguration extends AbstractConfiguration
     public static final String METAINF_TLDS = "org.eclipse.jetty.tlds";
     public static final String METAINF_FRAGMENTS = FragmentConfiguration.FRAGMENT_RESOURCES;
     public static final String METAINF_RESOURCES = WebInfConfiguration.RESOURCE_DIRS;
+    public static final String USE_SCAN_INDEX = "org.eclipse.jetty.metainf.useScanIndex";
+    public static final boolean DEFAULT_USE_SCAN_INDEX = true;
+    public static final String SCAN_THREADS = "org.eclipse.jetty.metainf.scanThreads";
+    public static final String SCAN_INDEX_NAME = "metainf-scan.idx";
 
     @Override
     public void preConfigure(final WebAppContext context) throws Exception
@@ -82,8 +106,20 @@ public class MetaInfConfiguration extends AbstractConfiguration
         if (context.getAttribute(METAINF_FRAGMENTS) == null)
             context.setAttribute(METAINF_FRAGMENTS, new HashMap<Resource, Resource>());
        
-        scanJars(context, context.getMetaData().getContainerResources(), useContainerCache);
-        scanJars(context, context.getMetaData().getWebInfJars(), false);
+        boolean useScanIndex = DEFAULT_USE_SCAN_INDEX;
+        attr = (Boolean)context.getServer().getAttribute(USE_SCAN_INDEX);
+        if (attr != null)
+            useScanIndex = attr.booleanValue();
+
+        File indexFile = useScanIndex ? getScanIndexFile(context) : null;
+        Properties index = indexFile == null ? null : loadScanIndex(indexFile);
+        Properties updated = index == null ? null : new Properties();
+
+        scanJars(context, context.getMetaData().getContainerResources(), useContainerCache, index, updated);
+        scanJars(context, context.getMetaData().getWebInfJars(), false, index, updated);
+
+        if (updated != null && !updated.equals(index))
+            saveScanIndex(indexFile, updated);
     }
 
     /**
@@ -99,6 +135,27 @@ public class MetaInfConfiguration extends AbstractConfiguration
     public void scanJars (final WebAppContext context, Collection<Resource> jars, boolean useCaches)
     throws Exception
     {
+        scanJars(context, jars, useCaches, null, null);
+    }
+
+    /**
+     * Look into the jars to discover info in META-INF, as {@link #scanJars(WebAppContext, Collection, boolean)},
+     * first taking the info for unchanged jars from a scan index and then scanning the remaining
+     * jars in parallel.
+     * 
+     * @param context
+     * @param jars
+     * @param useCaches
+     * @param index the scan index of the previous start or null
+     * @param updated the scan index to record the info of the jars in or null
+     * @throws Exception
+     */
+    public void scanJars (final WebAppContext context, Collection<Resource> jars, boolean useCaches, Properties index, Properties updated)
+    throws Exception
+    {
+        if (jars == null)
+            return;
+
         ConcurrentHashMap<Resource, Resource> metaInfResourceCache = null;       
         ConcurrentHashMap<Resource, Resource> metaInfFragmentCache = null;
         ConcurrentHashMap<Resource, Collection<URL>> metaInfTldCache = null;
@@ -123,17 +180,112 @@ public class MetaInfConfiguration extends AbstractConfiguration
                 context.getServer().setAttribute(CACHED_CONTAINER_TLDS, metaInfTldCache);
             }
         }
-        
-        //Scan jars for META-INF information
-        if (jars != null)
+        else
+        {
+            //not shared between contexts, but lets the jars be scanned in parallel
+            metaInfResourceCache = new ConcurrentHashMap<Resource,Resource>();
+            metaInfFragmentCache = new ConcurrentHashMap<Resource,Resource>();
+            metaInfTldCache = new ConcurrentHashMap<Resource,Collection<URL>>();
+        }
+
+        //Take unchanged jars from the index and scan the others into the caches
+        List<Resource> unscanned = new ArrayList<Resource>();
+        for (Resource r : jars)
         {
-            for (Resource r : jars)
+            if (metaInfResourceCache.containsKey(r) && metaInfFragmentCache.containsKey(r) && metaInfTldCache.containsKey(r))
+                continue;
+            if (index != null && restoreFromScanIndex(r, index, metaInfResourceCache, metaInfFragmentCache, metaInfTldCache))
+                continue;
+            unscanned.add(r);
+        }
+        scanInParallel(context, unscanned, metaInfResourceCache, metaInfFragmentCache, metaInfTldCache);
+
+        //Add the META-INF information to the context
+        for (Resource r : jars)
+        {
+            scanForResources(context, r, metaInfResourceCache);
+            scanForFragment(context, r, metaInfFragmentCache);
+            scanForTlds(context, r, metaInfTldCache);
+            if (updated != null)
+                recordInScanIndex(r, updated, metaInfResourceCache, metaInfFragmentCache, metaInfTldCache);
+        }
+    }
+
+    /**
+     * Scan the jars into the caches, using up to {@link #SCAN_THREADS} threads of the server
+     * thread pool (by default the number of available processors). The calling thread scans
+     * too, so the scan completes even if the thread pool has no idle threads.
+     * 
+     * @param context
+     * @param jars
+     * @param resourceCache
+     * @param fragmentCache
+     * @param tldCache
+     * @throws Exception
+     */
+    protected void scanInParallel (final WebAppContext context, Collection<Resource> jars, 
+                                   final ConcurrentHashMap<Resource,Resource> resourceCache,
+                                   final ConcurrentHashMap<Resource,Resource> fragmentCache,
+                                   final ConcurrentHashMap<Resource,Collection<URL>> tldCache)
+    throws Exception
+    {
+        if (jars.isEmpty())
+            return;
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        Object attr = context.getServer().getAttribute(SCAN_THREADS);
+        if (attr != null)
+            threads = Integer.parseInt(attr.toString());
+        Executor executor = context.getServer().getThreadPool();
+        if (!(executor instanceof LifeCycle) || !((LifeCycle)executor).isRunning())
+            threads = 1;
+        threads = Math.min(threads, jars.size());
+
+        final ConcurrentLinkedQueue<Resource> queue = new ConcurrentLinkedQueue<Resource>(jars);
+        final CountDownLatch latch = new CountDownLatch(jars.size());
+        final MultiException failures = new MultiException();
+        Runnable scanner = new Runnable()
+        {
+            @Override
+            public void run()
             {
-                
-               scanForResources(context, r, metaInfResourceCache);
-               scanForFragment(context, r, metaInfFragmentCache);
-               scanForTlds(context, r, metaInfTldCache);
+                Resource jar;
+                while ((jar = queue.poll()) != null)
+                {
+                    try
+                    {
+                        if (!resourceCache.containsKey(jar))
+                            resourceCache.putIfAbsent(jar, findResourcesDir(jar));
+                        if (!fragmentCache.containsKey(jar))
+                            fragmentCache.putIfAbsent(jar, findFragment(jar));
+                        if (!tldCache.containsKey(jar))
+                            tldCache.putIfAbsent(jar, findTlds(jar));
+                    }
+                    catch (Throwable x)
+                    {
+                        synchronized (failures)
+                        {
+                            failures.add(x);
+                        }
+                    }
+                    finally
+                    {
+                        latch.countDown();
+                    }
+                }
             }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 1; i < threads; i++)
+            executor.execute(scanner);
+        scanner.run();
+        latch.await();
+        if (LOG.isDebugEnabled()) LOG.debug("Scanned {} jars with {} threads in {}ms", jars.size(), threads, (System.nanoTime()-start)/1000000);
+
+        synchronized (failures)
+        {
+            failures.ifExceptionThrow();
         }
     }
     
@@ -163,20 +315,7 @@ public class MetaInfConfiguration extends AbstractConfiguration
         else
         {
             //not using caches or not in the cache so check for the resources dir
-            if (LOG.isDebugEnabled()) LOG.debug(target+" META-INF/resources checked");
-            if (target.isDirectory())
-            {
-                //TODO think  how to handle an unpacked jar file (eg for osgi)
-                resourcesDir = target.addPath("/META-INF/resources");
-            }
-            else
-            {
-                //Resource represents a packed jar
-                URI uri = target.getURI();
-                resourcesDir = Resource.newResource("jar:"+uri+"!/META-INF/resources");
-            }
-            if (!resourcesDir.exists() || !resourcesDir.isDirectory())
-                resourcesDir = EmptyResource.INSTANCE;
+            resourcesDir = findResourcesDir(target);
 
             if (cache != null)
             {               
@@ -201,6 +340,34 @@ public class MetaInfConfiguration extends AbstractConfiguration
         if (LOG.isDebugEnabled()) LOG.debug(resourcesDir+" added to context");
         dirs.add(resourcesDir);
     }
+
+    /**
+     * Check for META-INF/resources dir in the given jar.
+     * 
+     * @param target
+     * @return the resources dir or {@link EmptyResource#INSTANCE} if there is none
+     * @throws Exception
+     */
+    protected Resource findResourcesDir (Resource target)
+    throws Exception
+    {
+        if (LOG.isDebugEnabled()) LOG.debug(target+" META-INF/resources checked");
+        Resource resourcesDir = null;
+        if (target.isDirectory())
+        {
+            //TODO think  how to handle an unpacked jar file (eg for osgi)
+            resourcesDir = target.addPath("/META-INF/resources");
+        }
+        else
+        {
+            //Resource represents a packed jar
+            URI uri = target.getURI();
+            resourcesDir = Resource.newResource("jar:"+uri+"!/META-INF/resources");
+        }
+        if (!resourcesDir.exists() || !resourcesDir.isDirectory())
+            resourcesDir = EmptyResource.INSTANCE;
+        return resourcesDir;
+    }
     
     /**
      * Scan for META-INF/web-fragment.xml file in the given jar.
@@ -228,19 +395,7 @@ public class MetaInfConfiguration extends AbstractConfiguration
         else
         {
             //not using caches or not in the cache so check for the web-fragment.xml
-            if (LOG.isDebugEnabled()) LOG.debug(jar+" META-INF/web-fragment.xml checked");
-            if (jar.isDirectory())
-            {
-                //TODO   ????
-                webFrag = jar.addPath("/META-INF/web-fragment.xml");
-            }
-            else
-            {
-                URI uri = jar.getURI();
-                webFrag = Resource.newResource("jar:"+uri+"!/META-INF/web-fragment.xml");
-            }
-            if (!webFrag.exists() || webFrag.isDirectory())
-                webFrag = EmptyResource.INSTANCE;
+            webFrag = findFragment(jar);
             
             if (cache != null)
             {
@@ -265,6 +420,33 @@ public class MetaInfConfiguration extends AbstractConfiguration
         fragments.put(jar, webFrag);   
         if (LOG.isDebugEnabled()) LOG.debug(webFrag+" added to context");
     }
+
+    /**
+     * Check for META-INF/web-fragment.xml file in the given jar.
+     * 
+     * @param jar
+     * @return the web-fragment.xml or {@link EmptyResource#INSTANCE} if there is none
+     * @throws Exception
+     */
+    protected Resource findFragment (Resource jar)
+    throws Exception
+    {
+        if (LOG.isDebugEnabled()) LOG.debug(jar+" META-INF/web-fragment.xml checked");
+        Resource webFrag = null;
+        if (jar.isDirectory())
+        {
+            //TODO   ????
+            webFrag = jar.addPath("/META-INF/web-fragment.xml");
+        }
+        else
+        {
+            URI uri = jar.getURI();
+            webFrag = Resource.newResource("jar:"+uri+"!/META-INF/web-fragment.xml");
+        }
+        if (!webFrag.exists() || webFrag.isDirectory())
+            webFrag = EmptyResource.INSTANCE;
+        return webFrag;
+    }
     
     
     /**
@@ -297,30 +479,8 @@ public class MetaInfConfiguration extends AbstractConfiguration
         else
         {
             //not using caches or not in the cache so find all tlds
-            Resource metaInfDir = null;
-            if (jar.isDirectory())
-            {
-                //TODO ??????
-                metaInfDir = jar.addPath("/META-INF/");
-            }
-            else
-            {
-                URI uri = jar.getURI();
-                metaInfDir = Resource.newResource("jar:"+uri+"!/META-INF/");
-            }
+            tlds = findTlds(jar);
 
-            //find any *.tld files inside META-INF or subdirs
-            tlds = new HashSet<URL>();      
-            Collection<Resource> resources = metaInfDir.getAllResources();
-            for (Resource t:resources)
-            {
-                String name = t.toString();
-                if (name.endsWith(".tld"))
-                {
-                    if (LOG.isDebugEnabled()) LOG.debug(t+" tld discovered");
-                    tlds.add(t.getURL());
-                }
-            }
             if (cache != null)
             {  
                 if (LOG.isDebugEnabled()) LOG.debug(jar+" tld cache updated");
@@ -342,6 +502,202 @@ public class MetaInfConfiguration extends AbstractConfiguration
         tld_resources.addAll(tlds);  
         if (LOG.isDebugEnabled()) LOG.debug("tlds added to context");
     }
+
+    /**
+     * Find any *.tld files inside META-INF or subdirs of the given jar.
+     * 
+     * @param jar
+     * @return the tlds, empty if there are none
+     * @throws Exception
+     */
+    protected Collection<URL> findTlds (Resource jar)
+    throws Exception
+    {
+        Resource metaInfDir = null;
+        if (jar.isDirectory())
+        {
+            //TODO ??????
+            metaInfDir = jar.addPath("/META-INF/");
+        }
+        else
+        {
+            URI uri = jar.getURI();
+            metaInfDir = Resource.newResource("jar:"+uri+"!/META-INF/");
+        }
+
+        Collection<URL> tlds = new HashSet<URL>();      
+        Collection<Resource> resources = metaInfDir.getAllResources();
+        for (Resource t:resources)
+        {
+            String name = t.toString();
+            if (name.endsWith(".tld"))
+            {
+                if (LOG.isDebugEnabled()) LOG.debug(t+" tld discovered");
+                tlds.add(t.getURL());
+            }
+        }
+        return tlds;
+    }
+
+    /**
+     * @param context
+     * @return the scan index file or null if the context has no temp directory
+     * @see WebInfConfiguration#getPersistentFile(WebAppContext, String)
+     */
+    protected File getScanIndexFile (WebAppContext context)
+    {
+        return WebInfConfiguration.getPersistentFile(context, SCAN_INDEX_NAME);
+    }
+
+    /**
+     * @param file the scan index file
+     * @return the scan index, empty if the file does not exist or cannot be read
+     */
+    protected Properties loadScanIndex (File file)
+    {
+        Properties index = new Properties();
+        if (!file.exists())
+            return index;
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream(file);
+            index.load(in);
+        }
+        catch (Exception e)
+        {
+            LOG.warn("Ignoring unreadable scan index "+file, e);
+            index.clear();
+        }
+        finally
+        {
+            IO.close(in);
+        }
+        return index;
+    }
+
+    /**
+     * @param file the scan index file
+     * @param index the scan index
+     */
+    protected void saveScanIndex (File file, Properties index)
+    {
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream(file);
+            index.store(out, "META-INF scan index: size,lastModified,[r-][f-][,tld entry]*");
+            if (LOG.isDebugEnabled()) LOG.debug("Saved scan index {} of {} jars", file, index.size());
+        }
+        catch (Exception e)
+        {
+            LOG.warn("Cannot save scan index "+file, e);
+        }
+        finally
+        {
+            IO.close(out);
+        }
+    }
+
+    /**
+     * Put the META-INF info of a packed jar into the caches from the scan index, if the
+     * jar has not changed since it was recorded.
+     * 
+     * @param jar
+     * @param index
+     * @param resourceCache
+     * @param fragmentCache
+     * @param tldCache
+     * @return true if the jar was found in the index
+     * @throws Exception
+     */
+    protected boolean restoreFromScanIndex (Resource jar, Properties index,
+                                            ConcurrentHashMap<Resource,Resource> resourceCache,
+                                            ConcurrentHashMap<Resource,Resource> fragmentCache,
+                                            ConcurrentHashMap<Resource,Collection<URL>> tldCache)
+    throws Exception
+    {
+        File file = getIndexableFile(jar);
+        if (file == null)
+            return false;
+        String entry = index.getProperty(file.getAbsolutePath());
+        if (entry == null)
+            return false;
+        String[] fields = entry.split(",");
+        if (fields.length < 3 || fields[2].length() != 2 
+            || !fields[0].equals(Long.toString(file.length())) || !fields[1].equals(Long.toString(file.lastModified())))
+            return false;
+
+        URI uri = jar.getURI();
+        Collection<URL> tlds = new HashSet<URL>();
+        for (int i = 3; i < fields.length; i++)
+            tlds.add(new URL("jar:"+uri+"!/"+fields[i]));
+        resourceCache.putIfAbsent(jar, fields[2].charAt(0) == 'r' ? Resource.newResource("jar:"+uri+"!/META-INF/resources") : EmptyResource.INSTANCE);
+        fragmentCache.putIfAbsent(jar, fields[2].charAt(1) == 'f' ? Resource.newResource("jar:"+uri+"!/META-INF/web-fragment.xml") : EmptyResource.INSTANCE);
+        tldCache.putIfAbsent(jar, tlds);
+        if (LOG.isDebugEnabled()) LOG.debug(jar+" META-INF info found in scan index");
+        return true;
+    }
+
+    /**
+     * Record the META-INF info of a packed jar from the caches in the scan index.
+     * 
+     * @param jar
+     * @param index
+     * @param resourceCache
+     * @param fragmentCache
+     * @param tldCache
+     * @throws Exception
+     */
+    protected void recordInScanIndex (Resource jar, Properties index,
+                                      ConcurrentHashMap<Resource,Resource> resourceCache,
+                                      ConcurrentHashMap<Resource,Resource> fragmentCache,
+                                      ConcurrentHashMap<Resource,Collection<URL>> tldCache)
+    throws Exception
+    {
+        File file = getIndexableFile(jar);
+        Resource resourcesDir = resourceCache.get(jar);
+        Resource webFrag = fragmentCache.get(jar);
+        Collection<URL> tlds = tldCache.get(jar);
+        if (file == null || resourcesDir == null || webFrag == null || tlds == null)
+            return;
+
+        StringBuilder entry = new StringBuilder();
+        entry.append(file.length()).append(',').append(file.lastModified()).append(',');
+        entry.append(resourcesDir == EmptyResource.INSTANCE ? '-' : 'r');
+        entry.append(webFrag == EmptyResource.INSTANCE ? '-' : 'f');
+        for (URL tld : tlds)
+        {
+            String url = tld.toString();
+            int sep = url.indexOf("!/");
+            //only a tld inside the jar can be recorded
+            if (sep < 0 || url.indexOf(',') >= 0)
+                return;
+            entry.append(',').append(url.substring(sep+2));
+        }
+        index.setProperty(file.getAbsolutePath(), entry.toString());
+    }
+
+    /**
+     * @param jar
+     * @return the file of a packed jar, or null if the jar is unpacked or not a file, so
+     * its contents may change without its size and last modified time changing
+     */
+    private File getIndexableFile (Resource jar)
+    {
+        try
+        {
+            File file = jar.getFile();
+            if (file == null || !file.isFile())
+                return null;
+            return file;
+        }
+        catch (Exception e)
+        {
+            LOG.ignore(e);
+            return null;
+        }
+    }
     
    
     @Override
@@ -234,7 +234,7 @@ public class WebDescriptor extends Descriptor
         {
             _majorVersion = 2;
             _minorVersion = 3;
-            String dtd = _parser.getDTD();
+            String dtd = getDTD();
             if (dtd != null && dtd.indexOf("web-app_2_2") >= 0)
             {
                 _majorVersion = 2;
@@ -549,6 +549,28 @@ public class WebInfConfiguration extends AbstractConfiguration
 
 
 
+    /**
+     * Get a file or directory to keep between starts of the webapp: in the temp
+     * directory if that is persisted, otherwise beside it and named after the
+     * webapp, as a temp directory that is not persisted is deleted on every start.
+     * 
+     * @param context the webapp
+     * @param name the name of the file
+     * @return the file or null if the webapp has no temp directory
+     */
+    public static File getPersistentFile (WebAppContext context, String name)
+    {
+        File tmpDir = context.getTempDirectory();
+        if (tmpDir == null)
+            return null;
+        if (context.isPersistTempDirectory())
+            return new File(tmpDir, name);
+        if (tmpDir.getParentFile() == null)
+            return null;
+        return new File(tmpDir.getParentFile(), getCanonicalNameForWebAppTmpDir(context)+"-"+name);
+    }
+
+
     /**
      * Create a canonical name for a webapp temp directory.
      * The form of the name is:
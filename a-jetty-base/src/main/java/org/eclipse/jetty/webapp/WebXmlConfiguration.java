@@ -18,6 +18,7 @@
 
 package org.eclipse.jetty.webapp;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 
@@ -35,6 +36,10 @@ public class WebXmlConfiguration extends AbstractConfiguration
 {
     private static final Logger LOG = Log.getLogger(WebXmlConfiguration.class);
 
+    public static final String USE_DESCRIPTOR_SNAPSHOTS = "org.eclipse.jetty.webxml.useSnapshots";
+    public static final boolean DEFAULT_USE_DESCRIPTOR_SNAPSHOTS = true;
+    public static final String SNAPSHOT_DIR_NAME = "descriptors";
+
     
     /* ------------------------------------------------------------------------------- */
     /**
@@ -43,6 +48,14 @@ public class WebXmlConfiguration extends AbstractConfiguration
     @Override
     public void preConfigure (WebAppContext context) throws Exception
     {
+        //keep the parsed descriptors, so unchanged ones are not parsed again on the next start
+        boolean useSnapshots = DEFAULT_USE_DESCRIPTOR_SNAPSHOTS;
+        Boolean attr = (Boolean)context.getServer().getAttribute(USE_DESCRIPTOR_SNAPSHOTS);
+        if (attr != null)
+            useSnapshots = attr.booleanValue();
+        if (useSnapshots)
+            context.getMetaData().setSnapshotDirectory(findSnapshotDirectory(context));
+
         //parse webdefault.xml
         String defaultsDescriptor = context.getDefaultsDescriptor();
         if (defaultsDescriptor != null && defaultsDescriptor.length() > 0)
@@ -93,6 +106,25 @@ public class WebXmlConfiguration extends AbstractConfiguration
         context.getMetaData().addDescriptorProcessor(new StandardDescriptorProcessor());
     }
     
+    /* ------------------------------------------------------------------------------- */
+    /**
+     * @param context the webapp
+     * @return the directory to keep snapshots of the parsed descriptors in or null if there is none
+     * @see WebInfConfiguration#getPersistentFile(WebAppContext, String)
+     */
+    protected File findSnapshotDirectory(WebAppContext context)
+    {
+        File dir = WebInfConfiguration.getPersistentFile(context, SNAPSHOT_DIR_NAME);
+        if (dir == null)
+            return null;
+        if (!dir.isDirectory() && !dir.mkdirs())
+        {
+            LOG.warn("Cannot create descriptor snapshot directory {}", dir);
+            return null;
+        }
+        return dir;
+    }
+
     /* ------------------------------------------------------------------------------- */
     protected Resource findWebXml(WebAppContext context) throws IOException, MalformedURLException
     {
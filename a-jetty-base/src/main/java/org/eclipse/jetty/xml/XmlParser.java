@@ -18,14 +18,18 @@
 
 package org.eclipse.jetty.xml;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Stack;
@@ -770,6 +774,151 @@ public class XmlParser
                 buf.append("/>");
         }
 
+        /* ------------------------------------------------------------ */
+        /**
+         * Write the node and its content in a compact binary form, in which
+         * each tag and attribute name is written only once.
+         *
+         * @param out The output to write to.
+         * @throws IOException if the node cannot be written
+         * @see #readFrom(DataInput)
+         */
+        public synchronized void writeTo(DataOutput out) throws IOException
+        {
+            writeTo(out, new HashMap<String, Integer>());
+        }
+
+        /* ------------------------------------------------------------ */
+        private synchronized void writeTo(DataOutput out, Map<String, Integer> names) throws IOException
+        {
+            writeName(out, names, _tag);
+            if (_attrs == null)
+                out.writeInt(-1);
+            else
+            {
+                out.writeInt(_attrs.length);
+                for (int i = 0; i < _attrs.length; i++)
+                {
+                    writeName(out, names, _attrs[i].getName());
+                    writeString(out, _attrs[i].getValue());
+                }
+            }
+
+            if (_list == null)
+                out.writeInt(-1);
+            else
+            {
+                out.writeInt(_list.size());
+                for (int i = 0; i < _list.size(); i++)
+                {
+                    Object o = _list.get(i);
+                    if (o instanceof Node)
+                    {
+                        out.writeBoolean(true);
+                        ((Node) o).writeTo(out, names);
+                    }
+                    else
+                    {
+                        out.writeBoolean(false);
+                        writeString(out, o == null ? null : o.toString());
+                    }
+                }
+            }
+        }
+
+        /* ------------------------------------------------------------ */
+        /**
+         * Read a node and its content written by {@link #writeTo(DataOutput)}.
+         *
+         * @param in The input to read from.
+         * @return The node, without a parent.
+         * @throws IOException if the node cannot be read
+         */
+        public static Node readFrom(DataInput in) throws IOException
+        {
+            return readFrom(in, null, new ArrayList<String>());
+        }
+
+        /* ------------------------------------------------------------ */
+        private static Node readFrom(DataInput in, Node parent, List<String> names) throws IOException
+        {
+            Node node = new Node(parent, readName(in, names), null);
+            int attrs = in.readInt();
+            if (attrs >= 0)
+            {
+                node._attrs = new Attribute[attrs];
+                for (int i = 0; i < attrs; i++)
+                {
+                    String name = readName(in, names);
+                    node._attrs[i] = new Attribute(name, readString(in));
+                }
+            }
+
+            int size = in.readInt();
+            if (size >= 0)
+            {
+                node._list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++)
+                {
+                    if (in.readBoolean())
+                        node._list.add(readFrom(in, node, names));
+                    else
+                        node._list.add(readString(in));
+                }
+                node._lastString = size > 0 && node._list.get(size - 1) instanceof String;
+            }
+            return node;
+        }
+
+        /* ------------------------------------------------------------ */
+        private static void writeName(DataOutput out, Map<String, Integer> names, String name) throws IOException
+        {
+            Integer index = names.get(name);
+            if (index != null)
+                out.writeInt(index);
+            else
+            {
+                out.writeInt(-1);
+                writeString(out, name);
+                names.put(name, names.size());
+            }
+        }
+
+        /* ------------------------------------------------------------ */
+        private static String readName(DataInput in, List<String> names) throws IOException
+        {
+            int index = in.readInt();
+            if (index >= 0)
+                return names.get(index);
+            String name = readString(in);
+            names.add(name);
+            return name;
+        }
+
+        /* ------------------------------------------------------------ */
+        private static void writeString(DataOutput out, String s) throws IOException
+        {
+            if (s == null)
+                out.writeInt(-1);
+            else
+            {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        /* ------------------------------------------------------------ */
+        private static String readString(DataInput in) throws IOException
+        {
+            int length = in.readInt();
+            if (length < 0)
+                return null;
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
         /* ------------------------------------------------------------ */
         /**
          * Iterator over named child nodes.
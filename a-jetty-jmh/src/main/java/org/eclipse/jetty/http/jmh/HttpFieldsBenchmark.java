@@ -0,0 +1,93 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/* ------------------------------------------------------------ */
+/** Measures {@link HttpFields} lookup and put over request sized field set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HttpFieldsBenchmark
+{
+    private HttpFields _fields;
+
+    @Setup
+    public void setUp()
+    {
+        _fields=new HttpFields();
+        _fields.put(HttpHeader.HOST,"192.168.1.2:8443");
+        _fields.put(HttpHeader.USER_AGENT,"Mozilla/5.0 (X11; Linux x86_64; rv:78.0) Gecko/20100101 Firefox/78.0");
+        _fields.put(HttpHeader.ACCEPT,"text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+        _fields.put(HttpHeader.ACCEPT_LANGUAGE,"en-US,en;q=0.5");
+        _fields.put(HttpHeader.ACCEPT_ENCODING,"gzip, deflate");
+        _fields.put(HttpHeader.CONNECTION,"keep-alive");
+        _fields.put(HttpHeader.COOKIE,"JSESSIONID=node01abcdefghijklmno1234567890.node0");
+        _fields.put("Upgrade-Insecure-Requests","1");
+    }
+
+    @Benchmark
+    public void getByHeader(Blackhole bh)
+    {
+        bh.consume(_fields.get(HttpHeader.HOST));
+        bh.consume(_fields.get(HttpHeader.COOKIE));
+        bh.consume(_fields.get(HttpHeader.CONTENT_TYPE));
+    }
+
+    @Benchmark
+    public void getByName(Blackhole bh)
+    {
+        bh.consume(_fields.get("host"));
+        bh.consume(_fields.get("Cookie"));
+        bh.consume(_fields.get("Content-Type"));
+    }
+
+    @Benchmark
+    public HttpFields putResponseFields()
+    {
+        HttpFields fields=new HttpFields();
+        fields.put(HttpHeader.CONTENT_TYPE,"text/html;charset=utf-8");
+        fields.put(HttpHeader.CACHE_CONTROL,"no-cache");
+        fields.put(HttpHeader.EXPIRES,"Thu, 01 Jan 1970 00:00:00 GMT");
+        fields.put(HttpHeader.SET_COOKIE,"JSESSIONID=node01abcdefghijklmno1234567890.node0;Path=/");
+        fields.putLongField(HttpHeader.CONTENT_LENGTH,4096);
+        fields.put(HttpHeader.CONTENT_TYPE,"text/html;charset=utf-8");
+        return fields;
+    }
+}
@@ -0,0 +1,110 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpGenerator;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.util.BufferUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/* ------------------------------------------------------------ */
+/** Measures {@link HttpGenerator#generateResponse} driving a whole
+ * response to DONE the same way as HttpConnection does it,
+ * with "flushing" replaced by clearing the buffers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HttpGeneratorBenchmark
+{
+    /** true - content length is unknown, so response is chunked. */
+    @Param({"false","true"})
+    public boolean chunked;
+
+    private final HttpGenerator _generator=new HttpGenerator();
+    private final ByteBuffer _header=BufferUtil.allocate(8192);
+    private final ByteBuffer _chunk=BufferUtil.allocate(HttpGenerator.CHUNK_SIZE);
+    private ByteBuffer _content;
+    private HttpGenerator.ResponseInfo _info;
+
+    @Setup
+    public void setUp()
+    {
+        byte[] body=new byte[4096];
+        for (int i=0;i<body.length;i++)
+            body[i]=(byte)('a'+i%26);
+        _content=ByteBuffer.wrap(body);
+        HttpFields fields=new HttpFields();
+        fields.put(HttpHeader.CONTENT_TYPE,"text/html;charset=utf-8");
+        fields.put(HttpHeader.CACHE_CONTROL,"no-cache");
+        fields.put(HttpHeader.SET_COOKIE,"JSESSIONID=node01abcdefghijklmno1234567890.node0;Path=/");
+        fields.put(HttpHeader.EXPIRES,"Thu, 01 Jan 1970 00:00:00 GMT");
+        _info=new HttpGenerator.ResponseInfo(HttpVersion.HTTP_1_1,fields,chunked?-1:body.length,200,null,false);
+    }
+
+    @Benchmark
+    public void generateResponse(Blackhole bh) throws IOException
+    {
+        ByteBuffer content=_content.slice();
+        _generator.reset();
+        boolean last=!chunked;
+        while (true)
+        {
+            HttpGenerator.Result result=_generator.generateResponse(_info,_header,_chunk,content,last);
+            switch (result)
+            {
+                case FLUSH:
+                    bh.consume(_header.remaining()+_chunk.remaining()+content.remaining());
+                    BufferUtil.clear(_header);
+                    BufferUtil.clear(_chunk);
+                    BufferUtil.clear(content);
+                    last=true;
+                    break;
+                case CONTINUE:
+                    break;
+                case DONE:
+                case SHUTDOWN_OUT:
+                    return;
+                default:
+                    throw new IllegalStateException(result.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpParser;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.util.BufferUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/* ------------------------------------------------------------ */
+/** Measures {@link HttpParser#parseNext(ByteBuffer)} over a whole request
+ * as it is done by HttpConnection, i.e. with the same parser reused
+ * for every request on a keep-alive connection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HttpParserBenchmark
+{
+    /** Browser GET with typical header set. */
+    public static final String GET=
+        "GET /accounting/report.jsp?id=12&lang=en HTTP/1.1\r\n"+
+        "Host: 192.168.1.2:8443\r\n"+
+        "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:78.0) Gecko/20100101 Firefox/78.0\r\n"+
+        "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"+
+        "Accept-Language: en-US,en;q=0.5\r\n"+
+        "Accept-Encoding: gzip, deflate\r\n"+
+        "Connection: keep-alive\r\n"+
+        "Cookie: JSESSIONID=node01abcdefghijklmno1234567890.node0\r\n"+
+        "Upgrade-Insecure-Requests: 1\r\n"+
+        "\r\n";
+
+    /** Form POST with small body. */
+    public static final String POST=
+        "POST /accounting/entry HTTP/1.1\r\n"+
+        "Host: 192.168.1.2:8443\r\n"+
+        "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:78.0) Gecko/20100101 Firefox/78.0\r\n"+
+        "Content-Type: application/x-www-form-urlencoded\r\n"+
+        "Content-Length: 43\r\n"+
+        "Connection: keep-alive\r\n"+
+        "\r\n"+
+        "nme=Cash&itsDate=2016-01-01&debit=12.50&x=1";
+
+    @Param({"GET","POST"})
+    public String method;
+
+    private ByteBuffer _request;
+    private HttpParser _parser;
+    private Handler _handler;
+
+    @Setup
+    public void setUp()
+    {
+        _request=BufferUtil.toBuffer("GET".equals(method)?GET:POST);
+        _handler=new Handler();
+        _parser=new HttpParser(_handler);
+    }
+
+    @Benchmark
+    public void parseNext(Blackhole bh)
+    {
+        ByteBuffer buffer=_request.slice();
+        _parser.reset();
+        while (buffer.hasRemaining() && !_parser.isComplete())
+            _parser.parseNext(buffer);
+        bh.consume(_handler._fields);
+        _handler._fields=0;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Handler that only counts events, so the parser cost dominates.
+     */
+    private static class Handler implements HttpParser.RequestHandler<ByteBuffer>
+    {
+        private int _fields;
+
+        @Override
+        public boolean content(ByteBuffer item)
+        {
+            item.position(item.limit());
+            return false;
+        }
+
+        @Override
+        public boolean headerComplete()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean messageComplete()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean parsedHeader(HttpField field)
+        {
+            _fields++;
+            return false;
+        }
+
+        @Override
+        public void earlyEOF()
+        {
+        }
+
+        @Override
+        public void badMessage(int status, String reason)
+        {
+            throw new IllegalStateException(status+" "+reason);
+        }
+
+        @Override
+        public int getHeaderCacheSize()
+        {
+            return 512;
+        }
+
+        @Override
+        public boolean startRequest(HttpMethod method, String methodString, ByteBuffer uri, HttpVersion version)
+        {
+            return false;
+        }
+
+        @Override
+        public boolean parsedHostHeader(String host, int port)
+        {
+            return false;
+        }
+    }
+}
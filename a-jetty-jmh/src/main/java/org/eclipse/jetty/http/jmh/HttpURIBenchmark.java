@@ -0,0 +1,79 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.http.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.util.StringUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/* ------------------------------------------------------------ */
+/** Measures {@link HttpURI#parse(byte[], int, int)} and decoding of
+ * the path, as done by Request.setRequestURI for every request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HttpURIBenchmark
+{
+    @Param({"/accounting/report.jsp?id=12&lang=en",
+        "/accounting/css/common.css",
+        "https://192.168.1.2:8443/accounting/path%20with%20spaces;jsessionid=abc?q=%D0%B0"})
+    public String uri;
+
+    private final HttpURI _httpURI=new HttpURI();
+    private byte[] _raw;
+
+    @Setup
+    public void setUp()
+    {
+        _raw=StringUtil.getUtf8Bytes(uri);
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh)
+    {
+        _httpURI.parse(_raw,0,_raw.length);
+        bh.consume(_httpURI.getPath());
+        bh.consume(_httpURI.getQuery());
+    }
+
+    @Benchmark
+    public void parseDecodedPath(Blackhole bh)
+    {
+        _httpURI.parse(_raw,0,_raw.length);
+        bh.consume(_httpURI.getDecodedPath());
+    }
+}
@@ -0,0 +1,87 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.io.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MagazineByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* ------------------------------------------------------------ */
+/** Measures acquire/release cycle of the pools as done by
+ * HttpConnection (request buffer) and HttpOutput (aggregate buffer)
+ * on several threads at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Threads(4)
+@Fork(1)
+public class ByteBufferPoolBenchmark
+{
+    @Param({"ARRAY","MAPPED","MAGAZINE"})
+    public String pool;
+
+    private ByteBufferPool _pool;
+
+    @Setup
+    public void setUp()
+    {
+        switch (pool)
+        {
+            case "ARRAY":
+                _pool=new ArrayByteBufferPool();
+                break;
+            case "MAPPED":
+                _pool=new MappedByteBufferPool();
+                break;
+            default:
+                _pool=new MagazineByteBufferPool();
+        }
+    }
+
+    @Benchmark
+    public int acquireRelease()
+    {
+        ByteBuffer request=_pool.acquire(16384,true);
+        ByteBuffer aggregate=_pool.acquire(32768,false);
+        int capacity=request.capacity()+aggregate.capacity();
+        _pool.release(aggregate);
+        _pool.release(request);
+        return capacity;
+    }
+}
@@ -0,0 +1,115 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.server.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* ------------------------------------------------------------ */
+/** Measures a full request round trip through {@link LocalConnector},
+ * HttpConnection, HttpChannel and ServletHandler into a servlet
+ * that writes a small HTML page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class LocalConnectorBenchmark
+{
+    /** Count of filler servlet mappings, so ServletHandler has something to match against. */
+    @Param({"1","50"})
+    public int mappings;
+
+    private Server _server;
+    private LocalConnector _connector;
+    private String _request;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        _server=new Server();
+        _connector=new LocalConnector(_server);
+        _server.addConnector(_connector);
+        ServletContextHandler context=new ServletContextHandler(_server,"/accounting");
+        for (int i=0;i<mappings;i++)
+            context.addServlet(HelloServlet.class,"/filler"+i+"/*");
+        context.addServlet(HelloServlet.class,"*.jsp");
+        _server.start();
+        _request=
+            "GET /accounting/report.jsp?id=12 HTTP/1.1\r\n"+
+            "Host: localhost\r\n"+
+            "Accept: text/html\r\n"+
+            "Accept-Encoding: gzip, deflate\r\n"+
+            "Connection: close\r\n"+
+            "\r\n";
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        _server.stop();
+    }
+
+    @Benchmark
+    public String roundTrip() throws Exception
+    {
+        String response=_connector.getResponses(_request);
+        if (response==null || !response.startsWith("HTTP/1.1 200"))
+            throw new IllegalStateException(response);
+        return response;
+    }
+
+    /* ------------------------------------------------------------ */
+    /** Servlet that writes small fixed page.
+     */
+    @SuppressWarnings("serial")
+    public static class HelloServlet extends HttpServlet
+    {
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+        {
+            response.setContentType("text/html;charset=utf-8");
+            response.getWriter().print("<html><body><table><tr><td>Cash</td><td>12.50</td></tr></table></body></html>");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2016 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.util.jmh;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.MultiMap;
+import org.eclipse.jetty.util.UrlEncoded;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* ------------------------------------------------------------ */
+/** Measures {@link UrlEncoded#decodeTo(String, MultiMap, java.nio.charset.Charset, int)}
+ * over query strings and forms of different size,
+ * e.g. accounting forms that post hundreds of fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class UrlEncodedBenchmark
+{
+    /** Number of parameters in the form. */
+    @Param({"4","32","256"})
+    public int fields;
+
+    /** true - values contain %XX and '+' to be decoded. */
+    @Param({"false","true"})
+    public boolean encoded;
+
+    private String _content;
+
+    @Setup
+    public void setUp()
+    {
+        StringBuilder sb=new StringBuilder();
+        for (int i=0;i<fields;i++)
+        {
+            if (i>0)
+                sb.append('&');
+            sb.append("fld").append(i).append('=');
+            if (encoded)
+                sb.append("%D0%A1%D1%87%D0%B5%D1%82+").append(i);
+            else
+                sb.append("value").append(i);
+        }
+        _content=sb.toString();
+    }
+
+    @Benchmark
+    public MultiMap<String> decodeTo()
+    {
+        MultiMap<String> map=new MultiMap<>();
+        UrlEncoded.decodeTo(_content,map,StandardCharsets.UTF_8,-1);
+        return map;
+    }
+}